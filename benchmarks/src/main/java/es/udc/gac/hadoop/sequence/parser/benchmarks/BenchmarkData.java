@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Synthetic sequence data for the benchmarks. Data are generated with a
+ * fixed seed, so all the runs parse the same records.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public final class BenchmarkData {
+
+	/**
+	 * Number of records of the parsed files, so that the buffers allocated
+	 * when opening each file are negligible in the allocation per record
+	 */
+	public static final int RECORDS = 100000;
+	private static final byte[] BASES = {'A', 'C', 'G', 'T', 'N'};
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Generate FASTQ or FASTA records whose names have a comment (to be trimmed).
+	 *
+	 * @param fastq whether to generate FASTQ (true) or FASTA (false) records
+	 * @param readLength the number of bases of each read
+	 * @param mate the mate number appended to the names (1 or 2), or 0 for none
+	 * @param records the number of records
+	 */
+	public static byte[] generate(boolean fastq, int readLength, int mate, int records) {
+		Random random = new Random(mate);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(records * (2 * readLength + 64));
+		byte[] sequence = new byte[readLength];
+
+		for (int i = 0; i < records; i++) {
+			String name = (fastq? "@" : ">")+"read"+i+((mate > 0)? "/"+mate : "")+" length="+readLength+"\n";
+			out.write(name.getBytes(StandardCharsets.US_ASCII), 0, name.length());
+
+			for (int j = 0; j < readLength; j++)
+				sequence[j] = BASES[random.nextInt(BASES.length)];
+
+			out.write(sequence, 0, readLength);
+			out.write('\n');
+
+			if (fastq) {
+				out.write('+');
+				out.write('\n');
+
+				for (int j = 0; j < readLength; j++)
+					sequence[j] = (byte) ('!' + random.nextInt(41));
+
+				out.write(sequence, 0, readLength);
+				out.write('\n');
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Write the data to a temporary file, compressed with the given codec.
+	 *
+	 * @param data the data
+	 * @param codec none, gzip or bz2
+	 * @param fastq whether the data are FASTQ (true) or FASTA (false) records
+	 *
+	 * @return the file, which is deleted on exit
+	 */
+	public static File write(byte[] data, String codec, boolean fastq) throws IOException {
+		String extension = fastq? ".fq" : ".fa";
+		CompressionCodec compressionCodec = null;
+
+		if (codec.equals("gzip"))
+			compressionCodec = ReflectionUtils.newInstance(GzipCodec.class, new Configuration());
+		else if (codec.equals("bz2"))
+			compressionCodec = ReflectionUtils.newInstance(BZip2Codec.class, new Configuration());
+		else if (!codec.equals("none"))
+			throw new IllegalArgumentException("Unknown codec "+codec);
+
+		if (compressionCodec != null)
+			extension += compressionCodec.getDefaultExtension();
+
+		File file = File.createTempFile("hsp-benchmark", extension);
+		file.deleteOnExit();
+
+		try (OutputStream out = (compressionCodec != null)?
+				compressionCodec.createOutputStream(new FileOutputStream(file)) : new FileOutputStream(file)) {
+			out.write(data);
+		}
+
+		return file;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.benchmarks;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected by the JMH command line options with the
+ * GC profiler, and fails if any benchmark of uncompressed data allocates
+ * more than <code>hsp.benchmark.max.alloc</code> bytes per operation
+ * (i.e. per line, name or record). Compressed inputs are not checked, as
+ * codecs allocate buffers for each stream.
+ * 
+ * Usage: java [-Dhsp.benchmark.max.alloc=bytes] -jar benchmarks.jar [JMH options]
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class BenchmarkRunner {
+
+	public static final String MAX_ALLOC_PROPERTY = "hsp.benchmark.max.alloc";
+	private static final double MAX_ALLOC_DEFAULT = 64;
+	private static final String ALLOC_RESULT = "gc.alloc.rate.norm";
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+		if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList()) {
+			// Let JMH print the help or the list of benchmarks
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+
+		Options options = new OptionsBuilder()
+				.parent(commandLineOptions)
+				.addProfiler(GCProfiler.class)
+				.build();
+
+		double maxAlloc = Double.parseDouble(System.getProperty(MAX_ALLOC_PROPERTY, String.valueOf(MAX_ALLOC_DEFAULT)));
+		Collection<RunResult> results = new Runner(options).run();
+		int failures = 0;
+
+		for (RunResult result : results) {
+			BenchmarkParams params = result.getParams();
+			Result<?> alloc = result.getSecondaryResults().get(ALLOC_RESULT);
+
+			if (alloc == null || params.getParamsKeys().contains("codec") && !params.getParam("codec").equals("none"))
+				continue;
+
+			if (alloc.getScore() > maxAlloc) {
+				StringBuilder description = new StringBuilder(params.getBenchmark());
+
+				for (String key : params.getParamsKeys())
+					description.append(' ').append(key).append('=').append(params.getParam(key));
+
+				System.err.printf("ALLOCATION REGRESSION: %s allocates %.1f bytes/op (limit %.1f)%n",
+						description, alloc.getScore(), maxAlloc);
+				failures++;
+			}
+		}
+
+		if (failures > 0)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.NullOutputFormat;
+
+import es.udc.gac.hadoop.sequence.parser.mapreduce.FastAInputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.FastQInputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.PairText;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.PairedEndSequenceInputFormat;
+
+/**
+ * End-to-end harness which generates synthetic datasets (see {@link SequenceGenerator})
+ * and reads them with map-only jobs on the local job runner, using FastQInputFormat,
+ * FastAInputFormat and PairedEndSequenceInputFormat with several split and buffer
+ * sizes. For each job, it reports the records/s and MB/s (of uncompressed data),
+ * and checks that the job read every record exactly once by comparing the
+ * number of records and their checksum with those of the generator.
+ * 
+ * Usage: EndToEndHarness [-records N] [-length spec] [-codecs none,gz,bz2]
+ *     [-splits 4m,32m] [-buffers 64k,1m] [-dir workdir]
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class EndToEndHarness {
+
+	enum HarnessCounter {
+		MAPS,
+		RECORDS,
+		CHECKSUM
+	}
+
+	/**
+	 * Mapper which counts the records and adds up their hashes
+	 */
+	public static class ChecksumMapper extends Mapper<LongWritable, Writable, NullWritable, NullWritable> {
+
+		private long records;
+		private long checksum;
+
+		@Override
+		protected void map(LongWritable key, Writable value, Context context) {
+			if (value instanceof PairText) {
+				PairText pair = (PairText) value;
+				checksum += SequenceGenerator.pairHash(hash(pair.getLeft()), hash(pair.getRight()));
+			} else {
+				checksum += hash((Text) value);
+			}
+
+			records++;
+		}
+
+		private static long hash(Text text) {
+			return SequenceGenerator.hash(text.getBytes(), 0, text.getLength());
+		}
+
+		@Override
+		protected void cleanup(Context context) {
+			context.getCounter(HarnessCounter.MAPS).increment(1);
+			context.getCounter(HarnessCounter.RECORDS).increment(records);
+			context.getCounter(HarnessCounter.CHECKSUM).increment(checksum);
+		}
+	}
+
+	/**
+	 * Generated dataset
+	 */
+	private static final class Dataset {
+		final String name;
+		final String codec;
+		final File left;
+		final File right; // null for single-end datasets
+		final SequenceGenerator.Stats stats;
+
+		Dataset(String name, String codec, File left, File right, SequenceGenerator.Stats stats) {
+			this.name = name;
+			this.codec = codec;
+			this.left = left;
+			this.right = right;
+			this.stats = stats;
+		}
+	}
+
+	private static Dataset generate(File dir, String name, String codec, boolean fastq, boolean paired,
+			String lengths, long records) throws IOException {
+		String extension = (fastq? ".fq" : ".fa")+(codec.equals("none")? "" : "."+codec);
+		File left = new File(dir, name+(paired? "_1" : "")+extension);
+		File right = paired? new File(dir, name+"_2"+extension) : null;
+		SequenceGenerator generator = new SequenceGenerator(fastq, new SequenceGenerator.LengthDistribution(lengths),
+				fastq? 0 : 60, 0);
+
+		try (OutputStream leftOut = SequenceGenerator.create(left);
+				OutputStream rightOut = paired? SequenceGenerator.create(right) : null) {
+			return new Dataset(name, codec, left, right, generator.write(leftOut, rightOut, records));
+		}
+	}
+
+	/**
+	 * Run a job over the dataset and print its results.
+	 *
+	 * @return whether all the records were read exactly once
+	 */
+	private static boolean run(Dataset dataset, long splitSize, int bufferSize) throws Exception {
+		Configuration conf = new Configuration();
+		conf.set("mapreduce.framework.name", "local");
+		conf.set("fs.defaultFS", "file:///");
+		conf.setInt("mapreduce.client.completion.pollinterval", 50);
+		conf.setLong("mapreduce.input.fileinputformat.split.minsize", 1);
+		conf.setLong("mapreduce.input.fileinputformat.split.maxsize", splitSize);
+
+		if (dataset.right != null && dataset.codec.equals("bz2")) {
+			// Paired-end bzip2 files cannot be split by record, so each file is read as a single split
+			conf.setLong("mapreduce.input.fileinputformat.split.minsize", Long.MAX_VALUE);
+		}
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setInputBufferSize(conf, bufferSize);
+
+		Job job = Job.getInstance(conf, "HSP end-to-end harness: "+dataset.name);
+		job.setJarByClass(EndToEndHarness.class);
+
+		if (dataset.right != null) {
+			job.setInputFormatClass(PairedEndSequenceInputFormat.class);
+			PairedEndSequenceInputFormat.setLeftInputPath(job, new Path(dataset.left.toURI()), FastQInputFormat.class);
+			PairedEndSequenceInputFormat.setRightInputPath(job, new Path(dataset.right.toURI()), FastQInputFormat.class);
+		} else {
+			job.setInputFormatClass(dataset.name.startsWith("fasta")? FastAInputFormat.class : FastQInputFormat.class);
+			FileInputFormat.addInputPath(job, new Path(dataset.left.toURI()));
+		}
+
+		job.setMapperClass(ChecksumMapper.class);
+		job.setNumReduceTasks(0);
+		job.setOutputFormatClass(NullOutputFormat.class);
+
+		long startTime = System.nanoTime();
+		boolean succeeded = job.waitForCompletion(false);
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+
+		long records = succeeded? job.getCounters().findCounter(HarnessCounter.RECORDS).getValue() : -1;
+		long checksum = succeeded? job.getCounters().findCounter(HarnessCounter.CHECKSUM).getValue() : 0;
+		int maps = succeeded? (int) job.getCounters().findCounter(HarnessCounter.MAPS).getValue() : 0;
+		boolean ok = succeeded && records == dataset.stats.getRecords() && checksum == dataset.stats.getChecksum();
+		String status = ok? "OK" : !succeeded? "FAILED (job)" :
+			(records != dataset.stats.getRecords())? "FAILED ("+(records - dataset.stats.getRecords())+" records)" : "FAILED (checksum)";
+
+		System.out.printf("%-8s %-5s %10s %8s %6d %10d %8.2f %12.0f %8.1f  %s%n", dataset.name, dataset.codec,
+				formatSize(splitSize), formatSize(bufferSize), maps, records, seconds,
+				records / seconds, dataset.stats.getBytes() / seconds / (1024*1024), status);
+		return ok;
+	}
+
+	private static long parseSize(String size) {
+		size = size.trim().toLowerCase();
+		long unit = 1;
+
+		if (size.endsWith("k"))
+			unit = 1024;
+		else if (size.endsWith("m"))
+			unit = 1024*1024;
+		else if (size.endsWith("g"))
+			unit = 1024*1024*1024;
+
+		return Long.parseLong((unit == 1)? size : size.substring(0, size.length() - 1)) * unit;
+	}
+
+	private static String formatSize(long size) {
+		if (size % (1024*1024) == 0)
+			return (size / (1024*1024))+"m";
+		if (size % 1024 == 0)
+			return (size / 1024)+"k";
+		return String.valueOf(size);
+	}
+
+	private static List<Long> parseSizes(String sizes) {
+		List<Long> result = new ArrayList<Long>();
+
+		for (String size : sizes.split(","))
+			result.add(parseSize(size));
+
+		return result;
+	}
+
+	public static void main(String[] args) throws Exception {
+		long records = 200000;
+		String lengths = "normal:150:20";
+		String codecs = "none,gz,bz2";
+		String splits = "4m,32m";
+		String buffers = "64k,1m";
+		File dir = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "-records": records = Long.parseLong(args[++i]); break;
+				case "-length": lengths = args[++i]; break;
+				case "-codecs": codecs = args[++i]; break;
+				case "-splits": splits = args[++i]; break;
+				case "-buffers": buffers = args[++i]; break;
+				case "-dir": dir = new File(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown option "+args[i]);
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: "+EndToEndHarness.class.getSimpleName()+" [-records N] [-length spec]"+
+					" [-codecs none,gz,bz2] [-splits 4m,32m] [-buffers 64k,1m] [-dir workdir]");
+			System.exit(1);
+			return;
+		}
+
+		if (dir == null) {
+			dir = File.createTempFile("hsp-harness", "");
+			dir.delete();
+		}
+
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create "+dir);
+
+		List<Dataset> datasets = new ArrayList<Dataset>();
+
+		for (String codec : codecs.split(",")) {
+			datasets.add(generate(dir, "fastq", codec, true, false, lengths, records));
+			datasets.add(generate(dir, "fasta", codec, false, false, lengths, records));
+			datasets.add(generate(dir, "paired", codec, true, true, lengths, records));
+		}
+
+		System.out.printf("%-8s %-5s %10s %8s %6s %10s %8s %12s %8s  %s%n", "dataset", "codec",
+				"split", "buffer", "maps", "records", "seconds", "records/s", "MB/s", "result");
+		int failures = 0;
+
+		for (Dataset dataset : datasets) {
+			for (long splitSize : parseSizes(splits)) {
+				for (long bufferSize : parseSizes(buffers)) {
+					if (!run(dataset, splitSize, (int) bufferSize))
+						failures++;
+				}
+			}
+		}
+
+		if (failures > 0) {
+			System.err.println(failures+" runs failed");
+			System.exit(1);
+		}
+	}
+}
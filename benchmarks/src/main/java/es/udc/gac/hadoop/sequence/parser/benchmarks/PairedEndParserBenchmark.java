@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.udc.gac.hadoop.sequence.parser.mapreduce.FastQInputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.PairText;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.PairedEndSequenceInputFormat;
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+
+/**
+ * Benchmark of the paired-end record reader, which parses a whole pair
+ * of local FASTQ files in each invocation. Results are per pair.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PairedEndParserBenchmark {
+
+	@Param({"none", "gzip", "bz2"})
+	public String codec;
+
+	@Param({"65536", "262144"})
+	public int bufferSize;
+
+	@Param({"100", "250"})
+	public int readLength;
+
+	@Param({"false", "true"})
+	public boolean concurrent;
+
+	private PairedEndSequenceInputFormat inputFormat;
+	private TaskAttemptContext context;
+	private InputSplit split;
+
+	@Setup
+	public void setup() throws IOException, InterruptedException {
+		File left = BenchmarkData.write(BenchmarkData.generate(true, readLength, 1, BenchmarkData.RECORDS), codec, true);
+		File right = BenchmarkData.write(BenchmarkData.generate(true, readLength, 2, BenchmarkData.RECORDS), codec, true);
+		Job job = Job.getInstance();
+		Configuration.setInputBufferSize(job.getConfiguration(), bufferSize);
+		Configuration.setPairedConcurrent(job.getConfiguration(), concurrent);
+		PairedEndSequenceInputFormat.setLeftInputPath(job, new Path(left.toURI()), FastQInputFormat.class);
+		PairedEndSequenceInputFormat.setRightInputPath(job, new Path(right.toURI()), FastQInputFormat.class);
+		inputFormat = new PairedEndSequenceInputFormat();
+		context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+
+		// Whole files
+		job.getConfiguration().setLong("mapreduce.input.fileinputformat.split.minsize", Long.MAX_VALUE);
+		split = inputFormat.getSplits(job).get(0);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.RECORDS)
+	public void parse(Blackhole blackhole) throws IOException, InterruptedException {
+		try (RecordReader<LongWritable, PairText> reader = inputFormat.createRecordReader(split, context)) {
+			reader.initialize(split, context);
+
+			while (reader.nextKeyValue())
+				blackhole.consume(reader.getCurrentValue().getRight().getLength());
+		}
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+
+/**
+ * Deterministic generator of synthetic FASTQ/FASTA datasets with
+ * Illumina-style headers (e.g. "@A00123:8:H5KLMDSXY:1:1101:1000:2000 1:N:0:ACGTACGT"),
+ * read lengths drawn from a configurable distribution and quality strings
+ * in the Phred+33 range of Illumina instruments, a fraction of which start
+ * with '@'. The same seed always generates the same data.
+ * 
+ * Besides writing the data, the generator computes an order-independent
+ * checksum of the values that HSP emits for them (with trimmed names, see
+ * {@link #hash}), which allows checking that a job reads each record exactly
+ * once.
+ * 
+ * Usage: SequenceGenerator [-fasta] [-records N] [-length spec] [-width W] [-seed S] output [right-output]
+ * 
+ * The codec is taken from the extension of the output files (e.g. ".gz" or ".bz2").
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class SequenceGenerator {
+
+	private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+	private static final double N_FRACTION = 0.001;
+	private static final double AT_QUALITY_FRACTION = 0.05;
+	private static final int MIN_QUALITY = '#';
+	private static final int MAX_QUALITY = 'J';
+	private static final String INSTRUMENT = "A00123:8:H5KLMDSXY";
+	private static final int TILE_READS = 4096;
+
+	/**
+	 * Records, uncompressed bytes and checksum of a generated dataset
+	 */
+	public static final class Stats {
+		private long records;
+		private long bytes;
+		private long checksum;
+
+		public long getRecords() {
+			return records;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getChecksum() {
+			return checksum;
+		}
+
+		@Override
+		public String toString() {
+			return records+" records, "+bytes+" bytes, checksum "+Long.toHexString(checksum);
+		}
+	}
+
+	/**
+	 * Distribution of read lengths, given as "N" (fixed length), "uniform:MIN:MAX"
+	 * or "normal:MEAN:SD" (rounded and clamped to at least one base).
+	 */
+	public static final class LengthDistribution {
+		private final String type;
+		private final double a, b;
+
+		public LengthDistribution(String spec) {
+			String[] fields = spec.split(":");
+
+			try {
+				if (fields.length == 1) {
+					type = "fixed";
+					a = b = Integer.parseInt(fields[0]);
+				} else if (fields.length == 3 && (fields[0].equals("uniform") || fields[0].equals("normal"))) {
+					type = fields[0];
+					a = Double.parseDouble(fields[1]);
+					b = Double.parseDouble(fields[2]);
+				} else {
+					throw new IllegalArgumentException("Invalid read length distribution: "+spec);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid read length distribution: "+spec, e);
+			}
+
+			if (a < 1 || b < (type.equals("normal")? 0 : a))
+				throw new IllegalArgumentException("Invalid read length distribution: "+spec);
+		}
+
+		int next(Random random) {
+			switch (type) {
+			case "uniform":
+				return (int) a + random.nextInt((int) b - (int) a + 1);
+			case "normal":
+				return Math.max(1, (int) Math.round(a + b * random.nextGaussian()));
+			default:
+				return (int) a;
+			}
+		}
+	}
+
+	private final boolean fastq;
+	private final LengthDistribution lengths;
+	private final int lineWidth;
+	private final long seed;
+
+	/**
+	 * Create a new generator.
+	 *
+	 * @param fastq whether to generate FASTQ (true) or FASTA (false) records
+	 * @param lengths the distribution of read lengths
+	 * @param lineWidth the maximum length of FASTA sequence lines, or 0 for single-line sequences
+	 * @param seed the seed of the generator
+	 */
+	public SequenceGenerator(boolean fastq, LengthDistribution lengths, int lineWidth, long seed) {
+		this.fastq = fastq;
+		this.lengths = lengths;
+		this.lineWidth = lineWidth;
+		this.seed = seed;
+	}
+
+	/**
+	 * Write a single-end dataset.
+	 */
+	public Stats write(OutputStream out, long records) throws IOException {
+		return write(out, null, records);
+	}
+
+	/**
+	 * Write a paired-end dataset. The checksum is computed over the pairs
+	 * (see {@link #pairHash}).
+	 */
+	public Stats write(OutputStream left, OutputStream right, long records) throws IOException {
+		Random random = new Random(seed);
+		Stats stats = new Stats();
+		Record record = new Record();
+
+		for (long i = 0; i < records; i++) {
+			String name = getName(i);
+			String index = getIndex(i);
+			long hash = writeRecord(left, random, record, name, " 1:N:0:"+index, stats);
+
+			if (right != null)
+				hash = pairHash(hash, writeRecord(right, random, record, name, " 2:N:0:"+index, stats));
+
+			stats.checksum += hash;
+			stats.records++;
+		}
+
+		return stats;
+	}
+
+	/**
+	 * Illumina-style read name: instrument, run, flowcell, lane, tile and coordinates.
+	 */
+	private static String getName(long i) {
+		long tile = i / TILE_READS;
+		long lane = 1 + (tile / 64) % 4;
+		return INSTRUMENT+":"+lane+":"+(1101 + tile % 64)+":"+(1000 + (i % TILE_READS) * 7 % 32000)+":"+(1000 + i % TILE_READS);
+	}
+
+	private static String getIndex(long i) {
+		char[] index = new char[8];
+
+		for (int j = 0; j < index.length; j++)
+			index[j] = (char) BASES[(int) ((i >>> (2 * j)) & 3)];
+
+		return new String(index);
+	}
+
+	/**
+	 * Buffers of the record being generated
+	 */
+	private static final class Record {
+		byte[] sequence = new byte[256];
+		byte[] quality = new byte[256];
+		Buffer emitted = new Buffer();
+
+		void ensureCapacity(int length) {
+			if (sequence.length < length) {
+				sequence = new byte[length];
+				quality = new byte[length];
+			}
+		}
+	}
+
+	/**
+	 * Write a record, returning the hash of the value that HSP emits for it.
+	 */
+	private long writeRecord(OutputStream out, Random random, Record record, String name, String comment, Stats stats) throws IOException {
+		int length = lengths.next(random);
+		record.ensureCapacity(length);
+		byte[] sequence = record.sequence;
+		byte[] quality = record.quality;
+
+		for (int j = 0; j < length; j++)
+			sequence[j] = (random.nextDouble() < N_FRACTION)? (byte) 'N' : BASES[random.nextInt(BASES.length)];
+
+		Buffer emitted = record.emitted;
+		emitted.reset();
+		byte[] header = ((fastq? "@" : ">")+name).getBytes(StandardCharsets.US_ASCII);
+		byte[] headerComment = comment.getBytes(StandardCharsets.US_ASCII);
+
+		out.write(header);
+		out.write(headerComment);
+		out.write('\n');
+		emitted.write(header, 0, header.length);
+		emitted.write('\n');
+		stats.bytes += header.length + headerComment.length + 1;
+
+		if (fastq) {
+			for (int j = 0; j < length; j++)
+				quality[j] = (byte) (MIN_QUALITY + random.nextInt(MAX_QUALITY - MIN_QUALITY + 1));
+
+			// Quality strings starting with '@' look like headers
+			if (random.nextDouble() < AT_QUALITY_FRACTION)
+				quality[0] = '@';
+
+			writeLine(out, emitted, sequence, 0, length);
+			out.write('+');
+			out.write('\n');
+			emitted.write('+');
+			emitted.write('\n');
+			writeLine(out, emitted, quality, 0, length);
+			stats.bytes += 2 * length + 4;
+		} else {
+			int width = (lineWidth > 0)? lineWidth : length;
+
+			for (int j = 0; j < length; j += width) {
+				int lineLength = Math.min(width, length - j);
+				writeLine(out, emitted, sequence, j, lineLength);
+				stats.bytes += lineLength + 1;
+			}
+		}
+
+		return hash(emitted.getData(), 0, emitted.getLength());
+	}
+
+	private static void writeLine(OutputStream out, Buffer emitted, byte[] bytes, int offset, int length) throws IOException {
+		out.write(bytes, offset, length);
+		out.write('\n');
+		emitted.write(bytes, offset, length);
+		emitted.write('\n');
+	}
+
+	/**
+	 * Growable byte buffer
+	 */
+	private static final class Buffer {
+		private byte[] data = new byte[1024];
+		private int length;
+
+		void reset() {
+			length = 0;
+		}
+
+		void write(int b) {
+			ensureCapacity(length + 1);
+			data[length++] = (byte) b;
+		}
+
+		void write(byte[] bytes, int offset, int count) {
+			ensureCapacity(length + count);
+			System.arraycopy(bytes, offset, data, length, count);
+			length += count;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (data.length < capacity)
+				data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+		}
+
+		byte[] getData() {
+			return data;
+		}
+
+		int getLength() {
+			return length;
+		}
+	}
+
+	/**
+	 * 64-bit hash (FNV-1a followed by a final mix) of a record value,
+	 * whose sum over all the records is used as checksum.
+	 */
+	public static long hash(byte[] bytes, int offset, int length) {
+		long h = 0xcbf29ce484222325L;
+
+		for (int i = offset; i < offset + length; i++) {
+			h ^= bytes[i] & 0xff;
+			h *= 0x100000001b3L;
+		}
+
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Hash of a pair of records given the hashes of its reads.
+	 */
+	public static long pairHash(long left, long right) {
+		return left * 31 + Long.rotateLeft(right, 17);
+	}
+
+	/**
+	 * Open a local file for writing, compressed with the codec that matches
+	 * its extension (if any).
+	 */
+	public static OutputStream create(File file) throws IOException {
+		CompressionCodec codec = new CompressionCodecFactory(new Configuration()).getCodec(new Path(file.toURI()));
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1024*1024);
+		return (codec != null)? codec.createOutputStream(out) : out;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean fastq = true;
+		long records = 1000000;
+		String length = "150";
+		int width = 0;
+		long seed = 0;
+		int i = 0;
+
+		try {
+			for (; i < args.length && args[i].startsWith("-"); i++) {
+				switch (args[i]) {
+				case "-fasta": fastq = false; break;
+				case "-records": records = Long.parseLong(args[++i]); break;
+				case "-length": length = args[++i]; break;
+				case "-width": width = Integer.parseInt(args[++i]); break;
+				case "-seed": seed = Long.parseLong(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown option "+args[i]);
+				}
+			}
+
+			if (args.length - i < 1 || args.length - i > 2)
+				throw new IllegalArgumentException("Wrong number of output files");
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: "+SequenceGenerator.class.getSimpleName()+
+					" [-fasta] [-records N] [-length N|uniform:MIN:MAX|normal:MEAN:SD] [-width W] [-seed S] output [right-output]");
+			System.exit(1);
+			return;
+		}
+
+		SequenceGenerator generator = new SequenceGenerator(fastq, new LengthDistribution(length), width, seed);
+		Stats stats;
+
+		try (OutputStream left = create(new File(args[i]));
+				OutputStream right = (args.length - i == 2)? create(new File(args[i + 1])) : null) {
+			stats = generator.write(left, right, records);
+		}
+
+		System.out.println(stats);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.udc.gac.hadoop.sequence.parser.mapreduce.FastAInputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.FastQInputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.SingleEndSequenceInputFormat;
+
+/**
+ * Benchmark of the single-end record readers, which parse a whole local
+ * file in each invocation. Results are per record.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SingleEndParserBenchmark {
+
+	@Param({"fastq", "fasta"})
+	public String format;
+
+	@Param({"none", "gzip", "bz2"})
+	public String codec;
+
+	@Param({"65536", "262144"})
+	public int bufferSize;
+
+	@Param({"100", "250"})
+	public int readLength;
+
+	private SingleEndSequenceInputFormat inputFormat;
+	private TaskAttemptContext context;
+	private FileSplit split;
+
+	@Setup
+	public void setup() throws IOException {
+		boolean fastq = format.equals("fastq");
+		File file = BenchmarkData.write(BenchmarkData.generate(fastq, readLength, 0, BenchmarkData.RECORDS), codec, fastq);
+		Configuration conf = new Configuration();
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setInputBufferSize(conf, bufferSize);
+		inputFormat = fastq? new FastQInputFormat() : new FastAInputFormat();
+		context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+		split = new FileSplit(new Path(file.toURI()), 0, file.length(), null);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.RECORDS)
+	public void parse(Blackhole blackhole) throws IOException, InterruptedException {
+		try (RecordReader<LongWritable, Text> reader = inputFormat.createRecordReader(split, context)) {
+			reader.initialize(split, context);
+
+			while (reader.nextKeyValue())
+				blackhole.consume(reader.getCurrentValue().getLength());
+		}
+	}
+}
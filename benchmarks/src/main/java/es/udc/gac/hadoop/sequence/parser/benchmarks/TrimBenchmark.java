@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.udc.gac.hadoop.sequence.parser.util.LineReader;
+
+/**
+ * Benchmark of the trimming of read names (see {@link LineReader#trim}).
+ * Results are per name.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TrimBenchmark {
+
+	private static final int NAMES = 10000;
+
+	private byte[][] names;
+	private Text name;
+
+	@Setup
+	public void setup() throws IOException {
+		LineReader reader = new LineReader(new ByteArrayInputStream(BenchmarkData.generate(true, 100, 1, NAMES)), 65536);
+		names = new byte[NAMES][];
+		name = new Text();
+
+		// Name lines (with LF) of the dataset
+		for (int i = 0; i < names.length; i++) {
+			reader.readLine(name);
+			names[i] = name.copyBytes();
+			reader.skipLine();
+			reader.skipLine();
+			reader.skipLine();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NAMES)
+	public void trim(Blackhole blackhole) {
+		for (byte[] bytes : names) {
+			name.set(bytes);
+			LineReader.trim(name, 2);
+			blackhole.consume(name.getLength());
+		}
+	}
+}
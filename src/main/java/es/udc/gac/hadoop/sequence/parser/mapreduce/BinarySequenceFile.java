@@ -0,0 +1,599 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Block-compressed binary container for sequence records (".hsb" files),
+ * which avoids parsing text files in jobs that process the same dataset
+ * many times.
+ * 
+ * A file contains a header, a sequence of blocks and a footer:
+ * <ul>
+ * <li>Header: "HSPB", version, format ('Q' for FASTQ or 'A' for FASTA)
+ * and whether records are paired</li>
+ * <li>Block: magic number, number of records, ordinal of the first record
+ * and four streams compressed independently with Deflate: the lengths
+ * and line feed flags of each read, the names, the bases and the qualities.
+ * For paired-end files, the left and right reads of each record are stored
+ * consecutively</li>
+ * <li>Footer: offset, first record and number of records of each block,
+ * followed by the footer offset and "HSPE"</li>
+ * </ul>
+ * 
+ * Records are read back as the same Text values emitted by the FASTQ/FASTA
+ * record readers from which they were written.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public final class BinarySequenceFile {
+
+	public static final String EXTENSION = ".hsb";
+	private static final byte[] MAGIC = {'H', 'S', 'P', 'B'};
+	private static final byte[] FOOTER_MAGIC = {'H', 'S', 'P', 'E'};
+	private static final byte VERSION = 1;
+	private static final int BLOCK_MAGIC = 0x48535042;
+	private static final int HEADER_SIZE = 7;
+	private static final int TRAILER_SIZE = 12; // footer offset and magic
+	private static final int NUM_STREAMS = 4;
+	private static final int LENGTHS = 0, NAMES = 1, BASES = 2, QUALITIES = 3;
+	private static final int HEADER_LF = 1, TRAILING_LF = 2;
+	private static final byte[] FASTQ_SEPARATOR = {'\n', '+', '\n'};
+	private static final byte[] LF = {'\n'};
+	private static final byte[] FASTQ_MARKER = {'@'};
+	private static final byte[] FASTA_MARKER = {'>'};
+
+	private BinarySequenceFile() {
+	}
+
+	/**
+	 * Block of records
+	 */
+	public static final class Block {
+		private final long offset;
+		private final long firstRecord;
+		private final int numRecords;
+
+		Block(long offset, long firstRecord, int numRecords) {
+			this.offset = offset;
+			this.firstRecord = firstRecord;
+			this.numRecords = numRecords;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public long getFirstRecord() {
+			return firstRecord;
+		}
+
+		public int getNumRecords() {
+			return numRecords;
+		}
+	}
+
+	/**
+	 * Header and block table of a file
+	 */
+	public static final class Footer {
+		private final boolean fastq;
+		private final boolean paired;
+		private final List<Block> blocks;
+		private final long dataEnd;
+
+		Footer(boolean fastq, boolean paired, List<Block> blocks, long dataEnd) {
+			this.fastq = fastq;
+			this.paired = paired;
+			this.blocks = blocks;
+			this.dataEnd = dataEnd;
+		}
+
+		public boolean isFastQ() {
+			return fastq;
+		}
+
+		public boolean isPaired() {
+			return paired;
+		}
+
+		public List<Block> getBlocks() {
+			return blocks;
+		}
+
+		/**
+		 * Returns the offset where the footer starts (i.e. the end of the last block).
+		 */
+		public long getDataEnd() {
+			return dataEnd;
+		}
+
+		public long getNumRecords() {
+			if (blocks.isEmpty())
+				return 0;
+
+			Block last = blocks.get(blocks.size() - 1);
+			return last.firstRecord + last.numRecords;
+		}
+	}
+
+	/**
+	 * Read the header and footer of a file.
+	 */
+	public static Footer readFooter(FileSystem fs, Path file) throws IOException {
+		long length = fs.getFileStatus(file).getLen();
+
+		if (length < HEADER_SIZE + TRAILER_SIZE)
+			throw new IOException("Not a binary sequence file: "+file);
+
+		try (FSDataInputStream in = fs.open(file)) {
+			boolean[] header = readHeader(in, file);
+			byte[] magic = new byte[FOOTER_MAGIC.length];
+			in.seek(length - TRAILER_SIZE);
+			long footerOffset = in.readLong();
+			in.readFully(magic);
+
+			if (!Arrays.equals(magic, FOOTER_MAGIC) || footerOffset < HEADER_SIZE || footerOffset > length - TRAILER_SIZE)
+				throw new IOException("Corrupt binary sequence file footer: "+file);
+
+			in.seek(footerOffset);
+			int numBlocks = WritableUtils.readVInt(in);
+			List<Block> blocks = new ArrayList<Block>(numBlocks);
+
+			for (int i = 0; i < numBlocks; i++)
+				blocks.add(new Block(WritableUtils.readVLong(in), WritableUtils.readVLong(in), WritableUtils.readVInt(in)));
+
+			return new Footer(header[0], header[1], Collections.unmodifiableList(blocks), footerOffset);
+		}
+	}
+
+	/**
+	 * Generate splits made of whole blocks, using the block table of each file.
+	 *
+	 * @param job the job context
+	 * @param files the input files
+	 * @param paired whether the input files must be paired
+	 *
+	 * @return the splits
+	 */
+	static List<InputSplit> getSplits(JobContext job, List<FileStatus> files, boolean paired) throws IOException {
+		List<InputSplit> splits = new ArrayList<InputSplit>();
+		long minSize = FileInputFormat.getMinSplitSize(job);
+		long maxSize = FileInputFormat.getMaxSplitSize(job);
+
+		for (FileStatus status : files) {
+			Path file = status.getPath();
+			FileSystem fs = file.getFileSystem(job.getConfiguration());
+			Footer footer = readFooter(fs, file);
+
+			if (footer.isPaired() != paired)
+				throw new IOException((paired? "Single-end" : "Paired-end")+" binary sequence file: "+file);
+
+			List<Block> blocks = footer.getBlocks();
+			long splitSize = Math.max(minSize, Math.min(maxSize, status.getBlockSize()));
+			int i = 0;
+
+			while (i < blocks.size()) {
+				long start = blocks.get(i).offset;
+				long end;
+
+				do {
+					i++;
+					end = (i < blocks.size())? blocks.get(i).offset : footer.getDataEnd();
+				} while (end - start < splitSize && i < blocks.size());
+
+				BlockLocation[] locations = fs.getFileBlockLocations(status, start, 1);
+				String[] hosts = (locations.length > 0)? locations[0].getHosts() : new String[0];
+				splits.add(new FileSplit(file, start, end - start, hosts));
+			}
+		}
+
+		return splits;
+	}
+
+	/**
+	 * Read the header of a file.
+	 *
+	 * @return whether it is in FASTQ format and whether it is paired
+	 */
+	private static boolean[] readHeader(FSDataInputStream in, Path file) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		in.seek(0);
+		in.readFully(magic);
+
+		if (!Arrays.equals(magic, MAGIC))
+			throw new IOException("Not a binary sequence file: "+file);
+
+		byte version = in.readByte();
+
+		if (version != VERSION)
+			throw new IOException("Unsupported binary sequence file version "+version+": "+file);
+
+		byte format = in.readByte();
+
+		if (format != 'Q' && format != 'A')
+			throw new IOException("Unknown binary sequence file format "+format+": "+file);
+
+		return new boolean[] {format == 'Q', in.readBoolean()};
+	}
+
+	/**
+	 * Writer of binary sequence files. Records must be SequenceRecord
+	 * objects (see {@link es.udc.gac.hadoop.sequence.parser.util.Configuration#setSequenceRecord}).
+	 */
+	public static class Writer implements Closeable {
+
+		private final FSDataOutputStream out;
+		private final boolean fastq;
+		private final boolean paired;
+		private final int blockSize;
+		private final Deflater deflater;
+		private final DataOutputBuffer[] streams;
+		private final DataOutputBuffer compressed;
+		private final byte[] buffer;
+		private final List<Block> blocks;
+		private long numRecords;
+		private int blockRecords;
+
+		/**
+		 * Create a new writer.
+		 *
+		 * @param out the output stream
+		 * @param fastq whether the records are in FASTQ (true) or FASTA (false) format
+		 * @param paired whether the records are paired
+		 * @param blockSize the uncompressed size of the blocks
+		 * @param level the Deflate compression level
+		 */
+		public Writer(FSDataOutputStream out, boolean fastq, boolean paired, int blockSize, int level) throws IOException {
+			this.out = out;
+			this.fastq = fastq;
+			this.paired = paired;
+			this.blockSize = blockSize;
+			deflater = new Deflater(level, true);
+			streams = new DataOutputBuffer[NUM_STREAMS];
+			compressed = new DataOutputBuffer();
+			buffer = new byte[64*1024];
+			blocks = new ArrayList<Block>();
+
+			for (int i = 0; i < NUM_STREAMS; i++)
+				streams[i] = new DataOutputBuffer();
+
+			out.write(MAGIC);
+			out.writeByte(VERSION);
+			out.writeByte(fastq? 'Q' : 'A');
+			out.writeBoolean(paired);
+		}
+
+		/**
+		 * Append a single-end record.
+		 */
+		public void append(SequenceRecord record) throws IOException {
+			if (paired)
+				throw new IOException("Single-end record appended to a paired-end file");
+
+			appendRead(record);
+			endRecord();
+		}
+
+		/**
+		 * Append a paired-end record.
+		 */
+		public void append(SequenceRecord left, SequenceRecord right) throws IOException {
+			if (!paired)
+				throw new IOException("Paired-end record appended to a single-end file");
+
+			appendRead(left);
+			appendRead(right);
+			endRecord();
+		}
+
+		private void appendRead(SequenceRecord record) throws IOException {
+			byte[] bytes = record.getBytes();
+			int nameEnd = record.getNameOffset() + record.getNameLength();
+			int sequenceEnd = record.getSequenceOffset() + record.getSequenceLength();
+			int recordEnd = fastq? record.getQualityOffset() + record.getQualityLength() : sequenceEnd;
+			int flags = 0;
+
+			if (record.getLength() == 0 || bytes[0] != (fastq? '@' : '>'))
+				throw new IOException("Unexpected record format: "+record);
+
+			if (fastq && record.getQualityOffset() != sequenceEnd + FASTQ_SEPARATOR.length)
+				throw new IOException("Unexpected FASTQ record layout: "+record);
+
+			if (record.getSequenceOffset() > nameEnd)
+				flags |= HEADER_LF;
+
+			if (record.getLength() > recordEnd)
+				flags |= TRAILING_LF;
+
+			WritableUtils.writeVInt(streams[LENGTHS], record.getNameLength());
+			WritableUtils.writeVInt(streams[LENGTHS], record.getSequenceLength());
+
+			if (fastq)
+				WritableUtils.writeVInt(streams[LENGTHS], record.getQualityLength());
+
+			streams[LENGTHS].writeByte(flags);
+			streams[NAMES].write(bytes, record.getNameOffset(), record.getNameLength());
+			streams[BASES].write(bytes, record.getSequenceOffset(), record.getSequenceLength());
+
+			if (fastq)
+				streams[QUALITIES].write(bytes, record.getQualityOffset(), record.getQualityLength());
+		}
+
+		private void endRecord() throws IOException {
+			blockRecords++;
+			int size = 0;
+
+			for (DataOutputBuffer stream : streams)
+				size += stream.getLength();
+
+			if (size >= blockSize)
+				writeBlock();
+		}
+
+		private void writeBlock() throws IOException {
+			if (blockRecords == 0)
+				return;
+
+			blocks.add(new Block(out.getPos(), numRecords, blockRecords));
+			out.writeInt(BLOCK_MAGIC);
+			WritableUtils.writeVInt(out, blockRecords);
+			WritableUtils.writeVLong(out, numRecords);
+
+			for (DataOutputBuffer stream : streams) {
+				compress(stream);
+				WritableUtils.writeVInt(out, stream.getLength());
+				WritableUtils.writeVInt(out, compressed.getLength());
+				out.write(compressed.getData(), 0, compressed.getLength());
+				stream.reset();
+			}
+
+			numRecords += blockRecords;
+			blockRecords = 0;
+		}
+
+		private void compress(DataOutputBuffer stream) throws IOException {
+			compressed.reset();
+			deflater.reset();
+			deflater.setInput(stream.getData(), 0, stream.getLength());
+			deflater.finish();
+
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buffer);
+				compressed.write(buffer, 0, n);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				writeBlock();
+
+				long footerOffset = out.getPos();
+				WritableUtils.writeVInt(out, blocks.size());
+
+				for (Block block : blocks) {
+					WritableUtils.writeVLong(out, block.offset);
+					WritableUtils.writeVLong(out, block.firstRecord);
+					WritableUtils.writeVInt(out, block.numRecords);
+				}
+
+				out.writeLong(footerOffset);
+				out.write(FOOTER_MAGIC);
+			} finally {
+				deflater.end();
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Reader of the blocks of binary sequence files.
+	 */
+	public static class Reader implements Closeable {
+
+		private final FSDataInputStream in;
+		private final boolean fastq;
+		private final boolean paired;
+		private final Inflater inflater;
+		private final byte[][] streams;
+		private final int[] positions;
+		private final DataInputBuffer lengths;
+		private byte[] input;
+		private int blockRecords;
+		private int recordsRead;
+		private long firstRecord;
+
+		public Reader(FSDataInputStream in, Path file) throws IOException {
+			this.in = in;
+			boolean[] header = readHeader(in, file);
+			fastq = header[0];
+			paired = header[1];
+			inflater = new Inflater(true);
+			streams = new byte[NUM_STREAMS][];
+			positions = new int[NUM_STREAMS];
+			lengths = new DataInputBuffer();
+			input = new byte[64*1024];
+
+			for (int i = 0; i < NUM_STREAMS; i++)
+				streams[i] = new byte[64*1024];
+		}
+
+		public boolean isFastQ() {
+			return fastq;
+		}
+
+		public boolean isPaired() {
+			return paired;
+		}
+
+		public void seek(long offset) throws IOException {
+			in.seek(offset);
+			blockRecords = recordsRead = 0;
+		}
+
+		public long getPos() throws IOException {
+			return in.getPos();
+		}
+
+		/**
+		 * Whether all the records of the current block have been read.
+		 */
+		public boolean isBlockFinished() {
+			return recordsRead == blockRecords;
+		}
+
+		/**
+		 * Read the block at the current position.
+		 */
+		public void readBlock() throws IOException {
+			long offset = in.getPos();
+
+			if (in.readInt() != BLOCK_MAGIC)
+				throw new IOException("Corrupt binary sequence block at "+offset);
+
+			blockRecords = WritableUtils.readVInt(in);
+			firstRecord = WritableUtils.readVLong(in);
+			recordsRead = 0;
+
+			for (int i = 0; i < NUM_STREAMS; i++) {
+				int rawLength = WritableUtils.readVInt(in);
+				int compressedLength = WritableUtils.readVInt(in);
+
+				if (input.length < compressedLength)
+					input = new byte[compressedLength];
+
+				if (streams[i].length < rawLength)
+					streams[i] = new byte[rawLength];
+
+				in.readFully(input, 0, compressedLength);
+				inflater.reset();
+				inflater.setInput(input, 0, compressedLength);
+
+				try {
+					if (rawLength > 0 && inflater.inflate(streams[i], 0, rawLength) != rawLength)
+						throw new IOException("Corrupt binary sequence block at "+offset);
+				} catch (DataFormatException e) {
+					throw new IOException("Corrupt binary sequence block at "+offset, e);
+				}
+
+				positions[i] = 0;
+
+				if (i == LENGTHS)
+					lengths.reset(streams[LENGTHS], 0, rawLength);
+			}
+		}
+
+		/**
+		 * Returns the ordinal of the next record.
+		 */
+		public long getNextRecord() {
+			return firstRecord + recordsRead;
+		}
+
+		/**
+		 * Read the next single-end record of the current block.
+		 */
+		public void next(Text value) throws IOException {
+			readRead(value);
+			recordsRead++;
+		}
+
+		/**
+		 * Read the next paired-end record of the current block.
+		 */
+		public void next(Text left, Text right) throws IOException {
+			readRead(left);
+			readRead(right);
+			recordsRead++;
+		}
+
+		private void readRead(Text value) throws IOException {
+			int nameLength = WritableUtils.readVInt(lengths);
+			int sequenceLength = WritableUtils.readVInt(lengths);
+			int qualityLength = fastq? WritableUtils.readVInt(lengths) : 0;
+			int flags = lengths.readByte();
+
+			value.clear();
+			value.append(fastq? FASTQ_MARKER : FASTA_MARKER, 0, 1);
+			append(value, NAMES, nameLength);
+
+			if ((flags & HEADER_LF) != 0)
+				value.append(LF, 0, 1);
+
+			int sequenceOffset = value.getLength();
+			append(value, BASES, sequenceLength);
+			int qualityOffset = value.getLength();
+
+			if (fastq) {
+				value.append(FASTQ_SEPARATOR, 0, FASTQ_SEPARATOR.length);
+				qualityOffset = value.getLength();
+				append(value, QUALITIES, qualityLength);
+			}
+
+			if ((flags & TRAILING_LF) != 0)
+				value.append(LF, 0, 1);
+
+			if (value instanceof SequenceRecord) {
+				((SequenceRecord) value).setFields(1, nameLength, sequenceOffset, sequenceLength,
+						fastq? qualityOffset : value.getLength(), qualityLength);
+			}
+		}
+
+		private void append(Text value, int stream, int length) {
+			value.append(streams[stream], positions[stream], length);
+			positions[stream] += length;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				in.close();
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+}
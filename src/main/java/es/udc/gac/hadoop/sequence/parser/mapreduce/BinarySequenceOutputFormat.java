@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+
+/**
+ * OutputFormat which writes binary sequence files (see {@link BinarySequenceFile}).
+ * Values must be SequenceRecord (single-end) or PairSequenceRecord (paired-end)
+ * objects, and keys are ignored. The format of the file is taken from the first
+ * record, so no file is written by tasks without records.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class BinarySequenceOutputFormat extends FileOutputFormat<Writable, Writable> {
+
+	@Override
+	public RecordWriter<Writable, Writable> getRecordWriter(TaskAttemptContext context) throws IOException {
+		return new BinarySequenceRecordWriter(context, getDefaultWorkFile(context, BinarySequenceFile.EXTENSION));
+	}
+
+	private static class BinarySequenceRecordWriter extends RecordWriter<Writable, Writable> {
+
+		private final TaskAttemptContext context;
+		private final Path file;
+		private BinarySequenceFile.Writer writer;
+
+		BinarySequenceRecordWriter(TaskAttemptContext context, Path file) {
+			this.context = context;
+			this.file = file;
+		}
+
+		@Override
+		public void write(Writable key, Writable value) throws IOException {
+			if (value instanceof PairSequenceRecord) {
+				PairSequenceRecord pair = (PairSequenceRecord) value;
+				getWriter(pair.getLeftRecord(), true).append(pair.getLeftRecord(), pair.getRightRecord());
+			} else if (value instanceof SequenceRecord) {
+				SequenceRecord record = (SequenceRecord) value;
+				getWriter(record, false).append(record);
+			} else {
+				throw new IOException("Unsupported value class "+value.getClass().getName()+
+						" (set "+Configuration.SEQUENCE_RECORD_KEY+" to true)");
+			}
+		}
+
+		private BinarySequenceFile.Writer getWriter(SequenceRecord record, boolean paired) throws IOException {
+			if (writer == null) {
+				org.apache.hadoop.conf.Configuration conf = context.getConfiguration();
+				FileSystem fs = file.getFileSystem(conf);
+				boolean fastq = record.getLength() > 0 && record.getBytes()[0] == '@';
+				writer = new BinarySequenceFile.Writer(fs.create(file, false), fastq, paired,
+						Configuration.getBinaryBlockSize(conf), Configuration.getBinaryCompressionLevel(conf));
+			}
+
+			return writer;
+		}
+
+		@Override
+		public void close(TaskAttemptContext context) throws IOException {
+			if (writer != null)
+				writer.close();
+		}
+	}
+}
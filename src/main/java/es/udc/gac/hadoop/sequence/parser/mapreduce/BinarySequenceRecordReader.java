@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Base RecordReader for binary sequence files, which reads the blocks
+ * starting within the split. Keys are the ordinals of the records.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public abstract class BinarySequenceRecordReader<V> extends RecordReader<LongWritable, V> {
+
+	private BinarySequenceFile.Reader reader;
+	private long start;
+	private long end;
+	private long blockStart;
+	private LongWritable key;
+
+	@Override
+	public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+		FileSplit split = (FileSplit) genericSplit;
+		Path file = split.getPath();
+		FileSystem fs = file.getFileSystem(context.getConfiguration());
+		reader = new BinarySequenceFile.Reader(fs.open(file), file);
+
+		if (reader.isPaired() != isPaired())
+			throw new IOException((isPaired()? "Single-end" : "Paired-end")+" binary sequence file: "+file);
+
+		start = split.getStart();
+		end = start + split.getLength();
+		blockStart = start;
+		reader.seek(start);
+		key = new LongWritable();
+	}
+
+	/**
+	 * Whether the records are paired.
+	 */
+	protected abstract boolean isPaired();
+
+	/**
+	 * Read the next record of the current block into the value.
+	 */
+	protected abstract void readValue(BinarySequenceFile.Reader reader) throws IOException;
+
+	@Override
+	public boolean nextKeyValue() throws IOException {
+		if (reader.isBlockFinished()) {
+			do {
+				blockStart = reader.getPos();
+
+				if (blockStart >= end)
+					return false;
+
+				reader.readBlock();
+			} while (reader.isBlockFinished());
+		}
+
+		key.set(reader.getNextRecord());
+		readValue(reader);
+		return true;
+	}
+
+	@Override
+	public LongWritable getCurrentKey() {
+		return key;
+	}
+
+	@Override
+	public float getProgress() {
+		if (start == end)
+			return 0.0f;
+
+		return Math.min(1.0f, (blockStart - start) / (float) (end - start));
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+
+/**
+ * InputFormat for many small single-end sequence files, which packs several
+ * files (or parts of them) into each split, grouped by node and rack. Each
+ * split is read by a single record reader that processes its files one
+ * after another, reusing its buffer and decompressor.
+ * 
+ * The size of the splits is limited by the usual
+ * <code>mapreduce.input.fileinputformat.split.maxsize</code> property
+ * (128MB if not set).
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public abstract class CombineSequenceInputFormat extends CombineFileInputFormat<LongWritable, Text> {
+
+	private static final long MAX_SPLIT_SIZE_DEFAULT = 128*1024*1024;
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path file) {
+		return SingleEndSequenceInputFormat.isSplitable(context.getConfiguration(), file);
+	}
+
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		// Without a maximum size, all the files of a node would be combined into one split
+		if (job.getConfiguration().getLong(SPLIT_MAXSIZE, 0) == 0)
+			setMaxSplitSize(MAX_SPLIT_SIZE_DEFAULT);
+
+		return super.getSplits(job);
+	}
+
+	@Override
+	public RecordReader<LongWritable, Text> createRecordReader(InputSplit inputSplit, TaskAttemptContext context) {
+		return new CombineSequenceRecordReader(createSequenceRecordReader(context));
+	}
+
+	/**
+	 * Create the record reader of the files of a split.
+	 */
+	protected abstract SingleEndSequenceRecordReader createSequenceRecordReader(TaskAttemptContext context);
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * RecordReader which reads the files of a combined split one after another
+ * using the same single-end record reader, so its buffer, its value object
+ * and its decompressor (for files compressed with the same codec) are reused.
+ * Keys are the byte offsets of the records within their files.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class CombineSequenceRecordReader extends RecordReader<LongWritable, Text> {
+
+	private final SingleEndSequenceRecordReader reader;
+	private CombineFileSplit split;
+	private TaskAttemptContext context;
+	private int file; // index of the current file, -1 if none
+	private long completedLength; // length of the files already read
+
+	public CombineSequenceRecordReader(SingleEndSequenceRecordReader reader) {
+		this.reader = reader;
+	}
+
+	@Override
+	public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+		this.split = (CombineFileSplit) genericSplit;
+		this.context = context;
+		this.file = -1;
+		this.completedLength = 0;
+	}
+
+	/**
+	 * Initialize the record reader with the next file of the split.
+	 *
+	 * @return false if there are no more files
+	 */
+	private boolean nextFile() throws IOException {
+		if (file + 1 >= split.getNumPaths())
+			return false;
+
+		if (file >= 0) {
+			completedLength += split.getLength(file);
+			reader.closeSplit();
+		}
+
+		file++;
+		reader.initialize(new FileSplit(split.getPath(file), split.getOffset(file), split.getLength(file),
+				split.getLocations()), context);
+		return true;
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException {
+		while (file < 0 || !reader.nextKeyValue()) {
+			if (!nextFile())
+				return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public LongWritable getCurrentKey() {
+		return reader.getCurrentKey();
+	}
+
+	@Override
+	public Text getCurrentValue() {
+		return reader.getCurrentValue();
+	}
+
+	@Override
+	public float getProgress() throws IOException, InterruptedException {
+		if (file < 0 || split.getLength() == 0)
+			return 0.0f;
+
+		float fileProgress = reader.getProgress() * split.getLength(file);
+		return Math.min(1.0f, (completedLength + fileProgress) / split.getLength());
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
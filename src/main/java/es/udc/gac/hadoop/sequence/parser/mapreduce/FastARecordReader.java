@@ -20,11 +20,11 @@ package es.udc.gac.hadoop.sequence.parser.mapreduce;
 
 import java.io.IOException;
 
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
 import es.udc.gac.hadoop.sequence.parser.util.LineReader;
 
 /**
@@ -36,59 +36,60 @@ import es.udc.gac.hadoop.sequence.parser.util.LineReader;
 public class FastARecordReader extends SingleEndSequenceRecordReader {
 
 	private static final Logger logger = LogManager.getLogger();
-	private Text newLine;
+	private boolean joinLines;
 
 	public FastARecordReader(TaskAttemptContext context) {
 		super(context);
-		newLine = new Text();
+		joinLines = Configuration.getFastAJoinLines(context.getConfiguration());
 	}
 
 	@Override
-	public boolean nextKeyValue() throws IOException {
-		long read = 0;
-		boolean found = false;
+	protected boolean nextRecord() throws IOException {
+		int c;
 		value.clear();
 
-		logger.trace("init: start {}, end {}, pos {}, splitPos {}", start, end, pos, getSplitPosition());
+		if (logger.isTraceEnabled())
+			logger.trace("init: start {}, end {}, pos {}, splitPos {}", start, end, pos, getSplitPosition());
 
 		if (isSplitFinished())
 			return false;
 
-		key.set(pos);
+		// Discard any data until a line starting with '>' is found
+		while ((c = peekByte()) != '>') {
+			if (c == -1) //EOF
+				return false;
+			skipInvalidLine();
+		}
 
-		while (true) {
-			read = readLine(newLine);
+		setKey(pos);
 
-			logger.trace("start {}, end {}, pos {}, splitPos {}", start, end, pos, getSplitPosition());
+		appendLine(value);
 
-			if (read == 0) {
-				// EOF
-				if (found)
-					break;
-				return false;
-			}
-
-			if (newLine.getBytes()[0] == '>') {
-				logger.trace("starting '>' has been found");
-
-				if (found) {
-					seek(getLineReaderPosition() - read);
-					pos -= read;
-					break;
-				} else {
-					if (getTrimSequenceName()) {
-						//Trim spaces in sequence name
-						LineReader.trim(newLine, 1);
-					}
-					found = true;
-				}
-			}
-
-			if (found)
-				value.append(newLine.getBytes(), 0, newLine.getLength());
+		if (getTrimSequenceName()) {
+			//Trim spaces in sequence name
+			LineReader.trim(value, 1);
+		}
+
+		// Append sequence lines until the next record or EOF
+		int nameLength = lineLength(value, 1);
+		int sequenceOffset = value.getLength();
+
+		if (joinLines) {
+			while ((c = peekByte()) != '>' && c != -1)
+				appendLineWithoutLF(value);
+
+			if (value.getLength() > sequenceOffset)
+				value.append(LineReader.LF.getBytes(), 0, 1);
+		} else {
+			while ((c = peekByte()) != '>' && c != -1)
+				appendLine(value);
 		}
 
-		logger.trace("finish: start {}, end {}, pos {}, splitPos {}", start, end, pos, getSplitPosition());
+		if (record != null)
+			record.setFields(1, nameLength, sequenceOffset, lineLength(value, sequenceOffset), value.getLength(), 0);
+
+		if (logger.isTraceEnabled())
+			logger.trace("finish: start {}, end {}, pos {}, splitPos {}", start, end, pos, getSplitPosition());
 
 		return true;
 	}
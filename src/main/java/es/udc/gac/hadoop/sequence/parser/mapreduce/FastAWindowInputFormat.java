@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+import es.udc.gac.hadoop.sequence.parser.util.FastAIndex;
+
+/**
+ * InputFormat implementation for FASTA files with long records (e.g., reference
+ * genomes), which emits fixed-size windows of the sequence of each record
+ * instead of whole records (see {@link FastAWindowRecordReader}).
+ * 
+ * Uncompressed files are split at arbitrary offsets. Compressed files
+ * are read as a single split.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class FastAWindowInputFormat extends FileInputFormat<SequenceWindowKey, Text> {
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path file) {
+		return new CompressionCodecFactory(context.getConfiguration()).getCodec(file) == null;
+	}
+
+	/**
+	 * List the input files, ignoring FASTA indexes.
+	 */
+	@Override
+	protected List<FileStatus> listStatus(JobContext job) throws IOException {
+		List<FileStatus> files = new ArrayList<FileStatus>();
+
+		for (FileStatus file : super.listStatus(job)) {
+			if (!file.getPath().getName().endsWith(FastAIndex.INDEX_SUFFIX))
+				files.add(file);
+		}
+
+		return files;
+	}
+
+	@Override
+	public RecordReader<SequenceWindowKey, Text> createRecordReader(InputSplit inputSplit, TaskAttemptContext context) {
+		return new FastAWindowRecordReader();
+	}
+}
@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import es.udc.gac.hadoop.sequence.parser.util.BufferPool;
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+import es.udc.gac.hadoop.sequence.parser.util.FastAIndex;
+import es.udc.gac.hadoop.sequence.parser.util.NewlineScanner;
+
+/**
+ * RecordReader which splits the sequence of each FASTA record into windows of
+ * {@link Configuration#getFastAWindowSize} bases, where consecutive windows
+ * share {@link Configuration#getFastAWindowOverlap} bases. Keys contain the
+ * name of the record and the offset of the window within its sequence, and
+ * values contain the bases of the window without newlines. The last window
+ * of a record may be shorter, and it is only emitted if it contains bases
+ * not included in the previous window.
+ * 
+ * A window belongs to the split where its first base is stored, so splits
+ * can start within a record. In that case, the record is found using the
+ * FASTA index of the file, if any (see {@link FastAIndex}), or by scanning
+ * the file backwards from the start of the split otherwise. The offsets
+ * of the bases are computed from the length of the sequence lines, so all
+ * of them except the last one must have the same length within a record.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class FastAWindowRecordReader extends RecordReader<SequenceWindowKey, Text> {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final NewlineScanner SCANNER = NewlineScanner.getInstance();
+	private static final int SCAN_BUFFER_SIZE = 64*1024;
+
+	private int windowSize;
+	private int overlap;
+	private int step;
+	private long start;
+	private long end;
+	private long fileLength;
+	private FSDataInputStream fileIn;
+	private InputStream in;
+	private Decompressor decompressor;
+	private BufferPool bufferPool; // null if disabled
+	private TaskAttemptContext context; // to publish counters, null if disabled
+	private long windowsRead;
+
+	// Input buffer
+	private byte[] buffer;
+	private int bufferPos;
+	private int bufferLength;
+	private long pos; // offset of buffer[bufferPos]
+
+	// Current record
+	private final Text header = new Text();
+	private final Text name = new Text();
+	private boolean inRecord;
+	private long sequenceStart; // offset of the first base
+	private int lineBases; // bases per line, -1 while unknown
+	private int lineWidth; // bytes per line, including LF
+	private int currentLineBases;
+	private int previousLineBases; // -1 if unknown
+	private boolean atLineStart;
+
+	// Current window
+	private byte[] window;
+	private int windowLength;
+	private long windowStart;
+	private final SequenceWindowKey key = new SequenceWindowKey();
+	private final Text value = new Text();
+
+	@Override
+	public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+		org.apache.hadoop.conf.Configuration conf = context.getConfiguration();
+		FileSplit split = (FileSplit) genericSplit;
+		windowSize = Configuration.getFastAWindowSize(conf);
+		overlap = Configuration.getFastAWindowOverlap(conf);
+
+		if (windowSize < 1 || overlap < 0 || overlap >= windowSize)
+			throw new IOException("Invalid FASTA window size and overlap: "+windowSize+", "+overlap);
+
+		step = windowSize - overlap;
+		start = split.getStart();
+		end = start + split.getLength();
+
+		Path file = split.getPath();
+		FileSystem fs = file.getFileSystem(conf);
+		fileLength = fs.getFileStatus(file).getLen();
+		fileIn = fs.open(file);
+		bufferPool = BufferPool.getInstance(conf);
+
+		if (bufferPool != null) {
+			// Lease the buffers, which are returned when the record reader is closed
+			buffer = bufferPool.getArray(Configuration.getInputBufferSize(conf));
+			window = bufferPool.getArray(windowSize);
+		} else {
+			buffer = new byte[Configuration.getInputBufferSize(conf)];
+			window = new byte[windowSize];
+		}
+
+		if (Configuration.getCounters(conf))
+			this.context = context;
+
+		logger.info("opening input split {}:{}+{}", file, start, split.getLength());
+
+		CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+		atLineStart = true;
+
+		if (codec != null) {
+			// Compressed files are not split
+			decompressor = CodecPool.getDecompressor(codec);
+			in = codec.createInputStream(fileIn, decompressor);
+			end = Long.MAX_VALUE;
+		} else {
+			in = fileIn;
+
+			if (start > 0)
+				findFirstWindow(fs, file);
+		}
+	}
+
+	/**
+	 * Position the reader at the first window of the split
+	 */
+	private void findFirstWindow(FileSystem fs, Path file) throws IOException {
+		FastAIndex index = FastAIndex.read(fs, file);
+		long sequenceOffset;
+
+		if (index != null) {
+			int entry = index.findEntry(start);
+
+			if (entry == -1 || start >= index.getEntry(entry).getEndOffset()) {
+				// The split starts between two records
+				if (++entry == index.getNumEntries()) {
+					seek(fileLength);
+					return;
+				}
+
+				startRecord(index.getEntry(entry));
+				seek(sequenceStart);
+				return;
+			}
+
+			startRecord(index.getEntry(entry));
+			sequenceOffset = seekToBase(Math.max(start, sequenceStart));
+			logger.debug("split starts in record {} (from index), sequence offset {}", name, sequenceOffset);
+		} else {
+			long headerStart = findHeaderBefore(start);
+
+			if (headerStart == -1) {
+				// No record starts before the split, skip to the next line
+				seek(start - 1);
+				skipLine(Long.MAX_VALUE);
+				return;
+			}
+
+			seek(headerStart);
+			readHeader();
+			logger.debug("split starts in record {} (scanned {} bytes backwards)", name, start - headerStart);
+
+			if (start <= sequenceStart)
+				return;
+
+			if (skipLine(start)) {
+				// The length of the first line determines the offsets of the next ones
+				lineBases = (int) (pos - 1 - sequenceStart);
+				lineWidth = lineBases + 1;
+				sequenceOffset = seekToBase(start);
+			} else {
+				// The split starts within the first line
+				sequenceOffset = pos - sequenceStart;
+				currentLineBases = (int) sequenceOffset;
+				atLineStart = false;
+			}
+		}
+
+		// Skip the bases of the windows that belong to the previous split
+		long firstWindow = (sequenceOffset + step - 1) / step * step;
+		int skip = (int) (firstWindow - sequenceOffset);
+
+		if (skip > 0)
+			readBases(null, 0, skip);
+
+		windowStart = firstWindow;
+	}
+
+	/**
+	 * Find the last header line starting at or before <code>offset</code>.
+	 *
+	 * @return the offset of the header, or -1 if there is none
+	 */
+	private long findHeaderBefore(long offset) throws IOException {
+		byte[] chunk = new byte[SCAN_BUFFER_SIZE];
+		long chunkEnd = Math.min(offset + 1, fileLength);
+
+		while (chunkEnd > 0) {
+			long chunkStart = Math.max(0, chunkEnd - chunk.length);
+			int length = (int) (chunkEnd - chunkStart);
+			fileIn.readFully(chunkStart, chunk, 0, length);
+
+			for (int i = length - 1; i >= 0; i--) {
+				if (chunk[i] == '>') {
+					if (i > 0 && chunk[i - 1] == '\n')
+						return chunkStart + i;
+
+					if (i == 0 && chunkStart == 0)
+						return 0;
+				}
+			}
+
+			// Overlap one byte to check the byte before the first one
+			chunkEnd = (chunkStart == 0)? 0 : chunkStart + 1;
+		}
+
+		return -1;
+	}
+
+	private void startRecord(FastAIndex.Entry entry) {
+		name.set(entry.getName());
+		sequenceStart = entry.getOffset();
+		lineBases = entry.getLineBases();
+		lineWidth = entry.getLineWidth();
+		previousLineBases = -1;
+		currentLineBases = 0;
+		atLineStart = true;
+		inRecord = true;
+		windowStart = 0;
+		windowLength = 0;
+	}
+
+	/**
+	 * Seek to the first base of the current record stored at or after
+	 * <code>offset</code>, which must be within its sequence lines.
+	 *
+	 * @return the offset of the base within the sequence
+	 */
+	private long seekToBase(long offset) throws IOException {
+		long line = (offset - sequenceStart) / lineWidth;
+		int column = (int) ((offset - sequenceStart) % lineWidth);
+		previousLineBases = -1;
+
+		if (column < lineBases) {
+			seek(offset);
+			currentLineBases = column;
+			atLineStart = (column == 0);
+			return line * lineBases + column;
+		}
+
+		seek(sequenceStart + (line + 1) * lineWidth);
+		currentLineBases = 0;
+		atLineStart = true;
+		return (line + 1) * lineBases;
+	}
+
+	/**
+	 * Returns the offset where a base of the current record is stored.
+	 */
+	private long getBaseOffset(long sequenceOffset) {
+		if (lineBases <= 0)
+			return sequenceStart + sequenceOffset; // still in the first line
+
+		return sequenceStart + (sequenceOffset / lineBases) * lineWidth + sequenceOffset % lineBases;
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException {
+		while (true) {
+			if (!inRecord) {
+				if (!nextHeader())
+					return false;
+			} else if (windowLength == windowSize) {
+				// Keep the overlapping bases
+				System.arraycopy(window, step, window, 0, overlap);
+				windowLength = overlap;
+				windowStart += step;
+			}
+
+			if (getBaseOffset(windowStart) >= end)
+				return false;
+
+			windowLength += readBases(window, windowLength, windowSize - windowLength);
+
+			// Skip windows without new bases
+			if (windowLength == 0 || (windowStart > 0 && windowLength <= overlap)) {
+				inRecord = false;
+				continue;
+			}
+
+			key.set(name, windowStart);
+			value.set(window, 0, windowLength);
+			windowsRead++;
+			return true;
+		}
+	}
+
+	/**
+	 * Copy up to <code>length</code> bases of the current record to
+	 * <code>dst</code> (or skip them if it is null), without newlines.
+	 * The record is finished if it has fewer bases.
+	 *
+	 * @return the number of bases read
+	 */
+	private int readBases(byte[] dst, int offset, int length) throws IOException {
+		int n = 0;
+
+		while (n < length) {
+			if (bufferPos >= bufferLength && refill() <= 0) {
+				inRecord = false; // EOF
+				break;
+			}
+
+			if (atLineStart) {
+				if (buffer[bufferPos] == '>') {
+					inRecord = false;
+					break;
+				}
+
+				if (buffer[bufferPos] == '\n') {
+					// Blank lines are only allowed at the end of the record
+					previousLineBases = 0;
+					bufferPos++;
+					pos++;
+					continue;
+				}
+
+				if (previousLineBases != -1 && previousLineBases != lineBases)
+					throw new IOException("Sequence lines of record "+name+" have different lengths, which is not supported by windowed parsing");
+
+				atLineStart = false;
+			}
+
+			int limit = Math.min(bufferLength, bufferPos + (length - n));
+			int lfPos = SCANNER.indexOf(buffer, bufferPos, limit);
+			int count = ((lfPos == -1)? limit : lfPos) - bufferPos;
+
+			if (dst != null)
+				System.arraycopy(buffer, bufferPos, dst, offset + n, count);
+
+			n += count;
+			currentLineBases += count;
+			bufferPos += count;
+			pos += count;
+
+			if (lfPos != -1) {
+				bufferPos++;
+				pos++;
+				endLine();
+			}
+		}
+
+		return n;
+	}
+
+	private void endLine() {
+		if (lineBases == -1) {
+			lineBases = currentLineBases;
+			lineWidth = lineBases + 1;
+		}
+
+		previousLineBases = currentLineBases;
+		currentLineBases = 0;
+		atLineStart = true;
+	}
+
+	/**
+	 * Skip lines until the next header and read it.
+	 *
+	 * @return false if there are no more records in the split
+	 */
+	private boolean nextHeader() throws IOException {
+		while (true) {
+			if (bufferPos >= bufferLength && refill() <= 0)
+				return false;
+
+			if (atLineStart && buffer[bufferPos] == '>') {
+				// The bases of records starting after the split belong to the next ones
+				if (pos >= end)
+					return false;
+
+				readHeader();
+				return true;
+			}
+
+			skipLine(Long.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Read the header line at the current position.
+	 */
+	private void readHeader() throws IOException {
+		header.clear();
+
+		while (true) {
+			if (bufferPos >= bufferLength && refill() <= 0)
+				break;
+
+			int lfPos = SCANNER.indexOf(buffer, bufferPos, bufferLength);
+			int count = ((lfPos == -1)? bufferLength : lfPos) - bufferPos;
+			header.append(buffer, bufferPos, count);
+			bufferPos += count;
+			pos += count;
+
+			if (lfPos != -1) {
+				bufferPos++;
+				pos++;
+				break;
+			}
+		}
+
+		// The name ends at the first blank
+		byte[] bytes = header.getBytes();
+		int nameEnd = 1;
+
+		while (nameEnd < header.getLength() && bytes[nameEnd] != ' ' && bytes[nameEnd] != '\t')
+			nameEnd++;
+
+		name.set(bytes, 1, Math.max(0, nameEnd - 1));
+		sequenceStart = pos;
+		lineBases = -1;
+		lineWidth = 0;
+		previousLineBases = -1;
+		currentLineBases = 0;
+		atLineStart = true;
+		inRecord = true;
+		windowStart = 0;
+		windowLength = 0;
+	}
+
+	/**
+	 * Skip the rest of the current line, without going beyond <code>limit</code>.
+	 *
+	 * @return true if the end of the line has been reached
+	 */
+	private boolean skipLine(long limit) throws IOException {
+		while (pos < limit) {
+			if (bufferPos >= bufferLength && refill() <= 0)
+				return false;
+
+			int to = (int) Math.min(bufferLength, bufferPos + (limit - pos));
+			int lfPos = SCANNER.indexOf(buffer, bufferPos, to);
+
+			if (lfPos != -1) {
+				pos += lfPos + 1 - bufferPos;
+				bufferPos = lfPos + 1;
+				atLineStart = true;
+				return true;
+			}
+
+			pos += to - bufferPos;
+			bufferPos = to;
+			atLineStart = false;
+		}
+
+		return false;
+	}
+
+	private void seek(long offset) throws IOException {
+		fileIn.seek(offset);
+		pos = offset;
+		bufferPos = 0;
+		bufferLength = 0;
+	}
+
+	private int refill() throws IOException {
+		bufferPos = 0;
+		bufferLength = Math.max(0, in.read(buffer));
+		return bufferLength;
+	}
+
+	@Override
+	public SequenceWindowKey getCurrentKey() {
+		return key;
+	}
+
+	@Override
+	public Text getCurrentValue() {
+		return value;
+	}
+
+	@Override
+	public float getProgress() throws IOException {
+		if (in != fileIn)
+			return (fileLength == 0)? 0.0f : Math.min(1.0f, fileIn.getPos() / (float) fileLength);
+
+		if (start == end)
+			return 0.0f;
+
+		return Math.min(1.0f, (pos - start) / (float) (end - start));
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (context != null) {
+			Counter counter = context.getCounter(SequenceParserCounter.RECORDS_READ);
+
+			// Contexts without a reporter return no counters
+			if (counter != null)
+				counter.increment(windowsRead);
+
+			context = null;
+		}
+
+		try {
+			if (in != null)
+				in.close();
+		} finally {
+			if (decompressor != null) {
+				CodecPool.returnDecompressor(decompressor);
+				decompressor = null;
+			}
+
+			if (bufferPool != null && buffer != null) {
+				bufferPool.putArray(buffer);
+				bufferPool.putArray(window);
+				buffer = window = null;
+			}
+		}
+	}
+}
@@ -36,87 +36,74 @@ import es.udc.gac.hadoop.sequence.parser.util.LineReader;
 public class FastQRecordReader extends SingleEndSequenceRecordReader {
 
 	private static final Logger logger = LogManager.getLogger();
-	private static final int NUMBER_OF_LINES_PER_READ = 4;
 	private static final Text FASTQ_COMMENT_LINE = new Text("+" + LineReader.LF);
 
-	private Text newLine;
-	private Text temp;
-
 	public FastQRecordReader(TaskAttemptContext context) {
 		super(context);
-		newLine = new Text();
-		temp = new Text();
 	}
 
 	@Override
-	public boolean nextKeyValue() throws IOException {
-		int i = 0;
-		long firstRead = 0, secondRead = 0;
-		boolean found = false;
+	protected boolean nextRecord() throws IOException {
+		int c;
 		value.clear();
 
-		logger.trace("init: start {}, end {}, pos {}, splitPos {}", start, end, pos, getSplitPosition());
+		if (logger.isTraceEnabled())
+			logger.trace("init: start {}, end {}, pos {}, splitPos {}", start, end, pos, getSplitPosition());
 
 		if (isSplitFinished())
 			return false;
 
-		key.set(pos);
+		// Discard any data until a line starting with '@' is found
+		while ((c = peekByte()) != '@') {
+			if (c == -1) //EOF
+				return false;
+			skipInvalidLine();
+		}
 
-		while (true) {
-			firstRead = readLine(newLine);
-			i++;
+		long recordPos = pos;
+		appendLine(value);
 
-			if (firstRead == 0) //EOF
-				return false;
+		if (peekByte() == '@') {
+			// The previous line was a quality line starting with '@'
+			countInvalidLine(value.getLength());
+			value.clear();
+			recordPos = pos;
+			appendLine(value);
+		}
 
-			if (found && i == NUMBER_OF_LINES_PER_READ) {
-				logger.trace("last line and starting '@' has been previously found");
-				value.append(newLine.getBytes(), 0, newLine.getLength());
-				break;
-			}
-
-			if (newLine.getBytes()[0] == '@') {
-				logger.trace("starting '@' has been found at line {}", i);
-				found = true;
-
-				secondRead = readLine(temp);
-
-				if (secondRead == 0) //EOF
-					return false;
-
-				if (temp.getBytes()[0] != '@') {
-					i = 2;
-					if (getTrimSequenceName()) {
-						//Trim spaces in sequence name
-						LineReader.trim(newLine, 2);
-					}
-					newLine.append(temp.getBytes(), 0, temp.getLength());
-				} else {
-					i = 1;
-					if (getTrimSequenceName()) {
-						//Trim spaces in sequence name
-						LineReader.trim(temp, 2);
-					}
-					value.append(temp.getBytes(), 0, temp.getLength());
-					continue;
-				}
-			}
-
-			if (found) {
-				if (i != 3)
-					value.append(newLine.getBytes(), 0, newLine.getLength());
-				else
-					value.append(FASTQ_COMMENT_LINE.getBytes(), 0, FASTQ_COMMENT_LINE.getLength());
-				continue;
-			}
-
-			if (i == NUMBER_OF_LINES_PER_READ) {
-				logger.trace("last line and no starting '@' has been found (discarding previous data)");
-				i = 0;
-			}
+		setKey(recordPos);
+
+		if (getTrimSequenceName()) {
+			//Trim spaces in sequence name
+			LineReader.trim(value, 2);
 		}
 
-		logger.trace("finish: start {}, end {}, pos {}, splitPos {}", start, end, pos, getSplitPosition());
+		// Bases
+		int nameLength = lineLength(value, 1);
+		int sequenceOffset = value.getLength();
+
+		if (appendLine(value) == 0) //EOF
+			return false;
+
+		int sequenceLength = lineLength(value, sequenceOffset);
+
+		// Comment line is replaced by a single '+'
+		if (skipLine() == 0) //EOF
+			return false;
+
+		value.append(FASTQ_COMMENT_LINE.getBytes(), 0, FASTQ_COMMENT_LINE.getLength());
+
+		// Qualities
+		int qualityOffset = value.getLength();
+
+		if (appendLine(value) == 0) //EOF
+			return false;
+
+		if (record != null)
+			record.setFields(1, nameLength, sequenceOffset, sequenceLength, qualityOffset, lineLength(value, qualityOffset));
+
+		if (logger.isTraceEnabled())
+			logger.trace("finish: start {}, end {}, pos {}, splitPos {}", start, end, pos, getSplitPosition());
 
 		return true;
 	}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * FileSplit generated from a record index, which starts exactly on a record
+ * boundary and contains a known number of records. Splits of uncompressed
+ * files whose records are not known (number of records -1) end exactly
+ * at <code>start + length</code>, also on a record boundary.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class IndexedFileSplit extends FileSplit {
+
+	private long firstRecord;
+	private long numRecords;
+	private long uncompressedStart;
+	private long skipRecords;
+
+	public IndexedFileSplit() {
+		super();
+	}
+
+	/**
+	 * Constructs a split with host information.
+	 *
+	 * @param file the file name
+	 * @param start the position of the first byte in the file to process
+	 * @param length the number of bytes in the file to process
+	 * @param hosts the list of hosts containing the block, possibly null
+	 * @param firstRecord the ordinal of the first record, or -1 if unknown
+	 * @param numRecords the number of records, or -1 if unknown
+	 * @param uncompressedStart the uncompressed offset of the first record
+	 */
+	public IndexedFileSplit(Path file, long start, long length, String[] hosts,
+			long firstRecord, long numRecords, long uncompressedStart) {
+		this(file, start, length, hosts, firstRecord, numRecords, uncompressedStart, 0);
+	}
+
+	/**
+	 * Constructs a split whose first record is found after skipping
+	 * <code>skipRecords</code> records from <code>uncompressedStart</code>.
+	 */
+	public IndexedFileSplit(Path file, long start, long length, String[] hosts,
+			long firstRecord, long numRecords, long uncompressedStart, long skipRecords) {
+		super(file, start, length, hosts);
+		this.firstRecord = firstRecord;
+		this.numRecords = numRecords;
+		this.uncompressedStart = uncompressedStart;
+		this.skipRecords = skipRecords;
+	}
+
+	/**
+	 * The ordinal of the first record in the file.
+	 */
+	public long getFirstRecord() {
+		return firstRecord;
+	}
+
+	/**
+	 * The number of records to process.
+	 */
+	public long getNumRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * The uncompressed offset of the first record (the same as
+	 * the start for uncompressed files).
+	 */
+	public long getUncompressedStart() {
+		return uncompressedStart;
+	}
+
+	/**
+	 * The number of records to skip from the uncompressed start
+	 * before the first record.
+	 */
+	public long getSkipRecords() {
+		return skipRecords;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + "[" + firstRecord + "+" + numRecords + "]";
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		out.writeLong(firstRecord);
+		out.writeLong(numRecords);
+		out.writeLong(uncompressedStart);
+		out.writeLong(skipRecords);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		super.readFields(in);
+		firstRecord = in.readLong();
+		numRecords = in.readLong();
+		uncompressedStart = in.readLong();
+		skipRecords = in.readLong();
+	}
+}
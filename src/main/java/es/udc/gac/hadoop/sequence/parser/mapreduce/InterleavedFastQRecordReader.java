@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+import es.udc.gac.hadoop.sequence.parser.util.LineReader;
+
+/**
+ * RecordReader which breaks the data of interleaved paired-end FASTQ files
+ * in key/value pairs (LongWritable/PairText). The key is the key of the
+ * left read.
+ * 
+ * Each split starts on a left read: if the first record of the split is
+ * a right read, it belongs to the previous split, which always reads the
+ * mate of its last left read even if it lies outside the split. Indexed
+ * splits know whether their first record is a right read. Otherwise, it is
+ * found by comparing read names, so splits that do not start at the
+ * beginning of the file require the names to be checked (see
+ * {@link Configuration#setPairedCheckNames}).
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class InterleavedFastQRecordReader extends RecordReader<LongWritable, PairText> {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final int HEADER_BUFFER_SIZE = 4096;
+
+	private FastQRecordReader reader;
+	private LongWritable key;
+	private PairText value;
+	private Text left; // value not used by the record reader
+	private boolean checkNames;
+	private boolean firstPair;
+	private boolean exactNames; // whether mates have exactly the same name
+	private long firstRecord; // first record of indexed splits, -1 otherwise
+
+	public InterleavedFastQRecordReader(FastQRecordReader reader, TaskAttemptContext context) {
+		this.reader = reader;
+		key = new LongWritable();
+		checkNames = Configuration.getPairedCheckNames(context.getConfiguration());
+
+		if (reader.getCurrentValue() instanceof SequenceRecord) {
+			left = new SequenceRecord(new byte[reader.getCurrentValue().getBytes().length]);
+			value = new PairSequenceRecord();
+		} else {
+			left = new Text(new byte[reader.getCurrentValue().getBytes().length]);
+			value = new PairText();
+		}
+	}
+
+	@Override
+	public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException, InterruptedException {
+		FileSplit split = (FileSplit) genericSplit;
+		reader.initialize(split, context);
+		firstRecord = -1;
+
+		if (split instanceof IndexedFileSplit && ((IndexedFileSplit) split).getNumRecords() >= 0) {
+			firstRecord = ((IndexedFileSplit) split).getFirstRecord();
+			firstPair = true;
+		} else {
+			// The first split always starts on a left read
+			firstPair = split.getStart() > 0;
+
+			if (firstPair) {
+				if (!checkNames)
+					throw new IOException("Cannot find the first pair of split "+split+" without checking read names: set "
+							+Configuration.PAIRED_CHECK_NAMES_KEY+" to true or build the record index of the file");
+
+				exactNames = hasExactMateNames(split.getPath(), context.getConfiguration());
+			}
+		}
+	}
+
+	/**
+	 * Check whether the first two reads of a file have exactly the same name.
+	 * In that case, mate suffixes are not ignored when looking for the first
+	 * pair, as names such as "SRR001666.1" and "SRR001666.2" belong to
+	 * different pairs.
+	 */
+	private static boolean hasExactMateNames(Path file, org.apache.hadoop.conf.Configuration conf) throws IOException {
+		CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+		FSDataInputStream fileIn = file.getFileSystem(conf).open(file);
+
+		try (InputStream in = (codec == null)? fileIn : codec.createInputStream(fileIn)) {
+			LineReader lineReader = new LineReader(in, HEADER_BUFFER_SIZE);
+			Text first = new Text();
+			Text line = new Text();
+
+			if (lineReader.readLine(first) == 0)
+				return false;
+
+			for (int i = 0; i < 4; i++) {
+				if (lineReader.readLine(line) == 0)
+					return false;
+			}
+
+			return PairedSplitPlanner.isMate(first.getBytes(), first.getLength(), line.getBytes(), line.getLength(), false);
+		}
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException, InterruptedException {
+		if (!reader.nextKeyValue())
+			return false;
+
+		if (firstPair) {
+			firstPair = false;
+
+			if (firstRecord >= 0) {
+				// Records are counted from the beginning of the file
+				if (firstRecord % 2 == 1 && !skipRecord())
+					return false;
+			} else {
+				boolean inSplit = !reader.isSplitFinished();
+				keepLeft();
+
+				if (!reader.nextKeyValueIgnoringSplitEnd())
+					throw new IOException("Unexpected end of file: missing mate of the last read");
+
+				if (PairedSplitPlanner.isMate(left.getBytes(), left.getLength(), reader.getCurrentValue().getBytes(),
+						reader.getCurrentValue().getLength(), !exactNames))
+					return setPair();
+
+				// The first record is the mate of the last read of the previous split
+				logger.debug("skipped right read '{}'", left);
+
+				if (!inSplit)
+					return false;
+			}
+		}
+
+		keepLeft();
+
+		if (!reader.nextKeyValueIgnoringSplitEnd())
+			throw new IOException("Unexpected end of file: missing mate of the last read");
+
+		if (checkNames && !isMate(left, reader.getCurrentValue()))
+			throw new IOException("Unexpected different read names at key "+key.get());
+
+		return setPair();
+	}
+
+	/**
+	 * Skip the current record, reading the next one of the split.
+	 */
+	private boolean skipRecord() throws IOException {
+		logger.debug("skipped right read '{}'", reader.getCurrentValue());
+		return reader.nextKeyValue();
+	}
+
+	/**
+	 * Keep the current record and key as the left read of the pair.
+	 */
+	private void keepLeft() {
+		key.set(reader.getCurrentKey().get());
+		left = reader.swapValue(left);
+	}
+
+	private boolean setPair() {
+		value.setLeft(left);
+		value.setRight(reader.getCurrentValue());
+		return true;
+	}
+
+	private static boolean isMate(Text left, Text right) {
+		return PairedSplitPlanner.isMate(left.getBytes(), left.getLength(), right.getBytes(), right.getLength());
+	}
+
+	@Override
+	public LongWritable getCurrentKey() {
+		return key;
+	}
+
+	@Override
+	public PairText getCurrentValue() {
+		return value;
+	}
+
+	@Override
+	public float getProgress() throws IOException, InterruptedException {
+		return reader.getProgress();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		reader.close();
+	}
+}
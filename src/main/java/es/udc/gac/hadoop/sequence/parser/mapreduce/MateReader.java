@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Drives a single-end record reader on a background thread, handing its
+ * records to the consumer thread through a bounded ring of slots. Values
+ * are exchanged with the record reader (see
+ * {@link SingleEndSequenceRecordReader#swapValue(Text)}) instead of being
+ * copied, and waiting is done by spinning and parking, so no objects are
+ * allocated per record once the buffers have grown.
+ * 
+ * The slot returned by the last call to {@link #next()} is not reused
+ * until the next call.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+final class MateReader implements Runnable {
+
+	private static final int SPIN_LIMIT = 128;
+	private static final long PARK_NANOS = 20000;
+
+	private final SingleEndSequenceRecordReader reader;
+	private final Text[] values;
+	private final long[] keys;
+	private final int mask;
+	private final AtomicLong head; // slot held by the consumer
+	private final AtomicLong tail; // next slot to be filled by the producer
+	private volatile boolean finished;
+	private volatile boolean closed;
+	private volatile Throwable error;
+	private boolean holding;
+	private Thread thread;
+
+	MateReader(SingleEndSequenceRecordReader reader, int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.reader = reader;
+		values = new Text[size];
+		keys = new long[size];
+		mask = size - 1;
+		head = new AtomicLong();
+		tail = new AtomicLong();
+
+		for (int i = 0; i < size; i++)
+			values[i] = (reader.getCurrentValue() instanceof SequenceRecord)? new SequenceRecord() : new Text();
+	}
+
+	void start() {
+		thread = new Thread(this, "hsp-mate-reader");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!closed) {
+				long t = tail.get();
+				int spins = 0;
+
+				while (t - head.get() >= values.length) {
+					if (closed)
+						return;
+					idle(spins++);
+				}
+
+				if (!reader.nextKeyValue())
+					break;
+
+				int i = (int) (t & mask);
+				keys[i] = reader.getCurrentKey().get();
+				values[i] = reader.swapValue(values[i]);
+				tail.lazySet(t + 1);
+			}
+		} catch (Throwable e) {
+			error = e;
+		} finally {
+			finished = true;
+		}
+	}
+
+	/**
+	 * Release the current record and wait for the next one.
+	 *
+	 * @return false if the record reader has no more records
+	 */
+	boolean next() throws IOException {
+		if (holding) {
+			head.lazySet(head.get() + 1);
+			holding = false;
+		}
+
+		long h = head.get();
+		int spins = 0;
+
+		while (tail.get() <= h) {
+			if (finished) {
+				if (tail.get() > h)
+					break;
+
+				if (error != null) {
+					if (error instanceof IOException)
+						throw (IOException) error;
+					throw new IOException(error);
+				}
+
+				return false;
+			}
+
+			idle(spins++);
+		}
+
+		holding = true;
+		return true;
+	}
+
+	long getKey() {
+		return keys[(int) (head.get() & mask)];
+	}
+
+	Text getValue() {
+		return values[(int) (head.get() & mask)];
+	}
+
+	/**
+	 * Stop the background thread. The record reader is not closed.
+	 */
+	void close() throws IOException {
+		closed = true;
+
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while stopping the mate reader");
+			}
+		}
+	}
+
+	private static void idle(int spins) {
+		if (spins < SPIN_LIMIT)
+			return;
+		else if (spins < 2 * SPIN_LIMIT)
+			Thread.yield();
+		else
+			LockSupport.parkNanos(PARK_NANOS);
+	}
+}
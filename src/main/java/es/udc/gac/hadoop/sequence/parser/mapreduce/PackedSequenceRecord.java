@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import es.udc.gac.hadoop.sequence.parser.util.AsciiSequence;
+import es.udc.gac.hadoop.sequence.parser.util.QualityBinning;
+
+/**
+ * Compact representation of a FASTQ/FASTA record. Bases A, C, G and T
+ * are packed using 2 bits each, while any other base (e.g. N, IUPAC codes
+ * or lowercase bases) is kept in a list of exceptions. Qualities are
+ * either stored as they are or, if a {@link QualityBinning} is used,
+ * as 4-bit bin indexes.
+ * 
+ * Line breaks within FASTA sequences are not kept.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class PackedSequenceRecord implements Writable {
+
+	private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+	private static final byte[] CODES = new byte[256];
+	private static final byte[] LF = {'\n'};
+	private static final byte[] COMMENT_LINE = {'+', '\n'};
+	private static final int NO_QUALITIES = 0;
+	private static final int RAW_QUALITIES = 1;
+	private static final int BINNED_QUALITIES = 2;
+
+	static {
+		Arrays.fill(CODES, (byte) -1);
+
+		for (int i = 0; i < BASES.length; i++)
+			CODES[BASES[i]] = (byte) i;
+	}
+
+	private byte[] name;
+	private int nameLength;
+	private byte[] packed;
+	private int length; // number of bases
+	private int[] exceptionPositions;
+	private byte[] exceptionBases;
+	private int numExceptions;
+	private byte[] qualities; // bin indexes if binValues != null
+	private int qualityLength;
+	private byte[] binValues;
+	private byte[] binTable; // bin values read by readFields()
+	private AsciiSequence nameView;
+	private byte[] scratch;
+
+	public PackedSequenceRecord() {
+		name = new byte[0];
+		packed = new byte[0];
+		exceptionPositions = new int[0];
+		exceptionBases = new byte[0];
+		qualities = new byte[0];
+		scratch = new byte[0];
+		binValues = null;
+		nameView = new AsciiSequence();
+		clear();
+	}
+
+	public void clear() {
+		nameLength = 0;
+		length = 0;
+		numExceptions = 0;
+		qualityLength = 0;
+		binValues = null;
+	}
+
+	/**
+	 * Pack the given record.
+	 *
+	 * @param record the record to pack
+	 * @param binning the quality binning to apply, or null to keep qualities as they are
+	 */
+	public void set(SequenceRecord record, QualityBinning binning) {
+		byte[] bytes = record.getBytes();
+		set(bytes, record.getNameOffset(), record.getNameLength(),
+				bytes, record.getSequenceOffset(), record.getSequenceLength(),
+				bytes, record.getQualityOffset(), record.getQualityLength(), binning);
+	}
+
+	/**
+	 * Pack the given name, bases and qualities. LF characters within
+	 * bases are skipped.
+	 */
+	public void set(byte[] nameBytes, int nameOffset, int nameLength,
+			byte[] sequenceBytes, int sequenceOffset, int sequenceLength,
+			byte[] qualityBytes, int qualityOffset, int qualityLength,
+			QualityBinning binning) {
+		clear();
+
+		// Name
+		name = ensureCapacity(name, nameLength);
+		System.arraycopy(nameBytes, nameOffset, name, 0, nameLength);
+		this.nameLength = nameLength;
+
+		// Bases
+		packed = ensureCapacity(packed, (sequenceLength + 3) >>> 2);
+		int code = 0;
+
+		for (int i = sequenceOffset, end = sequenceOffset + sequenceLength; i < end; i++) {
+			byte base = sequenceBytes[i];
+
+			if (base == '\n')
+				continue;
+
+			int baseCode = CODES[base & 0xFF];
+
+			if (baseCode < 0) {
+				addException(length, base);
+				baseCode = 0;
+			}
+
+			int shift = (length & 3) << 1;
+			code |= baseCode << shift;
+
+			if (shift == 6) {
+				packed[length >>> 2] = (byte) code;
+				code = 0;
+			}
+			length++;
+		}
+
+		if ((length & 3) != 0)
+			packed[length >>> 2] = (byte) code;
+
+		// Qualities
+		qualities = ensureCapacity(qualities, qualityLength);
+
+		if (binning == null) {
+			System.arraycopy(qualityBytes, qualityOffset, qualities, 0, qualityLength);
+		} else {
+			for (int i = 0; i < qualityLength; i++)
+				qualities[i] = (byte) binning.getBin(qualityBytes[qualityOffset + i]);
+
+			binValues = binning.getValues();
+		}
+
+		this.qualityLength = qualityLength;
+	}
+
+	/**
+	 * Return the name of the sequence.
+	 */
+	public CharSequence getName() {
+		nameView.set(name, 0, nameLength);
+		return nameView;
+	}
+
+	/**
+	 * Return the number of bases.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Return the ith base.
+	 */
+	public byte getBase(int i) {
+		if (i < 0 || i >= length)
+			throw new IndexOutOfBoundsException("Incorrect base: "+i);
+
+		int exception = Arrays.binarySearch(exceptionPositions, 0, numExceptions, i);
+
+		if (exception >= 0)
+			return exceptionBases[exception];
+
+		return BASES[(packed[i >>> 2] >>> ((i & 3) << 1)) & 3];
+	}
+
+	/**
+	 * Unpack all the bases into <code>dst</code> starting at <code>offset</code>.
+	 */
+	public void getBases(byte[] dst, int offset) {
+		for (int i = 0; i < length; i++)
+			dst[offset + i] = BASES[(packed[i >>> 2] >>> ((i & 3) << 1)) & 3];
+
+		for (int i = 0; i < numExceptions; i++)
+			dst[offset + exceptionPositions[i]] = exceptionBases[i];
+	}
+
+	/**
+	 * Return the number of bases that are not A, C, G or T.
+	 */
+	public int getNumExceptions() {
+		return numExceptions;
+	}
+
+	public boolean hasQuality() {
+		return qualityLength > 0;
+	}
+
+	public int getQualityLength() {
+		return qualityLength;
+	}
+
+	/**
+	 * Return the ith quality (Phred+33).
+	 */
+	public byte getQuality(int i) {
+		if (i < 0 || i >= qualityLength)
+			throw new IndexOutOfBoundsException("Incorrect quality: "+i);
+
+		return (binValues == null)? qualities[i] : binValues[qualities[i]];
+	}
+
+	/**
+	 * Copy all the qualities (Phred+33) into <code>dst</code> starting at <code>offset</code>.
+	 */
+	public void getQualities(byte[] dst, int offset) {
+		if (binValues == null) {
+			System.arraycopy(qualities, 0, dst, offset, qualityLength);
+		} else {
+			for (int i = 0; i < qualityLength; i++)
+				dst[offset + i] = binValues[qualities[i]];
+		}
+	}
+
+	/**
+	 * Unpack this record into <code>text</code> in FASTQ format (or FASTA
+	 * format if there are no qualities).
+	 */
+	public void toText(Text text) {
+		int size = Math.max(length, qualityLength);
+		scratch = ensureCapacity(scratch, size + 1);
+		text.clear();
+		scratch[0] = (byte) (hasQuality()? '@' : '>');
+		text.append(scratch, 0, 1);
+		text.append(name, 0, nameLength);
+		text.append(LF, 0, 1);
+		getBases(scratch, 0);
+		text.append(scratch, 0, length);
+		text.append(LF, 0, 1);
+
+		if (hasQuality()) {
+			text.append(COMMENT_LINE, 0, COMMENT_LINE.length);
+			getQualities(scratch, 0);
+			text.append(scratch, 0, qualityLength);
+			text.append(LF, 0, 1);
+		}
+	}
+
+	@Override
+	public String toString() {
+		Text text = new Text();
+		toText(text);
+		return text.toString();
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, nameLength);
+		out.write(name, 0, nameLength);
+		WritableUtils.writeVInt(out, length);
+		out.write(packed, 0, (length + 3) >>> 2);
+		WritableUtils.writeVInt(out, numExceptions);
+
+		for (int i = 0, last = 0; i < numExceptions; i++) {
+			WritableUtils.writeVInt(out, exceptionPositions[i] - last);
+			out.writeByte(exceptionBases[i]);
+			last = exceptionPositions[i];
+		}
+
+		if (qualityLength == 0) {
+			out.writeByte(NO_QUALITIES);
+		} else if (binValues == null) {
+			out.writeByte(RAW_QUALITIES);
+			WritableUtils.writeVInt(out, qualityLength);
+			out.write(qualities, 0, qualityLength);
+		} else {
+			out.writeByte(BINNED_QUALITIES);
+			WritableUtils.writeVInt(out, qualityLength);
+			WritableUtils.writeVInt(out, binValues.length);
+			out.write(binValues);
+
+			for (int i = 0; i < qualityLength; i += 2) {
+				int low = qualities[i];
+				int high = (i + 1 < qualityLength)? qualities[i + 1] : 0;
+				out.writeByte(low | (high << 4));
+			}
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		clear();
+		nameLength = WritableUtils.readVInt(in);
+		name = ensureCapacity(name, nameLength);
+		in.readFully(name, 0, nameLength);
+		length = WritableUtils.readVInt(in);
+		packed = ensureCapacity(packed, (length + 3) >>> 2);
+		in.readFully(packed, 0, (length + 3) >>> 2);
+		int exceptions = WritableUtils.readVInt(in);
+
+		for (int i = 0, last = 0; i < exceptions; i++) {
+			last += WritableUtils.readVInt(in);
+			addException(last, in.readByte());
+		}
+
+		int type = in.readByte();
+
+		if (type == NO_QUALITIES)
+			return;
+
+		qualityLength = WritableUtils.readVInt(in);
+		qualities = ensureCapacity(qualities, qualityLength);
+
+		if (type == RAW_QUALITIES) {
+			in.readFully(qualities, 0, qualityLength);
+		} else if (type == BINNED_QUALITIES) {
+			int numBins = WritableUtils.readVInt(in);
+
+			if (binTable == null || binTable.length != numBins)
+				binTable = new byte[numBins];
+
+			in.readFully(binTable);
+			binValues = binTable;
+
+			for (int i = 0; i < qualityLength; i += 2) {
+				int bins = in.readByte();
+				qualities[i] = (byte) (bins & 0x0F);
+
+				if (i + 1 < qualityLength)
+					qualities[i + 1] = (byte) ((bins >>> 4) & 0x0F);
+			}
+		} else {
+			throw new IOException("Unknown quality encoding: "+type);
+		}
+	}
+
+	private void addException(int position, byte base) {
+		if (numExceptions == exceptionPositions.length) {
+			int capacity = Math.max(8, numExceptions * 2);
+			exceptionPositions = Arrays.copyOf(exceptionPositions, capacity);
+			exceptionBases = Arrays.copyOf(exceptionBases, capacity);
+		}
+
+		exceptionPositions[numExceptions] = position;
+		exceptionBases[numExceptions++] = base;
+	}
+
+	private static byte[] ensureCapacity(byte[] array, int capacity) {
+		if (array.length < capacity)
+			return new byte[Math.max(capacity, array.length * 2)];
+
+		return array;
+	}
+}
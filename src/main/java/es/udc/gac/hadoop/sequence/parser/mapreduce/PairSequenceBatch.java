@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Paired form of {@link SequenceBatch}. The ith record of the left
+ * batch is paired with the ith record of the right batch.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class PairSequenceBatch implements Writable {
+
+	private SequenceBatch left;
+	private SequenceBatch right;
+
+	public PairSequenceBatch() {
+		left = new SequenceBatch();
+		right = new SequenceBatch();
+	}
+
+	public SequenceBatch getLeft() {
+		return left;
+	}
+
+	public SequenceBatch getRight() {
+		return right;
+	}
+
+	/**
+	 * Return the number of paired records.
+	 */
+	public int size() {
+		return left.size();
+	}
+
+	public void clear() {
+		left.clear();
+		right.clear();
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		left.write(out);
+		right.write(out);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		left.readFields(in);
+		right.readFields(in);
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+/**
+ * Paired form of {@link SequenceRecord}: a PairText whose left and
+ * right reads expose their field offsets.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class PairSequenceRecord extends PairText {
+
+	public PairSequenceRecord(SequenceRecord left, SequenceRecord right) {
+		super(left, right);
+	}
+
+	public PairSequenceRecord() {
+		super(new SequenceRecord(), new SequenceRecord());
+	}
+
+	public SequenceRecord getLeftRecord() {
+		return (SequenceRecord) getLeft();
+	}
+
+	public SequenceRecord getRightRecord() {
+		return (SequenceRecord) getRight();
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+/**
+ * InputFormat implementation for paired-end binary sequence files
+ * (see {@link BinarySequenceFile}), which store both reads of each
+ * pair in the same file. Splits are made of whole blocks.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class PairedEndBinarySequenceInputFormat extends FileInputFormat<LongWritable, PairText> {
+
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		return BinarySequenceFile.getSplits(job, listStatus(job), true);
+	}
+
+	@Override
+	public RecordReader<LongWritable, PairText> createRecordReader(InputSplit inputSplit, TaskAttemptContext context) {
+		return new PairedEndBinarySequenceRecordReader(context);
+	}
+}
@@ -27,8 +27,10 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  * This InputSplit contains two childs FileSplits.
@@ -42,6 +44,7 @@ public class PairedEndInputSplit extends FileSplit implements Writable {
 	private FileSplit[] splits;
 	private List<List<String>> allHosts;
 	private String[] hosts;
+	private boolean recordAligned;
 
 	public PairedEndInputSplit() {
 		splits = new FileSplit[LENGTH];
@@ -94,6 +97,23 @@ public class PairedEndInputSplit extends FileSplit implements Writable {
 		}
 	}
 
+	/**
+	 * Set whether both child FileSplits contain the same reads, i.e. they
+	 * were planned by record count or they are whole files.
+	 */
+	public void setRecordAligned(boolean recordAligned) {
+		this.recordAligned = recordAligned;
+	}
+
+	/**
+	 * Whether both child FileSplits contain the same reads. Otherwise, they
+	 * are equal splits by byte offset, which requires the mate files to
+	 * have the same size.
+	 */
+	public boolean isRecordAligned() {
+		return recordAligned;
+	}
+
 	/**
 	 * Get ith child FileSplit.
 	 */
@@ -162,12 +182,16 @@ public class PairedEndInputSplit extends FileSplit implements Writable {
 	/**
 	 * Write FileSplits in the following format.
 	 * {@code
-	 * <split1><split2>
+	 * <class1><split1><class2><split2><recordAligned>
 	 * }
 	 */
 	public void write(DataOutput out) throws IOException {
-		for (FileSplit s : splits)
+		for (FileSplit s : splits) {
+			Text.writeString(out, s.getClass().getName());
 			s.write(out);
+		}
+
+		out.writeBoolean(recordAligned);
 	}
 
 	/**
@@ -181,8 +205,17 @@ public class PairedEndInputSplit extends FileSplit implements Writable {
 		}
 
 		for (int i = 0; i < splits.length; ++i) {
-			splits[i] = new FileSplit();
+			String className = Text.readString(in);
+
+			try {
+				splits[i] = (FileSplit) ReflectionUtils.newInstance(Class.forName(className), null);
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Split class not found: "+className, e);
+			}
+
 			splits[i].readFields(in);
 		}
+
+		recordAligned = in.readBoolean();
 	}
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+/**
+ * InputFormat for paired-end sequence files that emits 2-bit packed
+ * records. Input paths are set using the static methods provided by
+ * {@link PairedEndSequenceInputFormat}.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class PairedEndPackedSequenceInputFormat extends FileInputFormat<LongWritable, PairPackedSequenceRecord> {
+
+	private final PairedEndSequenceInputFormat inputFormat = new PairedEndSequenceInputFormat();
+
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		return inputFormat.getSplits(job);
+	}
+
+	@Override
+	public RecordReader<LongWritable, PairPackedSequenceRecord> createRecordReader(InputSplit split, TaskAttemptContext context)
+			throws IOException, InterruptedException {
+		return new PairedEndPackedSequenceRecordReader((PairedEndSequenceRecordReader) inputFormat.createRecordReader(split, context), context);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+import es.udc.gac.hadoop.sequence.parser.util.QualityBinning;
+
+/**
+ * RecordReader which packs the records parsed by a paired-end sequence
+ * record reader into key/value pairs (LongWritable/PairPackedSequenceRecord)
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class PairedEndPackedSequenceRecordReader extends RecordReader<LongWritable, PairPackedSequenceRecord> {
+
+	private PairedEndSequenceRecordReader reader;
+	private QualityBinning binning;
+	private PairPackedSequenceRecord value;
+
+	public PairedEndPackedSequenceRecordReader(PairedEndSequenceRecordReader reader, TaskAttemptContext context) {
+		this.reader = reader;
+		this.reader.useSequenceRecord();
+		binning = Configuration.getQualityBinning(context.getConfiguration());
+		value = new PairPackedSequenceRecord();
+	}
+
+	@Override
+	public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+		reader.initialize(split, context);
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException, InterruptedException {
+		if (!reader.nextKeyValue())
+			return false;
+
+		PairText pair = reader.getCurrentValue();
+		value.getLeft().set((SequenceRecord) pair.getLeft(), binning);
+		value.getRight().set((SequenceRecord) pair.getRight(), binning);
+		return true;
+	}
+
+	@Override
+	public LongWritable getCurrentKey() {
+		return reader.getCurrentKey();
+	}
+
+	@Override
+	public PairPackedSequenceRecord getCurrentValue() {
+		return value;
+	}
+
+	@Override
+	public float getProgress() throws IOException, InterruptedException {
+		return reader.getProgress();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		reader.close();
+	}
+}
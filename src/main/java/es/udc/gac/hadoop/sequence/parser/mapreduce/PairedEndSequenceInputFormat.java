@@ -19,16 +19,33 @@
 package es.udc.gac.hadoop.sequence.parser.mapreduce;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.io.compress.SplittableCompressionCodec;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
@@ -37,11 +54,14 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import es.udc.gac.hadoop.sequence.parser.util.GzipFormat;
+
 /**
  * Text-based InputFormat for paired-end sequence files.
  * 
@@ -53,6 +73,13 @@ public class PairedEndSequenceInputFormat extends FileInputFormat<LongWritable,
 
 	private static final Logger logger = LogManager.getLogger();
 	private static final double SPLIT_SLOP = 1.1; // 10% slop
+	private static final PathFilter HIDDEN_FILE_FILTER = new PathFilter() {
+		@Override
+		public boolean accept(Path path) {
+			String name = path.getName();
+			return !name.startsWith("_") && !name.startsWith(".");
+		}
+	};
 
 	public static final String LEFT_INPUT_PATH = "hsra.paired.left.path";
 	public static final String RIGHT_INPUT_PATH = "hsra.paired.right.path";
@@ -65,6 +92,9 @@ public class PairedEndSequenceInputFormat extends FileInputFormat<LongWritable,
 		if (null == codec) {
 			return true;
 		}
+		if (codec instanceof GzipCodec) {
+			return GzipFormat.isSplittable(context.getConfiguration(), file);
+		}
 		return codec instanceof SplittableCompressionCodec;
 	}
 
@@ -106,7 +136,7 @@ public class PairedEndSequenceInputFormat extends FileInputFormat<LongWritable,
 	/**
 	 * 
 	 * @param The job submitter's view
-	 * @param The input Path
+	 * @param The input Path (a file, a directory or a glob)
 	 * @param The inputFormat class required by inputPath
 	 * @throws IOException if there is any problem in the I/O file's operations
 	 */
@@ -121,7 +151,7 @@ public class PairedEndSequenceInputFormat extends FileInputFormat<LongWritable,
 	/**
 	 * 
 	 * @param The job configuration
-	 * @param The input Path
+	 * @param The input Path (a file, a directory or a glob)
 	 * @param The inputFormat class required by inputPath
 	 * @throws IOException if there is any problem in the I/O file's operations
 	 */
@@ -135,7 +165,7 @@ public class PairedEndSequenceInputFormat extends FileInputFormat<LongWritable,
 	/**
 	 * 
 	 * @param The job submitter's view
-	 * @param The input Path
+	 * @param The input Path (a file, a directory or a glob)
 	 * @param The inputFormat class required by inputPath
 	 * @throws IOException if there is any problem in the I/O file's operations
 	 */
@@ -150,7 +180,7 @@ public class PairedEndSequenceInputFormat extends FileInputFormat<LongWritable,
 	/**
 	 * 
 	 * @param The job configuration
-	 * @param The input Path
+	 * @param The input Path (a file, a directory or a glob)
 	 * @param The inputFormat class required by inputPath
 	 * @throws IOException if there is any problem in the I/O file's operations
 	 */
@@ -219,37 +249,159 @@ public class PairedEndSequenceInputFormat extends FileInputFormat<LongWritable,
 		if (!leftInputFormat.equals(rightInputFormat))
 			throw new IOException("Input formats do not match: "+leftInputFormat+", "+rightInputFormat);
 
-		// Generate file splits for both input paths
-		List<InputSplit> leftSplits;
-		List<InputSplit> rightSplits;
+		Class<?> inputFormatClass;
 		try {
-			leftSplits = getInputSplits(job, leftPath, leftInputFormat);
-			rightSplits = getInputSplits(job, rightPath, rightInputFormat);
-			if (logger.isDebugEnabled()) {
-				logger.debug(leftSplits);
-				logger.debug(rightSplits);
-			}
+			inputFormatClass = Class.forName(leftInputFormat);
 		} catch (ClassNotFoundException e) {
 			throw new IOException(e.getMessage());
 		}
 
+		Configuration conf = job.getConfiguration();
+		SingleEndSequenceInputFormat inputFormat = (SingleEndSequenceInputFormat) ReflectionUtils.newInstance(inputFormatClass, conf);
+		int numThreads = es.udc.gac.hadoop.sequence.parser.util.Configuration.getSplitThreads(conf);
+		int cacheSize = es.udc.gac.hadoop.sequence.parser.util.Configuration.getSplitCacheSize(conf);
+		ExecutorService executor = null;
+
+		if (numThreads > 1) {
+			executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "hsp-split-planner");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		try {
+			// List both input paths concurrently
+			Future<List<FileStatus>> leftFiles = submit(executor, () -> listInputFiles(conf, leftPath));
+			Future<List<FileStatus>> rightFiles = submit(executor, () -> listInputFiles(conf, rightPath));
+			List<FileStatus[]> mates = getMateFiles(conf, get(leftFiles), get(rightFiles));
+
+			// Look up the splits of each pair of mate files in the cache
+			String settings = SplitCache.getSettings(conf, leftInputFormat);
+			String[] keys = new String[mates.size()];
+			List<List<InputSplit>> pairSplits = new ArrayList<List<InputSplit>>(mates.size());
+
+			for (int i = 0; i < mates.size(); i++) {
+				if (cacheSize > 0)
+					keys[i] = SplitCache.getKey(conf, settings, mates.get(i)[0], mates.get(i)[1]);
+
+				pairSplits.add((cacheSize > 0)? SplitCache.get(keys[i]) : null);
+			}
+
+			// Generate the file splits of the pairs not cached. They are all
+			// submitted before the tasks that wait for them to avoid deadlocks
+			List<Future<List<InputSplit>>> fileSplits = new ArrayList<Future<List<InputSplit>>>(2 * mates.size());
+
+			for (int i = 0; i < mates.size(); i++) {
+				if (pairSplits.get(i) == null) {
+					Path left = mates.get(i)[0].getPath();
+					Path right = mates.get(i)[1].getPath();
+					fileSplits.add(submit(executor, () -> getInputSplits(job, inputFormat, left)));
+					fileSplits.add(submit(executor, () -> getInputSplits(job, inputFormat, right)));
+				} else {
+					fileSplits.add(null);
+					fileSplits.add(null);
+				}
+			}
+
+			// Pair the file splits of both files
+			List<Future<List<InputSplit>>> pairedSplits = new ArrayList<Future<List<InputSplit>>>(mates.size());
+
+			for (int i = 0; i < mates.size(); i++) {
+				if (pairSplits.get(i) == null) {
+					Path left = mates.get(i)[0].getPath();
+					Path right = mates.get(i)[1].getPath();
+					Future<List<InputSplit>> leftSplits = fileSplits.get(2 * i);
+					Future<List<InputSplit>> rightSplits = fileSplits.get(2 * i + 1);
+					pairedSplits.add(submit(executor, () -> getSplits(job, inputFormatClass, left, right,
+							get(leftSplits), get(rightSplits))));
+				} else {
+					pairedSplits.add(null);
+				}
+			}
+
+			List<InputSplit> splits = new ArrayList<InputSplit>();
+
+			for (int i = 0; i < mates.size(); i++) {
+				List<InputSplit> pairSplit = pairSplits.get(i);
+
+				if (pairSplit == null) {
+					pairSplit = get(pairedSplits.get(i));
+
+					if (cacheSize > 0)
+						SplitCache.put(keys[i], pairSplit, cacheSize);
+				} else {
+					logger.debug("using cached splits for {} and {}", mates.get(i)[0].getPath(), mates.get(i)[1].getPath());
+				}
+
+				splits.addAll(pairSplit);
+			}
+
+			return splits;
+		} finally {
+			if (executor != null)
+				executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Get the input splits for a pair of mate files.
+	 * 
+	 * @param The job's context
+	 * @param The inputFormat class required by both files
+	 * @param The left file
+	 * @param The right file
+	 * @param The file splits of the left file
+	 * @param The file splits of the right file
+	 * @return A list with the paired-end input splits of both files
+	 * @throws IOException if there is any problem in the I/O file's operations
+	 */
+	private static List<InputSplit> getSplits(JobContext job, Class<?> inputFormatClass, Path leftPath, Path rightPath,
+			List<InputSplit> leftSplits, List<InputSplit> rightSplits) throws IOException {
+
+		if (logger.isDebugEnabled()) {
+			logger.debug(leftSplits);
+			logger.debug(rightSplits);
+		}
+
 		if(leftSplits.size() == 0)
 			throw new IOException("No file splits have been generated for input path "+leftPath);
 
 		if(rightSplits.size() == 0)
 			throw new IOException("No file splits have been generated for input path "+rightPath);
 
-		if(leftSplits.size() != rightSplits.size())
-			throw new IOException("Number of file splits does not match: "+leftSplits.size()+","+rightSplits.size());
+		// Try to align the right splits with the records of the left ones
+		List<FileSplit[]> pairs = null;
+
+		if (FastQInputFormat.class.isAssignableFrom(inputFormatClass) || FastAInputFormat.class.isAssignableFrom(inputFormatClass))
+			pairs = PairedSplitPlanner.plan(job.getConfiguration(), leftSplits, rightSplits, rightPath,
+					FastQInputFormat.class.isAssignableFrom(inputFormatClass));
+
+		// Equal splits by byte offset only contain the same reads if they are whole files
+		boolean recordAligned = pairs != null || (leftSplits.size() == 1 && rightSplits.size() == 1);
+
+		if (pairs == null) {
+			if(leftSplits.size() != rightSplits.size())
+				throw new IOException("Number of file splits does not match: "+leftSplits.size()+","+rightSplits.size());
+
+			pairs = new ArrayList<FileSplit[]>(leftSplits.size());
+
+			for(int i = 0; i<leftSplits.size(); i++)
+				pairs.add(new FileSplit[] {(FileSplit)leftSplits.get(i), (FileSplit)rightSplits.get(i)});
+		}
 
 		// Generate composite input splits
-		List<InputSplit> splits = new ArrayList<InputSplit>(leftSplits.size());
+		List<InputSplit> splits = new ArrayList<InputSplit>(pairs.size());
 
 		try {
-			for(int i = 0; i<leftSplits.size(); i++) {
+			for(FileSplit[] pair : pairs) {
 				PairedEndInputSplit pairedSplit = new PairedEndInputSplit();
-				pairedSplit.add((FileSplit)leftSplits.get(i));
-				pairedSplit.add((FileSplit)rightSplits.get(i));
+				pairedSplit.add(pair[0]);
+				pairedSplit.add(pair[1]);
+				pairedSplit.setRecordAligned(recordAligned);
 				splits.add(pairedSplit);
 			}
 		} catch (InterruptedException e) {
@@ -260,54 +412,184 @@ public class PairedEndSequenceInputFormat extends FileInputFormat<LongWritable,
 	}
 
 	/**
-	 * Get the a list of InputSplits for any inputPath.
+	 * Get the a list of InputSplits for any inputPath. The input path is set
+	 * in a copy of the job configuration, so that the splits of several files
+	 * can be generated concurrently.
 	 * 
 	 * @param The job submitter's view
+	 * @param The inputFormat required by inputPath
 	 * @param The input Path
-	 * @param The inputFormat class required by inputPath
 	 * @return A list which contents all the inputSplits
-	 * @throws ClassNotFoundException if the inputFormatClass cannot be instance
 	 * @throws IOException if there is any problem in the I/O file's operations
 	 */
-	private List<InputSplit> getInputSplits(JobContext job, Path inputPath, String inputFormatClass) throws ClassNotFoundException, IOException {
-		Configuration conf = job.getConfiguration();
-
-		// Create a new instance of the input format
-		SingleEndSequenceInputFormat inputFormat = (SingleEndSequenceInputFormat)
-				ReflectionUtils.newInstance(Class.forName(inputFormatClass), conf);
+	private static List<InputSplit> getInputSplits(JobContext job, SingleEndSequenceInputFormat inputFormat, Path inputPath) throws IOException {
+		Configuration conf = new Configuration(job.getConfiguration());
 
 		// Add input path
 		Path path = inputPath.getFileSystem(conf).makeQualified(inputPath);
-		String str = StringUtils.escapeString(path.toString());
-		conf.set(INPUT_DIR, str);
+		conf.set(INPUT_DIR, StringUtils.escapeString(path.toString()));
 
 		// Get input splits
-		return inputFormat.getSplits(job);
+		return inputFormat.getSplits(new JobContextImpl(conf, job.getJobID()));
 	}
 
 	/**
-	 * Check if the input has any problem.
+	 * Run a task on the given executor, or on the calling thread if there is none.
+	 */
+	private static <T> Future<T> submit(ExecutorService executor, Callable<T> task) {
+		if (executor != null)
+			return executor.submit(task);
+
+		FutureTask<T> future = new FutureTask<T>(task);
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Wait for the result of a task.
+	 */
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while generating input splits");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Get the pairs of mate files for the left and right input paths. When
+	 * both paths refer to a single file, they are paired as is. Otherwise, the
+	 * files are paired by name once the mate pattern is removed from it (see
+	 * {@link es.udc.gac.hadoop.sequence.parser.util.Configuration#setPairedMatePattern}).
+	 * 
+	 * @param The job configuration
+	 * @param The left input Path
+	 * @param The right input Path
+	 * @return A list with the left and right files of each pair, sorted by the left ones
+	 * @throws IOException if the files cannot be listed or paired
+	 */
+	public static List<Path[]> getMateFiles(Configuration conf, Path leftPath, Path rightPath) throws IOException {
+		List<Path[]> mates = new ArrayList<Path[]>();
+
+		for (FileStatus[] files : getMateFiles(conf, listInputFiles(conf, leftPath), listInputFiles(conf, rightPath)))
+			mates.add(new Path[] {files[0].getPath(), files[1].getPath()});
+
+		return mates;
+	}
+
+	private static List<FileStatus[]> getMateFiles(Configuration conf, List<FileStatus> leftFiles, List<FileStatus> rightFiles) throws IOException {
+		List<FileStatus[]> mates = new ArrayList<FileStatus[]>(leftFiles.size());
+
+		if (leftFiles.size() == 1 && rightFiles.size() == 1) {
+			mates.add(new FileStatus[] {leftFiles.get(0), rightFiles.get(0)});
+			return mates;
+		}
+
+		Pattern pattern = Pattern.compile(es.udc.gac.hadoop.sequence.parser.util.Configuration.getPairedMatePattern(conf));
+		Map<String, FileStatus> rightMates = new HashMap<String, FileStatus>();
+
+		for (FileStatus file : rightFiles) {
+			FileStatus previous = rightMates.put(getMateName(pattern, file.getPath()), file);
+
+			if (previous != null)
+				throw new IOException("Right input files "+previous.getPath()+" and "+file.getPath()+" have the same mate name");
+		}
+
+		Set<String> leftMates = new HashSet<String>();
+
+		for (FileStatus file : leftFiles) {
+			String name = getMateName(pattern, file.getPath());
+
+			if (!leftMates.add(name))
+				throw new IOException("Left input file "+file.getPath()+" has the same mate name as another one");
+
+			FileStatus mate = rightMates.remove(name);
+
+			if (mate == null)
+				throw new IOException("No right input file found for "+file.getPath());
+
+			mates.add(new FileStatus[] {file, mate});
+		}
+
+		if (!rightMates.isEmpty())
+			throw new IOException("No left input file found for "+rightMates.values().iterator().next().getPath());
+
+		return mates;
+	}
+
+	/**
+	 * Get the name of a file without the last match of the mate pattern.
+	 */
+	private static String getMateName(Pattern pattern, Path file) {
+		String name = file.getName();
+		Matcher matcher = pattern.matcher(name);
+		int start = -1, end = -1;
+
+		while (matcher.find()) {
+			start = matcher.start();
+			end = matcher.end();
+		}
+
+		if (start == -1)
+			return name;
+
+		return name.substring(0, start) + name.substring(end);
+	}
+
+	/**
+	 * Get the input files of a path, which can be a file, a directory or a
+	 * glob. Hidden files (starting with '_' or '.') of directories are ignored.
 	 * 
 	 * @param The job configuration
 	 * @param The input Path
+	 * @return A list with the input files sorted by path
 	 * @throws IOException for any problem found
 	 */
-	private static void checkInputPath(Configuration conf, Path inputPath) throws IOException {
-		FileSystem fs = FileSystem.get(conf);
-		FileStatus[] contents = fs.listStatus(inputPath);
+	private static List<FileStatus> listInputFiles(Configuration conf, Path inputPath) throws IOException {
+		FileSystem fs = inputPath.getFileSystem(conf);
+		FileStatus[] matches = fs.globStatus(inputPath);
 
-		if (contents == null) {
+		if (matches == null || matches.length == 0)
 			throw new IOException("Input path does not exist: "+inputPath);
-		} else if (contents.length != 1) {
-			throw new IOException("Input path ("+inputPath+") matches multiple files");
-		} else {
-			FileStatus file = contents[0];
 
-			if (!file.isFile())
-				throw new IOException("Input path ("+inputPath+") must be a sequence file in FASTQ/FASTA format");
+		List<FileStatus> files = new ArrayList<FileStatus>();
+
+		for (FileStatus match : matches) {
+			if (match.isDirectory()) {
+				for (FileStatus file : fs.listStatus(match.getPath(), HIDDEN_FILE_FILTER)) {
+					if (file.isFile())
+						files.add(file);
+				}
+			} else {
+				files.add(match);
+			}
+		}
+
+		if (files.isEmpty())
+			throw new IOException("Input path ("+inputPath+") does not contain any sequence file in FASTQ/FASTA format");
 
+		for (FileStatus file : files) {
 			if (file.getLen() == 0)
-				throw new IOException("Input path ("+inputPath+") is empty");
+				throw new IOException("Input file ("+file.getPath()+") is empty");
 		}
+
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * Check if the input has any problem.
+	 * 
+	 * @param The job configuration
+	 * @param The input Path
+	 * @throws IOException for any problem found
+	 */
+	private static void checkInputPath(Configuration conf, Path inputPath) throws IOException {
+		listInputFiles(conf, inputPath);
 	}
 }
@@ -24,6 +24,7 @@ import java.nio.charset.CharacterCodingException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -44,6 +45,13 @@ public class PairedEndSequenceRecordReader extends RecordReader<LongWritable, Pa
 	private LongWritable key;
 	private PairText value;
 	private Text left, right;
+	private boolean checkNames;
+	private boolean recordAligned;
+	private boolean concurrent;
+	private int queueSize;
+	private MateReader rightMates; // drives rightRR on another thread in concurrent mode, null otherwise
+	private TaskAttemptContext context; // to publish counters, null if disabled
+	private long pairsRead;
 
 	public PairedEndSequenceRecordReader(PairedEndInputSplit inputSplit, TaskAttemptContext context) throws IOException, InterruptedException {
 		Configuration conf = context.getConfiguration();
@@ -60,14 +68,36 @@ public class PairedEndSequenceRecordReader extends RecordReader<LongWritable, Pa
 			SingleEndSequenceInputFormat rightInputFormat = (SingleEndSequenceInputFormat) ReflectionUtils.newInstance(Class.forName(rightInputFormatClass), conf);
 			leftRR = (SingleEndSequenceRecordReader) leftInputFormat.createRecordReader(inputSplit.get(0), context);
 			rightRR = (SingleEndSequenceRecordReader) rightInputFormat.createRecordReader(inputSplit.get(1), context);
+
+			// Both mates are decompressed at the same time
+			leftRR.useBZip2BlockInputStream();
+			rightRR.useBZip2BlockInputStream();
 		} catch (ClassNotFoundException e) {
 			throw new IOException(e.getMessage());
 		}
 
 		key = new LongWritable();
-		value = new PairText();
+
+		if (es.udc.gac.hadoop.sequence.parser.util.Configuration.getSequenceRecord(conf))
+			value = new PairSequenceRecord();
+		else
+			value = new PairText();
+
 		left = null;
 		right = null;
+		recordAligned = inputSplit.isRecordAligned();
+		checkNames = es.udc.gac.hadoop.sequence.parser.util.Configuration.getPairedCheckNames(conf);
+		concurrent = es.udc.gac.hadoop.sequence.parser.util.Configuration.getPairedConcurrent(conf);
+		queueSize = es.udc.gac.hadoop.sequence.parser.util.Configuration.getPairedQueueSize(conf);
+	}
+
+	/**
+	 * Make both record readers emit SequenceRecord values regardless of
+	 * the configuration. It must be called before the first record is read.
+	 */
+	void useSequenceRecord() {
+		leftRR.useSequenceRecord();
+		rightRR.useSequenceRecord();
 	}
 
 	@Override
@@ -90,42 +120,90 @@ public class PairedEndSequenceRecordReader extends RecordReader<LongWritable, Pa
 		PairedEndInputSplit inputSplit = (PairedEndInputSplit) genericSplit;
 		leftRR.initialize(inputSplit.get(0), context);
 		rightRR.initialize(inputSplit.get(1), context);
+
+		if (es.udc.gac.hadoop.sequence.parser.util.Configuration.getCounters(context.getConfiguration()))
+			this.context = context;
+
+		if (concurrent) {
+			rightMates = new MateReader(rightRR, queueSize);
+			rightMates.start();
+		}
 	}
 
 	@Override
 	public synchronized void close() throws IOException {
-		leftRR.close();
-		rightRR.close();
+		if (context != null) {
+			// The reads of each mate are counted by the single-end record readers
+			Counter counter = context.getCounter(SequenceParserCounter.PAIRS_READ);
+
+			if (counter != null)
+				counter.increment(pairsRead);
+
+			context = null;
+		}
+
+		try {
+			if (rightMates != null)
+				rightMates.close();
+		} finally {
+			leftRR.close();
+			rightRR.close();
+		}
 	}
 
 	@Override
 	public boolean nextKeyValue() throws IOException, InterruptedException {
 
 		if (leftRR.nextKeyValue()) {
-			if(!rightRR.nextKeyValue())
+			if(!nextRight())
 				throw new IOException("Unexpected end of split for right record reader");
 
-			if(leftRR.getCurrentKey().get() != rightRR.getCurrentKey().get())
-				throw new IOException("Unexpected different keys");
-
 			left = leftRR.getCurrentValue();
-			right = rightRR.getCurrentValue();
-
-			if(left.getLength() != right.getLength())
-				throw new IOException("Unexpected different lengths");
+			right = getRightValue();
+
+			if (!recordAligned) {
+				// Equal splits by byte offset require mates of the same size
+				if(leftRR.getCurrentKey().get() != getRightKey())
+					throw new IOException("Unexpected different keys");
+
+				if(left.getLength() != right.getLength())
+					throw new IOException("Unexpected different lengths");
+			} else {
+				// Keys are byte offsets unless both splits are record-aligned,
+				// so mate files may differ in size (e.g. longer read names)
+				if(leftRR.hasOrdinalKeys() && rightRR.hasOrdinalKeys()
+						&& leftRR.getCurrentKey().get() != getRightKey())
+					throw new IOException("Unexpected different keys");
+
+				if(checkNames && !PairedSplitPlanner.isMate(left.getBytes(), left.getLength(), right.getBytes(), right.getLength()))
+					throw new IOException("Unexpected different read names at key "+leftRR.getCurrentKey().get());
+			}
 
 			key.set(leftRR.getCurrentKey().get());
 			value.setLeft(left);
 			value.setRight(right);
+			pairsRead++;
 			return true;
 		}
 
-		if(rightRR.nextKeyValue())
+		if(nextRight())
 			throw new IOException("Unexpected end of split for left record reader");
 
 		return false;
 	}
 
+	private boolean nextRight() throws IOException {
+		return (rightMates != null)? rightMates.next() : rightRR.nextKeyValue();
+	}
+
+	private long getRightKey() {
+		return (rightMates != null)? rightMates.getKey() : rightRR.getCurrentKey().get();
+	}
+
+	private Text getRightValue() {
+		return (rightMates != null)? rightMates.getValue() : rightRR.getCurrentValue();
+	}
+
 	public static String getLeftRead(PairText pairedRead) throws CharacterCodingException {
 		return Text.decode(pairedRead.getLeft().getBytes(), 0, pairedRead.getLeft().getLength(), false);
 	}
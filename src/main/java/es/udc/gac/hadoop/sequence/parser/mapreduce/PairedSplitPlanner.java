@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import es.udc.gac.hadoop.sequence.parser.util.GzipIndex;
+import es.udc.gac.hadoop.sequence.parser.util.LineReader;
+import es.udc.gac.hadoop.sequence.parser.util.RecordIndex;
+
+/**
+ * Plans paired-end splits by record count, so that the left and right
+ * splits contain the same reads even if the mate files have different
+ * sizes (e.g. different read names or comments):
+ * <ul>
+ * <li>If both files have a record index, the right splits start at the
+ * same record ordinals as the left ones</li>
+ * <li>Otherwise, for uncompressed files, the mate of the first read of
+ * each left split is searched by name around the proportional offset
+ * of the right file. If a mate cannot be found, or it is found before the
+ * previous one, both files are read as a single split</li>
+ * </ul>
+ * Compressed files without indexes cannot be planned this way, so they
+ * are rejected unless both of them are read as a single split.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+final class PairedSplitPlanner {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final int SCAN_BUFFER_SIZE = 64*1024;
+	private static final long MIN_SEARCH_WINDOW = 1024*1024;
+	private static final long MAX_SEARCH_WINDOW = 64*1024*1024;
+
+	private PairedSplitPlanner() {
+	}
+
+	/**
+	 * Plan the paired-end splits.
+	 *
+	 * @param conf the configuration
+	 * @param leftSplits the splits of the left file
+	 * @param rightSplits the splits of the right file
+	 * @param rightPath the right file
+	 * @param fastq whether the files are in FASTQ (true) or FASTA (false) format
+	 *
+	 * @return the pairs of left and right splits, or null if both files are
+	 * read as a single split
+	 *
+	 * @throws IOException if the files are compressed and cannot be split by record
+	 */
+	static List<FileSplit[]> plan(Configuration conf, List<InputSplit> leftSplits, List<InputSplit> rightSplits,
+			Path rightPath, boolean fastq) throws IOException {
+		if (leftSplits.size() < 2 && rightSplits.size() < 2)
+			return null;
+
+		boolean indexed = true;
+
+		for (InputSplit split : leftSplits) {
+			if (!(split instanceof IndexedFileSplit) || ((IndexedFileSplit) split).getNumRecords() < 0)
+				indexed = false;
+		}
+
+		FileSystem fs = rightPath.getFileSystem(conf);
+		CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+		boolean rightCompressed = codecs.getCodec(rightPath) != null;
+
+		if (indexed) {
+			RecordIndex index = es.udc.gac.hadoop.sequence.parser.util.Configuration.getRecordIndex(conf)?
+					RecordIndex.read(fs, rightPath) : null;
+
+			if (index != null && (!rightCompressed || GzipIndex.exists(fs, rightPath)))
+				return planIndexed(fs, leftSplits, rightPath, index, rightCompressed);
+		}
+
+		Path leftPath = ((FileSplit) leftSplits.get(0)).getPath();
+		CompressionCodec leftCodec = codecs.getCodec(leftPath);
+
+		if (leftCodec != null || rightCompressed) {
+			// Splits at compressed offsets do not contain the same reads in both files
+			String advice = (leftCodec instanceof BZip2Codec || codecs.getCodec(rightPath) instanceof BZip2Codec)?
+					"recompress them with gzip and build their record and gzip indexes" :
+					"build their record and gzip indexes (see RecordIndexer and GzipIndexer)";
+
+			throw new IOException("Compressed mate files "+leftPath+" and "+rightPath+" cannot be split by record: "
+					+advice+", or set "+FileInputFormat.SPLIT_MINSIZE+" to at least their size to read them as a single split");
+		}
+
+		return planSampled(fs, leftSplits, leftPath, rightPath, fastq);
+	}
+
+	private static List<FileSplit[]> planIndexed(FileSystem fs, List<InputSplit> leftSplits, Path rightPath,
+			RecordIndex index, boolean compressed) throws IOException {
+		FileStatus status = fs.getFileStatus(rightPath);
+		GzipIndex gzipIndex = compressed? GzipIndex.read(fs, rightPath) : null;
+		List<FileSplit[]> pairs = new ArrayList<FileSplit[]>(leftSplits.size());
+		long leftRecords = 0;
+
+		for (InputSplit split : leftSplits)
+			leftRecords += ((IndexedFileSplit) split).getNumRecords();
+
+		if (leftRecords != index.getNumRecords())
+			throw new IOException("Number of records does not match: "+leftRecords+", "+index.getNumRecords());
+
+		for (int i = 0; i < leftSplits.size(); i++) {
+			IndexedFileSplit left = (IndexedFileSplit) leftSplits.get(i);
+			int entry = index.findEntryByOrdinal(left.getFirstRecord());
+			long uncompressedStart = (entry == -1)? 0 : index.getOffset(entry);
+			long skipRecords = left.getFirstRecord() - ((entry == -1)? 0 : index.getOrdinal(entry));
+			long start = uncompressedStart;
+
+			if (gzipIndex != null) {
+				// Compressed offsets are just an estimation for scheduling
+				int checkpoint = gzipIndex.findCheckpointBefore(uncompressedStart);
+				start = (checkpoint <= 0)? 0 : gzipIndex.getCheckpoints().get(checkpoint).getOffset();
+			}
+
+			IndexedFileSplit right = new IndexedFileSplit(rightPath, start,
+					Math.max(0, estimateEnd(leftSplits, i, index, gzipIndex, status.getLen()) - start),
+					getHosts(fs, status, start), left.getFirstRecord(), left.getNumRecords(),
+					uncompressedStart, skipRecords);
+
+			pairs.add(new FileSplit[] {left, right});
+		}
+
+		logger.debug("record-aligned paired splits from indexes: {}", pairs.size());
+		return pairs;
+	}
+
+	private static long estimateEnd(List<InputSplit> leftSplits, int i, RecordIndex index, GzipIndex gzipIndex, long fileLength) {
+		if (i + 1 == leftSplits.size())
+			return fileLength;
+
+		int entry = index.findEntryByOrdinal(((IndexedFileSplit) leftSplits.get(i + 1)).getFirstRecord());
+		long offset = (entry == -1)? 0 : index.getOffset(entry);
+
+		if (gzipIndex != null) {
+			int checkpoint = gzipIndex.findCheckpointBefore(offset);
+			offset = (checkpoint <= 0)? 0 : gzipIndex.getCheckpoints().get(checkpoint).getOffset();
+		}
+
+		return offset;
+	}
+
+	private static List<FileSplit[]> planSampled(FileSystem fs, List<InputSplit> leftSplits, Path leftPath, Path rightPath,
+			boolean fastq) throws IOException {
+		FileStatus leftStatus = fs.getFileStatus(leftPath);
+		FileStatus rightStatus = fs.getFileStatus(rightPath);
+		List<Long> leftStarts = new ArrayList<Long>(leftSplits.size());
+		List<Long> rightStarts = new ArrayList<Long>(leftSplits.size());
+		List<FileSplit> origins = new ArrayList<FileSplit>(leftSplits.size());
+		Text name = new Text();
+
+		try (RecordScanner leftScanner = new RecordScanner(fs, leftPath, fastq);
+				RecordScanner rightScanner = new RecordScanner(fs, rightPath, fastq)) {
+
+			// Mates are searched by their exact names if the first reads of both
+			// files have the same name, so that a read number such as ".1" in SRA
+			// reads is not taken as a mate suffix
+			boolean stripSuffix = leftScanner.seek(0) == -1 || rightScanner.seek(0) == -1
+					|| !isMate(leftScanner.getHeader().getBytes(), leftScanner.getHeader().getLength(),
+							rightScanner.getHeader().getBytes(), rightScanner.getHeader().getLength(), false);
+
+			for (InputSplit genericSplit : leftSplits) {
+				FileSplit split = (FileSplit) genericSplit;
+
+				if (split.getStart() == 0) {
+					leftStarts.add(0L);
+					rightStarts.add(0L);
+					origins.add(split);
+					continue;
+				}
+
+				long leftStart = leftScanner.seek(split.getStart());
+
+				if (leftStart == -1 || leftStart <= leftStarts.get(leftStarts.size() - 1))
+					continue;
+
+				name.set(leftScanner.getHeader());
+				long estimate = (long) (leftStart * ((double) rightStatus.getLen() / leftStatus.getLen()));
+				long rightStart = -1;
+
+				for (long window = MIN_SEARCH_WINDOW; rightStart == -1 && window <= MAX_SEARCH_WINDOW; window *= 4)
+					rightStart = rightScanner.find(name, Math.max(0, estimate - window), estimate + window, stripSuffix);
+
+				if (rightStart == -1) {
+					logger.warn("cannot find the mate of read {} in {}, reading {} and {} as a single split",
+							name, rightPath, leftPath, rightPath);
+					return planSingle(fs, leftSplits, leftPath, leftStatus, rightPath, rightStatus);
+				}
+
+				if (rightStart <= rightStarts.get(rightStarts.size() - 1)) {
+					logger.warn("mate of read {} found at offset {} of {} before the previous split, reading {} and {} as a single split",
+							name, rightStart, rightPath, leftPath, rightPath);
+					return planSingle(fs, leftSplits, leftPath, leftStatus, rightPath, rightStatus);
+				}
+
+				leftStarts.add(leftStart);
+				rightStarts.add(rightStart);
+				origins.add(split);
+			}
+		}
+
+		List<FileSplit[]> pairs = new ArrayList<FileSplit[]>(leftStarts.size());
+
+		for (int i = 0; i < leftStarts.size(); i++) {
+			long leftStart = leftStarts.get(i);
+			long leftEnd = (i + 1 < leftStarts.size())? leftStarts.get(i + 1) : leftStatus.getLen();
+			long rightStart = rightStarts.get(i);
+			long rightEnd = (i + 1 < rightStarts.size())? rightStarts.get(i + 1) : rightStatus.getLen();
+
+			FileSplit left = new IndexedFileSplit(leftPath, leftStart, leftEnd - leftStart,
+					origins.get(i).getLocations(), -1, -1, leftStart);
+			FileSplit right = new IndexedFileSplit(rightPath, rightStart, rightEnd - rightStart,
+					getHosts(fs, rightStatus, rightStart), -1, -1, rightStart);
+
+			pairs.add(new FileSplit[] {left, right});
+		}
+
+		logger.debug("record-aligned paired splits from sampled boundaries: {}", pairs.size());
+		return pairs;
+	}
+
+	/**
+	 * Read both files as a single split, which is always record-aligned
+	 */
+	private static List<FileSplit[]> planSingle(FileSystem fs, List<InputSplit> leftSplits, Path leftPath, FileStatus leftStatus,
+			Path rightPath, FileStatus rightStatus) throws IOException {
+		List<FileSplit[]> pairs = new ArrayList<FileSplit[]>(1);
+		FileSplit left = new FileSplit(leftPath, 0, leftStatus.getLen(),
+				((FileSplit) leftSplits.get(0)).getLocations());
+		FileSplit right = new FileSplit(rightPath, 0, rightStatus.getLen(),
+				getHosts(fs, rightStatus, 0));
+
+		pairs.add(new FileSplit[] {left, right});
+		return pairs;
+	}
+
+	private static String[] getHosts(FileSystem fs, FileStatus status, long offset) throws IOException {
+		BlockLocation[] locations = fs.getFileBlockLocations(status, offset, 1);
+		return (locations == null || locations.length == 0)? new String[0] : locations[0].getHosts();
+	}
+
+	/**
+	 * Returns the length of the read name in a header line (starting at 1),
+	 * without comments and, if <code>stripSuffix</code> is true, without a
+	 * "/1", ".1" or "_1" mate suffix (or "/2", ".2" or "_2").
+	 */
+	static int getMateNameLength(byte[] header, int length, boolean stripSuffix) {
+		int end = 1;
+
+		while (end < length && header[end] != ' ' && header[end] != '\t' && header[end] != '\n' && header[end] != '\r')
+			end++;
+
+		if (stripSuffix && end > 2 && (header[end - 1] == '1' || header[end - 1] == '2')
+				&& (header[end - 2] == '/' || header[end - 2] == '.' || header[end - 2] == '_'))
+			end -= 2;
+
+		return end - 1;
+	}
+
+	/**
+	 * Check whether two header lines belong to mates, i.e. their read names
+	 * are the same ignoring comments (e.g. "1:N:0" and "2:N:0" in Illumina
+	 * reads) and the mate suffixes (e.g. "/1" and "/2", or ".1" and ".2"
+	 * in SRA reads).
+	 */
+	static boolean isMate(byte[] left, int leftLength, byte[] right, int rightLength) {
+		return isMate(left, leftLength, right, rightLength, true);
+	}
+
+	/**
+	 * Check whether two header lines belong to mates, ignoring the mate
+	 * suffixes only if <code>stripSuffix</code> is true.
+	 */
+	static boolean isMate(byte[] left, int leftLength, byte[] right, int rightLength, boolean stripSuffix) {
+		int length = getMateNameLength(left, leftLength, stripSuffix);
+
+		if (length != getMateNameLength(right, rightLength, stripSuffix))
+			return false;
+
+		for (int i = 1; i <= length; i++) {
+			if (left[i] != right[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sequential scanner of records starting at arbitrary offsets
+	 */
+	private static final class RecordScanner implements Closeable {
+
+		private final FSDataInputStream in;
+		private final boolean fastq;
+		private final byte marker;
+		private final Text[] lines;
+		private final long[] lineStarts;
+		private int numLines;
+		private LineReader reader;
+		private long pos;
+
+		RecordScanner(FileSystem fs, Path file, boolean fastq) throws IOException {
+			this.in = fs.open(file);
+			this.fastq = fastq;
+			this.marker = (byte) (fastq? '@' : '>');
+			this.lines = new Text[] {new Text(), new Text(), new Text(), new Text()};
+			this.lineStarts = new long[4];
+		}
+
+		/**
+		 * Move to the first record starting at or after <code>offset</code>.
+		 *
+		 * @return the offset of the record, or -1 if there is none
+		 */
+		long seek(long offset) throws IOException {
+			in.seek(offset);
+			reader = new LineReader(in, SCAN_BUFFER_SIZE);
+			pos = offset;
+			numLines = 0;
+
+			// Discard the first line if the offset is not at the beginning of a line
+			if (offset > 0) {
+				byte[] previous = new byte[1];
+
+				if (in.read(offset - 1, previous, 0, 1) == 1 && previous[0] != '\n')
+					pos += reader.skipLine();
+			}
+
+			return sync();
+		}
+
+		/**
+		 * Find the record with the given name within <code>[from, to]</code>,
+		 * ignoring the mate suffixes if <code>stripSuffix</code> is true.
+		 *
+		 * @return the offset of the record, or -1 if not found
+		 */
+		long find(Text name, long from, long to, boolean stripSuffix) throws IOException {
+			long recordStart = seek(from);
+
+			while (recordStart != -1 && recordStart <= to) {
+				if (isMate(name.getBytes(), name.getLength(), lines[0].getBytes(), lines[0].getLength(), stripSuffix))
+					return recordStart;
+
+				recordStart = next();
+			}
+
+			return -1;
+		}
+
+		Text getHeader() {
+			return lines[0];
+		}
+
+		private long next() throws IOException {
+			if (fastq) {
+				numLines = 0;
+			} else {
+				// Discard the header and the sequence lines
+				shift(1);
+
+				while (true) {
+					if (numLines == 0 && !readLine())
+						return -1;
+
+					if (startsWithMarker(lines[0]))
+						return lineStarts[0];
+
+					shift(1);
+				}
+			}
+
+			return sync();
+		}
+
+		private long sync() throws IOException {
+			while (true) {
+				int needed = fastq? 4 : 1;
+
+				while (numLines < needed) {
+					if (!readLine())
+						return -1;
+				}
+
+				if (fastq? isFastQRecord() : startsWithMarker(lines[0]))
+					return lineStarts[0];
+
+				shift(1);
+			}
+		}
+
+		private boolean isFastQRecord() {
+			return startsWithMarker(lines[0])
+					&& lines[2].getLength() > 0 && lines[2].getBytes()[0] == '+'
+					&& lineLength(lines[1]) == lineLength(lines[3]);
+		}
+
+		private boolean startsWithMarker(Text line) {
+			return line.getLength() > 0 && line.getBytes()[0] == marker;
+		}
+
+		private static int lineLength(Text line) {
+			int length = line.getLength();
+
+			while (length > 0 && (line.getBytes()[length - 1] == '\n' || line.getBytes()[length - 1] == '\r'))
+				length--;
+
+			return length;
+		}
+
+		private boolean readLine() throws IOException {
+			long lineStart = pos;
+			int bytesRead = reader.readLine(lines[numLines]);
+
+			if (bytesRead == 0)
+				return false;
+
+			lineStarts[numLines++] = lineStart;
+			pos += bytesRead;
+			return true;
+		}
+
+		private void shift(int n) {
+			for (int i = 0; i < n; i++) {
+				Text first = lines[0];
+				System.arraycopy(lines, 1, lines, 0, lines.length - 1);
+				System.arraycopy(lineStarts, 1, lineStarts, 0, lineStarts.length - 1);
+				lines[lines.length - 1] = first;
+				numLines--;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import es.udc.gac.hadoop.sequence.parser.util.AsciiSequence;
+
+/**
+ * Columnar batch of FASTQ/FASTA records. Names, bases and qualities of
+ * all the records are stored in three contiguous byte arrays, and the
+ * position of the ith field within its array is given by the ith and
+ * (i+1)th elements of the corresponding offset array. The byte offset
+ * in file of each record is also kept.
+ * 
+ * Fields do not include the starting '@'/'>' character nor the LF at
+ * the end of the line. For FASTA records the bases may contain the LF
+ * characters that separate sequence lines and there are no qualities.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class SequenceBatch implements Writable {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int size;
+	private long[] positions;
+	private byte[] names, bases, qualities;
+	private int[] nameOffsets, baseOffsets, qualityOffsets;
+	private AsciiSequence view;
+
+	public SequenceBatch() {
+		positions = new long[INITIAL_CAPACITY];
+		names = new byte[0];
+		bases = new byte[0];
+		qualities = new byte[0];
+		nameOffsets = new int[INITIAL_CAPACITY + 1];
+		baseOffsets = new int[INITIAL_CAPACITY + 1];
+		qualityOffsets = new int[INITIAL_CAPACITY + 1];
+		view = new AsciiSequence();
+		clear();
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Append a record to this batch.
+	 *
+	 * @param position the byte offset of the record in file
+	 * @param record the record
+	 */
+	public void add(long position, SequenceRecord record) {
+		ensureCapacity(size + 1);
+		byte[] bytes = record.getBytes();
+		positions[size] = position;
+		names = append(names, nameOffsets, bytes, record.getNameOffset(), record.getNameLength());
+		bases = append(bases, baseOffsets, bytes, record.getSequenceOffset(), record.getSequenceLength());
+		qualities = append(qualities, qualityOffsets, bytes, record.getQualityOffset(), record.getQualityLength());
+		size++;
+	}
+
+	/**
+	 * Return the number of records.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the byte offset in file of the ith record.
+	 */
+	public long getPosition(int i) {
+		return positions[i];
+	}
+
+	/**
+	 * Return the byte offsets in file of all the records. Only
+	 * the first {@link #size()} elements are valid.
+	 */
+	public long[] getPositions() {
+		return positions;
+	}
+
+	public byte[] getNames() {
+		return names;
+	}
+
+	public int[] getNameOffsets() {
+		return nameOffsets;
+	}
+
+	public byte[] getBases() {
+		return bases;
+	}
+
+	public int[] getBaseOffsets() {
+		return baseOffsets;
+	}
+
+	public byte[] getQualities() {
+		return qualities;
+	}
+
+	public int[] getQualityOffsets() {
+		return qualityOffsets;
+	}
+
+	/**
+	 * Return the name of the ith record. The returned view is reused by
+	 * the next call to {@link #getName(int)}, {@link #getSequence(int)}
+	 * or {@link #getQuality(int)}.
+	 */
+	public CharSequence getName(int i) {
+		return view(names, nameOffsets, i);
+	}
+
+	/**
+	 * Return the bases of the ith record. The returned view is reused by
+	 * the next call to {@link #getName(int)}, {@link #getSequence(int)}
+	 * or {@link #getQuality(int)}.
+	 */
+	public CharSequence getSequence(int i) {
+		return view(bases, baseOffsets, i);
+	}
+
+	/**
+	 * Return the qualities of the ith record. The returned view is reused by
+	 * the next call to {@link #getName(int)}, {@link #getSequence(int)}
+	 * or {@link #getQuality(int)}.
+	 */
+	public CharSequence getQuality(int i) {
+		return view(qualities, qualityOffsets, i);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, size);
+
+		for (int i = 0; i < size; i++)
+			WritableUtils.writeVLong(out, (i == 0)? positions[i] : positions[i] - positions[i-1]);
+
+		writeField(out, names, nameOffsets);
+		writeField(out, bases, baseOffsets);
+		writeField(out, qualities, qualityOffsets);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		clear();
+		int newSize = WritableUtils.readVInt(in);
+		ensureCapacity(newSize);
+
+		for (int i = 0; i < newSize; i++)
+			positions[i] = WritableUtils.readVLong(in) + ((i == 0)? 0 : positions[i-1]);
+
+		size = newSize;
+		names = readField(in, names, nameOffsets, size);
+		bases = readField(in, bases, baseOffsets, size);
+		qualities = readField(in, qualities, qualityOffsets, size);
+	}
+
+	private CharSequence view(byte[] field, int[] offsets, int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Incorrect record: "+i);
+
+		view.set(field, offsets[i], offsets[i+1] - offsets[i]);
+		return view;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (positions.length < capacity) {
+			int newCapacity = Math.max(capacity, positions.length * 2);
+			positions = Arrays.copyOf(positions, newCapacity);
+			nameOffsets = Arrays.copyOf(nameOffsets, newCapacity + 1);
+			baseOffsets = Arrays.copyOf(baseOffsets, newCapacity + 1);
+			qualityOffsets = Arrays.copyOf(qualityOffsets, newCapacity + 1);
+		}
+	}
+
+	private byte[] append(byte[] field, int[] offsets, byte[] bytes, int offset, int length) {
+		int start = (size == 0)? 0 : offsets[size];
+		field = ensureCapacity(field, start + length);
+		System.arraycopy(bytes, offset, field, start, length);
+		offsets[size] = start;
+		offsets[size+1] = start + length;
+		return field;
+	}
+
+	private void writeField(DataOutput out, byte[] field, int[] offsets) throws IOException {
+		for (int i = 0; i < size; i++)
+			WritableUtils.writeVInt(out, offsets[i+1] - offsets[i]);
+
+		out.write(field, 0, offsets[size]);
+	}
+
+	private static byte[] readField(DataInput in, byte[] field, int[] offsets, int size) throws IOException {
+		offsets[0] = 0;
+
+		for (int i = 0; i < size; i++)
+			offsets[i+1] = offsets[i] + WritableUtils.readVInt(in);
+
+		field = ensureCapacity(field, offsets[size]);
+		in.readFully(field, 0, offsets[size]);
+		return field;
+	}
+
+	private static byte[] ensureCapacity(byte[] array, int capacity) {
+		if (array.length < capacity)
+			return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+
+		return array;
+	}
+}
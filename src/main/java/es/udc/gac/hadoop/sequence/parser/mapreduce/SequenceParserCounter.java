@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+/**
+ * Task counters published by the sequence record readers when they are
+ * closed (see {@link es.udc.gac.hadoop.sequence.parser.util.Configuration#setCounters}).
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public enum SequenceParserCounter {
+	/** Reads emitted by single-end record readers (both mates of paired-end records are counted) */
+	RECORDS_READ,
+	/** Paired-end records emitted */
+	PAIRS_READ,
+	/** Uncompressed bytes consumed, including discarded data */
+	BYTES_READ,
+	/** Compressed bytes consumed (same as BYTES_READ for uncompressed inputs) */
+	COMPRESSED_BYTES_READ,
+	/** Records skipped at the start of record-aligned splits */
+	SPLIT_START_RECORDS_DISCARDED,
+	/** Bytes discarded at the start of splits to find the first record */
+	SPLIT_START_BYTES_DISCARDED,
+	/**
+	 * Bytes read past the end of splits to complete their last record
+	 * (compressed bytes up to the last block read for compressed inputs)
+	 */
+	SPLIT_END_BYTES_READ,
+	/** Lines skipped because they did not belong to any valid record */
+	MALFORMED_LINES_SKIPPED,
+	/** Time spent reading and decompressing the input (ms) */
+	READ_TIME_MILLIS,
+	/** Time spent parsing records, estimated from a sample of the records (ms) */
+	PARSE_TIME_MILLIS
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+
+import es.udc.gac.hadoop.sequence.parser.util.AsciiSequence;
+
+/**
+ * Text holding a whole FASTQ/FASTA record that also keeps the offsets
+ * of the name, sequence and quality fields. Fields can be accessed as
+ * byte slices of {@link #getBytes()} or as CharSequence views without
+ * decoding or copying the record.
+ * 
+ * The serialized form is the same as for Text, so offsets are computed
+ * again when the record is read with {@link #readFields(DataInput)}.
+ * If the content is modified using any Text method, {@link #parseFields()}
+ * must be called to update the offsets.
+ * 
+ * For FASTA records the sequence may contain the LF characters that
+ * separate sequence lines and the quality is empty.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class SequenceRecord extends Text {
+
+	private static final byte LF_BYTE = '\n';
+
+	private int nameOffset, nameLength;
+	private int sequenceOffset, sequenceLength;
+	private int qualityOffset, qualityLength;
+	private AsciiSequence name, sequence, quality;
+
+	public SequenceRecord() {
+		super();
+		name = new AsciiSequence();
+		sequence = new AsciiSequence();
+		quality = new AsciiSequence();
+	}
+
+	public SequenceRecord(byte[] utf8) {
+		super(utf8);
+		name = new AsciiSequence();
+		sequence = new AsciiSequence();
+		quality = new AsciiSequence();
+		parseFields();
+	}
+
+	/**
+	 * Return the name of the sequence, without the starting
+	 * '@' or '>' character.
+	 */
+	public CharSequence getName() {
+		name.set(getBytes(), nameOffset, nameLength);
+		return name;
+	}
+
+	/**
+	 * Return the bases of the sequence.
+	 */
+	public CharSequence getSequence() {
+		sequence.set(getBytes(), sequenceOffset, sequenceLength);
+		return sequence;
+	}
+
+	/**
+	 * Return the qualities of the sequence (empty for FASTA records).
+	 */
+	public CharSequence getQuality() {
+		quality.set(getBytes(), qualityOffset, qualityLength);
+		return quality;
+	}
+
+	public int getNameOffset() {
+		return nameOffset;
+	}
+
+	public int getNameLength() {
+		return nameLength;
+	}
+
+	public int getSequenceOffset() {
+		return sequenceOffset;
+	}
+
+	public int getSequenceLength() {
+		return sequenceLength;
+	}
+
+	public int getQualityOffset() {
+		return qualityOffset;
+	}
+
+	public int getQualityLength() {
+		return qualityLength;
+	}
+
+	public boolean hasQuality() {
+		return qualityLength > 0;
+	}
+
+	/**
+	 * Set the field offsets (measured in bytes). Lengths do not include LF.
+	 */
+	void setFields(int nameOffset, int nameLength, int sequenceOffset, int sequenceLength,
+			int qualityOffset, int qualityLength) {
+		this.nameOffset = nameOffset;
+		this.nameLength = nameLength;
+		this.sequenceOffset = sequenceOffset;
+		this.sequenceLength = sequenceLength;
+		this.qualityOffset = qualityOffset;
+		this.qualityLength = qualityLength;
+	}
+
+	/**
+	 * Compute the field offsets from the current content, which must
+	 * be a single FASTQ or FASTA record as emitted by HSP.
+	 */
+	public void parseFields() {
+		byte[] bytes = getBytes();
+		int length = getLength();
+
+		if (length == 0) {
+			setFields(0, 0, 0, 0, 0, 0);
+			return;
+		}
+
+		int nameEnd = lineEnd(bytes, 0, length);
+		int sequenceOffset = Math.min(nameEnd + 1, length);
+
+		if (bytes[0] == '@') {
+			// FASTQ: name, bases, '+' and qualities
+			int sequenceEnd = lineEnd(bytes, sequenceOffset, length);
+			int commentEnd = lineEnd(bytes, Math.min(sequenceEnd + 1, length), length);
+			int qualityOffset = Math.min(commentEnd + 1, length);
+			int qualityEnd = lineEnd(bytes, qualityOffset, length);
+			setFields(1, nameEnd - 1, sequenceOffset, sequenceEnd - sequenceOffset,
+					qualityOffset, qualityEnd - qualityOffset);
+		} else {
+			// FASTA: name and sequence lines
+			int sequenceEnd = length;
+
+			if (sequenceEnd > sequenceOffset && bytes[sequenceEnd - 1] == LF_BYTE)
+				sequenceEnd--;
+
+			setFields(1, Math.max(nameEnd - 1, 0), sequenceOffset, sequenceEnd - sequenceOffset, length, 0);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		super.readFields(in);
+		parseFields();
+	}
+
+	private static int lineEnd(byte[] bytes, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (bytes[i] == LF_BYTE)
+				return i;
+		}
+		return to;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+
+/**
+ * Key of a sequence window: the name of the FASTA record and the offset
+ * of the first base of the window within the sequence of the record.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class SequenceWindowKey implements WritableComparable<SequenceWindowKey> {
+
+	private final Text name;
+	private long offset;
+
+	public SequenceWindowKey() {
+		name = new Text();
+		offset = 0;
+	}
+
+	public SequenceWindowKey(String name, long offset) {
+		this.name = new Text(name);
+		this.offset = offset;
+	}
+
+	public Text getName() {
+		return name;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public void set(Text name, long offset) {
+		this.name.set(name);
+		this.offset = offset;
+	}
+
+	public void setOffset(long offset) {
+		this.offset = offset;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		name.write(out);
+		out.writeLong(offset);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		name.readFields(in);
+		offset = in.readLong();
+	}
+
+	@Override
+	public int compareTo(SequenceWindowKey other) {
+		int cmp = name.compareTo(other.name);
+		return (cmp != 0)? cmp : Long.compare(offset, other.offset);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof SequenceWindowKey))
+			return false;
+
+		SequenceWindowKey other = (SequenceWindowKey) obj;
+		return offset == other.offset && name.equals(other.name);
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode() * 31 + Long.hashCode(offset);
+	}
+
+	@Override
+	public String toString() {
+		return name+":"+offset;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+
+/**
+ * RecordReader for single-end binary sequence files, which emits the same
+ * key/value pairs (LongWritable/Text) as the FASTQ/FASTA record readers,
+ * using record ordinals as keys.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class SingleEndBinarySequenceRecordReader extends BinarySequenceRecordReader<Text> {
+
+	private Text value;
+
+	public SingleEndBinarySequenceRecordReader(TaskAttemptContext context) {
+		if (Configuration.getSequenceRecord(context.getConfiguration()))
+			value = new SequenceRecord();
+		else
+			value = new Text();
+	}
+
+	@Override
+	protected boolean isPaired() {
+		return false;
+	}
+
+	@Override
+	protected void readValue(BinarySequenceFile.Reader reader) throws IOException {
+		reader.next(value);
+	}
+
+	@Override
+	public Text getCurrentValue() {
+		return value;
+	}
+}
@@ -19,15 +19,28 @@
 package es.udc.gac.hadoop.sequence.parser.mapreduce;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+import es.udc.gac.hadoop.sequence.parser.util.GzipFormat;
+import es.udc.gac.hadoop.sequence.parser.util.GzipIndex;
+import es.udc.gac.hadoop.sequence.parser.util.RecordIndex;
 
 /**
  * Text-based InputFormat for single-end sequence files.
@@ -38,17 +51,143 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
  */
 public abstract class SingleEndSequenceInputFormat extends FileInputFormat<LongWritable, Text> {
 
+	private static final Logger logger = LogManager.getLogger();
 	private static final double SPLIT_SLOP = 1.1; // 10% slop
 
 	@Override
 	protected boolean isSplitable(JobContext context, Path file) {
-		final CompressionCodec codec = new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
+		return isSplitable(context.getConfiguration(), file);
+	}
+
+	static boolean isSplitable(org.apache.hadoop.conf.Configuration conf, Path file) {
+		final CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
 		if (null == codec) {
 			return true;
 		}
+		if (codec instanceof GzipCodec) {
+			return GzipFormat.isSplittable(conf, file);
+		}
 		return codec instanceof SplittableCompressionCodec;
 	}
 
+	/**
+	 * Generate the splits of the input files. The splits of files
+	 * with a record index are aligned to record boundaries.
+	 */
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		List<InputSplit> splits = super.getSplits(job);
+		org.apache.hadoop.conf.Configuration conf = job.getConfiguration();
+
+		if (!Configuration.getRecordIndex(conf))
+			return splits;
+
+		List<InputSplit> result = new ArrayList<InputSplit>(splits.size());
+		int i = 0;
+
+		// Splits of the same file are consecutive
+		while (i < splits.size()) {
+			Path file = ((FileSplit) splits.get(i)).getPath();
+			List<FileSplit> fileSplits = new ArrayList<FileSplit>();
+
+			while (i < splits.size() && ((FileSplit) splits.get(i)).getPath().equals(file))
+				fileSplits.add((FileSplit) splits.get(i++));
+
+			result.addAll(getRecordAlignedSplits(conf, file, fileSplits));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Align the splits of a file to record boundaries using its record index.
+	 *
+	 * @param conf the configuration
+	 * @param file the input file
+	 * @param splits the splits of the file
+	 *
+	 * @return the aligned splits, or the given ones if the file has no usable index
+	 */
+	static List<FileSplit> getRecordAlignedSplits(org.apache.hadoop.conf.Configuration conf, Path file, List<FileSplit> splits) throws IOException {
+		FileSystem fs = file.getFileSystem(conf);
+		RecordIndex index = RecordIndex.read(fs, file);
+
+		if (index == null || index.getNumEntries() == 0)
+			return splits;
+
+		List<FileSplit> aligned = new ArrayList<FileSplit>(splits.size());
+		CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+		GzipIndex gzipIndex = null;
+
+		if (codec != null && splits.size() > 1) {
+			if (codec instanceof GzipCodec)
+				gzipIndex = GzipIndex.read(fs, file);
+
+			if (gzipIndex == null) {
+				// Compressed splits cannot start at arbitrary uncompressed offsets
+				logger.debug("ignoring record index of {}: it requires a gzip index", file);
+				return splits;
+			}
+		}
+
+		// First index entry of each split, and the original split where it was found
+		int[] entries = new int[splits.size()];
+		int[] origins = new int[splits.size()];
+		int numSplits = 0;
+
+		for (int i = 0; i < splits.size(); i++) {
+			FileSplit split = splits.get(i);
+			int entry;
+
+			if (split.getStart() == 0) {
+				entry = 0;
+			} else if (codec == null) {
+				entry = index.findEntry(split.getStart());
+			} else {
+				int checkpoint = gzipIndex.findCheckpoint(split.getStart(), Long.MAX_VALUE);
+
+				if (checkpoint == -1)
+					break;
+
+				entry = index.findEntry(gzipIndex.getCheckpoints().get(checkpoint).getUncompressedOffset());
+			}
+
+			if (entry == index.getNumEntries())
+				break;
+
+			// Merge splits without entries into the previous one
+			if (numSplits == 0 || entry != entries[numSplits - 1]) {
+				entries[numSplits] = entry;
+				origins[numSplits++] = i;
+			}
+		}
+
+		for (int i = 0; i < numSplits; i++) {
+			int entry = entries[i];
+			long firstRecord = index.getOrdinal(entry);
+			long numRecords = ((i + 1 < numSplits)? index.getOrdinal(entries[i + 1]) : index.getNumRecords()) - firstRecord;
+			long uncompressedStart = (i == 0)? 0 : index.getOffset(entry);
+
+			FileSplit split = splits.get(origins[i]);
+			long start, length;
+
+			if (codec == null) {
+				start = uncompressedStart;
+				length = ((i + 1 < numSplits)? index.getOffset(entries[i + 1]) : index.getFileLength()) - start;
+			} else {
+				// Compressed offsets are just an estimation for scheduling
+				start = split.getStart();
+				length = ((i + 1 < numSplits)? splits.get(origins[i + 1]).getStart() : index.getFileLength()) - start;
+			}
+
+			aligned.add(new IndexedFileSplit(file, start, length, split.getLocations(),
+					firstRecord, numRecords, uncompressedStart));
+		}
+
+		logger.debug("record-aligned splits for {}: {}", file, aligned);
+		return aligned;
+	}
+
 	/**
 	 * Get the number of possible splits from one file 
 	 * 
@@ -18,21 +18,29 @@
  */
 package es.udc.gac.hadoop.sequence.parser.mapreduce;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.CharacterCodingException;
 
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.ElasticByteBufferPool;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.BZip2Codec;
 import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.io.compress.CompressionInputStream;
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.io.compress.SplitCompressionInputStream;
 import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -40,8 +48,18 @@ import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import es.udc.gac.hadoop.sequence.parser.util.BZip2BlockInputStream;
+import es.udc.gac.hadoop.sequence.parser.util.BufferPool;
+import es.udc.gac.hadoop.sequence.parser.util.ByteBufferInputStream;
 import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+import es.udc.gac.hadoop.sequence.parser.util.GzipCheckpointInputStream;
+import es.udc.gac.hadoop.sequence.parser.util.GzipFormat;
+import es.udc.gac.hadoop.sequence.parser.util.GzipIndex;
+import es.udc.gac.hadoop.sequence.parser.util.GzipMemberInputStream;
 import es.udc.gac.hadoop.sequence.parser.util.LineReader;
+import es.udc.gac.hadoop.sequence.parser.util.MappedFileInputStream;
+import es.udc.gac.hadoop.sequence.parser.util.ReadAheadInputStream;
+import es.udc.gac.hadoop.sequence.parser.util.TimedInputStream;
 
 /**
  * RecordReader which breaks the data of single-end sequence files in key/value pairs (LongWritable/Text)
@@ -53,16 +71,39 @@ import es.udc.gac.hadoop.sequence.parser.util.LineReader;
 public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWritable, Text> {
 
 	private static final Logger logger = LogManager.getLogger();
+	private static final int TIMING_SAMPLE_MASK = 31; // parse time is measured every 32 records
 	private FSDataInputStream fileInputStream;
 	private CompressionInputStream compressionFileInputStream;
-	private Seekable filePos;
 	private boolean isCompressedInput;
 	private boolean trimSequenceName;
 	private Decompressor decompressor;
+	private Class<?> decompressorCodec;
 	private LineReader lineReader;
 	private int bufferSize;
+	private BufferPool bufferPool; // null if disabled
+	private byte[] lineBuffer; // buffer of the line reader leased from bufferPool
+	private int readAheadBuffers;
+	private int readAheadBufferSize;
+	private int minBZip2Threads; // > 0 to always use BZip2BlockInputStream
+	private boolean ordinalKeys;
+	private long firstRecord;
+	private boolean isIndexedSplit;
+	private long numRecords; // number of records of indexed splits, -1 otherwise
+	private long recordsRead;
+	private boolean ignoreSplitEnd;
+	private TaskAttemptContext context; // to publish counters, null if disabled
+	private TimedInputStream timedInputStream; // null if counters are disabled
+	private boolean alignedStart; // whether the split starts on a record boundary
+	private long initialStart;
+	private long initialPos;
+	private long recordsEmitted;
+	private long discardedRecords;
+	private long discardedBytes;
+	private long malformedLines;
+	private long parseNanos;
 	protected LongWritable key;
 	protected Text value;
+	protected SequenceRecord record; // same object as value if SequenceRecord values are enabled, null otherwise
 	protected long start;
 	protected long end;
 	protected long pos;
@@ -70,12 +111,55 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 	public SingleEndSequenceRecordReader(TaskAttemptContext context) {
 		bufferSize = Configuration.getInputBufferSize(context.getConfiguration());
 		trimSequenceName = Configuration.getTrimSequenceName(context.getConfiguration());
+		ordinalKeys = Configuration.getRecordOrdinalKeys(context.getConfiguration());
+		readAheadBuffers = Configuration.getReadAheadBuffers(context.getConfiguration());
+		readAheadBufferSize = Configuration.getReadAheadBufferSize(context.getConfiguration());
+		bufferPool = BufferPool.getInstance(context.getConfiguration());
 		key = new LongWritable();
-		value = new Text(new byte[bufferSize]);
+		numRecords = -1;
+
+		/*
+		 * Values are handed to the caller, so their arrays cannot be pooled.
+		 * With the buffer pool enabled, they grow up to the record size
+		 * instead of taking the size of the input buffer.
+		 */
+		if (Configuration.getSequenceRecord(context.getConfiguration())) {
+			record = (bufferPool != null)? new SequenceRecord() : new SequenceRecord(new byte[bufferSize]);
+			value = record;
+		} else {
+			record = null;
+			value = (bufferPool != null)? new Text() : new Text(new byte[bufferSize]);
+		}
+
 		start = pos = end = 0;
 	}
 
-	public abstract boolean nextKeyValue() throws IOException;
+	/**
+	 * Read the next record.
+	 *
+	 * @return false if there are no more records in the split
+	 */
+	protected abstract boolean nextRecord() throws IOException;
+
+	@Override
+	public boolean nextKeyValue() throws IOException {
+		if (timedInputStream == null || (recordsEmitted & TIMING_SAMPLE_MASK) != 0)
+			return countRecord(nextRecord());
+
+		// Time a sample of the records, excluding the time spent reading the input
+		long readNanos = timedInputStream.getNanos();
+		long startTime = System.nanoTime();
+		boolean found = nextRecord();
+		parseNanos += System.nanoTime() - startTime - (timedInputStream.getNanos() - readNanos);
+		return countRecord(found);
+	}
+
+	private boolean countRecord(boolean found) {
+		if (found)
+			recordsEmitted++;
+
+		return found;
+	}
 
 	@Override
 	public LongWritable getCurrentKey() {
@@ -89,7 +173,9 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 
 	@Override
 	public float getProgress() throws IOException, InterruptedException {
-		if (start == end) {
+		if (numRecords > 0) {
+			return Math.min(1.0f, recordsRead / (float) numRecords);
+		} else if (start == end) {
 			return 0.0f;
 		}
 		else {
@@ -104,19 +190,93 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 		Path file = split.getPath();
 		start = split.getStart();
 		end = start + split.getLength();
+		IndexedFileSplit indexedSplit = null;
+
+		if (Configuration.getCounters(conf))
+			this.context = context;
+
+		if (split instanceof IndexedFileSplit) {
+			// Split aligned to record boundaries using a record index
+			indexedSplit = (IndexedFileSplit) split;
+			isIndexedSplit = true;
+			firstRecord = indexedSplit.getFirstRecord();
+			numRecords = indexedSplit.getNumRecords();
+			recordsRead = 0;
+		}
 
 		logger.debug("input buffer size {}", bufferSize);
 
 		// open the file
 		logger.info("opening input split {}", split.toString());
-		fileInputStream = file.getFileSystem(conf).open(file);
+		FileSystem fs = file.getFileSystem(conf);
+		fileInputStream = fs.open(file);
 
 		// Check if input file is compressed
 		CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
 
-		if (codec != null) {
+		long fileLength = (codec instanceof GzipCodec)? fs.getFileStatus(file).getLen() : -1;
+
+		if (indexedSplit != null && codec instanceof GzipCodec && indexedSplit.getUncompressedStart() != 0) {
+			/*
+			 * Record-aligned split of a gzip file, which also needs a gzip index
+			 */
+			isCompressedInput = true;
+			GzipIndex index = GzipIndex.read(fs, file);
+
+			if (index == null)
+				throw new IOException("Missing gzip index for "+file);
+
+			long uncompressedStart = indexedSplit.getUncompressedStart();
+			GzipCheckpointInputStream in = new GzipCheckpointInputStream(fileInputStream, index,
+					index.findCheckpointBefore(uncompressedStart));
+			IOUtils.skipFully(in, uncompressedStart - in.getUncompressedPos());
+			compressionFileInputStream = in;
+
+			// Create line reader
+			lineReader = createLineReader(compressionFileInputStream, compressionFileInputStream);
+		} else if (codec instanceof GzipCodec && (start != 0 || end < fileLength)) {
+			/*
+			 * Only indexed, BGZF and multi-member gzip files are split by the input formats
+			 */
+			isCompressedInput = true;
+			GzipIndex index = GzipIndex.read(fs, file);
+
+			if (index != null) {
+				logger.debug("input split is compressed using gzip with a checkpoint index");
+
+				// Get checkpoint-aligned compression input stream
+				compressionFileInputStream = new GzipCheckpointInputStream(fileInputStream, start, end, index);
+			} else {
+				GzipFormat.Type type = GzipFormat.detect(fs, file, 0);
+
+				if (type == GzipFormat.Type.SINGLE_MEMBER)
+					type = GzipFormat.Type.MULTI_MEMBER;
+
+				logger.debug("input split is compressed using a splittable gzip format ({})", type);
+
+				// Get member-aligned compression input stream
+				compressionFileInputStream = new GzipMemberInputStream(fileInputStream, start, end, fileLength, type);
+			}
+
+			// Create line reader and adjust positions
+			lineReader = createLineReader(compressionFileInputStream, compressionFileInputStream);
+			start = ((SplitCompressionInputStream) compressionFileInputStream).getAdjustedStart();
+			end = ((SplitCompressionInputStream) compressionFileInputStream).getAdjustedEnd();
+		} else if (codec instanceof BZip2Codec && Math.max(Configuration.getBZip2Threads(conf), minBZip2Threads) > 0) {
+			int numThreads = Math.max(Configuration.getBZip2Threads(conf), minBZip2Threads);
+			logger.debug("input split is compressed using bzip2, decompressing blocks with {} threads", numThreads);
+			isCompressedInput = true;
+
+			// Get block-aligned compression input stream
+			compressionFileInputStream = new BZip2BlockInputStream(fileInputStream, start, end, numThreads);
+
+			// Create line reader and adjust positions
+			lineReader = createLineReader(compressionFileInputStream, compressionFileInputStream);
+			start = ((SplitCompressionInputStream) compressionFileInputStream).getAdjustedStart();
+			end = ((SplitCompressionInputStream) compressionFileInputStream).getAdjustedEnd();
+		} else if (codec != null) {
 			isCompressedInput = true;
-			decompressor = CodecPool.getDecompressor(codec);
+			getDecompressor(codec);
 
 			if (codec instanceof SplittableCompressionCodec) {
 				logger.debug("input split is compressed using a splittable codec ({})", codec.getClass().getSimpleName());
@@ -126,10 +286,9 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 						.createInputStream(fileInputStream, decompressor, start, end, SplittableCompressionCodec.READ_MODE.BYBLOCK);
 
 				// Create line reader and adjust positions
-				lineReader = new LineReader(compressionFileInputStream, bufferSize);
+				lineReader = createLineReader(compressionFileInputStream, compressionFileInputStream);
 				start = ((SplitCompressionInputStream) compressionFileInputStream).getAdjustedStart();
 				end = ((SplitCompressionInputStream) compressionFileInputStream).getAdjustedEnd();
-				filePos = compressionFileInputStream;
 			} else {
 				logger.debug("input split is compressed using a non-splittable codec ({})", codec.getClass().getSimpleName());
 
@@ -146,10 +305,29 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 				compressionFileInputStream = codec.createInputStream(fileInputStream, decompressor);
 
 				// Create line reader and adjust positions
-				lineReader = new LineReader(compressionFileInputStream, bufferSize);
-				filePos = fileInputStream;
+				lineReader = createLineReader(compressionFileInputStream, fileInputStream);
 			}
 
+		} else if (Configuration.getMemoryMap(conf) && "file".equals(fs.getUri().getScheme())) {
+			logger.debug("input split is not compressed, memory-mapping local file");
+			isCompressedInput = false;
+
+			// Map the local file from the start of the split
+			fileInputStream.close();
+			lineReader = createLineReader(new MappedFileInputStream(new File(file.toUri().getPath()), start,
+					Configuration.getMemoryMapWindowSize(conf)), null);
+		} else if (Configuration.getByteBufferRead(conf)) {
+			logger.debug("input split is not compressed, reading byte buffers");
+			isCompressedInput = false;
+
+			// Seek to the start of the split
+			fileInputStream.seek(start);
+
+			// Create line reader
+			int readSize = Configuration.getByteBufferReadSize(conf);
+			lineReader = createLineReader(new ByteBufferInputStream(fileInputStream, readSize,
+					(bufferPool != null)? bufferPool : new ElasticByteBufferPool(),
+					Configuration.getByteBufferSkipChecksums(conf)), null);
 		} else {
 			logger.debug("input split is not compressed");
 			isCompressedInput = false;
@@ -158,28 +336,172 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 			fileInputStream.seek(start);
 
 			// Create line reader and adjust positions
-			lineReader = new LineReader(fileInputStream, bufferSize);
-			filePos = fileInputStream;
+			lineReader = createLineReader(fileInputStream, null);
 		}
 
+		initialStart = start;
+		initialPos = start;
+		alignedStart = (start == 0 || indexedSplit != null);
+
 		/**
 		 * If this split is not the first one, we throw away the first line
 		 * because we always (except the last split) read one extra record
-		 * in nextKeyValue() method (see also isSplitFinished() method)
+		 * in nextKeyValue() method (see also isSplitFinished() method).
+		 * Indexed splits start exactly on a record boundary.
 		 */
-		if (start != 0) {
-			start += readLine(value);
+		if (start != 0 && indexedSplit == null) {
+			int bytesRead = readLine(value);
+			start += bytesRead;
+			discardedBytes += bytesRead;
 			logger.debug("skipped '{}'", value);
 			value.clear();
 		}
 
 		pos = start;
 
+		if (indexedSplit != null && indexedSplit.getSkipRecords() > 0) {
+			// Skip the records between the index entry and the first record of the split
+			numRecords = Long.MAX_VALUE;
+
+			for (long i = 0; i < indexedSplit.getSkipRecords(); i++) {
+				if (!nextKeyValue())
+					throw new IOException("Unexpected end of file while skipping records of "+split);
+			}
+
+			numRecords = indexedSplit.getNumRecords();
+			recordsRead = 0;
+			discardedRecords = recordsEmitted;
+			discardedBytes += pos - start;
+			recordsEmitted = 0;
+		}
+
 		logger.debug("record reader initialized: start {}, end {}, splitPos {}", start, end, getSplitPosition());
 	}
 
+	/**
+	 * Create the line reader, reading ahead in a background thread if enabled.
+	 *
+	 * @param in the input stream
+	 * @param positionSource the object whose position is tracked by the line reader, or null
+	 */
+	private LineReader createLineReader(InputStream in, Seekable positionSource) throws IOException {
+		if (readAheadBuffers > 0) {
+			logger.debug("read-ahead enabled: {} buffers of {} bytes", readAheadBuffers, readAheadBufferSize);
+			ReadAheadInputStream readAheadStream = new ReadAheadInputStream(in, positionSource, readAheadBuffers, readAheadBufferSize);
+			in = readAheadStream;
+
+			if (positionSource != null)
+				positionSource = readAheadStream;
+		}
+
+		if (context != null) {
+			// Measure the time spent waiting for input data
+			timedInputStream = new TimedInputStream(in);
+			in = timedInputStream;
+		}
+
+		if (lineReader != null) {
+			// Reuse the buffer of the previous split
+			lineReader.reset(in, positionSource);
+			return lineReader;
+		}
+
+		if (bufferPool != null) {
+			// Lease the buffer, which is returned when the record reader is closed
+			lineBuffer = bufferPool.getArray(bufferSize);
+			return (positionSource != null)? new LineReader(in, lineBuffer, positionSource) : new LineReader(in, lineBuffer);
+		}
+
+		return (positionSource != null)? new LineReader(in, bufferSize, positionSource) : new LineReader(in, bufferSize);
+	}
+
+	/**
+	 * Get a decompressor for the codec, reusing the one of the previous
+	 * split if it was compressed with the same codec.
+	 */
+	private void getDecompressor(CompressionCodec codec) {
+		if (decompressor != null) {
+			if (decompressorCodec == codec.getClass()) {
+				decompressor.reset();
+				return;
+			}
+
+			CodecPool.returnDecompressor(decompressor);
+		}
+
+		decompressor = CodecPool.getDecompressor(codec);
+		decompressorCodec = codec.getClass();
+	}
+
+	/**
+	 * Close the current split, so that the record reader can be initialized
+	 * with another one. Unlike {@link #close()}, the line reader buffer and the
+	 * decompressor are kept to read the next split.
+	 */
+	void closeSplit() throws IOException {
+		if (context != null) {
+			publishCounters();
+			context = null;
+		}
+
+		// Reset the state of the split
+		firstRecord = 0;
+		isIndexedSplit = false;
+		numRecords = -1;
+		recordsRead = 0;
+		timedInputStream = null;
+		recordsEmitted = 0;
+		discardedRecords = 0;
+		discardedBytes = 0;
+		malformedLines = 0;
+		parseNanos = 0;
+
+		if (lineReader != null)
+			lineReader.close();
+	}
+
+	/**
+	 * Publish the task counters of this record reader.
+	 */
+	private void publishCounters() {
+		long bytesRead = pos - initialPos;
+		long compressedBytesRead = bytesRead;
+		long splitEndBytes = Math.max(0, pos - end);
+
+		if (isCompressedInput && lineReader != null) {
+			compressedBytesRead = Math.max(0, lineReader.getStreamPosition() - initialStart);
+			splitEndBytes = Math.max(0, lineReader.getStreamPosition() - end);
+		}
+
+		incrementCounter(SequenceParserCounter.RECORDS_READ, recordsEmitted);
+		incrementCounter(SequenceParserCounter.BYTES_READ, bytesRead);
+		incrementCounter(SequenceParserCounter.COMPRESSED_BYTES_READ, compressedBytesRead);
+		incrementCounter(SequenceParserCounter.SPLIT_START_RECORDS_DISCARDED, discardedRecords);
+		incrementCounter(SequenceParserCounter.SPLIT_START_BYTES_DISCARDED, discardedBytes);
+		incrementCounter(SequenceParserCounter.SPLIT_END_BYTES_READ, splitEndBytes);
+		incrementCounter(SequenceParserCounter.MALFORMED_LINES_SKIPPED, malformedLines);
+
+		if (timedInputStream != null) {
+			incrementCounter(SequenceParserCounter.READ_TIME_MILLIS, timedInputStream.getNanos() / 1000000);
+			incrementCounter(SequenceParserCounter.PARSE_TIME_MILLIS, parseNanos * (TIMING_SAMPLE_MASK + 1) / 1000000);
+		}
+	}
+
+	private void incrementCounter(SequenceParserCounter name, long amount) {
+		Counter counter = context.getCounter(name);
+
+		// Contexts without a reporter return no counters
+		if (counter != null)
+			counter.increment(amount);
+	}
+
 	@Override
 	public synchronized void close() throws IOException {
+		if (context != null) {
+			publishCounters();
+			context = null;
+		}
+
 		try {
 			if (lineReader != null) {
 				lineReader.close();
@@ -189,6 +511,11 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 				CodecPool.returnDecompressor(decompressor);
 				decompressor = null;
 			}
+
+			if (lineBuffer != null) {
+				bufferPool.putArray(lineBuffer);
+				lineBuffer = null;
+			}
 		}
 	}
 
@@ -198,12 +525,159 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 		return bytesRead;
 	}
 
-	protected void seek(long pos) throws IOException {
-		lineReader.seek(pos);
+	/**
+	 * Append the next line to <code>str</code>, copying it directly
+	 * from the line reader buffer.
+	 *
+	 * @return the number of bytes read (including LF)
+	 */
+	protected int appendLine(Text str) throws IOException {
+		int bytesRead = lineReader.appendLine(str);
+		pos += bytesRead;
+		return bytesRead;
+	}
+
+	/**
+	 * Append the next line to <code>str</code> without its LF, copying
+	 * it directly from the line reader buffer.
+	 *
+	 * @return the number of bytes read (including LF)
+	 */
+	protected int appendLineWithoutLF(Text str) throws IOException {
+		int bytesRead = lineReader.appendLineWithoutLF(str);
+		pos += bytesRead;
+		return bytesRead;
+	}
+
+	/**
+	 * Skip the next line without copying it.
+	 *
+	 * @return the number of bytes skipped (including LF)
+	 */
+	protected int skipLine() throws IOException {
+		int bytesRead = lineReader.skipLine();
+		pos += bytesRead;
+		return bytesRead;
+	}
+
+	/**
+	 * Skip the next line, which does not belong to any valid record. Lines
+	 * before the first record of unaligned splits are counted as data
+	 * discarded at the split start, and as malformed lines otherwise.
+	 *
+	 * @return the number of bytes skipped (including LF)
+	 */
+	protected int skipInvalidLine() throws IOException {
+		int bytesRead = skipLine();
+		countInvalidLine(bytesRead);
+		return bytesRead;
+	}
+
+	/**
+	 * Count a line of <code>bytesRead</code> bytes which has been read
+	 * but does not belong to any valid record (see {@link #skipInvalidLine()}).
+	 */
+	protected void countInvalidLine(int bytesRead) {
+		if (recordsEmitted == 0 && !alignedStart)
+			discardedBytes += bytesRead;
+		else
+			malformedLines++;
+	}
+
+	/**
+	 * Return the first byte of the next line without consuming it,
+	 * or -1 at EOF.
+	 */
+	protected int peekByte() throws IOException {
+		return lineReader.peek();
+	}
+
+	/**
+	 * Emit SequenceRecord values regardless of the configuration. It
+	 * must be called before the first record is read.
+	 */
+	void useSequenceRecord() {
+		if (record == null) {
+			record = (bufferPool != null)? new SequenceRecord() : new SequenceRecord(new byte[bufferSize]);
+			value = record;
+		}
+	}
+
+	/**
+	 * Decompress bzip2 input with {@link BZip2BlockInputStream} even if
+	 * bzip2 threads are disabled. Needed when several bzip2 files are read
+	 * at the same time, as the Hadoop 2.4 decompressor keeps part of its
+	 * state in a static field. It must be called before initialization.
+	 */
+	void useBZip2BlockInputStream() {
+		minBZip2Threads = 1;
+	}
+
+	/**
+	 * Return the length of the line that ends at the current end of
+	 * <code>str</code> and starts at <code>lineStart</code>, without LF.
+	 */
+	protected static int lineLength(Text str, int lineStart) {
+		int length = str.getLength();
+
+		if (length > lineStart && str.getBytes()[length - 1] == '\n')
+			length--;
+
+		return length - lineStart;
+	}
+
+	/**
+	 * Set the key of the current record: its global ordinal for indexed
+	 * splits if ordinal keys are enabled, or its byte offset otherwise.
+	 *
+	 * @param recordPos the position where the record starts
+	 */
+	protected void setKey(long recordPos) {
+		if (ordinalKeys && firstRecord >= 0 && isIndexedSplit)
+			key.set(firstRecord + recordsRead);
+		else
+			key.set(recordPos);
+
+		recordsRead++;
+	}
+
+	/**
+	 * Read the next record even if it lies outside the split (e.g., the
+	 * mate of the last read of an interleaved split).
+	 */
+	boolean nextKeyValueIgnoringSplitEnd() throws IOException {
+		ignoreSplitEnd = true;
+
+		try {
+			return nextKeyValue();
+		} finally {
+			ignoreSplitEnd = false;
+		}
+	}
+
+	/**
+	 * Replace the object where the next values will be stored, so that
+	 * the current value can be kept without copying it.
+	 *
+	 * @param newValue a SequenceRecord if SequenceRecord values are enabled
+	 *
+	 * @return the current value
+	 */
+	Text swapValue(Text newValue) {
+		Text current = value;
+		value = newValue;
+
+		if (record != null)
+			record = (SequenceRecord) newValue;
+
+		return current;
 	}
 
-	protected long getLineReaderPosition() {
-		return lineReader.getPos();
+	/**
+	 * Whether keys are global ordinals instead of byte offsets.
+	 */
+	boolean hasOrdinalKeys() {
+		return ordinalKeys && firstRecord >= 0 && isIndexedSplit;
 	}
 
 	protected boolean getTrimSequenceName() {
@@ -211,6 +685,16 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 	}
 
 	protected boolean isSplitFinished() throws IOException {
+		if (ignoreSplitEnd)
+			return false;
+
+		// Indexed splits contain a known number of records, or end exactly at a record boundary
+		if (numRecords >= 0)
+			return recordsRead >= numRecords;
+
+		if (isIndexedSplit)
+			return pos >= end;
+
 		/*
 		 *  We always read one extra record, which lies outside the 
 		 *  upper split limit
@@ -225,7 +709,12 @@ public abstract class SingleEndSequenceRecordReader extends RecordReader<LongWri
 		if (!isCompressedInput) {
 			return pos;
 		} else {
-			return filePos.getPos();
+			/*
+			 * Position of the compressed block that contains the last
+			 * consumed byte, so peeking at the next block does not
+			 * finish the split
+			 */
+			return lineReader.getStreamPosition();
 		}
 	}
 
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import es.udc.gac.hadoop.sequence.parser.util.GzipIndex;
+import es.udc.gac.hadoop.sequence.parser.util.RecordIndex;
+
+/**
+ * JVM-wide cache of the paired-end splits of pairs of mate files, so that
+ * repeated submissions over the same dataset do not plan them again. Entries
+ * are keyed by the path, length and modification time of both files and of
+ * their record and gzip indexes (if any), together with the input format and
+ * the settings that affect the splits, and the least recently used ones are
+ * evicted first.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+final class SplitCache {
+
+	private static final String SPLIT_SETTINGS_PREFIX = "mapreduce.input.fileinputformat.split.";
+	private static final String HSP_SETTINGS_PREFIX = "hsp.";
+	private static final Map<String, List<InputSplit>> cache = new LinkedHashMap<String, List<InputSplit>>(16, 0.75f, true);
+
+	private SplitCache() {
+	}
+
+	/**
+	 * Get the settings of a job that affect its splits.
+	 *
+	 * @param conf the configuration
+	 * @param inputFormat the input format of the mate files
+	 *
+	 * @return a string representation of the settings
+	 */
+	static String getSettings(Configuration conf, String inputFormat) {
+		Map<String, String> settings = new TreeMap<String, String>();
+
+		for (Map.Entry<String, String> entry : conf) {
+			String key = entry.getKey();
+
+			if (key.startsWith(SPLIT_SETTINGS_PREFIX) || key.startsWith(HSP_SETTINGS_PREFIX))
+				settings.put(key, entry.getValue());
+		}
+
+		settings.remove(es.udc.gac.hadoop.sequence.parser.util.Configuration.SPLIT_THREADS_KEY);
+		settings.remove(es.udc.gac.hadoop.sequence.parser.util.Configuration.SPLIT_CACHE_SIZE_KEY);
+		return inputFormat+settings;
+	}
+
+	/**
+	 * Get the cache key of a pair of mate files.
+	 *
+	 * @param conf the configuration
+	 * @param settings the settings of the job (see {@link #getSettings})
+	 * @param left the status of the left file
+	 * @param right the status of the right file
+	 *
+	 * @return the cache key
+	 *
+	 * @throws IOException
+	 */
+	static String getKey(Configuration conf, String settings, FileStatus left, FileStatus right) throws IOException {
+		return getKey(conf, left)+","+getKey(conf, right)+","+settings;
+	}
+
+	/**
+	 * Get the part of the cache key of a file, including its indexes,
+	 * which change its splits when they are built or rebuilt.
+	 */
+	private static String getKey(Configuration conf, FileStatus status) throws IOException {
+		Path file = status.getPath();
+		FileSystem fs = file.getFileSystem(conf);
+
+		return file+":"+status.getLen()+":"+status.getModificationTime()+
+				getIndexKey(fs, RecordIndex.getIndexPath(file))+getIndexKey(fs, GzipIndex.getIndexPath(file));
+	}
+
+	private static String getIndexKey(FileSystem fs, Path index) throws IOException {
+		try {
+			FileStatus status = fs.getFileStatus(index);
+			return ":"+status.getLen()+":"+status.getModificationTime();
+		} catch (FileNotFoundException e) {
+			return ":-";
+		}
+	}
+
+	/**
+	 * Get the cached splits of a pair of mate files.
+	 *
+	 * @param key the cache key
+	 *
+	 * @return the splits, or null if they are not cached
+	 */
+	static synchronized List<InputSplit> get(String key) {
+		return cache.get(key);
+	}
+
+	/**
+	 * Cache the splits of a pair of mate files.
+	 *
+	 * @param key the cache key
+	 * @param splits the splits
+	 * @param maxSize the maximum number of cached pairs
+	 */
+	static synchronized void put(String key, List<InputSplit> splits, int maxSize) {
+		cache.put(key, Collections.unmodifiableList(new ArrayList<InputSplit>(splits)));
+
+		Iterator<String> keys = cache.keySet().iterator();
+
+		while (cache.size() > maxSize) {
+			keys.next();
+			keys.remove();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.tools;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import es.udc.gac.hadoop.sequence.parser.mapreduce.BinarySequenceFile;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.BinarySequenceOutputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.FastAInputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.FastQInputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.PairText;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.PairedEndSequenceInputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.SingleEndSequenceInputFormat;
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+
+/**
+ * Map-only MapReduce job that converts FASTQ/FASTA files into binary
+ * sequence files (see {@link BinarySequenceFile}), one per map task.
+ * When two input paths are given, they are converted as the left and
+ * right reads of paired-end data.
+ * 
+ * Usage: BinarySequenceConverter [-D hsp.binary.block.size=bytes] fastq|fasta output input [right-input]
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class BinarySequenceConverter extends Configured implements Tool {
+
+	@Override
+	public int run(String[] args) throws Exception {
+		if (args.length < 3 || args.length > 4 || !(args[0].equalsIgnoreCase("fastq") || args[0].equalsIgnoreCase("fasta"))) {
+			System.err.println("Usage: "+BinarySequenceConverter.class.getSimpleName()+" [-D "+
+					Configuration.BINARY_BLOCK_SIZE_KEY+"=bytes] fastq|fasta output input [right-input]");
+			return 1;
+		}
+
+		Job job = Job.getInstance(getConf(), "HSP binary sequence converter");
+		job.setJarByClass(BinarySequenceConverter.class);
+		Configuration.setSequenceRecord(job.getConfiguration(), true);
+
+		Class<? extends SingleEndSequenceInputFormat> inputFormatClass;
+
+		if (args[0].equalsIgnoreCase("fastq"))
+			inputFormatClass = FastQInputFormat.class;
+		else
+			inputFormatClass = FastAInputFormat.class;
+
+		if (args.length == 4) {
+			job.setInputFormatClass(PairedEndSequenceInputFormat.class);
+			PairedEndSequenceInputFormat.setLeftInputPath(job, new Path(args[2]), inputFormatClass);
+			PairedEndSequenceInputFormat.setRightInputPath(job, new Path(args[3]), inputFormatClass);
+			job.setOutputValueClass(PairText.class);
+		} else {
+			job.setInputFormatClass(inputFormatClass);
+			FileInputFormat.addInputPath(job, new Path(args[2]));
+			job.setOutputValueClass(Text.class);
+		}
+
+		job.setMapperClass(Mapper.class);
+		job.setNumReduceTasks(0);
+		job.setOutputKeyClass(LongWritable.class);
+		job.setOutputFormatClass(BinarySequenceOutputFormat.class);
+		FileOutputFormat.setOutputPath(job, new Path(args[1]));
+
+		return job.waitForCompletion(true)? 0 : 1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.exit(ToolRunner.run(new BinarySequenceConverter(), args));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+import es.udc.gac.hadoop.sequence.parser.util.GzipIndex;
+
+/**
+ * Tool that builds the checkpoint index of gzip files, which allows
+ * the input formats to process them in several splits.
+ * 
+ * Usage: GzipIndexer [-D hsp.gzip.index.span=bytes] path...
+ * 
+ * Paths can be files, directories (all gzip files within them are
+ * indexed) or glob patterns.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class GzipIndexer extends Configured implements Tool {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	@Override
+	public int run(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: "+GzipIndexer.class.getSimpleName()+" [-D "+
+					Configuration.GZIP_INDEX_SPAN_KEY+"=bytes] path...");
+			return 1;
+		}
+
+		org.apache.hadoop.conf.Configuration conf = getConf();
+		long span = Configuration.getGzipIndexSpan(conf);
+
+		for (Path file : getGzipFiles(conf, args)) {
+			FileSystem fs = file.getFileSystem(conf);
+			long startTime = System.nanoTime();
+			GzipIndex index = GzipIndex.build(fs, file, span);
+			index.write(fs, file);
+
+			logger.info("indexed {}: {} members, {} checkpoints in {} ms", file, index.getMembers().size(),
+					index.getCheckpoints().size(), (System.nanoTime() - startTime) / 1000000);
+		}
+
+		return 0;
+	}
+
+	private static List<Path> getGzipFiles(org.apache.hadoop.conf.Configuration conf, String[] args) throws IOException {
+		CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+		List<Path> files = new ArrayList<Path>();
+
+		for (String arg : args) {
+			Path path = new Path(arg);
+			FileSystem fs = path.getFileSystem(conf);
+			FileStatus[] matches = fs.globStatus(path);
+
+			if (matches == null || matches.length == 0)
+				throw new IOException("Input path does not exist: "+path);
+
+			for (FileStatus match : matches) {
+				FileStatus[] statuses = match.isDirectory()? fs.listStatus(match.getPath()) : new FileStatus[] {match};
+
+				for (FileStatus status : statuses) {
+					if (status.isFile() && codecs.getCodec(status.getPath()) instanceof GzipCodec)
+						files.add(status.getPath());
+				}
+			}
+		}
+
+		return files;
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.exit(ToolRunner.run(new GzipIndexer(), args));
+	}
+}
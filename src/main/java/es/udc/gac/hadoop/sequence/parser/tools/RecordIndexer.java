@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.tools;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.output.NullOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import es.udc.gac.hadoop.sequence.parser.mapreduce.FastAInputFormat;
+import es.udc.gac.hadoop.sequence.parser.mapreduce.FastQInputFormat;
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+import es.udc.gac.hadoop.sequence.parser.util.RecordIndex;
+
+/**
+ * MapReduce job that builds the record index of sequence files (see
+ * {@link RecordIndex}). Each map task samples the record offsets of its
+ * split, and the reduce tasks join the samples of each file and write
+ * its index. Compressed files are processed by a single map task, so
+ * their index contains uncompressed offsets.
+ * 
+ * Usage: RecordIndexer [-D hsp.record.index.interval=records] fastq|fasta path...
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class RecordIndexer extends Configured implements Tool {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * Record offsets sampled from a split
+	 */
+	public static class IndexFragment implements Writable {
+		private long splitStart;
+		private long numRecords;
+		private int numEntries;
+		private long[] ordinals;
+		private long[] offsets;
+
+		public IndexFragment() {
+			ordinals = new long[16];
+			offsets = new long[16];
+		}
+
+		void add(long ordinal, long offset) {
+			if (numEntries == ordinals.length) {
+				ordinals = Arrays.copyOf(ordinals, numEntries * 2);
+				offsets = Arrays.copyOf(offsets, numEntries * 2);
+			}
+
+			ordinals[numEntries] = ordinal;
+			offsets[numEntries] = offset;
+			numEntries++;
+		}
+
+		@Override
+		public void write(DataOutput out) throws IOException {
+			out.writeLong(splitStart);
+			out.writeLong(numRecords);
+			out.writeInt(numEntries);
+
+			for (int i = 0; i < numEntries; i++) {
+				WritableUtils.writeVLong(out, ordinals[i]);
+				WritableUtils.writeVLong(out, offsets[i]);
+			}
+		}
+
+		@Override
+		public void readFields(DataInput in) throws IOException {
+			splitStart = in.readLong();
+			numRecords = in.readLong();
+			int n = in.readInt();
+			numEntries = 0;
+
+			for (int i = 0; i < n; i++)
+				add(WritableUtils.readVLong(in), WritableUtils.readVLong(in));
+		}
+	}
+
+	public static class IndexMapper extends Mapper<LongWritable, Text, Text, IndexFragment> {
+
+		@Override
+		public void run(Context context) throws IOException, InterruptedException {
+			setup(context);
+
+			FileSplit split = (FileSplit) context.getInputSplit();
+			int interval = Configuration.getRecordIndexInterval(context.getConfiguration());
+			IndexFragment fragment = new IndexFragment();
+			long count = 0;
+
+			fragment.splitStart = split.getStart();
+
+			while (context.nextKeyValue()) {
+				if (count % interval == 0)
+					fragment.add(count, context.getCurrentKey().get());
+				count++;
+			}
+
+			fragment.numRecords = count;
+			context.write(new Text(split.getPath().toString()), fragment);
+			cleanup(context);
+		}
+	}
+
+	public static class IndexReducer extends Reducer<Text, IndexFragment, NullWritable, NullWritable> {
+
+		@Override
+		protected void reduce(Text key, Iterable<IndexFragment> values, Context context) throws IOException, InterruptedException {
+			org.apache.hadoop.conf.Configuration conf = context.getConfiguration();
+			List<IndexFragment> fragments = new ArrayList<IndexFragment>();
+
+			for (IndexFragment value : values)
+				fragments.add(WritableUtils.clone(value, conf));
+
+			fragments.sort(Comparator.comparingLong(f -> f.splitStart));
+
+			Path file = new Path(key.toString());
+			FileSystem fs = file.getFileSystem(conf);
+			RecordIndex index = new RecordIndex(fs.getFileStatus(file).getLen());
+			long ordinal = 0;
+
+			for (IndexFragment fragment : fragments) {
+				for (int i = 0; i < fragment.numEntries; i++)
+					index.add(ordinal + fragment.ordinals[i], fragment.offsets[i]);
+
+				ordinal += fragment.numRecords;
+			}
+
+			index.setNumRecords(ordinal);
+			index.write(fs, file);
+
+			logger.info("indexed {}: {} records, {} entries", file, index.getNumRecords(), index.getNumEntries());
+		}
+	}
+
+	/**
+	 * Compressed files are not split, so the offsets are uncompressed ones
+	 */
+	public static class FastQIndexInputFormat extends FastQInputFormat {
+		@Override
+		protected boolean isSplitable(JobContext context, Path file) {
+			return new CompressionCodecFactory(context.getConfiguration()).getCodec(file) == null;
+		}
+	}
+
+	public static class FastAIndexInputFormat extends FastAInputFormat {
+		@Override
+		protected boolean isSplitable(JobContext context, Path file) {
+			return new CompressionCodecFactory(context.getConfiguration()).getCodec(file) == null;
+		}
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		if (args.length < 2 || !(args[0].equalsIgnoreCase("fastq") || args[0].equalsIgnoreCase("fasta"))) {
+			System.err.println("Usage: "+RecordIndexer.class.getSimpleName()+" [-D "+
+					Configuration.RECORD_INDEX_INTERVAL_KEY+"=records] fastq|fasta path...");
+			return 1;
+		}
+
+		Job job = Job.getInstance(getConf(), "HSP record indexer");
+		job.setJarByClass(RecordIndexer.class);
+
+		// Existing indexes must not be used to read the input
+		Configuration.setRecordIndex(job.getConfiguration(), false);
+		Configuration.setRecordOrdinalKeys(job.getConfiguration(), false);
+
+		// Indexes are written directly by the reduce tasks
+		job.setSpeculativeExecution(false);
+
+		if (args[0].equalsIgnoreCase("fastq"))
+			job.setInputFormatClass(FastQIndexInputFormat.class);
+		else
+			job.setInputFormatClass(FastAIndexInputFormat.class);
+
+		for (int i = 1; i < args.length; i++)
+			FileInputFormat.addInputPath(job, new Path(args[i]));
+
+		job.setMapperClass(IndexMapper.class);
+		job.setMapOutputKeyClass(Text.class);
+		job.setMapOutputValueClass(IndexFragment.class);
+		job.setReducerClass(IndexReducer.class);
+		job.setOutputFormatClass(NullOutputFormat.class);
+
+		return job.waitForCompletion(true)? 0 : 1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.exit(ToolRunner.run(new RecordIndexer(), args));
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CharSequence view of a slice of an ASCII byte array. The bytes are
+ * neither decoded nor copied, so the view reflects any change made to
+ * the backing array and it is only valid while the slice is.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public final class AsciiSequence implements CharSequence {
+
+	private byte[] bytes;
+	private int offset;
+	private int length;
+
+	public AsciiSequence() {
+		set(null, 0, 0);
+	}
+
+	public AsciiSequence(byte[] bytes, int offset, int length) {
+		set(bytes, offset, length);
+	}
+
+	/**
+	 * Point this view to <code>bytes[offset, offset+length)</code>.
+	 */
+	public void set(byte[] bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Return the backing array.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Return the position of the first byte of this view in the backing array.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Return the ith byte of this view.
+	 */
+	public byte byteAt(int index) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Incorrect index: "+index);
+
+		return bytes[offset + index];
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char) (byteAt(index) & 0xFF);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException("Incorrect range: "+start+", "+end);
+
+		return new AsciiSequence(bytes, offset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		if (length == 0)
+			return "";
+
+		return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+	}
+}
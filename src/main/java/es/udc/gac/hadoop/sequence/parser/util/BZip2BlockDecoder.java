@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decoder of single bzip2 blocks (Huffman, move-to-front and run-length
+ * decoding, inverse Burrows-Wheeler transform and CRC check), whose tables
+ * are kept between blocks, so that each decompression thread allocates the
+ * arrays of the largest block size only once.
+ * 
+ * Randomised blocks, which have not been generated since bzip2 0.9.5, are
+ * not supported by this decoder.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+final class BZip2BlockDecoder {
+
+	private static final long BLOCK_MAGIC = 0x314159265359L;
+	private static final int RUNA = 0;
+	private static final int RUNB = 1;
+	private static final int GROUP_SIZE = 50;
+	private static final int MIN_GROUPS = 2;
+	private static final int MAX_GROUPS = 6;
+	private static final int MAX_ALPHA_SIZE = 258;
+	private static final int MAX_CODE_LENGTH = 20;
+	private static final int MAX_SELECTORS = 18002;
+	private static final int BLOCK_SIZE_UNIT = 100000;
+	private static final int[] CRC_TABLE = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc = i << 24;
+
+			for (int j = 0; j < 8; j++)
+				crc = (crc < 0)? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+
+			CRC_TABLE[i] = crc;
+		}
+	}
+
+	// Compressed input
+	private byte[] input;
+	private int inputIndex;
+	private long bitBuffer;
+	private int bitCount;
+
+	// Tables of the current block
+	private final byte[] seqToUnseq = new byte[256];
+	private final byte[] selectorMtf = new byte[MAX_SELECTORS];
+	private final byte[] selectors = new byte[MAX_SELECTORS];
+	private int numSelectors;
+	private final byte[][] codeLengths = new byte[MAX_GROUPS][MAX_ALPHA_SIZE];
+	private final int[][] limit = new int[MAX_GROUPS][MAX_CODE_LENGTH + 2];
+	private final int[][] base = new int[MAX_GROUPS][MAX_CODE_LENGTH + 2];
+	private final int[][] perm = new int[MAX_GROUPS][MAX_ALPHA_SIZE];
+	private final int[] minLengths = new int[MAX_GROUPS];
+	private final int[] maxLengths = new int[MAX_GROUPS];
+	private final byte[] mtf = new byte[256];
+	private final int[] unzftab = new int[256];
+	private final int[] cftab = new int[257];
+	private byte[] ll8 = new byte[0]; // decoded symbols before the inverse transform
+	private int[] tt = new int[0]; // inverse transform vector
+
+	// Selected Huffman table
+	private int groupNo;
+	private int groupPos;
+	private int[] groupLimit;
+	private int[] groupBase;
+	private int[] groupPerm;
+	private int groupMinLength;
+	private int groupMaxLength;
+
+	private int length; // length of the decompressed data
+	private int crc; // CRC of the decompressed data
+
+	/**
+	 * Decode a block.
+	 *
+	 * @param bytes the compressed data, starting with the block magic number
+	 * @param shift the bit of the first byte where the block starts
+	 * @param numBits the number of bits of the block
+	 * @param level the block size level of its stream
+	 * @param out the array where the decompressed data is stored, which
+	 * is replaced by a larger one if needed
+	 *
+	 * @return the array with the decompressed data (see {@link #getLength()}),
+	 * or null if the block is randomised
+	 *
+	 * @throws IOException if the block is corrupt
+	 */
+	byte[] decode(byte[] bytes, int shift, long numBits, int level, byte[] out) throws IOException {
+		input = bytes;
+		inputIndex = 0;
+		bitBuffer = 0;
+		bitCount = 0;
+		readBits(shift);
+
+		if ((((long) readBits(24) << 24) | readBits(24)) != BLOCK_MAGIC)
+			throw new IOException("Invalid bzip2 block magic number");
+
+		int storedCRC = (readBits(16) << 16) | readBits(16);
+
+		if (readBits(1) != 0)
+			return null;
+
+		int origPtr = readBits(24);
+		int maxBlockSize = level * BLOCK_SIZE_UNIT;
+
+		if (tt.length < maxBlockSize) {
+			ll8 = new byte[maxBlockSize];
+			tt = new int[maxBlockSize];
+		}
+
+		int alphaSize = readTables();
+		int last = decodeSymbols(alphaSize, maxBlockSize);
+
+		if (origPtr > last)
+			throw new IOException("Invalid bzip2 block origin: "+origPtr);
+
+		if ((long) inputIndex * 8 - bitCount - shift > numBits)
+			throw new IOException("Bzip2 block overrun");
+
+		out = inverseTransform(origPtr, last, out);
+		input = null;
+
+		if (~crc != storedCRC)
+			throw new IOException("Bzip2 block CRC error");
+
+		return out;
+	}
+
+	/**
+	 * Returns the length of the last decompressed block.
+	 */
+	int getLength() {
+		return length;
+	}
+
+	/**
+	 * Read the symbol map, the selectors and the Huffman tables.
+	 *
+	 * @return the alphabet size
+	 */
+	private int readTables() throws IOException {
+		int inUse16 = readBits(16);
+		int numInUse = 0;
+
+		for (int i = 0; i < 16; i++) {
+			if ((inUse16 & (0x8000 >>> i)) != 0) {
+				int inUse = readBits(16);
+
+				for (int j = 0; j < 16; j++) {
+					if ((inUse & (0x8000 >>> j)) != 0)
+						seqToUnseq[numInUse++] = (byte) (i * 16 + j);
+				}
+			}
+		}
+
+		if (numInUse == 0)
+			throw new IOException("Invalid bzip2 symbol map");
+
+		int alphaSize = numInUse + 2;
+		int numGroups = readBits(3);
+		int numSelectors = readBits(15);
+
+		if (numGroups < MIN_GROUPS || numGroups > MAX_GROUPS || numSelectors < 1)
+			throw new IOException("Invalid bzip2 Huffman groups");
+
+		for (int i = 0; i < numSelectors; i++) {
+			int j = 0;
+
+			while (readBits(1) != 0) {
+				if (++j >= numGroups)
+					throw new IOException("Invalid bzip2 selector");
+			}
+
+			// Encoders may write more selectors than needed, which are ignored
+			if (i < MAX_SELECTORS)
+				selectorMtf[i] = (byte) j;
+		}
+
+		// Undo the move-to-front coding of the selectors
+		for (int i = 0; i < numGroups; i++)
+			mtf[i] = (byte) i;
+
+		for (int i = 0, n = Math.min(numSelectors, MAX_SELECTORS); i < n; i++) {
+			int v = selectorMtf[i];
+			byte tmp = mtf[v];
+
+			for (; v > 0; v--)
+				mtf[v] = mtf[v - 1];
+
+			mtf[0] = tmp;
+			selectors[i] = tmp;
+		}
+
+		this.numSelectors = Math.min(numSelectors, MAX_SELECTORS);
+
+		// Delta-coded code lengths of each group
+		for (int t = 0; t < numGroups; t++) {
+			int current = readBits(5);
+			int minLength = MAX_CODE_LENGTH;
+			int maxLength = 0;
+
+			for (int i = 0; i < alphaSize; i++) {
+				while (readBits(1) != 0)
+					current += (readBits(1) == 0)? 1 : -1;
+
+				if (current < 1 || current > MAX_CODE_LENGTH)
+					throw new IOException("Invalid bzip2 code length: "+current);
+
+				codeLengths[t][i] = (byte) current;
+				minLength = Math.min(minLength, current);
+				maxLength = Math.max(maxLength, current);
+			}
+
+			createDecodeTables(limit[t], base[t], perm[t], codeLengths[t], minLength, maxLength, alphaSize);
+			minLengths[t] = minLength;
+			maxLengths[t] = maxLength;
+		}
+
+		return alphaSize;
+	}
+
+	private static void createDecodeTables(int[] limit, int[] base, int[] perm, byte[] lengths,
+			int minLength, int maxLength, int alphaSize) {
+		for (int i = minLength, pp = 0; i <= maxLength; i++) {
+			for (int j = 0; j < alphaSize; j++) {
+				if (lengths[j] == i)
+					perm[pp++] = j;
+			}
+		}
+
+		Arrays.fill(base, 0);
+		Arrays.fill(limit, 0);
+
+		for (int i = 0; i < alphaSize; i++)
+			base[lengths[i] + 1]++;
+
+		for (int i = 1; i < base.length; i++)
+			base[i] += base[i - 1];
+
+		for (int i = minLength, vec = 0; i <= maxLength; i++) {
+			vec += base[i + 1] - base[i];
+			limit[i] = vec - 1;
+			vec <<= 1;
+		}
+
+		// Offsets between the codes of each length and their symbols in perm
+		for (int i = minLength + 1; i <= maxLength; i++)
+			base[i] = ((limit[i - 1] + 1) << 1) - base[i];
+	}
+
+	/**
+	 * Decode the Huffman, run-length and move-to-front coded symbols into ll8.
+	 *
+	 * @return the index of the last symbol
+	 */
+	private int decodeSymbols(int alphaSize, int maxBlockSize) throws IOException {
+		int eob = alphaSize - 1;
+		int last = -1;
+		groupNo = -1;
+		groupPos = 0;
+		Arrays.fill(unzftab, 0);
+
+		for (int i = 0; i < 256; i++)
+			mtf[i] = (byte) i;
+
+		int symbol = nextSymbol();
+
+		while (symbol != eob) {
+			if (symbol == RUNA || symbol == RUNB) {
+				// Run of the symbol at the front of the list, with a bijective base-2 length
+				int run = -1;
+
+				for (int n = 1; symbol == RUNA || symbol == RUNB; n <<= 1) {
+					run += (symbol == RUNA)? n : n << 1;
+
+					if (run >= maxBlockSize)
+						throw new IOException("Bzip2 block overrun");
+
+					symbol = nextSymbol();
+				}
+
+				byte ch = seqToUnseq[mtf[0] & 0xFF];
+				run++;
+
+				if (last + run >= maxBlockSize)
+					throw new IOException("Bzip2 block overrun");
+
+				unzftab[ch & 0xFF] += run;
+				Arrays.fill(ll8, last + 1, last + 1 + run, ch);
+				last += run;
+			} else {
+				if (++last >= maxBlockSize)
+					throw new IOException("Bzip2 block overrun");
+
+				// Move the symbol to the front of the list
+				int n = symbol - 1;
+				byte tmp = mtf[n];
+				System.arraycopy(mtf, 0, mtf, 1, n);
+				mtf[0] = tmp;
+
+				byte ch = seqToUnseq[tmp & 0xFF];
+				unzftab[ch & 0xFF]++;
+				ll8[last] = ch;
+				symbol = nextSymbol();
+			}
+		}
+
+		return last;
+	}
+
+	private int nextSymbol() throws IOException {
+		if (groupPos == 0) {
+			// A new Huffman table every GROUP_SIZE symbols
+			if (++groupNo >= numSelectors)
+				throw new IOException("Invalid bzip2 selector");
+
+			int t = selectors[groupNo];
+			groupPos = GROUP_SIZE;
+			groupLimit = limit[t];
+			groupBase = base[t];
+			groupPerm = perm[t];
+			groupMinLength = minLengths[t];
+			groupMaxLength = maxLengths[t];
+		}
+
+		groupPos--;
+		int n = groupMinLength;
+		int code = readBits(n);
+
+		while (code > groupLimit[n]) {
+			if (++n > groupMaxLength)
+				throw new IOException("Invalid bzip2 Huffman code");
+
+			code = (code << 1) | readBits(1);
+		}
+
+		return groupPerm[code - groupBase[n]];
+	}
+
+	/**
+	 * Undo the Burrows-Wheeler transform and the initial run-length coding,
+	 * computing the CRC of the data.
+	 */
+	private byte[] inverseTransform(int origPtr, int last, byte[] out) {
+		cftab[0] = 0;
+
+		for (int i = 1; i <= 256; i++)
+			cftab[i] = cftab[i - 1] + unzftab[i - 1];
+
+		for (int i = 0; i <= last; i++)
+			tt[cftab[ll8[i] & 0xFF]++] = i;
+
+		int pos = tt[origPtr];
+		int length = 0;
+		int crc = -1;
+		int run = 0;
+		int previous = -1;
+
+		for (int i = 0; i <= last; i++) {
+			int ch = ll8[pos] & 0xFF;
+			pos = tt[pos];
+
+			if (length + 256 > out.length)
+				out = Arrays.copyOf(out, out.length * 2);
+
+			if (run == 4) {
+				// Number of additional repetitions of a run of 4 bytes
+				for (int j = 0; j < ch; j++) {
+					out[length++] = (byte) previous;
+					crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ previous) & 0xFF];
+				}
+
+				run = 0;
+				previous = -1;
+				continue;
+			}
+
+			run = (ch == previous)? run + 1 : 1;
+			previous = ch;
+			out[length++] = (byte) ch;
+			crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ ch) & 0xFF];
+		}
+
+		this.length = length;
+		this.crc = crc;
+		return out;
+	}
+
+	private int readBits(int n) {
+		while (bitCount < n) {
+			// Bits after the end of the data are read as zeros
+			int b = (inputIndex < input.length)? input[inputIndex] & 0xFF : 0;
+			inputIndex++;
+			bitBuffer = (bitBuffer << 8) | b;
+			bitCount += 8;
+		}
+
+		bitCount -= n;
+		return (int) (bitBuffer >>> bitCount) & ((1 << n) - 1);
+	}
+}
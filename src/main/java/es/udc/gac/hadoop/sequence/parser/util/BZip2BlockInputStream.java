@@ -0,0 +1,543 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
+
+/**
+ * Decompressor stream for bzip2 files that decompresses several blocks
+ * concurrently on a thread pool, returning their data in order.
+ * 
+ * Block boundaries are found by searching the (bit-aligned) block and
+ * end-of-stream magic numbers in the compressed data. Each block is then
+ * decompressed independently by a {@link BZip2BlockDecoder} of its thread,
+ * which checks its CRC, using the block size level of the stream header
+ * that precedes it (or the maximum level for the blocks of a split whose
+ * stream header is before the split start). Concatenated streams (e.g.
+ * created by parallel compressors) are supported.
+ * 
+ * Blocks are decompressed ahead of the reader up to the first block after
+ * the split end, which usually contains the end of the last record. Any
+ * further blocks are only decompressed when they are read.
+ * 
+ * A split processes the blocks starting within <code>(start, end]</code>
+ * (<code>[0, end]</code> for the first split). A single read never returns
+ * data from two different blocks, and {@link #getPos()} returns the
+ * compressed offset of the block from which the last read data came from.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class BZip2BlockInputStream extends SplitCompressionInputStream {
+
+	private static final long BLOCK_MAGIC = 0x314159265359L;
+	private static final long EOS_MAGIC = 0x177245385090L;
+	private static final long MAGIC_MASK = 0xFFFFFFFFFFFFL;
+	private static final int MAGIC_BITS = 48;
+	private static final int CRC_BITS = 32;
+	private static final int INPUT_BUFFER_SIZE = 64*1024;
+	private static final int OUTPUT_BUFFER_SIZE = 1024*1024;
+	private static final int HEADER_SIZE = 4; // "BZh" and the block size level
+	private static final int MAX_LEVEL = 9;
+
+	/**
+	 * Decompressed data of a block
+	 */
+	private static final class Block {
+		private final long pos;
+		private byte[] data;
+		private int length;
+
+		private Block(long pos) {
+			this.pos = pos;
+		}
+	}
+
+	private final FSDataInputStream fileIn;
+	private final ExecutorService executor;
+	private final Deque<Future<Block>> pending;
+	private final int maxPending;
+	private final long scanStart; // offset where the search for the first block starts
+	private final ThreadLocal<BZip2BlockDecoder> decoders;
+	private int blocksAfterEnd; // number of submitted blocks that start after the split end
+
+	// Compressed input
+	private final byte[] input;
+	private int inputPos;
+	private int inputLength;
+	private boolean inputEof;
+	private long register; // last bits read
+	private int registerBits; // number of valid bits in the register
+	private long bitPos; // absolute offset of the next bit to be read
+
+	// Compressed data of the current block, starting at byte blockByteStart
+	private byte[] blockBytes;
+	private int blockLength;
+	private long blockByteStart;
+	private long blockBitStart; // -1 if not within a block
+	private byte[] lastBlock; // compressed data of the last finished block
+	private int level; // block size level of the current stream
+
+	private Block current;
+	private int currentPos;
+	private long reportedPos;
+
+	/**
+	 * Create a new stream for the split <code>[start, end)</code>.
+	 *
+	 * @param in the bzip2 file
+	 * @param start the split start
+	 * @param end the split end
+	 * @param numThreads the number of decompression threads
+	 *
+	 * @throws IOException
+	 */
+	public BZip2BlockInputStream(FSDataInputStream in, long start, long end, int numThreads) throws IOException {
+		super(in, start, end);
+
+		if (numThreads < 1)
+			throw new IllegalArgumentException("Invalid number of bzip2 threads: "+numThreads);
+
+		fileIn = in;
+		input = new byte[INPUT_BUFFER_SIZE];
+		blockBytes = new byte[INPUT_BUFFER_SIZE];
+		pending = new ArrayDeque<Future<Block>>();
+		maxPending = 2 * numThreads;
+
+		// Blocks starting at the first byte of the split belong to the previous one
+		scanStart = (start == 0)? 0 : start + 1;
+		long first = open();
+
+		if (first == -1)
+			first = end * 8;
+
+		// The split with the first block of the file starts at the beginning of the data
+		setStart((start == 0 || first == HEADER_SIZE * 8)? 0 : first >>> 3);
+		reportedPos = getAdjustedStart();
+		decoders = new ThreadLocal<BZip2BlockDecoder>() {
+			@Override
+			protected BZip2BlockDecoder initialValue() {
+				return new BZip2BlockDecoder();
+			}
+		};
+
+		executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "hsp-bzip2");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		while (current == null || currentPos >= current.length) {
+			current = null;
+
+			while (pending.size() < maxPending && (blocksAfterEnd == 0 || pending.isEmpty()) && submitBlock());
+
+			if (pending.isEmpty())
+				return -1;
+
+			try {
+				current = pending.removeFirst().get();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while decompressing bzip2 block");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new IOException(e.getCause());
+			}
+
+			currentPos = 0;
+		}
+
+		int n = Math.min(len, current.length - currentPos);
+		System.arraycopy(current.data, currentPos, b, off, n);
+		currentPos += n;
+		reportedPos = current.pos;
+		return n;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return (read(b, 0, 1) == -1)? -1 : (b[0] & 0xFF);
+	}
+
+	/**
+	 * Returns the compressed offset of the block from which
+	 * the last read data came from.
+	 */
+	@Override
+	public long getPos() throws IOException {
+		return reportedPos;
+	}
+
+	/**
+	 * Returns the number of blocks after the split end that have been
+	 * submitted for decompression.
+	 */
+	int getBlocksAfterEnd() {
+		return blocksAfterEnd;
+	}
+
+	/**
+	 * Discard the pending blocks and decompress again from the first block of the split.
+	 */
+	@Override
+	public void resetState() throws IOException {
+		for (Future<Block> block : pending)
+			block.cancel(true);
+
+		pending.clear();
+		current = null;
+		currentPos = 0;
+		open();
+		reportedPos = getAdjustedStart();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reset the compressed input and find the first block of the split.
+	 *
+	 * @return the bit offset of the block, or -1 if no block starts within the split
+	 */
+	private long open() throws IOException {
+		fileIn.seek(scanStart);
+		inputPos = 0;
+		inputLength = 0;
+		inputEof = false;
+		register = 0;
+		registerBits = 0;
+		bitPos = scanStart * 8;
+		blockLength = 0;
+		blockByteStart = scanStart;
+		blockBitStart = -1;
+		lastBlock = null;
+		level = MAX_LEVEL;
+		blocksAfterEnd = 0;
+
+		long first = findBlock();
+
+		if (first == -1 || (first >>> 3) > getAdjustedEnd()) {
+			// No block starts within this split
+			inputEof = true;
+			blockBitStart = -1;
+			return -1;
+		}
+
+		return first;
+	}
+
+	/**
+	 * Find the end of the current block and submit it for decompression.
+	 *
+	 * @return false if there are no more blocks
+	 */
+	private boolean submitBlock() throws IOException {
+		if (blockBitStart == -1)
+			return false;
+
+		long blockStart = blockBitStart;
+		final int blockLevel = level;
+		long blockEnd = findMagic();
+
+		if (blockEnd == -1)
+			throw new IOException("Unexpected end of bzip2 block at "+(blockStart >>> 3));
+
+		final byte[] bytes = lastBlock;
+		final int shift = (int) (blockStart & 7);
+		final long numBits = blockEnd - blockStart;
+		final long pos = blockStart >>> 3;
+
+		if (pos > getAdjustedEnd())
+			blocksAfterEnd++;
+
+		// Find the next block, skipping the end of the stream
+		if (blockBitStart == -1)
+			findBlock();
+
+		pending.addLast(executor.submit(new Callable<Block>() {
+			@Override
+			public Block call() throws IOException {
+				return decompress(bytes, shift, numBits, pos, blockLevel);
+			}
+		}));
+
+		return true;
+	}
+
+	/**
+	 * Find the next block magic number, skipping end-of-stream ones.
+	 *
+	 * @return the bit offset of the block, or -1 if there are no more blocks
+	 */
+	private long findBlock() throws IOException {
+		while (blockBitStart == -1) {
+			if (findMagic() == -1)
+				return -1;
+		}
+
+		return blockBitStart;
+	}
+
+	/**
+	 * Find the next magic number. The current block (if any) ends there,
+	 * and a new block starts if it is a block magic number.
+	 *
+	 * @return the bit offset of the magic number, or -1 at EOF
+	 */
+	private long findMagic() throws IOException {
+		while (true) {
+			if (inputPos == inputLength) {
+				if (inputEof)
+					return -1;
+
+				inputLength = in.read(input, 0, input.length);
+				inputPos = 0;
+
+				if (inputLength <= 0) {
+					inputLength = 0;
+					inputEof = true;
+					return -1;
+				}
+			}
+
+			byte b = input[inputPos++];
+			appendBlockByte(b);
+			register = (register << 8) | (b & 0xFF);
+			registerBits = Math.min(registerBits + 8, 64);
+			bitPos += 8;
+
+			if (registerBits < MAGIC_BITS)
+				continue;
+
+			// Check the magic numbers ending at each bit of the last byte, in order
+			for (int k = Math.min(7, registerBits - MAGIC_BITS); k >= 0; k--) {
+				long candidate = (register >>> k) & MAGIC_MASK;
+
+				if (candidate == BLOCK_MAGIC || candidate == EOS_MAGIC) {
+					long magicStart = bitPos - k - MAGIC_BITS;
+					startBlock(magicStart, candidate == BLOCK_MAGIC);
+					return magicStart;
+				}
+			}
+		}
+	}
+
+	private void appendBlockByte(byte b) {
+		if (blockLength == blockBytes.length) {
+			if (blockBitStart == -1 && blockLength >= 16) {
+				// Outside blocks, only the bytes that may contain a magic number and a stream header are kept
+				System.arraycopy(blockBytes, blockLength - 16, blockBytes, 0, 16);
+				blockByteStart += blockLength - 16;
+				blockLength = 16;
+			} else {
+				blockBytes = Arrays.copyOf(blockBytes, blockBytes.length * 2);
+			}
+		}
+
+		blockBytes[blockLength++] = b;
+	}
+
+	/**
+	 * Discard the compressed data before the magic number starting at <code>bitOffset</code>,
+	 * keeping the data of the block that ends there (if any).
+	 */
+	private void startBlock(long bitOffset, boolean isBlock) {
+		if (blockBitStart != -1)
+			lastBlock = Arrays.copyOf(blockBytes, (int) (((bitOffset + 7) >>> 3) - blockByteStart));
+
+		int discard = (int) ((bitOffset >>> 3) - blockByteStart);
+
+		if (!isBlock) {
+			// The level of the next stream is unknown until its header is found
+			level = MAX_LEVEL;
+		} else if ((bitOffset & 7) == 0 && discard >= HEADER_SIZE && blockBytes[discard - 4] == 'B'
+				&& blockBytes[discard - 3] == 'Z' && blockBytes[discard - 2] == 'h'
+				&& blockBytes[discard - 1] >= '1' && blockBytes[discard - 1] <= '0' + MAX_LEVEL) {
+			// First block of a stream
+			level = blockBytes[discard - 1] - '0';
+		}
+		blockLength -= discard;
+		System.arraycopy(blockBytes, discard, blockBytes, 0, blockLength);
+		blockByteStart = bitOffset >>> 3;
+		blockBitStart = isBlock? bitOffset : -1;
+
+		// The magic number cannot overlap with the next one
+		registerBits = (int) (bitPos - bitOffset - MAGIC_BITS);
+	}
+
+	/**
+	 * Decompress a block with the decoder of the current thread.
+	 */
+	private Block decompress(byte[] bytes, int shift, long numBits, long pos, int level) throws IOException {
+		Block block = new Block(pos);
+
+		try {
+			BZip2BlockDecoder decoder = decoders.get();
+			block.data = decoder.decode(bytes, shift, numBits, level, new byte[OUTPUT_BUFFER_SIZE]);
+
+			if (block.data == null)
+				return decompressStream(bytes, shift, numBits, pos, level);
+
+			block.length = decoder.getLength();
+		} catch (IOException e) {
+			throw new IOException("Corrupt bzip2 block at "+pos, e);
+		}
+
+		return block;
+	}
+
+	/**
+	 * Decompress a block as a single-block bzip2 stream, which also supports
+	 * randomised blocks.
+	 */
+	private static Block decompressStream(byte[] bytes, int shift, long numBits, long pos, int level) throws IOException {
+		// Stream header (without the "BZ" signature), block, end-of-stream magic and CRC
+		BitWriter writer = new BitWriter((int) ((numBits + MAGIC_BITS + CRC_BITS) / 8) + 4);
+		writer.write('h', 8);
+		writer.write('0' + level, 8);
+		writer.copy(bytes, shift, numBits);
+		writer.write(EOS_MAGIC, MAGIC_BITS);
+		// The stream CRC of a single block is the block CRC, which follows the magic number
+		writer.write(readBits(bytes, shift + MAGIC_BITS, CRC_BITS), CRC_BITS);
+
+		CBZip2InputStream decompressor = new CBZip2InputStream(
+				new ByteArrayInputStream(writer.getBytes(), 0, writer.getLength()));
+		Block block = new Block(pos);
+		block.data = new byte[OUTPUT_BUFFER_SIZE];
+
+		try {
+			int n;
+
+			while ((n = decompressor.read(block.data, block.length, block.data.length - block.length)) > 0) {
+				block.length += n;
+
+				if (block.length == block.data.length)
+					block.data = Arrays.copyOf(block.data, block.data.length * 2);
+			}
+		} finally {
+			decompressor.close();
+		}
+
+		return block;
+	}
+
+	private static long readBits(byte[] bytes, long bitOffset, int numBits) {
+		long value = 0;
+
+		for (int i = 0; i < numBits; i++) {
+			long bit = bitOffset + i;
+			value = (value << 1) | ((bytes[(int) (bit >>> 3)] >>> (7 - (bit & 7))) & 1);
+		}
+
+		return value;
+	}
+
+	/**
+	 * Writer of big-endian bit sequences
+	 */
+	private static final class BitWriter {
+
+		private byte[] bytes;
+		private long bitLength;
+
+		private BitWriter(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		private void write(long value, int numBits) {
+			for (int i = numBits - 1; i >= 0; i--)
+				writeBit((int) (value >>> i) & 1);
+		}
+
+		private void writeBit(int bit) {
+			int index = (int) (bitLength >>> 3);
+
+			if (index == bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+
+			if (bit != 0)
+				bytes[index] |= 0x80 >>> (bitLength & 7);
+
+			bitLength++;
+		}
+
+		/**
+		 * Copy <code>numBits</code> bits of <code>src</code> starting at bit
+		 * <code>shift</code>. The writer must be byte-aligned.
+		 */
+		private void copy(byte[] src, int shift, long numBits) {
+			int numBytes = (int) (numBits >>> 3);
+			int index = (int) (bitLength >>> 3);
+
+			if (index + numBytes + 1 > bytes.length)
+				bytes = Arrays.copyOf(bytes, index + numBytes + 16);
+
+			if (shift == 0) {
+				System.arraycopy(src, 0, bytes, index, numBytes);
+			} else {
+				for (int i = 0; i < numBytes; i++)
+					bytes[index + i] = (byte) ((src[i] << shift) | ((src[i + 1] & 0xFF) >>> (8 - shift)));
+			}
+
+			bitLength += (long) numBytes * 8;
+			write(readBits(src, shift + (long) numBytes * 8, (int) (numBits & 7)), (int) (numBits & 7));
+		}
+
+		private byte[] getBytes() {
+			return bytes;
+		}
+
+		private int getLength() {
+			return (int) ((bitLength + 7) >>> 3);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * JVM-wide pool of reusable buffers, so that the record readers of the tasks
+ * that run in the same JVM (e.g., Spark executors) do not allocate their
+ * buffers again at every task start. Record readers lease heap arrays for
+ * their line readers, and heap or direct byte buffers for byte-buffer reads,
+ * returning them when they are closed.
+ * 
+ * Buffers are pooled by size, and at most {@link Configuration#getBufferPoolSize}
+ * bytes are kept in the pool: buffers returned beyond this limit are left to
+ * the garbage collector. The limit only counts the idle buffers kept in the
+ * pool, not those leased by running readers. As the pool is shared by all the
+ * jobs of the JVM, its limit is the largest one they have configured.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public final class BufferPool implements ByteBufferPool {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final BufferPool INSTANCE = new BufferPool(0);
+
+	private final Map<Integer, ArrayDeque<byte[]>> arrays;
+	private final Map<Integer, ArrayDeque<ByteBuffer>> heapBuffers;
+	private final Map<Integer, ArrayDeque<ByteBuffer>> directBuffers;
+	private long maxPooledBytes;
+	private long pooledBytes;
+
+	BufferPool(long maxPooledBytes) {
+		this.arrays = new HashMap<Integer, ArrayDeque<byte[]>>();
+		this.heapBuffers = new HashMap<Integer, ArrayDeque<ByteBuffer>>();
+		this.directBuffers = new HashMap<Integer, ArrayDeque<ByteBuffer>>();
+		this.maxPooledBytes = maxPooledBytes;
+	}
+
+	/**
+	 * Get the buffer pool of the JVM, raising its size limit to the one of the
+	 * given configuration if it is larger. The limit is never lowered, so that
+	 * a job with a smaller pool (or without pool) does not discard the buffers
+	 * kept for the other jobs of the JVM.
+	 *
+	 * @param conf the configuration
+	 *
+	 * @return the buffer pool, or null if it is disabled in the configuration
+	 */
+	public static BufferPool getInstance(org.apache.hadoop.conf.Configuration conf) {
+		long maxPooledBytes = Configuration.getBufferPoolSize(conf);
+
+		if (maxPooledBytes <= 0)
+			return null;
+
+		INSTANCE.raiseMaxPooledBytes(maxPooledBytes);
+		return INSTANCE;
+	}
+
+	private synchronized void raiseMaxPooledBytes(long maxPooledBytes) {
+		if (maxPooledBytes > this.maxPooledBytes) {
+			logger.debug("buffer pool limit raised from {} to {} bytes", this.maxPooledBytes, maxPooledBytes);
+			this.maxPooledBytes = maxPooledBytes;
+		}
+	}
+
+	/**
+	 * Lease a heap array.
+	 *
+	 * @param length the length of the array
+	 *
+	 * @return a pooled array of the given length, or a new one if there is none
+	 */
+	public synchronized byte[] getArray(int length) {
+		byte[] array = poll(arrays, length);
+
+		if (array == null) {
+			logger.debug("allocating array of {} bytes", length);
+			return new byte[length];
+		}
+
+		return array;
+	}
+
+	/**
+	 * Return a heap array leased by {@link #getArray(int)}.
+	 *
+	 * @param array the array
+	 */
+	public synchronized void putArray(byte[] array) {
+		offer(arrays, array.length, array);
+	}
+
+	/**
+	 * Lease a byte buffer.
+	 *
+	 * @param direct whether the buffer must be direct
+	 * @param length the capacity of the buffer
+	 *
+	 * @return a pooled buffer of the given capacity, or a new one if there is none
+	 */
+	@Override
+	public synchronized ByteBuffer getBuffer(boolean direct, int length) {
+		ByteBuffer buffer = poll(direct? directBuffers : heapBuffers, length);
+
+		if (buffer == null) {
+			logger.debug("allocating {} byte buffer of {} bytes", direct? "direct" : "heap", length);
+			return direct? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+		}
+
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Return a byte buffer leased by {@link #getBuffer(boolean, int)}.
+	 *
+	 * @param buffer the buffer
+	 */
+	@Override
+	public synchronized void putBuffer(ByteBuffer buffer) {
+		offer(buffer.isDirect()? directBuffers : heapBuffers, buffer.capacity(), buffer);
+	}
+
+	/**
+	 * Return the number of bytes kept in the pool, i.e. of the idle buffers.
+	 */
+	public synchronized long getPooledBytes() {
+		return pooledBytes;
+	}
+
+	/**
+	 * Return the maximum number of bytes kept in the pool.
+	 */
+	public synchronized long getMaxPooledBytes() {
+		return maxPooledBytes;
+	}
+
+	private <T> T poll(Map<Integer, ArrayDeque<T>> pool, int length) {
+		ArrayDeque<T> buffers = pool.get(length);
+
+		if (buffers == null || buffers.isEmpty())
+			return null;
+
+		pooledBytes -= length;
+		return buffers.poll();
+	}
+
+	private <T> void offer(Map<Integer, ArrayDeque<T>> pool, int length, T buffer) {
+		if (pooledBytes + length > maxPooledBytes)
+			return;
+
+		ArrayDeque<T> buffers = pool.get(length);
+
+		if (buffers == null) {
+			buffers = new ArrayDeque<T>();
+			pool.put(length, buffers);
+		}
+
+		buffers.push(buffer);
+		pooledBytes += length;
+	}
+}
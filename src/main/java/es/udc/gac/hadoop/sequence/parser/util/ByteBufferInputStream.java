@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.ReadOption;
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.ByteBufferPool;
+import org.apache.hadoop.io.ElasticByteBufferPool;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Input stream that reads a file through the enhanced byte-buffer reads
+ * of {@link FSDataInputStream}, which return memory-mapped buffers without
+ * any copy for HDFS blocks that are cached or read with short-circuit
+ * local reads. Checksums are only skipped if requested, which HDFS
+ * requires for zero-copy reads of blocks that are not cached.
+ * 
+ * When a read cannot avoid the copy (HDFS returns a writable buffer
+ * filled by a regular read) or enhanced reads are not supported, the
+ * stream switches to regular reads into the caller's array, so that the
+ * data is never copied twice.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class ByteBufferInputStream extends InputStream implements Seekable {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private final FSDataInputStream in;
+	private final ByteBufferPool pool;
+	private final EnumSet<ReadOption> readOptions;
+	private final int readSize;
+	private boolean zeroCopy; // false after switching to regular reads
+	private ByteBuffer buffer; // current buffer, null if empty
+
+	/**
+	 * Create a new stream.
+	 *
+	 * @param in the input stream, positioned at the starting offset
+	 * @param readSize the maximum number of bytes per read
+	 */
+	public ByteBufferInputStream(FSDataInputStream in, int readSize) {
+		this(in, readSize, new ElasticByteBufferPool(), false);
+	}
+
+	/**
+	 * Create a new stream that takes the buffers of the reads that
+	 * cannot avoid the copy from the given pool (e.g., a {@link BufferPool}).
+	 *
+	 * @param in the input stream, positioned at the starting offset
+	 * @param readSize the maximum number of bytes per read
+	 * @param pool the pool of buffers
+	 */
+	public ByteBufferInputStream(FSDataInputStream in, int readSize, ByteBufferPool pool) {
+		this(in, readSize, pool, false);
+	}
+
+	/**
+	 * Create a new stream.
+	 *
+	 * @param in the input stream, positioned at the starting offset
+	 * @param readSize the maximum number of bytes per read
+	 * @param pool the pool of buffers
+	 * @param skipChecksums whether to skip the verification of checksums
+	 */
+	public ByteBufferInputStream(FSDataInputStream in, int readSize, ByteBufferPool pool, boolean skipChecksums) {
+		if (readSize < 1)
+			throw new IllegalArgumentException("Invalid byte-buffer read size: "+readSize);
+
+		this.in = in;
+		this.pool = pool;
+		this.readOptions = skipChecksums? EnumSet.of(ReadOption.SKIP_CHECKSUMS) : EnumSet.noneOf(ReadOption.class);
+		this.readSize = readSize;
+		this.zeroCopy = true;
+	}
+
+	/**
+	 * Read the next buffer from the underlying stream.
+	 *
+	 * @return false at EOF or after switching to regular reads
+	 */
+	private boolean nextBuffer() throws IOException {
+		releaseBuffer();
+
+		while (zeroCopy) {
+			try {
+				buffer = in.read(pool, readSize, readOptions);
+			} catch (UnsupportedOperationException e) {
+				logger.debug("enhanced byte-buffer reads not supported: {}", e.getMessage());
+				zeroCopy = false;
+				return false;
+			}
+
+			if (buffer == null)
+				return false;
+
+			if (!buffer.isReadOnly()) {
+				// The data was copied into a pool buffer, so the next reads will copy it only once
+				logger.debug("zero-copy reads not available, switching to regular reads");
+				zeroCopy = false;
+			}
+
+			if (buffer.hasRemaining())
+				return true;
+
+			releaseBuffer();
+		}
+
+		return false;
+	}
+
+	private void releaseBuffer() {
+		if (buffer != null) {
+			in.releaseBuffer(buffer);
+			buffer = null;
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (buffer != null && buffer.hasRemaining())
+			return buffer.get() & 0xFF;
+
+		if (!zeroCopy || !nextBuffer()) {
+			releaseBuffer();
+			return zeroCopy? -1 : in.read();
+		}
+
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		if (buffer == null || !buffer.hasRemaining()) {
+			if (!zeroCopy || !nextBuffer()) {
+				releaseBuffer();
+				return zeroCopy? -1 : in.read(b, off, len);
+			}
+		}
+
+		int n = Math.min(len, buffer.remaining());
+		buffer.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long getPos() throws IOException {
+		return in.getPos() - ((buffer != null)? buffer.remaining() : 0);
+	}
+
+	@Override
+	public void seek(long pos) throws IOException {
+		releaseBuffer();
+		in.seek(pos);
+	}
+
+	@Override
+	public boolean seekToNewSource(long targetPos) throws IOException {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		releaseBuffer();
+		in.close();
+	}
+}
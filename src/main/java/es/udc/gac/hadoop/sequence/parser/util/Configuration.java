@@ -30,6 +30,64 @@ public final class Configuration {
 	private static final int INPUT_BUFFER_SIZE_DEFAULT = 64*1024;
 	public static final String TRIM_SEQUENCE_NAME_KEY = "hsp.trim.sequence.name";
 	private static final boolean TRIM_SEQUENCE_NAME_DEFAULT = true;
+	public static final String SEQUENCE_RECORD_KEY = "hsp.sequence.record";
+	private static final boolean SEQUENCE_RECORD_DEFAULT = false;
+	public static final String QUALITY_BINNING_KEY = "hsp.quality.binning";
+	private static final String QUALITY_BINNING_DEFAULT = QualityBinning.NONE;
+	public static final String BATCH_SIZE_KEY = "hsp.batch.size";
+	private static final int BATCH_SIZE_DEFAULT = 1024;
+	public static final String GZIP_PROBE_SIZE_KEY = "hsp.gzip.probe.size";
+	private static final int GZIP_PROBE_SIZE_DEFAULT = 0;
+	public static final String GZIP_INDEX_SPAN_KEY = "hsp.gzip.index.span";
+	private static final long GZIP_INDEX_SPAN_DEFAULT = 32*1024*1024;
+	public static final String RECORD_INDEX_KEY = "hsp.record.index";
+	private static final boolean RECORD_INDEX_DEFAULT = true;
+	public static final String RECORD_INDEX_INTERVAL_KEY = "hsp.record.index.interval";
+	private static final int RECORD_INDEX_INTERVAL_DEFAULT = 1024;
+	public static final String RECORD_ORDINAL_KEYS_KEY = "hsp.record.ordinal.keys";
+	private static final boolean RECORD_ORDINAL_KEYS_DEFAULT = false;
+	public static final String PAIRED_CHECK_NAMES_KEY = "hsp.paired.check.names";
+	private static final boolean PAIRED_CHECK_NAMES_DEFAULT = true;
+	public static final String READ_AHEAD_BUFFERS_KEY = "hsp.read.ahead.buffers";
+	private static final int READ_AHEAD_BUFFERS_DEFAULT = 0;
+	public static final String READ_AHEAD_BUFFER_SIZE_KEY = "hsp.read.ahead.buffer.size";
+	private static final int READ_AHEAD_BUFFER_SIZE_DEFAULT = 256*1024;
+	public static final String BZIP2_THREADS_KEY = "hsp.bzip2.threads";
+	private static final int BZIP2_THREADS_DEFAULT = 0;
+	public static final String PAIRED_CONCURRENT_KEY = "hsp.paired.concurrent";
+	private static final boolean PAIRED_CONCURRENT_DEFAULT = false;
+	public static final String PAIRED_QUEUE_SIZE_KEY = "hsp.paired.queue.size";
+	private static final int PAIRED_QUEUE_SIZE_DEFAULT = 64;
+	public static final String MEMORY_MAP_KEY = "hsp.mmap";
+	private static final boolean MEMORY_MAP_DEFAULT = false;
+	public static final String MEMORY_MAP_WINDOW_SIZE_KEY = "hsp.mmap.window.size";
+	private static final int MEMORY_MAP_WINDOW_SIZE_DEFAULT = 256*1024*1024;
+	public static final String BYTE_BUFFER_READ_KEY = "hsp.bytebuffer.read";
+	private static final boolean BYTE_BUFFER_READ_DEFAULT = false;
+	public static final String BYTE_BUFFER_READ_SIZE_KEY = "hsp.bytebuffer.read.size";
+	private static final int BYTE_BUFFER_READ_SIZE_DEFAULT = 4*1024*1024;
+	public static final String BYTE_BUFFER_SKIP_CHECKSUMS_KEY = "hsp.bytebuffer.skip.checksums";
+	private static final boolean BYTE_BUFFER_SKIP_CHECKSUMS_DEFAULT = false;
+	public static final String BINARY_BLOCK_SIZE_KEY = "hsp.binary.block.size";
+	private static final int BINARY_BLOCK_SIZE_DEFAULT = 1024*1024;
+	public static final String BINARY_COMPRESSION_LEVEL_KEY = "hsp.binary.compression.level";
+	private static final int BINARY_COMPRESSION_LEVEL_DEFAULT = 1;
+	public static final String COUNTERS_KEY = "hsp.counters";
+	private static final boolean COUNTERS_DEFAULT = true;
+	public static final String FASTA_JOIN_LINES_KEY = "hsp.fasta.join.lines";
+	private static final boolean FASTA_JOIN_LINES_DEFAULT = false;
+	public static final String FASTA_WINDOW_SIZE_KEY = "hsp.fasta.window.size";
+	private static final int FASTA_WINDOW_SIZE_DEFAULT = 1024*1024;
+	public static final String FASTA_WINDOW_OVERLAP_KEY = "hsp.fasta.window.overlap";
+	private static final int FASTA_WINDOW_OVERLAP_DEFAULT = 0;
+	public static final String PAIRED_MATE_PATTERN_KEY = "hsp.paired.mate.pattern";
+	private static final String PAIRED_MATE_PATTERN_DEFAULT = "_R?[12](?=[._])";
+	public static final String SPLIT_THREADS_KEY = "hsp.split.threads";
+	private static final int SPLIT_THREADS_DEFAULT = 8;
+	public static final String SPLIT_CACHE_SIZE_KEY = "hsp.split.cache.size";
+	private static final int SPLIT_CACHE_SIZE_DEFAULT = 0;
+	public static final String BUFFER_POOL_SIZE_KEY = "hsp.buffer.pool.size";
+	private static final long BUFFER_POOL_SIZE_DEFAULT = 0;
 
 	public static int getInputBufferSize(org.apache.hadoop.conf.Configuration conf) {
 		return conf.getInt(INPUT_BUFFER_SIZE_KEY, INPUT_BUFFER_SIZE_DEFAULT);
@@ -45,4 +103,358 @@ public final class Configuration {
 	public static boolean getTrimSequenceName(org.apache.hadoop.conf.Configuration conf) {
 		return conf.getBoolean(TRIM_SEQUENCE_NAME_KEY, TRIM_SEQUENCE_NAME_DEFAULT); 
 	}
+
+	/**
+	 * Emit values as SequenceRecord (PairSequenceRecord for paired-end datasets),
+	 * which provide access to the name, bases and qualities without decoding.
+	 */
+	public static void setSequenceRecord(org.apache.hadoop.conf.Configuration conf, boolean sequenceRecord) {
+		conf.setBoolean(SEQUENCE_RECORD_KEY, sequenceRecord);
+	}
+
+	public static boolean getSequenceRecord(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(SEQUENCE_RECORD_KEY, SEQUENCE_RECORD_DEFAULT);
+	}
+
+	/**
+	 * Set the quality binning applied by packed input formats: "none",
+	 * "illumina8" or a list of bins (see {@link QualityBinning}).
+	 */
+	public static void setQualityBinning(org.apache.hadoop.conf.Configuration conf, String qualityBinning) {
+		conf.set(QUALITY_BINNING_KEY, qualityBinning);
+	}
+
+	public static QualityBinning getQualityBinning(org.apache.hadoop.conf.Configuration conf) {
+		return QualityBinning.parse(conf.get(QUALITY_BINNING_KEY, QUALITY_BINNING_DEFAULT));
+	}
+
+	/**
+	 * Set the maximum number of records per batch emitted by batch input formats.
+	 */
+	public static void setBatchSize(org.apache.hadoop.conf.Configuration conf, int batchSize) {
+		conf.setInt(BATCH_SIZE_KEY, batchSize);
+	}
+
+	public static int getBatchSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(BATCH_SIZE_KEY, BATCH_SIZE_DEFAULT);
+	}
+
+	/**
+	 * Set the number of bytes searched for a member boundary around the middle
+	 * of gzip files to detect multi-member files, which are then splittable
+	 * (e.g., 4MB). The search runs at job submission for every gzip file larger
+	 * than the split size, so it is disabled by default (BGZF files are always
+	 * detected).
+	 */
+	public static void setGzipProbeSize(org.apache.hadoop.conf.Configuration conf, int probeSize) {
+		conf.setInt(GZIP_PROBE_SIZE_KEY, probeSize);
+	}
+
+	public static int getGzipProbeSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(GZIP_PROBE_SIZE_KEY, GZIP_PROBE_SIZE_DEFAULT);
+	}
+
+	/**
+	 * Set the minimum number of uncompressed bytes between the checkpoints
+	 * of a gzip index (see {@link GzipIndex}).
+	 */
+	public static void setGzipIndexSpan(org.apache.hadoop.conf.Configuration conf, long span) {
+		conf.setLong(GZIP_INDEX_SPAN_KEY, span);
+	}
+
+	public static long getGzipIndexSpan(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getLong(GZIP_INDEX_SPAN_KEY, GZIP_INDEX_SPAN_DEFAULT);
+	}
+
+	/**
+	 * Use the record index of the input files, when present, to generate
+	 * splits aligned to record boundaries (see {@link RecordIndex}).
+	 */
+	public static void setRecordIndex(org.apache.hadoop.conf.Configuration conf, boolean recordIndex) {
+		conf.setBoolean(RECORD_INDEX_KEY, recordIndex);
+	}
+
+	public static boolean getRecordIndex(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(RECORD_INDEX_KEY, RECORD_INDEX_DEFAULT);
+	}
+
+	/**
+	 * Set the number of records between the entries of a record index.
+	 */
+	public static void setRecordIndexInterval(org.apache.hadoop.conf.Configuration conf, int interval) {
+		conf.setInt(RECORD_INDEX_INTERVAL_KEY, interval);
+	}
+
+	public static int getRecordIndexInterval(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(RECORD_INDEX_INTERVAL_KEY, RECORD_INDEX_INTERVAL_DEFAULT);
+	}
+
+	/**
+	 * Emit the global ordinal of each record (starting at 0) as the key
+	 * instead of its byte offset. It requires splits generated from a
+	 * record index; otherwise, keys are byte offsets.
+	 */
+	public static void setRecordOrdinalKeys(org.apache.hadoop.conf.Configuration conf, boolean ordinalKeys) {
+		conf.setBoolean(RECORD_ORDINAL_KEYS_KEY, ordinalKeys);
+	}
+
+	public static boolean getRecordOrdinalKeys(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(RECORD_ORDINAL_KEYS_KEY, RECORD_ORDINAL_KEYS_DEFAULT);
+	}
+
+	/**
+	 * Check that the reads of each paired-end record have the same name,
+	 * ignoring comments and the "/1", ".1" or "_1" mate suffixes (and their
+	 * "2" counterparts). Splits paired by byte offset are checked to have the
+	 * same keys and lengths instead, as in previous versions.
+	 */
+	public static void setPairedCheckNames(org.apache.hadoop.conf.Configuration conf, boolean checkNames) {
+		conf.setBoolean(PAIRED_CHECK_NAMES_KEY, checkNames);
+	}
+
+	public static boolean getPairedCheckNames(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(PAIRED_CHECK_NAMES_KEY, PAIRED_CHECK_NAMES_DEFAULT);
+	}
+
+	/**
+	 * Set the number of buffers read ahead by a background thread while
+	 * parsing the input (0 disables read-ahead).
+	 */
+	public static void setReadAheadBuffers(org.apache.hadoop.conf.Configuration conf, int numBuffers) {
+		conf.setInt(READ_AHEAD_BUFFERS_KEY, numBuffers);
+	}
+
+	public static int getReadAheadBuffers(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(READ_AHEAD_BUFFERS_KEY, READ_AHEAD_BUFFERS_DEFAULT);
+	}
+
+	public static void setReadAheadBufferSize(org.apache.hadoop.conf.Configuration conf, int bufferSize) {
+		conf.setInt(READ_AHEAD_BUFFER_SIZE_KEY, bufferSize);
+	}
+
+	public static int getReadAheadBufferSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(READ_AHEAD_BUFFER_SIZE_KEY, READ_AHEAD_BUFFER_SIZE_DEFAULT);
+	}
+
+	/**
+	 * Set the number of threads used to decompress the blocks of bzip2
+	 * files concurrently in each record reader (0 disables it, using
+	 * the Hadoop codec instead). It should be at least 1 when several
+	 * single-end record readers run in the same JVM, as the Hadoop codec
+	 * cannot decompress several bzip2 splits at the same time.
+	 */
+	public static void setBZip2Threads(org.apache.hadoop.conf.Configuration conf, int numThreads) {
+		conf.setInt(BZIP2_THREADS_KEY, numThreads);
+	}
+
+	public static int getBZip2Threads(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(BZIP2_THREADS_KEY, BZIP2_THREADS_DEFAULT);
+	}
+
+	/**
+	 * Read the right reads of paired-end datasets on a background thread,
+	 * concurrently with the left ones.
+	 */
+	public static void setPairedConcurrent(org.apache.hadoop.conf.Configuration conf, boolean concurrent) {
+		conf.setBoolean(PAIRED_CONCURRENT_KEY, concurrent);
+	}
+
+	public static boolean getPairedConcurrent(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(PAIRED_CONCURRENT_KEY, PAIRED_CONCURRENT_DEFAULT);
+	}
+
+	/**
+	 * Set the maximum number of right reads parsed ahead of the left ones
+	 * when reading paired-end datasets concurrently.
+	 */
+	public static void setPairedQueueSize(org.apache.hadoop.conf.Configuration conf, int queueSize) {
+		conf.setInt(PAIRED_QUEUE_SIZE_KEY, queueSize);
+	}
+
+	public static int getPairedQueueSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(PAIRED_QUEUE_SIZE_KEY, PAIRED_QUEUE_SIZE_DEFAULT);
+	}
+
+	/**
+	 * Read uncompressed files of local filesystems (file://) by memory-mapping
+	 * them in windows of <code>hsp.mmap.window.size</code> bytes.
+	 */
+	public static void setMemoryMap(org.apache.hadoop.conf.Configuration conf, boolean memoryMap) {
+		conf.setBoolean(MEMORY_MAP_KEY, memoryMap);
+	}
+
+	public static boolean getMemoryMap(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(MEMORY_MAP_KEY, MEMORY_MAP_DEFAULT);
+	}
+
+	/**
+	 * Size of the memory-mapped windows. Windows are only unmapped when they
+	 * are garbage collected, so windows much smaller than the splits may
+	 * exceed the limit of mappings per process (vm.max_map_count on Linux).
+	 */
+	public static void setMemoryMapWindowSize(org.apache.hadoop.conf.Configuration conf, int windowSize) {
+		conf.setInt(MEMORY_MAP_WINDOW_SIZE_KEY, windowSize);
+	}
+
+	public static int getMemoryMapWindowSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(MEMORY_MAP_WINDOW_SIZE_KEY, MEMORY_MAP_WINDOW_SIZE_DEFAULT);
+	}
+
+	/**
+	 * Read uncompressed files through the enhanced byte-buffer reads of the
+	 * filesystem, which avoid copies for cached or short-circuit HDFS blocks,
+	 * reading up to <code>hsp.bytebuffer.read.size</code> bytes at a time.
+	 * Regular reads are used when the copy cannot be avoided.
+	 */
+	public static void setByteBufferRead(org.apache.hadoop.conf.Configuration conf, boolean byteBufferRead) {
+		conf.setBoolean(BYTE_BUFFER_READ_KEY, byteBufferRead);
+	}
+
+	public static boolean getByteBufferRead(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(BYTE_BUFFER_READ_KEY, BYTE_BUFFER_READ_DEFAULT);
+	}
+
+	public static void setByteBufferReadSize(org.apache.hadoop.conf.Configuration conf, int readSize) {
+		conf.setInt(BYTE_BUFFER_READ_SIZE_KEY, readSize);
+	}
+
+	public static int getByteBufferReadSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(BYTE_BUFFER_READ_SIZE_KEY, BYTE_BUFFER_READ_SIZE_DEFAULT);
+	}
+
+	/**
+	 * Skip the verification of checksums in byte-buffer reads, which allows
+	 * zero-copy reads of HDFS blocks read with short-circuit local reads
+	 * that are not cached.
+	 */
+	public static void setByteBufferSkipChecksums(org.apache.hadoop.conf.Configuration conf, boolean skipChecksums) {
+		conf.setBoolean(BYTE_BUFFER_SKIP_CHECKSUMS_KEY, skipChecksums);
+	}
+
+	public static boolean getByteBufferSkipChecksums(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(BYTE_BUFFER_SKIP_CHECKSUMS_KEY, BYTE_BUFFER_SKIP_CHECKSUMS_DEFAULT);
+	}
+
+	/**
+	 * Set the uncompressed size of the blocks of binary sequence files.
+	 */
+	public static void setBinaryBlockSize(org.apache.hadoop.conf.Configuration conf, int blockSize) {
+		conf.setInt(BINARY_BLOCK_SIZE_KEY, blockSize);
+	}
+
+	public static int getBinaryBlockSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(BINARY_BLOCK_SIZE_KEY, BINARY_BLOCK_SIZE_DEFAULT);
+	}
+
+	/**
+	 * Set the Deflate compression level (1-9) of binary sequence files.
+	 */
+	public static void setBinaryCompressionLevel(org.apache.hadoop.conf.Configuration conf, int level) {
+		conf.setInt(BINARY_COMPRESSION_LEVEL_KEY, level);
+	}
+
+	public static int getBinaryCompressionLevel(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(BINARY_COMPRESSION_LEVEL_KEY, BINARY_COMPRESSION_LEVEL_DEFAULT);
+	}
+
+	/**
+	 * Publish task counters with the records, bytes and time processed by
+	 * the record readers (see {@link es.udc.gac.hadoop.sequence.parser.mapreduce.SequenceParserCounter}).
+	 */
+	public static void setCounters(org.apache.hadoop.conf.Configuration conf, boolean counters) {
+		conf.setBoolean(COUNTERS_KEY, counters);
+	}
+
+	public static boolean getCounters(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(COUNTERS_KEY, COUNTERS_DEFAULT);
+	}
+
+	/**
+	 * Join the sequence lines of FASTA records, so that each value contains
+	 * the name line followed by the whole sequence in a single line.
+	 */
+	public static void setFastAJoinLines(org.apache.hadoop.conf.Configuration conf, boolean joinLines) {
+		conf.setBoolean(FASTA_JOIN_LINES_KEY, joinLines);
+	}
+
+	public static boolean getFastAJoinLines(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getBoolean(FASTA_JOIN_LINES_KEY, FASTA_JOIN_LINES_DEFAULT);
+	}
+
+	/**
+	 * Set the number of bases of the windows emitted by FastAWindowInputFormat.
+	 */
+	public static void setFastAWindowSize(org.apache.hadoop.conf.Configuration conf, int windowSize) {
+		conf.setInt(FASTA_WINDOW_SIZE_KEY, windowSize);
+	}
+
+	public static int getFastAWindowSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(FASTA_WINDOW_SIZE_KEY, FASTA_WINDOW_SIZE_DEFAULT);
+	}
+
+	/**
+	 * Set the number of bases shared by consecutive windows emitted by
+	 * FastAWindowInputFormat (e.g., the k-mer length minus one).
+	 */
+	public static void setFastAWindowOverlap(org.apache.hadoop.conf.Configuration conf, int overlap) {
+		conf.setInt(FASTA_WINDOW_OVERLAP_KEY, overlap);
+	}
+
+	public static int getFastAWindowOverlap(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(FASTA_WINDOW_OVERLAP_KEY, FASTA_WINDOW_OVERLAP_DEFAULT);
+	}
+
+	/**
+	 * Set the regular expression that identifies the mate of a paired-end file
+	 * name (e.g., "_R1" in "sample_L001_R1.fastq"). Left and right files are
+	 * paired when their names match after removing the last match of it.
+	 */
+	public static void setPairedMatePattern(org.apache.hadoop.conf.Configuration conf, String pattern) {
+		conf.set(PAIRED_MATE_PATTERN_KEY, pattern);
+	}
+
+	public static String getPairedMatePattern(org.apache.hadoop.conf.Configuration conf) {
+		return conf.get(PAIRED_MATE_PATTERN_KEY, PAIRED_MATE_PATTERN_DEFAULT);
+	}
+
+	/**
+	 * Set the number of threads used to list the input files and generate
+	 * the splits of paired-end datasets (1 to disable concurrency).
+	 */
+	public static void setSplitThreads(org.apache.hadoop.conf.Configuration conf, int numThreads) {
+		conf.setInt(SPLIT_THREADS_KEY, numThreads);
+	}
+
+	public static int getSplitThreads(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(SPLIT_THREADS_KEY, SPLIT_THREADS_DEFAULT);
+	}
+
+	/**
+	 * Set the maximum number of pairs of mate files whose splits are cached
+	 * by the JVM for later submissions (0 to disable the cache, the default).
+	 * The cache is shared by all the jobs submitted from the JVM, so it is
+	 * only worth enabling in long-running drivers that submit jobs over the
+	 * same datasets repeatedly.
+	 */
+	public static void setSplitCacheSize(org.apache.hadoop.conf.Configuration conf, int cacheSize) {
+		conf.setInt(SPLIT_CACHE_SIZE_KEY, cacheSize);
+	}
+
+	public static int getSplitCacheSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getInt(SPLIT_CACHE_SIZE_KEY, SPLIT_CACHE_SIZE_DEFAULT);
+	}
+
+	/**
+	 * Set the maximum number of bytes kept by the JVM-wide pool of buffers
+	 * reused by the record readers (0 to disable the pool, see {@link BufferPool}).
+	 * Only idle buffers are counted, and the largest size configured by the
+	 * jobs of the JVM is used.
+	 */
+	public static void setBufferPoolSize(org.apache.hadoop.conf.Configuration conf, long poolSize) {
+		conf.setLong(BUFFER_POOL_SIZE_KEY, poolSize);
+	}
+
+	public static long getBufferPoolSize(org.apache.hadoop.conf.Configuration conf) {
+		return conf.getLong(BUFFER_POOL_SIZE_KEY, BUFFER_POOL_SIZE_DEFAULT);
+	}
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Index of a FASTA file in the format created by <code>samtools faidx</code>,
+ * stored next to the sequence file with the ".fai" suffix. Each entry
+ * provides the name and length of a record, the offset of its first base
+ * and the number of bases and bytes per line.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public final class FastAIndex {
+
+	public static final String INDEX_SUFFIX = ".fai";
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * Index entry of a FASTA record
+	 */
+	public static final class Entry {
+		private final String name;
+		private final long length;
+		private final long offset;
+		private final int lineBases;
+		private final int lineWidth;
+
+		Entry(String name, long length, long offset, int lineBases, int lineWidth) {
+			this.name = name;
+			this.length = length;
+			this.offset = offset;
+			this.lineBases = lineBases;
+			this.lineWidth = lineWidth;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the number of bases of the record.
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns the offset of the first base of the record.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Returns the number of bases per line.
+		 */
+		public int getLineBases() {
+			return lineBases;
+		}
+
+		/**
+		 * Returns the number of bytes per line, including the newline.
+		 */
+		public int getLineWidth() {
+			return lineWidth;
+		}
+
+		/**
+		 * Returns the offset where the sequence lines of the record end.
+		 */
+		public long getEndOffset() {
+			if (length == 0)
+				return offset;
+
+			long lines = length / lineBases;
+			int lastLineBases = (int) (length % lineBases);
+			return offset + lines * lineWidth + ((lastLineBases > 0)? lastLineBases + lineWidth - lineBases : 0);
+		}
+	}
+
+	private final List<Entry> entries;
+
+	private FastAIndex(List<Entry> entries) {
+		this.entries = entries;
+	}
+
+	public int getNumEntries() {
+		return entries.size();
+	}
+
+	public Entry getEntry(int entry) {
+		return entries.get(entry);
+	}
+
+	/**
+	 * Find the last entry whose first base is at or before <code>offset</code>.
+	 *
+	 * @return the entry, or -1 if there is none
+	 */
+	public int findEntry(long offset) {
+		int low = 0, high = entries.size();
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (entries.get(mid).getOffset() <= offset)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low - 1;
+	}
+
+	/**
+	 * Returns the path of the index of a FASTA file.
+	 */
+	public static Path getIndexPath(Path file) {
+		return new Path(file.getParent(), file.getName() + INDEX_SUFFIX);
+	}
+
+	/**
+	 * Read the index of a FASTA file.
+	 *
+	 * @return the index, or null if the file has no valid index
+	 */
+	public static FastAIndex read(FileSystem fs, Path file) throws IOException {
+		Path indexPath = getIndexPath(file);
+		List<Entry> entries = new ArrayList<Entry>();
+
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(indexPath), StandardCharsets.US_ASCII))) {
+			String line;
+
+			while ((line = in.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+
+				String[] fields = line.split("\t");
+
+				if (fields.length < 5) {
+					logger.warn("ignoring invalid FASTA index {}: {}", indexPath, line);
+					return null;
+				}
+
+				Entry entry = new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+						Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+
+				if ((entry.getLength() > 0 && (entry.getLineBases() <= 0 || entry.getLineWidth() <= entry.getLineBases())) ||
+						(!entries.isEmpty() && entry.getOffset() <= entries.get(entries.size() - 1).getOffset())) {
+					logger.warn("ignoring invalid FASTA index {}: {}", indexPath, line);
+					return null;
+				}
+
+				entries.add(entry);
+			}
+		} catch (FileNotFoundException e) {
+			return null;
+		} catch (NumberFormatException e) {
+			logger.warn("ignoring invalid FASTA index {}: {}", indexPath, e.getMessage());
+			return null;
+		}
+
+		return new FastAIndex(entries);
+	}
+}
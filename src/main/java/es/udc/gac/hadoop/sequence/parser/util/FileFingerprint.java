@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Identification of the contents of a file (length, modification time and
+ * checksums of its first and last bytes), which is stored in its sidecar
+ * indexes to detect when they are out of date.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+final class FileFingerprint {
+
+	private static final int SAMPLE_SIZE = 64*1024;
+
+	private final long length;
+	private final long modificationTime;
+	private final long headChecksum;
+	private final long tailChecksum;
+
+	private FileFingerprint(long length, long modificationTime, long headChecksum, long tailChecksum) {
+		this.length = length;
+		this.modificationTime = modificationTime;
+		this.headChecksum = headChecksum;
+		this.tailChecksum = tailChecksum;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Compute the fingerprint of a file.
+	 */
+	public static FileFingerprint get(FileSystem fs, Path file) throws IOException {
+		FileStatus status = fs.getFileStatus(file);
+		long length = status.getLen();
+		byte[] buffer = new byte[(int) Math.min(SAMPLE_SIZE, length)];
+		long head, tail;
+
+		try (FSDataInputStream in = fs.open(file)) {
+			in.readFully(0, buffer);
+			head = checksum(buffer);
+			in.readFully(length - buffer.length, buffer);
+			tail = checksum(buffer);
+		}
+
+		return new FileFingerprint(length, status.getModificationTime(), head, tail);
+	}
+
+	public static FileFingerprint read(DataInput in) throws IOException {
+		return new FileFingerprint(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(length);
+		out.writeLong(modificationTime);
+		out.writeLong(headChecksum);
+		out.writeLong(tailChecksum);
+	}
+
+	/**
+	 * Check whether a file still has this fingerprint. The checksums
+	 * are only computed when the length and modification time match.
+	 */
+	public boolean matches(FileSystem fs, Path file) throws IOException {
+		FileStatus status = fs.getFileStatus(file);
+
+		if (status.getLen() != length || status.getModificationTime() != modificationTime)
+			return false;
+
+		FileFingerprint current = get(fs, file);
+		return current.length == length && current.modificationTime == modificationTime &&
+				current.headChecksum == headChecksum && current.tailChecksum == tailChecksum;
+	}
+
+	private static long checksum(byte[] buffer) {
+		CRC32 crc = new CRC32();
+		crc.update(buffer, 0, buffer.length);
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+
+/**
+ * Decompressor stream for gzip files with a {@link GzipIndex}, which
+ * allows to process them in splits aligned to the index checkpoints.
+ * 
+ * A split processes the data that follows the checkpoints starting within
+ * <code>(start, end]</code> (<code>[0, end]</code> for the first split).
+ * A single read never returns data across a checkpoint, and {@link #getPos()}
+ * returns the compressed offset of the checkpoint that precedes the last
+ * read data. Decompression from a checkpoint that is not byte-aligned is
+ * done by prepending a fixed Huffman block whose length completes the
+ * first byte, so that the original data keeps its byte alignment (which
+ * matters for stored blocks).
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class GzipCheckpointInputStream extends SplitCompressionInputStream {
+
+	private static final int INPUT_BUFFER_SIZE = 64*1024;
+	private static final int FIXED_LITERAL_CODE = 0x13; // 9-bit fixed Huffman code of literal 144, reversed
+
+	private final FSDataInputStream fileIn;
+	private final List<GzipIndex.Checkpoint> checkpoints;
+	private final List<GzipIndex.Member> members;
+	private final Inflater inflater;
+	private final byte[] input;
+	private int firstCheckpoint; // first checkpoint of the split, or -1 if there is none
+	private int checkpoint;
+	private int member;
+	private long uncompressed;
+	private long nextCheckpoint;
+	private long reportedPos;
+	private boolean eof;
+
+	/**
+	 * Create a new stream for the split <code>[start, end)</code>.
+	 *
+	 * @param in the gzip file
+	 * @param start the split start
+	 * @param end the split end
+	 * @param index the index of the gzip file
+	 *
+	 * @throws IOException
+	 */
+	public GzipCheckpointInputStream(FSDataInputStream in, long start, long end, GzipIndex index) throws IOException {
+		super(in, start, end);
+		fileIn = in;
+		checkpoints = index.getCheckpoints();
+		members = index.getMembers();
+		inflater = new Inflater(true);
+		input = new byte[INPUT_BUFFER_SIZE];
+		checkpoint = index.findCheckpoint(start, end);
+
+		if (checkpoint == -1 || checkpoints.isEmpty()) {
+			// No checkpoint within this split
+			firstCheckpoint = -1;
+			setStart(end);
+			reportedPos = end;
+			eof = true;
+			return;
+		}
+
+		// The first split starts at the beginning of the file, before the gzip header
+		setStart((start == 0)? 0 : checkpoints.get(checkpoint).getOffset());
+		firstCheckpoint = checkpoint;
+		open();
+	}
+
+	/**
+	 * Create a new stream that starts at the given checkpoint and
+	 * continues until the end of the file.
+	 *
+	 * @param in the gzip file
+	 * @param index the index of the gzip file
+	 * @param checkpoint the checkpoint number
+	 *
+	 * @throws IOException
+	 */
+	public GzipCheckpointInputStream(FSDataInputStream in, GzipIndex index, int checkpoint) throws IOException {
+		super(in, index.getCheckpoints().get(checkpoint).getOffset(), index.getFileLength());
+		fileIn = in;
+		checkpoints = index.getCheckpoints();
+		members = index.getMembers();
+		inflater = new Inflater(true);
+		input = new byte[INPUT_BUFFER_SIZE];
+		this.checkpoint = firstCheckpoint = checkpoint;
+		open();
+	}
+
+	private void open() throws IOException {
+		GzipIndex.Checkpoint cp = checkpoints.get(checkpoint);
+		reportedPos = cp.getOffset();
+		member = cp.getMember();
+		uncompressed = cp.getUncompressedOffset();
+		nextCheckpoint = getNextCheckpoint();
+		fileIn.seek(cp.getOffset());
+
+		int shift = (int) (cp.getBitOffset() & 7);
+		byte[] window = cp.getWindow();
+
+		if (shift == 0) {
+			if (window.length > 0)
+				inflater.setDictionary(window);
+			return;
+		}
+
+		/*
+		 * Prepend a non-final fixed Huffman block with n literals, whose
+		 * length (10 + 9*n bits) is congruent with the bit offset modulo 8.
+		 * Its last byte is completed with the first bits of the checkpoint
+		 * block, and the window replaces the decoded literals as history.
+		 */
+		int literals = (shift - 2) & 7;
+		int bits = 10 + 9 * literals;
+		byte[] prefix = new byte[(bits + 7) / 8];
+		int pos = writeBits(prefix, 0, 2, 3); // BFINAL = 0, BTYPE = 01
+
+		for (int i = 0; i < literals; i++)
+			pos = writeBits(prefix, pos, FIXED_LITERAL_CODE, 9);
+
+		writeBits(prefix, pos, 0, 7); // end of block
+
+		int first = fileIn.read();
+
+		if (first == -1)
+			throw new EOFException("Unexpected end of gzip file");
+
+		prefix[prefix.length - 1] |= first & (0xFF << shift);
+		inflater.setInput(prefix);
+
+		try {
+			byte[] b = new byte[literals];
+			int n = 0;
+
+			while (n < literals) {
+				int length = inflater.inflate(b, n, literals - n);
+
+				if (length == 0 && inflater.needsInput()) {
+					length = fillInput();
+
+					if (length == -1)
+						throw new EOFException("Unexpected end of gzip file");
+
+					inflater.setInput(input, 0, length);
+				}
+
+				n += length;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt gzip data after offset "+reportedPos, e);
+		}
+
+		if (window.length > 0)
+			inflater.setDictionary(window);
+	}
+
+	private static int writeBits(byte[] b, int pos, int value, int length) {
+		for (int i = 0; i < length; i++, pos++)
+			b[pos >>> 3] |= ((value >>> i) & 1) << (pos & 7);
+
+		return pos;
+	}
+
+	/**
+	 * Returns the uncompressed offset of the next byte to be read.
+	 */
+	public long getUncompressedPos() {
+		return uncompressed;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		while (!eof) {
+			while (uncompressed >= nextCheckpoint) {
+				checkpoint++;
+				nextCheckpoint = getNextCheckpoint();
+			}
+
+			int n;
+
+			try {
+				n = inflater.inflate(b, off, (int) Math.min(len, nextCheckpoint - uncompressed));
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt gzip data after offset "+reportedPos, e);
+			}
+
+			if (n > 0) {
+				uncompressed += n;
+				reportedPos = checkpoints.get(checkpoint).getOffset();
+				return n;
+			}
+
+			if (inflater.finished()) {
+				// Continue with the next member, if any
+				if (++member >= members.size()) {
+					eof = true;
+					break;
+				}
+
+				inflater.reset();
+				fileIn.seek(members.get(member).getDeflateOffset());
+			} else if (inflater.needsInput()) {
+				int length = fillInput();
+
+				if (length == -1)
+					throw new EOFException("Unexpected end of gzip file");
+
+				inflater.setInput(input, 0, length);
+			} else if (inflater.needsDictionary()) {
+				throw new IOException("Corrupt gzip data after offset "+reportedPos);
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return (read(b, 0, 1) == -1)? -1 : (b[0] & 0xFF);
+	}
+
+	/**
+	 * Returns the compressed offset of the checkpoint that precedes
+	 * the last read data.
+	 */
+	@Override
+	public long getPos() throws IOException {
+		return reportedPos;
+	}
+
+	@Override
+	public void resetState() throws IOException {
+		inflater.reset();
+
+		if (firstCheckpoint == -1)
+			return;
+
+		// Decompress again from the first checkpoint of the split
+		checkpoint = firstCheckpoint;
+		eof = false;
+		open();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private long getNextCheckpoint() {
+		return (checkpoint + 1 < checkpoints.size())?
+				checkpoints.get(checkpoint + 1).getUncompressedOffset() : Long.MAX_VALUE;
+	}
+
+	private int fillInput() throws IOException {
+		return fileIn.read(input, 0, input.length);
+	}
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Detection of gzip files made of several independent members, which
+ * can be split at member boundaries:
+ * <ul>
+ * <li>BGZF (blocked gzip, as generated by bgzip): every member includes
+ * a 'BC' extra subfield with its compressed size</li>
+ * <li>Multi-member gzip (e.g. concatenated gzip files)</li>
+ * </ul>
+ * Formats are detected from the magic and extra-field bytes of the
+ * members instead of the file extension.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public final class GzipFormat {
+
+	public enum Type {
+		/** Single member, or members too large to be found by probing */
+		SINGLE_MEMBER,
+		/** Several members without BGZF extra fields */
+		MULTI_MEMBER,
+		/** Blocked gzip */
+		BGZF
+	}
+
+	static final int ID1 = 0x1F;
+	static final int ID2 = 0x8B;
+	static final int CM_DEFLATE = 8;
+	static final int FHCRC = 0x02;
+	static final int FEXTRA = 0x04;
+	static final int FNAME = 0x08;
+	static final int FCOMMENT = 0x10;
+	static final int FRESERVED = 0xE0;
+	static final int HEADER_SIZE = 10;
+	static final int TRAILER_SIZE = 8;
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final double SPLIT_SLOP = 1.1; // 10% slop
+	private static final int SCAN_BUFFER_SIZE = 64*1024;
+	private static final int BGZF_MAX_HEADER_SIZE = 18 + 64; // header plus some other extra subfields
+	private static final int VALIDATION_OUTPUT_SIZE = 64*1024;
+
+	private GzipFormat() {
+	}
+
+	/**
+	 * Check whether a gzip file can be split at member boundaries. Files that
+	 * fit in a single split are not opened.
+	 *
+	 * @param conf the configuration
+	 * @param file the gzip file
+	 *
+	 * @return true if the file has a {@link GzipIndex} or it is in BGZF or multi-member gzip format
+	 */
+	public static boolean isSplittable(org.apache.hadoop.conf.Configuration conf, Path file) {
+		try {
+			FileSystem fs = file.getFileSystem(conf);
+			FileStatus status = fs.getFileStatus(file);
+
+			if (status.getLen() <= getSplitSize(conf, status) * SPLIT_SLOP)
+				return false;
+
+			if (GzipIndex.exists(fs, file))
+				return true;
+
+			return detect(fs, file, Configuration.getGzipProbeSize(conf)) != Type.SINGLE_MEMBER;
+		} catch (IOException e) {
+			logger.warn("cannot detect the gzip format of {}: {}", file, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Get the split size of a file, as computed by FileInputFormat.
+	 */
+	private static long getSplitSize(org.apache.hadoop.conf.Configuration conf, FileStatus status) {
+		long minSize = Math.max(1, conf.getLong(FileInputFormat.SPLIT_MINSIZE, 1));
+		long maxSize = conf.getLong(FileInputFormat.SPLIT_MAXSIZE, Long.MAX_VALUE);
+
+		return Math.max(minSize, Math.min(maxSize, status.getBlockSize()));
+	}
+
+	/**
+	 * Detect the type of a gzip file.
+	 *
+	 * @param fs the file system
+	 * @param file the gzip file
+	 * @param probeSize the number of bytes searched for a member boundary
+	 * around the middle of the file to detect multi-member files
+	 *
+	 * @return the gzip type
+	 *
+	 * @throws IOException
+	 */
+	public static Type detect(FileSystem fs, Path file, int probeSize) throws IOException {
+		long length = fs.getFileStatus(file).getLen();
+
+		try (FSDataInputStream in = fs.open(file)) {
+			byte[] header = new byte[BGZF_MAX_HEADER_SIZE];
+			int read = readFully(in, 0, header, (int) Math.min(header.length, length));
+
+			if (read < HEADER_SIZE || !isMemberHeader(header, 0))
+				return Type.SINGLE_MEMBER;
+
+			if (getBGZFBlockSize(header, 0, read) > 0) {
+				logger.debug("{} is a BGZF file", file);
+				return Type.BGZF;
+			}
+
+			if (probeSize > 0 && length > 2 * HEADER_SIZE) {
+				long probeStart = length / 2;
+				long member = findMember(in, probeStart, Math.min(length, probeStart + probeSize), length, false);
+
+				if (member != -1) {
+					logger.debug("{} is a multi-member gzip file (member found at {})", file, member);
+					return Type.MULTI_MEMBER;
+				}
+			}
+		}
+
+		return Type.SINGLE_MEMBER;
+	}
+
+	/**
+	 * Find the first member that starts within <code>(from, to]</code>,
+	 * or <code>[0, to]</code> if <code>from</code> is 0.
+	 *
+	 * @param in the gzip file
+	 * @param from the starting position (exclusive, except for 0)
+	 * @param to the ending position (inclusive)
+	 * @param fileLength the length of the file
+	 * @param bgzf whether the file is in BGZF format
+	 *
+	 * @return the offset of the member, or -1 if not found
+	 *
+	 * @throws IOException
+	 */
+	public static long findMember(FSDataInputStream in, long from, long to, long fileLength, boolean bgzf) throws IOException {
+		byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+		long bufferStart = (from == 0)? 0 : from + 1;
+		to = Math.min(to, fileLength - HEADER_SIZE);
+
+		while (bufferStart <= to) {
+			int length = readFully(in, bufferStart, buffer, (int) Math.min(buffer.length, fileLength - bufferStart));
+
+			// Only consider candidates whose header is fully buffered
+			int limit = (int) Math.min(length - HEADER_SIZE, to - bufferStart);
+
+			for (int i = 0; i <= limit; i++) {
+				if (isMemberHeader(buffer, i)) {
+					long candidate = bufferStart + i;
+
+					if (bgzf? isBGZFBlock(in, candidate, fileLength) : isMember(in, candidate, fileLength))
+						return candidate;
+				}
+			}
+
+			if (limit < 0)
+				break;
+
+			bufferStart += limit + 1;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Check the fixed part of a gzip member header.
+	 */
+	static boolean isMemberHeader(byte[] buffer, int offset) {
+		return (buffer[offset] & 0xFF) == ID1
+				&& (buffer[offset + 1] & 0xFF) == ID2
+				&& buffer[offset + 2] == CM_DEFLATE
+				&& (buffer[offset + 3] & FRESERVED) == 0;
+	}
+
+	/**
+	 * Return the total size of the BGZF block whose header is at
+	 * <code>buffer[offset]</code>, or -1 if it is not a BGZF header.
+	 */
+	static int getBGZFBlockSize(byte[] buffer, int offset, int length) {
+		if (length - offset < HEADER_SIZE + 2 || (buffer[offset + 3] & FEXTRA) == 0)
+			return -1;
+
+		int xlen = readShort(buffer, offset + HEADER_SIZE);
+		int pos = offset + HEADER_SIZE + 2;
+		int extraEnd = Math.min(pos + xlen, length);
+
+		// Look for the BC subfield
+		while (pos + 4 <= extraEnd) {
+			int slen = readShort(buffer, pos + 2);
+
+			if (buffer[pos] == 'B' && buffer[pos + 1] == 'C' && slen == 2 && pos + 6 <= extraEnd)
+				return readShort(buffer, pos + 4) + 1;
+
+			pos += 4 + slen;
+		}
+
+		return -1;
+	}
+
+	private static boolean isBGZFBlock(FSDataInputStream in, long pos, long fileLength) throws IOException {
+		byte[] header = new byte[BGZF_MAX_HEADER_SIZE];
+		int read = readFully(in, pos, header, (int) Math.min(header.length, fileLength - pos));
+		int blockSize = getBGZFBlockSize(header, 0, read);
+
+		if (blockSize <= 0)
+			return false;
+
+		// The next block must start right after this one
+		long next = pos + blockSize;
+
+		if (next == fileLength)
+			return true;
+
+		if (next > fileLength - HEADER_SIZE)
+			return false;
+
+		read = readFully(in, next, header, (int) Math.min(header.length, fileLength - next));
+		return isMemberHeader(header, 0) && getBGZFBlockSize(header, 0, read) > 0;
+	}
+
+	/**
+	 * Validate a member candidate by inflating its beginning. The
+	 * uncompressed data must be text, and if the member ends within
+	 * the inflated data its CRC and size must match the trailer.
+	 */
+	private static boolean isMember(FSDataInputStream in, long pos, long fileLength) throws IOException {
+		byte[] input = new byte[SCAN_BUFFER_SIZE];
+		byte[] output = new byte[VALIDATION_OUTPUT_SIZE];
+		int read = readFully(in, pos, input, (int) Math.min(input.length, fileLength - pos));
+		int headerSize = getHeaderSize(input, 0, read);
+
+		if (headerSize < 0)
+			return false;
+
+		Inflater inflater = new Inflater(true);
+		CRC32 crc = new CRC32();
+
+		try {
+			inflater.setInput(input, headerSize, read - headerSize);
+			int outputLength = 0;
+
+			while (outputLength < output.length && !inflater.finished()) {
+				int n = inflater.inflate(output, outputLength, output.length - outputLength);
+
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+
+				outputLength += n;
+			}
+
+			for (int i = 0; i < outputLength; i++) {
+				int c = output[i] & 0xFF;
+
+				if (c > '~' || (c < ' ' && c != '\n' && c != '\r' && c != '\t'))
+					return false;
+			}
+
+			if (inflater.finished()) {
+				int trailer = read - inflater.getRemaining();
+
+				if (trailer + TRAILER_SIZE > read)
+					return true;
+
+				crc.update(output, 0, outputLength);
+				return readInt(input, trailer) == (int) crc.getValue()
+						&& readInt(input, trailer + 4) == (int) inflater.getBytesWritten();
+			}
+
+			return outputLength > 0;
+		} catch (DataFormatException e) {
+			return false;
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Return the size of the gzip member header at <code>buffer[offset]</code>,
+	 * or -1 if it is not valid or it is not fully contained in the buffer.
+	 */
+	static int getHeaderSize(byte[] buffer, int offset, int length) {
+		if (length - offset < HEADER_SIZE || !isMemberHeader(buffer, offset))
+			return -1;
+
+		int flags = buffer[offset + 3];
+		int pos = offset + HEADER_SIZE;
+
+		if ((flags & FEXTRA) != 0) {
+			if (pos + 2 > length)
+				return -1;
+			pos += 2 + readShort(buffer, pos);
+		}
+
+		if ((flags & FNAME) != 0)
+			pos = skipZeroTerminated(buffer, pos, length);
+
+		if (pos >= 0 && (flags & FCOMMENT) != 0)
+			pos = skipZeroTerminated(buffer, pos, length);
+
+		if (pos >= 0 && (flags & FHCRC) != 0)
+			pos += 2;
+
+		if (pos < 0 || pos > length)
+			return -1;
+
+		return pos - offset;
+	}
+
+	private static int skipZeroTerminated(byte[] buffer, int pos, int length) {
+		while (pos < length) {
+			if (buffer[pos++] == 0)
+				return pos;
+		}
+		return -1;
+	}
+
+	static int readShort(byte[] buffer, int offset) {
+		return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8);
+	}
+
+	static int readInt(byte[] buffer, int offset) {
+		return readShort(buffer, offset) | (readShort(buffer, offset + 2) << 16);
+	}
+
+	private static int readFully(FSDataInputStream in, long pos, byte[] buffer, int length) throws IOException {
+		int total = 0;
+
+		while (total < length) {
+			int n = in.read(pos + total, buffer, total, length - total);
+
+			if (n <= 0)
+				break;
+
+			total += n;
+		}
+
+		return total;
+	}
+}
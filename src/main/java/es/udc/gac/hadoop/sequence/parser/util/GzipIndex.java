@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Random-access index for gzip files (zran-style). Each checkpoint stores
+ * the bit offset of a deflate block boundary, the uncompressed offset at
+ * that point and the last 32 KiB of uncompressed data (the window), which
+ * allows to resume decompression from the checkpoint.
+ * 
+ * The index is stored in a hidden sidecar file next to the gzip file
+ * (see {@link #getIndexPath(Path)}), so it is ignored when listing input
+ * directories. Like {@link RecordIndex}, it is ignored when the length,
+ * modification time or checksums of the gzip file have changed.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public final class GzipIndex {
+
+	public static final String INDEX_SUFFIX = ".gzidx";
+	private static final int MAGIC = 0x48535047; // "HSPG"
+	private static final int VERSION = 2;
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * A gzip member: offsets of its deflate data and its trailer, and
+	 * the uncompressed offset of its first byte.
+	 */
+	public static final class Member {
+		private final long deflateOffset;
+		private final long trailerOffset;
+		private final long uncompressedOffset;
+
+		Member(long deflateOffset, long trailerOffset, long uncompressedOffset) {
+			this.deflateOffset = deflateOffset;
+			this.trailerOffset = trailerOffset;
+			this.uncompressedOffset = uncompressedOffset;
+		}
+
+		public long getDeflateOffset() {
+			return deflateOffset;
+		}
+
+		public long getTrailerOffset() {
+			return trailerOffset;
+		}
+
+		public long getUncompressedOffset() {
+			return uncompressedOffset;
+		}
+	}
+
+	/**
+	 * An inflate checkpoint at a deflate block boundary.
+	 */
+	public static final class Checkpoint {
+		private final long bitOffset;
+		private final long uncompressedOffset;
+		private final int member;
+		private final byte[] window; // deflated
+
+		Checkpoint(long bitOffset, long uncompressedOffset, int member, byte[] window) {
+			this.bitOffset = bitOffset;
+			this.uncompressedOffset = uncompressedOffset;
+			this.member = member;
+			this.window = window;
+		}
+
+		/**
+		 * Returns the offset of the byte that contains the first bit of the checkpoint.
+		 */
+		public long getOffset() {
+			return bitOffset >>> 3;
+		}
+
+		public long getBitOffset() {
+			return bitOffset;
+		}
+
+		public long getUncompressedOffset() {
+			return uncompressedOffset;
+		}
+
+		public int getMember() {
+			return member;
+		}
+
+		/**
+		 * Returns the uncompressed data that precedes the checkpoint (up to 32 KiB).
+		 */
+		public byte[] getWindow() throws IOException {
+			Inflater inflater = new Inflater();
+
+			try {
+				inflater.setInput(window);
+				byte[] buffer = new byte[GzipIndexBuilder.WINDOW_SIZE];
+				int length = 0;
+
+				while (!inflater.finished() && length < buffer.length) {
+					int n = inflater.inflate(buffer, length, buffer.length - length);
+
+					if (n == 0 && !inflater.finished() && inflater.needsInput())
+						throw new IOException("Corrupt gzip index window");
+
+					length += n;
+				}
+
+				byte[] result = new byte[length];
+				System.arraycopy(buffer, 0, result, 0, length);
+				return result;
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt gzip index window", e);
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+
+	private final long fileLength;
+	private final List<Member> members;
+	private final List<Checkpoint> checkpoints;
+
+	GzipIndex(long fileLength) {
+		this.fileLength = fileLength;
+		this.members = new ArrayList<Member>();
+		this.checkpoints = new ArrayList<Checkpoint>();
+	}
+
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	public List<Member> getMembers() {
+		return members;
+	}
+
+	public List<Checkpoint> getCheckpoints() {
+		return checkpoints;
+	}
+
+	void addMember(long deflateOffset, long trailerOffset, long uncompressedOffset) {
+		members.add(new Member(deflateOffset, trailerOffset, uncompressedOffset));
+	}
+
+	void addCheckpoint(long bitOffset, long uncompressedOffset, int member, byte[] window, int windowLength) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+		try {
+			deflater.setInput(window, 0, windowLength);
+			deflater.finish();
+			byte[] buffer = new byte[windowLength + 64];
+			int length = 0;
+
+			while (!deflater.finished()) {
+				if (length == buffer.length) {
+					byte[] newBuffer = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, newBuffer, 0, length);
+					buffer = newBuffer;
+				}
+
+				length += deflater.deflate(buffer, length, buffer.length - length);
+			}
+
+			byte[] deflated = new byte[length];
+			System.arraycopy(buffer, 0, deflated, 0, length);
+			checkpoints.add(new Checkpoint(bitOffset, uncompressedOffset, member, deflated));
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Find the checkpoint where a split must start: the first checkpoint within
+	 * <code>(start, end]</code>, or the first one if <code>start</code> is 0.
+	 *
+	 * @return the checkpoint number, or -1 if there is no checkpoint within the split
+	 */
+	public int findCheckpoint(long start, long end) {
+		if (start == 0)
+			return 0;
+
+		int low = 0, high = checkpoints.size();
+
+		// First checkpoint whose offset is greater than start
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (checkpoints.get(mid).getOffset() <= start)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		if (low < checkpoints.size() && checkpoints.get(low).getOffset() <= end)
+			return low;
+
+		return -1;
+	}
+
+	/**
+	 * Find the last checkpoint whose uncompressed offset is less than
+	 * or equal to <code>uncompressedOffset</code>.
+	 *
+	 * @return the checkpoint number, or -1 if the index has no checkpoints
+	 */
+	public int findCheckpointBefore(long uncompressedOffset) {
+		int low = 0, high = checkpoints.size();
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (checkpoints.get(mid).getUncompressedOffset() <= uncompressedOffset)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low - 1;
+	}
+
+	/**
+	 * Returns the path of the index of a gzip file.
+	 */
+	public static Path getIndexPath(Path file) {
+		return new Path(file.getParent(), "." + file.getName() + INDEX_SUFFIX);
+	}
+
+	/**
+	 * Build the index of a gzip file.
+	 *
+	 * @param fs the file system
+	 * @param file the gzip file
+	 * @param span the minimum number of uncompressed bytes between checkpoints
+	 *
+	 * @return the index
+	 *
+	 * @throws IOException
+	 */
+	public static GzipIndex build(FileSystem fs, Path file, long span) throws IOException {
+		long length = fs.getFileStatus(file).getLen();
+
+		try (FSDataInputStream in = fs.open(file)) {
+			return new GzipIndexBuilder(in, length, span).build();
+		}
+	}
+
+	/**
+	 * Write the index to the sidecar file of a gzip file.
+	 */
+	public void write(FileSystem fs, Path file) throws IOException {
+		FileFingerprint fingerprint = FileFingerprint.get(fs, file);
+
+		if (fingerprint.getLength() != fileLength)
+			throw new IOException("File "+file+" was modified while it was indexed");
+
+		try (DataOutputStream out = fs.create(getIndexPath(file), true)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			fingerprint.write(out);
+			out.writeInt(members.size());
+
+			for (Member member : members) {
+				out.writeLong(member.deflateOffset);
+				out.writeLong(member.trailerOffset);
+				out.writeLong(member.uncompressedOffset);
+			}
+
+			out.writeInt(checkpoints.size());
+
+			for (Checkpoint checkpoint : checkpoints) {
+				out.writeLong(checkpoint.bitOffset);
+				out.writeLong(checkpoint.uncompressedOffset);
+				out.writeInt(checkpoint.member);
+				out.writeInt(checkpoint.window.length);
+				out.write(checkpoint.window);
+			}
+		}
+	}
+
+	/**
+	 * Check whether a gzip file has an up-to-date index, without reading it.
+	 */
+	public static boolean exists(FileSystem fs, Path file) throws IOException {
+		try (DataInputStream in = openIndex(fs, file)) {
+			return in != null;
+		}
+	}
+
+	/**
+	 * Read the index of a gzip file.
+	 *
+	 * @return the index, or null if the file has no index or it is out of date
+	 *
+	 * @throws IOException
+	 */
+	public static GzipIndex read(FileSystem fs, Path file) throws IOException {
+		try (DataInputStream in = openIndex(fs, file)) {
+			if (in == null)
+				return null;
+
+			GzipIndex index = new GzipIndex(fs.getFileStatus(file).getLen());
+			int numMembers = in.readInt();
+
+			for (int i = 0; i < numMembers; i++)
+				index.addMember(in.readLong(), in.readLong(), in.readLong());
+
+			int numCheckpoints = in.readInt();
+
+			for (int i = 0; i < numCheckpoints; i++) {
+				long bitOffset = in.readLong();
+				long uncompressedOffset = in.readLong();
+				int member = in.readInt();
+				byte[] window = new byte[in.readInt()];
+				in.readFully(window);
+				index.checkpoints.add(new Checkpoint(bitOffset, uncompressedOffset, member, window));
+			}
+
+			return index;
+		}
+	}
+
+	private static DataInputStream openIndex(FileSystem fs, Path file) throws IOException {
+		Path indexPath = getIndexPath(file);
+		FSDataInputStream in;
+
+		try {
+			in = fs.open(indexPath);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Incorrect gzip index "+indexPath);
+
+			if (in.readInt() != VERSION) {
+				logger.warn("ignoring gzip index {} with an unsupported version", indexPath);
+				in.close();
+				return null;
+			}
+
+			if (!FileFingerprint.read(in).matches(fs, file)) {
+				logger.warn("ignoring out of date gzip index {}", indexPath);
+				in.close();
+				return null;
+			}
+
+			return in;
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Builds a {@link GzipIndex} by decoding the whole gzip file. It includes a
+ * DEFLATE decoder (RFC 1951) because java.util.zip.Inflater does not report
+ * the bit offsets of the block boundaries.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+final class GzipIndexBuilder {
+
+	static final int WINDOW_SIZE = 32*1024;
+	private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+	private static final int CRC_CHUNK = 16*1024;
+	private static final int MAX_BITS = 15;
+	private static final int FAST_BITS = 10;
+	private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
+	private static final short[] LENGTH_BASE = {
+			3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+			35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+	private static final byte[] LENGTH_EXTRA = {
+			0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+			3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+	private static final int[] DIST_BASE = {
+			1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+			257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+	private static final byte[] DIST_EXTRA = {
+			0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+			7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+	private static final byte[] CODE_LENGTH_ORDER = {
+			16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+	private static final Huffman FIXED_LITERALS;
+	private static final Huffman FIXED_DISTANCES;
+
+	static {
+		byte[] lengths = new byte[288];
+		Arrays.fill(lengths, 0, 144, (byte) 8);
+		Arrays.fill(lengths, 144, 256, (byte) 9);
+		Arrays.fill(lengths, 256, 280, (byte) 7);
+		Arrays.fill(lengths, 280, 288, (byte) 8);
+		FIXED_LITERALS = new Huffman(288);
+		FIXED_DISTANCES = new Huffman(30);
+
+		try {
+			FIXED_LITERALS.build(lengths, 0, 288);
+			Arrays.fill(lengths, 0, 30, (byte) 5);
+			FIXED_DISTANCES.build(lengths, 0, 30);
+		} catch (IOException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Canonical Huffman code with a lookup table for short codes
+	 */
+	private static final class Huffman {
+		private final short[] count = new short[MAX_BITS + 1];
+		private final short[] symbol;
+		private final short[] fast = new short[1 << FAST_BITS]; // (symbol << 4) | length, or -1
+
+		Huffman(int maxSymbols) {
+			symbol = new short[maxSymbols];
+		}
+
+		void build(byte[] lengths, int offset, int n) throws IOException {
+			short[] offsets = new short[MAX_BITS + 2];
+			int[] nextCode = new int[MAX_BITS + 1];
+			Arrays.fill(count, (short) 0);
+
+			for (int i = 0; i < n; i++)
+				count[lengths[offset + i]]++;
+
+			count[0] = 0;
+			int left = 1;
+
+			for (int len = 1; len <= MAX_BITS; len++) {
+				left <<= 1;
+				left -= count[len];
+
+				if (left < 0)
+					throw new IOException("Over-subscribed Huffman code");
+			}
+
+			int code = 0;
+
+			for (int len = 1; len <= MAX_BITS; len++) {
+				offsets[len + 1] = (short) (offsets[len] + count[len]);
+				code = (code + count[len - 1]) << 1;
+				nextCode[len] = code;
+			}
+
+			Arrays.fill(fast, (short) -1);
+
+			for (int sym = 0; sym < n; sym++) {
+				int len = lengths[offset + sym];
+
+				if (len == 0)
+					continue;
+
+				symbol[offsets[len]++] = (short) sym;
+				int c = nextCode[len]++;
+
+				if (len <= FAST_BITS) {
+					int reversed = Integer.reverse(c) >>> (32 - len);
+
+					for (int i = reversed; i <= FAST_MASK; i += 1 << len)
+						fast[i] = (short) ((sym << 4) | len);
+				}
+			}
+		}
+	}
+
+	private final InputStream in;
+	private final long fileLength;
+	private final long span;
+	private final byte[] input;
+	private int inputPos;
+	private int inputLength;
+	private long inputOffset; // file offset of input[0]
+	private long bitBuffer;
+	private int bitCount;
+	private int paddingBits;
+	private final byte[] window;
+	private final byte[] lengths;
+	private final Huffman literals;
+	private final Huffman distances;
+	private final Huffman codeLengths;
+	private final CRC32 crc;
+	private long total; // uncompressed bytes
+	private long crcTotal; // uncompressed bytes included in crc
+	private long memberTotal; // uncompressed offset of the current member
+
+	GzipIndexBuilder(InputStream in, long fileLength, long span) {
+		this.in = in;
+		this.fileLength = fileLength;
+		this.span = span;
+		input = new byte[64*1024];
+		window = new byte[WINDOW_SIZE];
+		lengths = new byte[288 + 32];
+		literals = new Huffman(288);
+		distances = new Huffman(32);
+		codeLengths = new Huffman(19);
+		crc = new CRC32();
+	}
+
+	GzipIndex build() throws IOException {
+		GzipIndex index = new GzipIndex(fileLength);
+		long lastCheckpoint = 0;
+		byte[] snapshot = new byte[WINDOW_SIZE];
+
+		while (getBitOffset() < fileLength * 8) {
+			readHeader();
+			long deflateOffset = getBitOffset() >>> 3;
+			int member = index.getMembers().size();
+			memberTotal = crcTotal = total;
+			crc.reset();
+			boolean last;
+
+			do {
+				if (index.getCheckpoints().isEmpty() || total - lastCheckpoint >= span) {
+					int windowLength = (int) Math.min(WINDOW_SIZE, total - memberTotal);
+					copyWindow(snapshot, windowLength);
+					index.addCheckpoint(getBitOffset(), total, member, snapshot, windowLength);
+					lastCheckpoint = total;
+				}
+
+				last = readBits(1) == 1;
+
+				switch (readBits(2)) {
+				case 0:
+					storedBlock();
+					break;
+				case 1:
+					huffmanBlock(FIXED_LITERALS, FIXED_DISTANCES);
+					break;
+				case 2:
+					dynamicBlock();
+					break;
+				default:
+					throw new IOException("Invalid deflate block type at bit "+getBitOffset());
+				}
+			} while (!last);
+
+			updateCrc();
+			dropBits(bitCount & 7);
+			long trailerOffset = getBitOffset() >>> 3;
+
+			if (readInt() != (int) crc.getValue())
+				throw new IOException("CRC error in gzip member at "+trailerOffset);
+
+			if (readInt() != (int) (total - memberTotal))
+				throw new IOException("Size error in gzip member at "+trailerOffset);
+
+			index.addMember(deflateOffset, trailerOffset, memberTotal);
+		}
+
+		return index;
+	}
+
+	private void readHeader() throws IOException {
+		long offset = getBitOffset() >>> 3;
+
+		if (readBits(8) != GzipFormat.ID1 || readBits(8) != GzipFormat.ID2 || readBits(8) != GzipFormat.CM_DEFLATE)
+			throw new IOException("Not in gzip format at "+offset);
+
+		int flags = readBits(8);
+		readInt(); // MTIME
+		readBits(16); // XFL, OS
+
+		if ((flags & GzipFormat.FEXTRA) != 0) {
+			int xlen = readBits(16);
+
+			for (int i = 0; i < xlen; i++)
+				readBits(8);
+		}
+
+		if ((flags & GzipFormat.FNAME) != 0)
+			while (readBits(8) != 0);
+
+		if ((flags & GzipFormat.FCOMMENT) != 0)
+			while (readBits(8) != 0);
+
+		if ((flags & GzipFormat.FHCRC) != 0)
+			readBits(16);
+	}
+
+	private void storedBlock() throws IOException {
+		dropBits(bitCount & 7);
+		int length = readBits(16);
+
+		if ((readBits(16) ^ 0xFFFF) != length)
+			throw new IOException("Invalid stored block length at bit "+getBitOffset());
+
+		for (int i = 0; i < length; i++) {
+			window[(int) (total++ & WINDOW_MASK)] = (byte) readBits(8);
+
+			if (total - crcTotal >= CRC_CHUNK)
+				updateCrc();
+		}
+	}
+
+	private void dynamicBlock() throws IOException {
+		int numLiterals = readBits(5) + 257;
+		int numDistances = readBits(5) + 1;
+		int numCodeLengths = readBits(4) + 4;
+
+		if (numLiterals > 286 || numDistances > 30)
+			throw new IOException("Invalid dynamic block header at bit "+getBitOffset());
+
+		Arrays.fill(lengths, 0, 19, (byte) 0);
+
+		for (int i = 0; i < numCodeLengths; i++)
+			lengths[CODE_LENGTH_ORDER[i]] = (byte) readBits(3);
+
+		codeLengths.build(lengths, 0, 19);
+		int n = 0;
+
+		while (n < numLiterals + numDistances) {
+			int sym = decode(codeLengths);
+
+			if (sym < 16) {
+				lengths[n++] = (byte) sym;
+				continue;
+			}
+
+			byte value = 0;
+			int repeat;
+
+			if (sym == 16) {
+				if (n == 0)
+					throw new IOException("Invalid code length repeat at bit "+getBitOffset());
+				value = lengths[n - 1];
+				repeat = 3 + readBits(2);
+			} else if (sym == 17) {
+				repeat = 3 + readBits(3);
+			} else {
+				repeat = 11 + readBits(7);
+			}
+
+			if (n + repeat > numLiterals + numDistances)
+				throw new IOException("Too many code lengths at bit "+getBitOffset());
+
+			while (repeat-- > 0)
+				lengths[n++] = value;
+		}
+
+		literals.build(lengths, 0, numLiterals);
+		distances.build(lengths, numLiterals, numDistances);
+		huffmanBlock(literals, distances);
+	}
+
+	private void huffmanBlock(Huffman lit, Huffman dist) throws IOException {
+		while (true) {
+			int sym = decode(lit);
+
+			if (sym < 256) {
+				window[(int) (total++ & WINDOW_MASK)] = (byte) sym;
+			} else if (sym == 256) {
+				return;
+			} else {
+				sym -= 257;
+
+				if (sym >= LENGTH_BASE.length)
+					throw new IOException("Invalid length symbol at bit "+getBitOffset());
+
+				int length = LENGTH_BASE[sym] + readBits(LENGTH_EXTRA[sym]);
+				sym = decode(dist);
+
+				if (sym >= DIST_BASE.length)
+					throw new IOException("Invalid distance symbol at bit "+getBitOffset());
+
+				int distance = DIST_BASE[sym] + readBits(DIST_EXTRA[sym]);
+
+				if (distance > total - memberTotal)
+					throw new IOException("Invalid distance too far back at bit "+getBitOffset());
+
+				for (int i = 0; i < length; i++, total++)
+					window[(int) (total & WINDOW_MASK)] = window[(int) ((total - distance) & WINDOW_MASK)];
+			}
+
+			if (total - crcTotal >= CRC_CHUNK)
+				updateCrc();
+		}
+	}
+
+	private int decode(Huffman h) throws IOException {
+		fillBits(MAX_BITS);
+		int entry = h.fast[(int) bitBuffer & FAST_MASK];
+
+		if (entry >= 0) {
+			dropBits(entry & 15);
+			return entry >>> 4;
+		}
+
+		// Slow path for long codes
+		long bits = bitBuffer;
+		int code = 0, first = 0, index = 0;
+
+		for (int len = 1; len <= MAX_BITS; len++) {
+			code |= (int) (bits & 1);
+			bits >>>= 1;
+			int count = h.count[len];
+
+			if (code - count < first) {
+				dropBits(len);
+				return h.symbol[index + (code - first)];
+			}
+
+			index += count;
+			first += count;
+			first <<= 1;
+			code <<= 1;
+		}
+
+		throw new IOException("Invalid Huffman code at bit "+getBitOffset());
+	}
+
+	private void updateCrc() {
+		while (crcTotal < total) {
+			int pos = (int) (crcTotal & WINDOW_MASK);
+			int length = (int) Math.min(total - crcTotal, WINDOW_SIZE - pos);
+			crc.update(window, pos, length);
+			crcTotal += length;
+		}
+	}
+
+	private void copyWindow(byte[] dest, int length) {
+		int pos = (int) ((total - length) & WINDOW_MASK);
+		int first = Math.min(length, WINDOW_SIZE - pos);
+		System.arraycopy(window, pos, dest, 0, first);
+		System.arraycopy(window, 0, dest, first, length - first);
+	}
+
+	private long getBitOffset() {
+		return (inputOffset + inputPos) * 8 - bitCount + paddingBits;
+	}
+
+	private int readBits(int n) throws IOException {
+		if (n == 0)
+			return 0;
+
+		fillBits(n);
+		int value = (int) (bitBuffer & ((1L << n) - 1));
+		dropBits(n);
+		return value;
+	}
+
+	private int readInt() throws IOException {
+		return readBits(16) | (readBits(16) << 16);
+	}
+
+	private void dropBits(int n) throws EOFException {
+		bitBuffer >>>= n;
+		bitCount -= n;
+
+		if (bitCount < paddingBits)
+			throw new EOFException("Unexpected end of gzip file");
+	}
+
+	private void fillBits(int n) throws IOException {
+		while (bitCount < n) {
+			if (inputPos == inputLength) {
+				inputOffset += inputLength;
+				inputPos = 0;
+				inputLength = Math.max(0, in.read(input, 0, input.length));
+
+				if (inputLength == 0) {
+					// Pad with zeros, which cannot be consumed (see dropBits)
+					bitCount += 8;
+					paddingBits += 8;
+					continue;
+				}
+			}
+
+			bitBuffer |= (long) (input[inputPos++] & 0xFF) << bitCount;
+			bitCount += 8;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+
+/**
+ * Decompressor stream for gzip files made of several members (e.g. BGZF),
+ * which allows to process them in splits aligned to member boundaries.
+ * 
+ * A split processes the members starting within <code>(start, end]</code>
+ * (<code>[0, end]</code> for the first split). A single read never returns
+ * data from two different members, and {@link #getPos()} returns the
+ * compressed offset of the member from which the last read data came from.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class GzipMemberInputStream extends SplitCompressionInputStream {
+
+	private static final int INPUT_BUFFER_SIZE = 64*1024;
+
+	private final Inflater inflater;
+	private final CRC32 crc;
+	private final byte[] input;
+	private int inputPos;
+	private int inputLength;
+	private long inputOffset;
+	private long memberStart;
+	private long reportedPos;
+	private boolean inMember;
+	private boolean eof;
+
+	/**
+	 * Create a new stream for the split <code>[start, end)</code>.
+	 *
+	 * @param in the gzip file
+	 * @param start the split start
+	 * @param end the split end
+	 * @param fileLength the length of the file
+	 * @param type the type of the gzip file
+	 *
+	 * @throws IOException
+	 */
+	public GzipMemberInputStream(FSDataInputStream in, long start, long end, long fileLength, GzipFormat.Type type) throws IOException {
+		super(in, start, end);
+		inflater = new Inflater(true);
+		crc = new CRC32();
+		input = new byte[INPUT_BUFFER_SIZE];
+
+		long member = GzipFormat.findMember(in, start, end, fileLength, type == GzipFormat.Type.BGZF);
+
+		if (member == -1) {
+			// No member starts within this split
+			member = end;
+			eof = true;
+		}
+
+		in.seek(member);
+		setStart(member);
+		inputOffset = member;
+		memberStart = member;
+		reportedPos = member;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		while (!eof) {
+			if (!inMember) {
+				if (!readHeader()) {
+					eof = true;
+					break;
+				}
+
+				inMember = true;
+			}
+
+			int n;
+
+			try {
+				n = inflater.inflate(b, off, len);
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt gzip member at "+memberStart, e);
+			}
+
+			if (n > 0) {
+				crc.update(b, off, n);
+				reportedPos = memberStart;
+				return n;
+			}
+
+			if (inflater.finished()) {
+				readTrailer();
+				inMember = false;
+			} else if (inflater.needsInput()) {
+				inputPos = inputLength;
+
+				if (!fillInput())
+					throw new EOFException("Unexpected end of gzip member at "+memberStart);
+
+				inflater.setInput(input, inputPos, inputLength - inputPos);
+			} else if (inflater.needsDictionary()) {
+				throw new IOException("Corrupt gzip member at "+memberStart);
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return (read(b, 0, 1) == -1)? -1 : (b[0] & 0xFF);
+	}
+
+	/**
+	 * Returns the compressed offset of the member from which
+	 * the last read data came from.
+	 */
+	@Override
+	public long getPos() throws IOException {
+		return reportedPos;
+	}
+
+	@Override
+	public void resetState() throws IOException {
+		inflater.reset();
+		crc.reset();
+		inMember = false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private boolean readHeader() throws IOException {
+		if (!ensureInput(GzipFormat.HEADER_SIZE))
+			return false;
+
+		memberStart = inputOffset + inputPos;
+		int headerSize;
+
+		// The variable part of the header may need more input
+		while ((headerSize = GzipFormat.getHeaderSize(input, inputPos, inputLength)) < 0) {
+			if (!GzipFormat.isMemberHeader(input, inputPos))
+				throw new IOException("Not in gzip format at "+memberStart);
+
+			if (inputLength - inputPos == input.length || !ensureInput(inputLength - inputPos + 1))
+				throw new IOException("Incorrect gzip header at "+memberStart);
+		}
+
+		inputPos += headerSize;
+		inflater.reset();
+		crc.reset();
+		inflater.setInput(input, inputPos, inputLength - inputPos);
+		return true;
+	}
+
+	private void readTrailer() throws IOException {
+		inputPos = inputLength - inflater.getRemaining();
+
+		if (!ensureInput(GzipFormat.TRAILER_SIZE))
+			throw new EOFException("Unexpected end of gzip member at "+memberStart);
+
+		if (GzipFormat.readInt(input, inputPos) != (int) crc.getValue())
+			throw new IOException("CRC error in gzip member at "+memberStart);
+
+		if (GzipFormat.readInt(input, inputPos + 4) != (int) inflater.getBytesWritten())
+			throw new IOException("Size error in gzip member at "+memberStart);
+
+		inputPos += GzipFormat.TRAILER_SIZE;
+	}
+
+	/**
+	 * Make sure that at least <code>length</code> bytes are buffered from
+	 * <code>inputPos</code>. Returns false if there is no input left at all.
+	 */
+	private boolean ensureInput(int length) throws IOException {
+		if (inputLength - inputPos >= length)
+			return true;
+
+		if (inputPos > 0) {
+			// Compact the remaining bytes
+			int remaining = inputLength - inputPos;
+			System.arraycopy(input, inputPos, input, 0, remaining);
+			inputOffset += inputPos;
+			inputLength = remaining;
+			inputPos = 0;
+		}
+
+		while (inputLength < length) {
+			int n = in.read(input, inputLength, input.length - inputLength);
+
+			if (n == -1) {
+				if (inputLength == 0)
+					return false;
+				throw new EOFException("Unexpected end of gzip file");
+			}
+
+			inputLength += n;
+		}
+
+		return true;
+	}
+
+	private boolean fillInput() throws IOException {
+		inputOffset += inputLength;
+		inputPos = 0;
+		inputLength = 0;
+		int n = in.read(input, 0, input.length);
+
+		if (n == -1)
+			return false;
+
+		inputLength = n;
+		return true;
+	}
+}
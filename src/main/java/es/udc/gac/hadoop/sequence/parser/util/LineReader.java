@@ -22,6 +22,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.hadoop.fs.Seekable;
 import org.apache.hadoop.io.Text;
 
 /**
@@ -39,24 +40,69 @@ public class LineReader implements Closeable {
 	 */
 	public static final Text LF = new Text("\n");
 	private static final byte LF_BYTE = '\n';
+	private static final NewlineScanner SCANNER = NewlineScanner.getInstance();
 
 	private InputStream inputStream;
 	private byte[] buffer;
 	private int bufferLength; // the number of bytes of real data in the buffer
 	private int bufferPos; 	// the current position in the buffer
+	private Seekable positionSource;
+	private long streamPos; // the position of positionSource after filling the buffer
+	private long previousStreamPos; // the same for the previous buffer
 
 	public LineReader(InputStream inputStream, int bufferSize) {
+		this(inputStream, new byte[bufferSize]);
+	}
+
+	/**
+	 * Create a line reader that uses the given buffer (e.g., leased from
+	 * a {@link BufferPool}).
+	 */
+	public LineReader(InputStream inputStream, byte[] buffer) {
 		this.inputStream = inputStream;
-		this.buffer = new byte[bufferSize];
+		this.buffer = buffer;
 		this.bufferPos = 0;
 		this.bufferLength = 0;
 	}
 
+	/**
+	 * Create a line reader that keeps track of the position of <code>positionSource</code>
+	 * (see {@link #getStreamPosition()}).
+	 */
+	public LineReader(InputStream inputStream, int bufferSize, Seekable positionSource) throws IOException {
+		this(inputStream, new byte[bufferSize], positionSource);
+	}
+
+	/**
+	 * Create a line reader that uses the given buffer and keeps track of
+	 * the position of <code>positionSource</code>.
+	 */
+	public LineReader(InputStream inputStream, byte[] buffer, Seekable positionSource) throws IOException {
+		this(inputStream, buffer);
+		this.positionSource = positionSource;
+		this.streamPos = this.previousStreamPos = positionSource.getPos();
+	}
+
 	@Override
 	public void close() throws IOException {
 		inputStream.close();
 	}
 
+	/**
+	 * Read lines from another InputStream, reusing the internal buffer.
+	 * The previous stream must have been closed.
+	 *
+	 * @param inputStream the new input stream
+	 * @param positionSource the object whose position is tracked, or null
+	 */
+	public void reset(InputStream inputStream, Seekable positionSource) throws IOException {
+		this.inputStream = inputStream;
+		this.positionSource = positionSource;
+		this.bufferPos = 0;
+		this.bufferLength = 0;
+		this.streamPos = this.previousStreamPos = (positionSource != null)? positionSource.getPos() : 0;
+	}
+
 	/**
 	 * Seek to the given offset.
 	 *
@@ -78,6 +124,18 @@ public class LineReader implements Closeable {
 		return bufferPos;
 	}
 
+	/**
+	 * Return the position of the stream (as reported by the position source
+	 * given to the constructor) right after reading the buffered data that
+	 * contains the last consumed byte. Unlike querying the stream directly,
+	 * this position does not move forward when the next buffer is read just
+	 * to peek at it. For block-compressed streams, it is the position of the
+	 * block to which the last consumed byte belongs.
+	 */
+	public long getStreamPosition() {
+		return (bufferPos > 0)? streamPos : previousStreamPos;
+	}
+
 	/**
 	 * Read a line from the InputStream terminated by LF into the given Text.
 	 *
@@ -88,6 +146,92 @@ public class LineReader implements Closeable {
 	 * @throws IOException
 	 */
 	public int readLine(Text str) throws IOException {
+		str.clear();
+		return appendLine(str);
+	}
+
+	/**
+	 * Read a line from the InputStream terminated by LF and append it
+	 * to the given Text. The bytes are copied only once, directly from
+	 * the internal buffer to <code>str</code>.
+	 *
+	 * @param str the object to append the given line (including LF) 
+	 *
+	 * @return the number of bytes read (including LF)
+	 *
+	 * @throws IOException
+	 */
+	public int appendLine(Text str) throws IOException {
+		return scanLine(str, true);
+	}
+
+	/**
+	 * Read a line from the InputStream terminated by LF and append it
+	 * to the given Text without the LF (e.g., to join the lines of
+	 * wrapped sequences). The bytes are copied only once.
+	 *
+	 * @param str the object to append the given line (excluding LF)
+	 *
+	 * @return the number of bytes read (including LF)
+	 *
+	 * @throws IOException
+	 */
+	public int appendLineWithoutLF(Text str) throws IOException {
+		return scanLine(str, false);
+	}
+
+	/**
+	 * Read a line from the InputStream terminated by LF without
+	 * copying it.
+	 *
+	 * @return the number of bytes skipped (including LF)
+	 *
+	 * @throws IOException
+	 */
+	public int skipLine() throws IOException {
+		return scanLine(null, false);
+	}
+
+	/**
+	 * Return the next byte from the InputStream without consuming it.
+	 *
+	 * @return the next byte, or -1 if the end of the stream has been reached
+	 *
+	 * @throws IOException
+	 */
+	public int peek() throws IOException {
+		if (bufferPos >= bufferLength && refill() <= 0)
+			return -1; // EOF
+
+		return buffer[bufferPos] & 0xFF;
+	}
+
+	/**
+	 * Refill the internal buffer from the InputStream. It must only
+	 * be called when all buffered data has been consumed.
+	 *
+	 * @return the number of bytes read, or -1 if the end of the stream has been reached
+	 *
+	 * @throws IOException
+	 */
+	protected int fillBuffer() throws IOException {
+		bufferPos = 0;
+		bufferLength = inputStream.read(buffer);
+		return bufferLength;
+	}
+
+	private int refill() throws IOException {
+		int bytesRead = fillBuffer();
+
+		if (positionSource != null) {
+			previousStreamPos = streamPos;
+			streamPos = positionSource.getPos();
+		}
+
+		return bytesRead;
+	}
+
+	private int scanLine(Text str, boolean appendLF) throws IOException {
 		/* We're reading data from in, but the head of the stream may be
 		 * already buffered, so we have two cases:
 		 * 1. No newline characters are in the buffer, so we need to copy
@@ -99,30 +243,27 @@ public class LineReader implements Closeable {
 		long bytesConsumed = 0;
 		int readLength = 0;
 		int startPos = 0;
-		str.clear();
 
 		do {
-			startPos = bufferPos; //starting from where we left off the last time
-			if (bufferPos >= bufferLength) {
-				startPos = bufferPos = 0;
-				bufferLength = inputStream.read(buffer);
-
-				if (bufferLength <= 0) {
-					break; // EOF
-				}
+			if (bufferPos >= bufferLength && refill() <= 0) {
+				break; // EOF
 			}
 
-			for (; bufferPos < bufferLength; ++bufferPos) { //search for newline
-				if (buffer[bufferPos] == LF_BYTE) {
-					newLine = true;
-					++bufferPos; // at next invocation proceed from following byte
-					break;
-				}
+			startPos = bufferPos; //starting from where we left off the last time
+			int lfPos = SCANNER.indexOf(buffer, bufferPos, bufferLength); //search for newline
+
+			if (lfPos != -1) {
+				newLine = true;
+				bufferPos = lfPos + 1; // at next invocation proceed from following byte
+			} else {
+				bufferPos = bufferLength;
 			}
 
 			readLength = bufferPos - startPos;
 			bytesConsumed += readLength;
-			str.append(buffer, startPos, readLength);
+
+			if (str != null)
+				str.append(buffer, startPos, (newLine && !appendLF)? readLength - 1 : readLength);
 		} while (!newLine);
 
 		return (int) bytesConsumed;
@@ -138,11 +279,15 @@ public class LineReader implements Closeable {
 	 * @param start Starting byte position
 	 */
 	public static void trim(Text text, int start) {
-		int pos = text.find(" ", start);
+		byte[] bytes = text.getBytes();
+		int length = text.getLength();
 
-		if (pos != -1) {
-			text.getBytes()[pos] = LF_BYTE;
-			text.set(text.getBytes(), 0, ++pos);
+		for (int pos = start; pos < length; pos++) {
+			if (bytes[pos] == ' ') {
+				bytes[pos] = LF_BYTE;
+				text.set(bytes, 0, ++pos);
+				return;
+			}
 		}
 	}
 }
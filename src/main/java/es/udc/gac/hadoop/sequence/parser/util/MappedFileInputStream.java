@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.fs.Seekable;
+
+/**
+ * Input stream that reads a local file by memory-mapping it in windows,
+ * so that files (and splits) larger than 2GB can be read. Data is copied
+ * directly from the page cache, without system calls, intermediate buffers
+ * or checksum verification.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class MappedFileInputStream extends InputStream implements Seekable {
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long fileLength;
+	private final int windowSize;
+	private MappedByteBuffer window;
+	private long windowStart;
+
+	/**
+	 * Create a new stream starting at <code>offset</code>.
+	 *
+	 * @param file the local file
+	 * @param offset the starting offset
+	 * @param windowSize the maximum size of the mapped windows
+	 *
+	 * @throws IOException
+	 */
+	public MappedFileInputStream(File file, long offset, int windowSize) throws IOException {
+		if (windowSize < 1)
+			throw new IllegalArgumentException("Invalid memory-mapped window size: "+windowSize);
+
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.fileLength = channel.size();
+		this.windowSize = windowSize;
+		seek(offset);
+	}
+
+	/**
+	 * Map the window starting at <code>pos</code>.
+	 */
+	private void map(long pos) throws IOException {
+		windowStart = pos;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(windowSize, fileLength - pos));
+	}
+
+	/**
+	 * Make sure that the current window has data, mapping the next one if needed.
+	 *
+	 * @return false at EOF
+	 */
+	private boolean ensureData() throws IOException {
+		if (window.hasRemaining())
+			return true;
+
+		long pos = windowStart + window.position();
+
+		if (pos >= fileLength)
+			return false;
+
+		map(pos);
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return ensureData()? (window.get() & 0xFF) : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		if (!ensureData())
+			return -1;
+
+		int n = Math.min(len, window.remaining());
+		window.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long pos = getPos();
+		long target = pos + Math.min(fileLength - pos, Math.max(0, n));
+		seek(target);
+		return target - pos;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, fileLength - getPos());
+	}
+
+	@Override
+	public long getPos() throws IOException {
+		return windowStart + window.position();
+	}
+
+	@Override
+	public void seek(long pos) throws IOException {
+		if (pos < 0 || pos > fileLength)
+			throw new IOException("Incorrect position: "+pos);
+
+		if (window != null && pos >= windowStart && pos <= windowStart + window.limit())
+			window.position((int) (pos - windowStart));
+		else
+			map(pos);
+	}
+
+	@Override
+	public boolean seekToNewSource(long targetPos) throws IOException {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// Mapped windows are released when garbage collected
+		window = null;
+		file.close();
+	}
+}
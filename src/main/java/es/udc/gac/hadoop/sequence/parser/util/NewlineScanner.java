@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Searches byte arrays for the Line Feed (LF, '\n', 0x0A) character.
+ * 
+ * Several implementations are available and the fastest one supported
+ * by the running JVM is selected when this class is loaded:
+ * <ul>
+ * <li>vector: uses the JDK 17+ Vector API (shipped in the multi-release
+ * jar, requires <code>--add-modules jdk.incubator.vector</code>)</li>
+ * <li>swar: checks 8 bytes per step using a long word (SWAR)</li>
+ * <li>scalar: checks one byte per step</li>
+ * </ul>
+ * The selection can be overridden by setting the system property
+ * <code>hsp.newline.scanner</code> to one of the names above.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public abstract class NewlineScanner {
+
+	public static final String SCANNER_PROPERTY = "hsp.newline.scanner";
+	protected static final byte LF_BYTE = '\n';
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final String VECTOR_SCANNER_NAME = "vector";
+	private static final String VECTOR_SCANNER_CLASS = "es.udc.gac.hadoop.sequence.parser.util.VectorNewlineScanner";
+	private static final NewlineScanner INSTANCE = create(System.getProperty(SCANNER_PROPERTY));
+
+	/**
+	 * Return the first position of LF within <code>buffer[from, to)</code>.
+	 *
+	 * @param buffer the bytes to search
+	 * @param from the starting position (inclusive)
+	 * @param to the ending position (exclusive)
+	 *
+	 * @return the position of the first LF, or -1 if not found
+	 */
+	public abstract int indexOf(byte[] buffer, int from, int to);
+
+	/**
+	 * Return the name of this implementation.
+	 */
+	public abstract String getName();
+
+	/**
+	 * Return the fastest scanner available in this JVM.
+	 */
+	public static NewlineScanner getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Return the scanner with the given name, or the fastest one
+	 * available if <code>name</code> is null. If the requested scanner
+	 * is not supported, the next fastest one is returned.
+	 *
+	 * @param name the scanner name (vector, swar or scalar)
+	 */
+	public static NewlineScanner create(String name) {
+		NewlineScanner scanner = null;
+		boolean fastest = (name == null);
+
+		if (fastest || name.equals(VECTOR_SCANNER_NAME))
+			scanner = newVectorScanner();
+
+		if (scanner == null && (fastest || !name.equals(ScalarNewlineScanner.NAME)))
+			scanner = new SwarNewlineScanner();
+
+		if (scanner == null)
+			scanner = new ScalarNewlineScanner();
+
+		logger.debug("using {} newline scanner", scanner.getName());
+		return scanner;
+	}
+
+	private static NewlineScanner newVectorScanner() {
+		try {
+			return (NewlineScanner) Class.forName(VECTOR_SCANNER_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// Not running on JDK 17+ from the multi-release jar or the incubator module is not enabled
+			logger.trace("vector newline scanner not available: {}", e.toString());
+			return null;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.util.Arrays;
+
+/**
+ * Maps Phred+33 quality scores to a reduced set of levels (bins).
+ * 
+ * Binning is specified as a comma-separated list of
+ * <code>lower:value</code> pairs in ascending order, where
+ * <code>lower</code> is the lowest Phred score of each bin and
+ * <code>value</code> is the score used to represent all the qualities
+ * of that bin. At most {@link #MAX_BINS} bins are allowed. The
+ * predefined <code>illumina8</code> scheme is also supported.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public final class QualityBinning {
+
+	public static final String NONE = "none";
+	public static final String ILLUMINA_8 = "illumina8";
+	public static final int MAX_BINS = 16;
+	public static final int PHRED_OFFSET = 33;
+
+	private static final String ILLUMINA_8_BINS = "0:2,3:6,10:15,20:22,25:27,30:33,35:37,40:40";
+	private static final int MAX_QUALITY = 126 - PHRED_OFFSET;
+
+	private final byte[] binOf; // bin index of each Phred+33 byte
+	private final byte[] values; // Phred+33 byte of each bin
+
+	private QualityBinning(byte[] binOf, byte[] values) {
+		this.binOf = binOf;
+		this.values = values;
+	}
+
+	/**
+	 * Parse a binning specification.
+	 *
+	 * @param spec the bins, <code>illumina8</code>, or null/<code>none</code> to disable binning
+	 *
+	 * @return the quality binning, or null if binning is disabled
+	 *
+	 * @throws IllegalArgumentException if the specification is not valid
+	 */
+	public static QualityBinning parse(String spec) {
+		if (spec == null || spec.trim().isEmpty() || spec.trim().equalsIgnoreCase(NONE))
+			return null;
+
+		if (spec.trim().equalsIgnoreCase(ILLUMINA_8))
+			spec = ILLUMINA_8_BINS;
+
+		String[] bins = spec.split(",");
+
+		if (bins.length > MAX_BINS)
+			throw new IllegalArgumentException("Too many quality bins: "+spec);
+
+		byte[] binOf = new byte[256];
+		byte[] values = new byte[bins.length];
+		int lower[] = new int[bins.length];
+
+		for (int i = 0; i < bins.length; i++) {
+			String[] bin = bins[i].trim().split(":");
+
+			try {
+				lower[i] = Integer.parseInt(bin[0].trim());
+				values[i] = (byte) (Integer.parseInt(bin[1].trim()) + PHRED_OFFSET);
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Incorrect quality bin: "+bins[i]);
+			}
+
+			if (lower[i] < 0 || lower[i] > MAX_QUALITY || values[i] < PHRED_OFFSET || (i > 0 && lower[i] <= lower[i-1]))
+				throw new IllegalArgumentException("Incorrect quality bin: "+bins[i]);
+		}
+
+		// Scores below the first bin are mapped to it
+		Arrays.fill(binOf, (byte) 0);
+
+		for (int i = 0; i < bins.length; i++) {
+			int from = lower[i] + PHRED_OFFSET;
+			int to = (i + 1 < bins.length)? lower[i+1] + PHRED_OFFSET : binOf.length;
+			Arrays.fill(binOf, from, to, (byte) i);
+		}
+
+		return new QualityBinning(binOf, values);
+	}
+
+	/**
+	 * Return the number of bins.
+	 */
+	public int getNumBins() {
+		return values.length;
+	}
+
+	/**
+	 * Return the bin index of a Phred+33 quality byte.
+	 */
+	public int getBin(byte quality) {
+		return binOf[quality & 0xFF];
+	}
+
+	/**
+	 * Return the Phred+33 quality byte representing the given bin.
+	 */
+	public byte getValue(int bin) {
+		return values[bin];
+	}
+
+	/**
+	 * Return the Phred+33 quality bytes representing each bin.
+	 */
+	public byte[] getValues() {
+		return values;
+	}
+}
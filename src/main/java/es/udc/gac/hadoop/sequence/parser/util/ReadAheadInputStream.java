@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.hadoop.fs.Seekable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Input stream that reads ahead from another stream in a background thread,
+ * so that I/O and decompression overlap with the parsing of the data
+ * already read. The data is read into a ring of buffers: each buffer is
+ * filled by a single read from the underlying stream, and a single read
+ * from this stream never returns data from two different buffers.
+ * 
+ * {@link #getPos()} returns the position of the underlying stream right
+ * after filling the buffer from which the last read data came from, so
+ * that split streams that report the position of the compressed block of
+ * the data (see {@link LineReader#getStreamPosition()}) keep working.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class ReadAheadInputStream extends InputStream implements Seekable {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final class Chunk {
+		private final byte[] data;
+		private int length; // -1 at EOF
+		private long pos;
+		private IOException error;
+
+		private Chunk(int size) {
+			data = new byte[size];
+		}
+	}
+
+	private final InputStream in;
+	private final Seekable positionSource;
+	private final BlockingQueue<Chunk> free;
+	private final BlockingQueue<Chunk> filled;
+	private final Thread producer;
+	private volatile boolean closed;
+	private Chunk current;
+	private int currentPos;
+	private long pos;
+
+	/**
+	 * Create a new stream and start reading ahead.
+	 *
+	 * @param in the underlying stream
+	 * @param positionSource the object whose position is reported by {@link #getPos()}, or null
+	 * @param numBuffers the number of buffers of the ring
+	 * @param bufferSize the size of each buffer
+	 *
+	 * @throws IOException
+	 */
+	public ReadAheadInputStream(InputStream in, Seekable positionSource, int numBuffers, int bufferSize) throws IOException {
+		if (numBuffers < 1)
+			throw new IllegalArgumentException("Invalid number of read-ahead buffers: "+numBuffers);
+
+		if (bufferSize < 1)
+			throw new IllegalArgumentException("Invalid read-ahead buffer size: "+bufferSize);
+
+		this.in = in;
+		this.positionSource = positionSource;
+		this.pos = (positionSource != null)? positionSource.getPos() : 0;
+		// One more buffer than the ring depth, as the consumer holds one of them
+		this.free = new ArrayBlockingQueue<Chunk>(numBuffers + 1);
+		this.filled = new ArrayBlockingQueue<Chunk>(numBuffers + 1);
+
+		for (int i = 0; i <= numBuffers; i++)
+			free.add(new Chunk(bufferSize));
+
+		producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readAhead();
+			}
+		}, "hsp-read-ahead");
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	private void readAhead() {
+		try {
+			while (!closed) {
+				Chunk chunk = free.take();
+
+				try {
+					chunk.length = in.read(chunk.data, 0, chunk.data.length);
+
+					if (positionSource != null)
+						chunk.pos = positionSource.getPos();
+				} catch (Throwable e) {
+					// Any failure must reach the consumer, which would wait forever otherwise
+					chunk.error = (e instanceof IOException)? (IOException) e :
+						new IOException("Read-ahead failed", e);
+					chunk.length = -1;
+				}
+
+				filled.put(chunk);
+
+				if (chunk.length < 0 || chunk.error != null)
+					return;
+			}
+		} catch (InterruptedException e) {
+			// Closed
+		}
+	}
+
+	/**
+	 * Make the next filled buffer the current one.
+	 *
+	 * @return false if the end of the stream has been reached
+	 */
+	private boolean nextChunk() throws IOException {
+		if (current != null) {
+			if (current.error != null)
+				throw current.error;
+
+			if (current.length < 0)
+				return false;
+
+			free.add(current);
+			current = null;
+		}
+
+		try {
+			current = filled.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while waiting for read-ahead data");
+		}
+
+		currentPos = 0;
+
+		if (current.error != null)
+			throw current.error;
+
+		if (current.length < 0)
+			return false;
+
+		pos = current.pos;
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		while (current == null || currentPos >= current.length) {
+			if (!nextChunk())
+				return -1;
+		}
+
+		return current.data[currentPos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		while (current == null || currentPos >= current.length) {
+			if (!nextChunk())
+				return -1;
+		}
+
+		int n = Math.min(len, current.length - currentPos);
+		System.arraycopy(current.data, currentPos, b, off, n);
+		currentPos += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (current == null || current.length < 0)? 0 : current.length - currentPos;
+	}
+
+	@Override
+	public long getPos() throws IOException {
+		return pos;
+	}
+
+	@Override
+	public void seek(long pos) throws IOException {
+		throw new IOException("Cannot seek in a read-ahead stream");
+	}
+
+	@Override
+	public boolean seekToNewSource(long targetPos) throws IOException {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+
+		closed = true;
+		producer.interrupt();
+
+		try {
+			producer.join();
+		} catch (InterruptedException e) {
+			logger.warn("interrupted while waiting for the read-ahead thread");
+			Thread.currentThread().interrupt();
+		}
+
+		in.close();
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Index that maps record ordinals to the byte offsets where the records
+ * start (uncompressed offsets for compressed files). Only a sample of the
+ * records is stored (about one every {@link Configuration#getRecordIndexInterval}
+ * records), which is enough to generate splits that start exactly on
+ * record boundaries.
+ * 
+ * The index is stored in a hidden sidecar file next to the sequence file
+ * (see {@link #getIndexPath(Path)}), so it is ignored when listing input
+ * directories. The index also stores the length, modification time and
+ * checksums of the first and last bytes of the sequence file, and it is
+ * ignored when they do not match.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public final class RecordIndex {
+
+	public static final String INDEX_SUFFIX = ".hspidx";
+	private static final int MAGIC = 0x48535052; // "HSPR"
+	private static final int VERSION = 2;
+	private static final Logger logger = LogManager.getLogger();
+
+	private final long fileLength;
+	private long numRecords;
+	private int numEntries;
+	private long[] ordinals;
+	private long[] offsets;
+
+	public RecordIndex(long fileLength) {
+		this.fileLength = fileLength;
+		this.numRecords = 0;
+		this.numEntries = 0;
+		this.ordinals = new long[16];
+		this.offsets = new long[16];
+	}
+
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	/**
+	 * Returns the total number of records in the file.
+	 */
+	public long getNumRecords() {
+		return numRecords;
+	}
+
+	public void setNumRecords(long numRecords) {
+		this.numRecords = numRecords;
+	}
+
+	public int getNumEntries() {
+		return numEntries;
+	}
+
+	public long getOrdinal(int entry) {
+		return ordinals[entry];
+	}
+
+	public long getOffset(int entry) {
+		return offsets[entry];
+	}
+
+	/**
+	 * Add an entry. Entries must be added in increasing order.
+	 *
+	 * @param ordinal the ordinal of the record (starting at 0)
+	 * @param offset the offset where the record starts
+	 */
+	public void add(long ordinal, long offset) {
+		if (numEntries > 0 && (ordinal <= ordinals[numEntries - 1] || offset <= offsets[numEntries - 1]))
+			throw new IllegalArgumentException("Entries must be added in increasing order");
+
+		if (numEntries == ordinals.length) {
+			ordinals = Arrays.copyOf(ordinals, numEntries * 2);
+			offsets = Arrays.copyOf(offsets, numEntries * 2);
+		}
+
+		ordinals[numEntries] = ordinal;
+		offsets[numEntries] = offset;
+		numEntries++;
+	}
+
+	/**
+	 * Find the first entry whose offset is greater than or equal to <code>offset</code>.
+	 *
+	 * @return the entry, or {@link #getNumEntries()} if there is none
+	 */
+	public int findEntry(long offset) {
+		int low = 0, high = numEntries;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (offsets[mid] < offset)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Find the last entry whose ordinal is less than or equal to <code>ordinal</code>.
+	 *
+	 * @return the entry, or -1 if there is none
+	 */
+	public int findEntryByOrdinal(long ordinal) {
+		int low = 0, high = numEntries;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (ordinals[mid] <= ordinal)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		return low - 1;
+	}
+
+	/**
+	 * Returns the path of the index of a sequence file.
+	 */
+	public static Path getIndexPath(Path file) {
+		return new Path(file.getParent(), "." + file.getName() + INDEX_SUFFIX);
+	}
+
+	/**
+	 * Write the index to the sidecar file of a sequence file.
+	 */
+	public void write(FileSystem fs, Path file) throws IOException {
+		FileFingerprint fingerprint = FileFingerprint.get(fs, file);
+
+		if (fingerprint.getLength() != fileLength)
+			throw new IOException("File "+file+" was modified while it was indexed");
+
+		try (DataOutputStream out = fs.create(getIndexPath(file), true)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			fingerprint.write(out);
+			out.writeLong(numRecords);
+			out.writeInt(numEntries);
+			long ordinal = 0, offset = 0;
+
+			// Delta encoding
+			for (int i = 0; i < numEntries; i++) {
+				WritableUtils.writeVLong(out, ordinals[i] - ordinal);
+				WritableUtils.writeVLong(out, offsets[i] - offset);
+				ordinal = ordinals[i];
+				offset = offsets[i];
+			}
+		}
+	}
+
+	/**
+	 * Read the index of a sequence file.
+	 *
+	 * @return the index, or null if the file has no index or it is out of date
+	 *
+	 * @throws IOException
+	 */
+	public static RecordIndex read(FileSystem fs, Path file) throws IOException {
+		Path indexPath = getIndexPath(file);
+		FSDataInputStream in;
+
+		try {
+			in = fs.open(indexPath);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Incorrect record index "+indexPath);
+
+			if (in.readInt() != VERSION) {
+				logger.warn("ignoring record index {} with an unsupported version", indexPath);
+				return null;
+			}
+
+			FileFingerprint fingerprint = FileFingerprint.read(in);
+
+			if (!fingerprint.matches(fs, file)) {
+				logger.warn("ignoring out of date record index {}", indexPath);
+				return null;
+			}
+
+			RecordIndex index = new RecordIndex(fingerprint.getLength());
+
+			index.numRecords = in.readLong();
+			int numEntries = in.readInt();
+			long ordinal = 0, offset = 0;
+
+			for (int i = 0; i < numEntries; i++) {
+				ordinal += WritableUtils.readVLong(in);
+				offset += WritableUtils.readVLong(in);
+				index.add(ordinal, offset);
+			}
+
+			return index;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+/**
+ * Byte-at-a-time LF search, used when no faster implementation is available.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+final class ScalarNewlineScanner extends NewlineScanner {
+
+	static final String NAME = "scalar";
+
+	@Override
+	public int indexOf(byte[] buffer, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer[i] == LF_BYTE)
+				return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * LF search that checks 8 bytes per step (SIMD Within A Register).
+ * 
+ * Each step reads a long word from the buffer, XORs it with a word
+ * full of LF bytes and then finds the first zero byte. The zero-byte
+ * test used here is exact (no false positives caused by borrows).
+ * Words are read in little-endian order through a ByteBuffer view of
+ * the array, which the JIT compiles to plain word loads. The view of
+ * the last array is cached, as readers search the same buffer many
+ * times; only absolute reads are used, so it can be shared by threads.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+final class SwarNewlineScanner extends NewlineScanner {
+
+	static final String NAME = "swar";
+
+	private static final long LF_WORD = 0x0A0A0A0A0A0A0A0AL;
+	private static final long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	private WordView view = new WordView(new byte[0]);
+
+	@Override
+	public int indexOf(byte[] buffer, int from, int to) {
+		int i = from;
+
+		if (from < 0 || to > buffer.length)
+			throw new ArrayIndexOutOfBoundsException("Incorrect range: "+from+", "+to);
+
+		WordView cached = view;
+
+		if (cached.array != buffer) {
+			cached = new WordView(buffer);
+			view = cached;
+		}
+
+		ByteBuffer words = cached.words;
+
+		for (int limit = to - Long.BYTES; i <= limit; i += Long.BYTES) {
+			long word = words.getLong(i) ^ LF_WORD;
+			// Set the high bit of every byte that is zero (i.e. that was LF)
+			long found = ~(((word & LOW_7_BITS) + LOW_7_BITS) | word | LOW_7_BITS);
+
+			if (found != 0)
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+		}
+
+		for (; i < to; i++) {
+			if (buffer[i] == LF_BYTE)
+				return i;
+		}
+
+		return -1;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Little-endian view of an array. Its fields are final, so it is
+	 * safely published to other threads without synchronization.
+	 */
+	private static final class WordView {
+
+		private final byte[] array;
+		private final ByteBuffer words;
+
+		WordView(byte[] array) {
+			this.array = array;
+			this.words = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream which measures the time spent reading from the underlying
+ * stream (i.e. I/O and decompression, or waiting for read-ahead buffers).
+ * It is meant to wrap streams read in large chunks, so that timing has
+ * a negligible overhead.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class TimedInputStream extends FilterInputStream {
+
+	private long nanos;
+
+	public TimedInputStream(InputStream in) {
+		super(in);
+	}
+
+	/**
+	 * Returns the time spent reading from the underlying stream (in nanoseconds).
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	@Override
+	public int read() throws IOException {
+		long startTime = System.nanoTime();
+
+		try {
+			return in.read();
+		} finally {
+			nanos += System.nanoTime() - startTime;
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		long startTime = System.nanoTime();
+
+		try {
+			return in.read(b, off, len);
+		} finally {
+			nanos += System.nanoTime() - startTime;
+		}
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long startTime = System.nanoTime();
+
+		try {
+			return in.skip(n);
+		} finally {
+			nanos += System.nanoTime() - startTime;
+		}
+	}
+}
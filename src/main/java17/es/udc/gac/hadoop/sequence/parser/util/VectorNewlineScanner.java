@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * LF search based on the JDK 17+ Vector API. This class is only
+ * included in the multi-release jar (META-INF/versions/17) and it
+ * is only used when the JVM is started with
+ * <code>--add-modules jdk.incubator.vector</code>.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+final class VectorNewlineScanner extends NewlineScanner {
+
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+	@Override
+	public int indexOf(byte[] buffer, int from, int to) {
+		int i = from;
+
+		for (int limit = to - SPECIES.length(); i <= limit; i += SPECIES.length()) {
+			VectorMask<Byte> found = ByteVector.fromArray(SPECIES, buffer, i).eq(LF_BYTE);
+
+			if (found.anyTrue())
+				return i + found.firstTrue();
+		}
+
+		for (; i < to; i++) {
+			if (buffer[i] == LF_BYTE)
+				return i;
+		}
+
+		return -1;
+	}
+
+	@Override
+	public String getName() {
+		return "vector";
+	}
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+
+/**
+ * Tests of {@link BinarySequenceFile}, whose records must be read back as
+ * the same values emitted by the text record readers from which they were
+ * written, whatever the split size.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class BinarySequenceFileTest {
+
+	private static final int RECORDS = 3000;
+	private static final int BLOCK_SIZE = 16384;
+	private static final long[] SPLIT_SIZES = {1, 50000, Long.MAX_VALUE};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystem fs;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration()).getRaw();
+	}
+
+	@Test
+	public void testFastQ() throws Exception {
+		Path input = write("reads.fq", fastq(RECORDS, "/1", 1));
+		Job job = createJob(input, Long.MAX_VALUE, true);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(),
+				new TaskAttemptID("test", 1, TaskType.MAP, 0, 0));
+
+		// Written through the OutputFormat, as a job would do
+		Path output = new Path(folder.getRoot().getAbsolutePath(), "output");
+		FileOutputFormat.setOutputPath(job, output);
+		Configuration.setBinaryBlockSize(job.getConfiguration(), BLOCK_SIZE);
+		BinarySequenceOutputFormat outputFormat = new BinarySequenceOutputFormat();
+		RecordWriter<Writable, Writable> writer = outputFormat.getRecordWriter(context);
+		List<String> expected = new ArrayList<String>();
+
+		for (InputSplit split : new FastQInputFormat().getSplits(job)) {
+			try (RecordReader<LongWritable, Text> reader = new FastQInputFormat().createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					expected.add(toString(expected.size(), reader.getCurrentValue()));
+					writer.write(reader.getCurrentKey(), reader.getCurrentValue());
+				}
+			}
+		}
+
+		writer.close(context);
+		assertEquals(RECORDS, expected.size());
+		Path file = find(output);
+		checkFooter(file, true, false);
+
+		for (long splitSize : SPLIT_SIZES) {
+			assertEquals("split size "+splitSize, expected, read(new BinarySequenceInputFormat(), file, splitSize, true));
+			assertEquals("split size "+splitSize, values(expected), read(new BinarySequenceInputFormat(), file, splitSize, false));
+		}
+	}
+
+	@Test
+	public void testFastA() throws Exception {
+		// The last record has no trailing line feed
+		byte[] data = fasta(RECORDS, 2);
+		Path input = write("reads.fa", Arrays.copyOf(data, data.length - 1));
+		Path file = new Path(folder.getRoot().getAbsolutePath(), "reads"+BinarySequenceFile.EXTENSION);
+		Job job = createJob(input, Long.MAX_VALUE, true);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		List<String> expected = new ArrayList<String>();
+
+		try (BinarySequenceFile.Writer writer = new BinarySequenceFile.Writer(fs.create(file), false, false, BLOCK_SIZE, 6)) {
+			for (InputSplit split : new FastAInputFormat().getSplits(job)) {
+				try (RecordReader<LongWritable, Text> reader = new FastAInputFormat().createRecordReader(split, context)) {
+					reader.initialize(split, context);
+
+					while (reader.nextKeyValue()) {
+						expected.add(toString(expected.size(), reader.getCurrentValue()));
+						writer.append((SequenceRecord) reader.getCurrentValue());
+					}
+				}
+			}
+		}
+
+		assertEquals(RECORDS, expected.size());
+		checkFooter(file, false, false);
+
+		for (long splitSize : SPLIT_SIZES) {
+			assertEquals("split size "+splitSize, expected, read(new BinarySequenceInputFormat(), file, splitSize, true));
+			assertEquals("split size "+splitSize, values(expected), read(new BinarySequenceInputFormat(), file, splitSize, false));
+		}
+	}
+
+	@Test
+	public void testPaired() throws Exception {
+		Path left = write("reads_1.fq", fastq(RECORDS, "/1", 3));
+		Path right = write("reads_2.fq", fastq(RECORDS, "/2 1:N:0:ATCACG", 3));
+		Path file = new Path(folder.getRoot().getAbsolutePath(), "reads"+BinarySequenceFile.EXTENSION);
+		Job job = Job.getInstance();
+		Configuration.setSequenceRecord(job.getConfiguration(), true);
+		PairedEndSequenceInputFormat.setLeftInputPath(job, left, FastQInputFormat.class);
+		PairedEndSequenceInputFormat.setRightInputPath(job, right, FastQInputFormat.class);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		PairedEndSequenceInputFormat inputFormat = new PairedEndSequenceInputFormat();
+		List<String> expected = new ArrayList<String>();
+
+		try (BinarySequenceFile.Writer writer = new BinarySequenceFile.Writer(fs.create(file), true, true, BLOCK_SIZE, 1)) {
+			for (InputSplit split : inputFormat.getSplits(job)) {
+				try (RecordReader<LongWritable, PairText> reader = inputFormat.createRecordReader(split, context)) {
+					reader.initialize(split, context);
+
+					while (reader.nextKeyValue()) {
+						PairSequenceRecord pair = (PairSequenceRecord) reader.getCurrentValue();
+						expected.add(toString(expected.size(), pair));
+						writer.append(pair.getLeftRecord(), pair.getRightRecord());
+					}
+				}
+			}
+		}
+
+		assertEquals(RECORDS, expected.size());
+		checkFooter(file, true, true);
+
+		for (long splitSize : SPLIT_SIZES)
+			assertEquals("split size "+splitSize, expected, read(new PairedEndBinarySequenceInputFormat(), file, splitSize, true));
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		Path text = write("reads.fq", fastq(100, "/1", 4));
+		Path file = new Path(folder.getRoot().getAbsolutePath(), "reads"+BinarySequenceFile.EXTENSION);
+		Job job = createJob(text, Long.MAX_VALUE, true);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		SequenceRecord record = new SequenceRecord();
+
+		try (BinarySequenceFile.Writer writer = new BinarySequenceFile.Writer(fs.create(file), true, true, BLOCK_SIZE, 6)) {
+			for (InputSplit split : new FastQInputFormat().getSplits(job)) {
+				try (RecordReader<LongWritable, Text> reader = new FastQInputFormat().createRecordReader(split, context)) {
+					reader.initialize(split, context);
+					assertTrue(reader.nextKeyValue());
+					record.set(reader.getCurrentValue());
+					record.parseFields();
+					writer.append(record, record);
+
+					try {
+						writer.append(record);
+						fail("Single-end record appended to a paired-end file");
+					} catch (IOException e) {
+						assertEquals("Single-end record appended to a paired-end file", e.getMessage());
+					}
+				}
+			}
+		}
+
+		expectError(new BinarySequenceInputFormat(), file, "Paired-end binary sequence file: ");
+		expectError(new PairedEndBinarySequenceInputFormat(), text, "Not a binary sequence file: ");
+
+		// Truncated footer
+		byte[] bytes = new byte[(int) fs.getFileStatus(file).getLen()];
+
+		try (org.apache.hadoop.fs.FSDataInputStream in = fs.open(file)) {
+			in.readFully(bytes);
+		}
+
+		Path truncated = write("truncated"+BinarySequenceFile.EXTENSION, Arrays.copyOf(bytes, bytes.length - 1));
+		expectError(new PairedEndBinarySequenceInputFormat(), truncated, "Corrupt binary sequence file footer: ");
+	}
+
+	private void expectError(InputFormat<LongWritable, ?> inputFormat, Path file, String message) throws Exception {
+		try {
+			inputFormat.getSplits(createJob(file, Long.MAX_VALUE, false));
+			fail(message);
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+		}
+	}
+
+	/**
+	 * Check that the file has several consecutive blocks.
+	 */
+	private void checkFooter(Path file, boolean fastq, boolean paired) throws IOException {
+		BinarySequenceFile.Footer footer = BinarySequenceFile.readFooter(fs, file);
+		List<BinarySequenceFile.Block> blocks = footer.getBlocks();
+		assertEquals(fastq, footer.isFastQ());
+		assertEquals(paired, footer.isPaired());
+		assertEquals(RECORDS, footer.getNumRecords());
+		assertTrue(blocks.size() > 3);
+
+		for (int i = 1; i < blocks.size(); i++) {
+			assertEquals(blocks.get(i - 1).getFirstRecord() + blocks.get(i - 1).getNumRecords(), blocks.get(i).getFirstRecord());
+			assertTrue(blocks.get(i - 1).getOffset() < blocks.get(i).getOffset());
+		}
+
+		assertTrue(blocks.get(blocks.size() - 1).getOffset() < footer.getDataEnd());
+	}
+
+	private static Job createJob(Path file, long splitSize, boolean sequenceRecord) throws IOException {
+		Job job = Job.getInstance();
+		job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, splitSize);
+		Configuration.setSequenceRecord(job.getConfiguration(), sequenceRecord);
+		FileInputFormat.setInputPaths(job, file);
+		return job;
+	}
+
+	/**
+	 * Read the records of a binary sequence file as the strings built by
+	 * {@link #toString(long, Text)}, or as "key value" strings for Text values.
+	 */
+	private static <V> List<String> read(FileInputFormat<LongWritable, V> inputFormat, Path file, long splitSize,
+			boolean sequenceRecord) throws Exception {
+		Job job = createJob(file, splitSize, sequenceRecord);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		List<InputSplit> splits = inputFormat.getSplits(job);
+		List<String> records = new ArrayList<String>();
+
+		if (splitSize == 1)
+			assertEquals(BinarySequenceFile.readFooter(file.getFileSystem(job.getConfiguration()), file).getBlocks().size(), splits.size());
+
+		for (InputSplit split : splits) {
+			try (RecordReader<LongWritable, V> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					Object value = reader.getCurrentValue();
+					long key = reader.getCurrentKey().get();
+
+					if (value instanceof PairText)
+						records.add(toString(key, (PairText) value));
+					else if (value instanceof SequenceRecord)
+						records.add(toString(key, (Text) value));
+					else
+						records.add(key+" "+value);
+				}
+			}
+		}
+
+		return records;
+	}
+
+	private static String toString(long key, Text value) {
+		SequenceRecord record = (SequenceRecord) value;
+		return key+" "+record+"|"+record.getName()+"|"+record.getSequence()+"|"+record.getQuality();
+	}
+
+	private static String toString(long key, PairText value) {
+		PairSequenceRecord pair = (PairSequenceRecord) value;
+		return toString(key, pair.getLeftRecord())+"|"+toString(key, pair.getRightRecord());
+	}
+
+	/**
+	 * Strip the fields from strings built by {@link #toString(long, Text)}.
+	 */
+	private static List<String> values(List<String> records) {
+		List<String> values = new ArrayList<String>();
+
+		for (String record : records)
+			values.add(record.substring(0, record.indexOf('|')));
+
+		return values;
+	}
+
+	private Path find(Path dir) throws IOException {
+		RemoteIterator<LocatedFileStatus> files = fs.listFiles(dir, true);
+
+		while (files.hasNext()) {
+			Path file = files.next().getPath();
+
+			if (file.getName().endsWith(BinarySequenceFile.EXTENSION))
+				return file;
+		}
+
+		throw new IOException("No binary sequence file in "+dir);
+	}
+
+	private Path write(String name, byte[] data) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+
+		try (OutputStream out = fs.create(file, true)) {
+			out.write(data);
+		}
+
+		return file;
+	}
+
+	private static byte[] fastq(int records, String suffix, long seed) {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < records; i++) {
+			int length = 30 + random.nextInt(200);
+			sb.append("@read").append(i).append(suffix).append('\n');
+
+			for (int j = 0; j < length; j++)
+				sb.append("ACGTN".charAt(random.nextInt(5)));
+
+			sb.append("\n+\n");
+
+			for (int j = 0; j < length; j++)
+				sb.append((char) ('!' + random.nextInt(40)));
+
+			sb.append('\n');
+		}
+
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static byte[] fasta(int records, long seed) {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < records; i++) {
+			int length = 1 + random.nextInt(300);
+			sb.append(">seq").append(i).append(" description ").append(i).append('\n');
+
+			for (int j = 0; j < length; j++) {
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+				if ((j + 1) % 60 == 0 || j + 1 == length)
+					sb.append('\n');
+			}
+		}
+
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+
+/**
+ * Tests of {@link CombineSequenceInputFormat} with uncompressed, gzip and
+ * bzip2 files packed into the same splits, whose records must be those
+ * read from each file on its own, and whose counters must include all
+ * the files.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class CombineSequenceInputFormatTest {
+
+	private static final int FILES = 12;
+	private static final String[] EXTENSIONS = {"", ".gz", ".bz2"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystem fs;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration()).getRaw();
+	}
+
+	@Test
+	public void testFastQ() throws Exception {
+		List<Path> files = new ArrayList<Path>();
+
+		for (int i = 0; i < FILES; i++)
+			files.add(write("reads"+i+".fq"+EXTENSIONS[i % EXTENSIONS.length], fastq(i, 20 + 40 * i)));
+
+		List<String> expected = readFiles(new FastQInputFormat(), files, false);
+
+		// Small splits, which split the uncompressed and bzip2 files, and the default size
+		for (long splitSize : new long[] {4000, 30000, 0}) {
+			for (boolean sequenceRecord : new boolean[] {false, true}) {
+				Job job = createJob(files, splitSize, sequenceRecord);
+				assertEquals("split size "+splitSize, expected, read(new CombineFastQInputFormat(), job, splitSize));
+			}
+		}
+	}
+
+	@Test
+	public void testFastA() throws Exception {
+		List<Path> files = new ArrayList<Path>();
+
+		for (int i = 0; i < FILES; i++)
+			files.add(write("reads"+i+".fa"+EXTENSIONS[i % EXTENSIONS.length], fasta(i, 20 + 40 * i)));
+
+		List<String> expected = readFiles(new FastAInputFormat(), files, false);
+
+		for (long splitSize : new long[] {4000, 0})
+			assertEquals("split size "+splitSize, expected, read(new CombineFastAInputFormat(), createJob(files, splitSize, false), splitSize));
+	}
+
+	private static Job createJob(List<Path> files, long splitSize, boolean sequenceRecord) throws IOException {
+		Job job = Job.getInstance();
+		Configuration.setSequenceRecord(job.getConfiguration(), sequenceRecord);
+		Configuration.setInputBufferSize(job.getConfiguration(), 4096);
+		FileInputFormat.setInputPaths(job, files.toArray(new Path[files.size()]));
+
+		if (splitSize > 0)
+			job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, splitSize);
+
+		return job;
+	}
+
+	/**
+	 * Read the records of the combined splits, sorted as "file value" strings.
+	 * Keys are only included for uncompressed files.
+	 */
+	private static List<String> read(CombineSequenceInputFormat inputFormat, Job job, long splitSize) throws Exception {
+		final Counters counters = new Counters();
+		Configuration.setCounters(job.getConfiguration(), true);
+
+		// The counters of all the files must be published
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID(),
+				new StatusReporter() {
+					@Override
+					public Counter getCounter(Enum<?> name) {
+						return counters.findCounter(name);
+					}
+
+					@Override
+					public Counter getCounter(String group, String name) {
+						return counters.findCounter(group, name);
+					}
+
+					@Override
+					public void progress() {
+					}
+
+					@Override
+					public float getProgress() {
+						return 0;
+					}
+
+					@Override
+					public void setStatus(String status) {
+					}
+				});
+		List<InputSplit> splits = inputFormat.getSplits(job);
+		List<String> records = new ArrayList<String>();
+		boolean combined = false;
+
+		if (splitSize == 0)
+			assertEquals(1, splits.size());
+		else
+			assertTrue(splits.size() > 1);
+
+		for (InputSplit split : splits) {
+			CombineFileSplit combineSplit = (CombineFileSplit) split;
+			combined |= combineSplit.getNumPaths() > 1;
+
+			try (RecordReader<LongWritable, Text> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+				float progress = 0.0f;
+
+				while (reader.nextKeyValue()) {
+					assertTrue(reader.getProgress() >= progress && reader.getProgress() <= 1.0f);
+					progress = reader.getProgress();
+					records.add(toString(findFile(combineSplit, reader.getCurrentValue()), reader.getCurrentKey(),
+							reader.getCurrentValue()));
+				}
+			}
+		}
+
+		assertTrue(combined);
+		assertEquals(records.size(), counters.findCounter(SequenceParserCounter.RECORDS_READ).getValue());
+		Collections.sort(records);
+		return records;
+	}
+
+	/**
+	 * Read each file on its own with the given input format.
+	 */
+	private static List<String> readFiles(FileInputFormat<LongWritable, Text> inputFormat, List<Path> files, boolean sequenceRecord)
+			throws Exception {
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(createJob(files, 0, sequenceRecord).getConfiguration(),
+				new TaskAttemptID());
+		List<String> records = new ArrayList<String>();
+
+		for (Path file : files) {
+			FileSplit split = new FileSplit(file, 0, file.getFileSystem(context.getConfiguration()).getFileStatus(file).getLen(), new String[0]);
+
+			try (RecordReader<LongWritable, Text> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue())
+					records.add(toString(file, reader.getCurrentKey(), reader.getCurrentValue()));
+			}
+		}
+
+		Collections.sort(records);
+		return records;
+	}
+
+	private static String toString(Path file, LongWritable key, Text value) {
+		boolean keys = file.getName().endsWith(".fq") || file.getName().endsWith(".fa");
+		return file.getName()+" "+(keys? key.get()+" " : "")+value;
+	}
+
+	/**
+	 * Find the file of the split where a record is stored, as records
+	 * are named after their files.
+	 */
+	private static Path findFile(CombineFileSplit split, Text value) {
+		String record = value.toString();
+
+		for (Path file : split.getPaths()) {
+			if (record.startsWith(file.getName().substring(0, file.getName().indexOf('.'))+"_", 1))
+				return file;
+		}
+
+		throw new AssertionError("Record not found in the files of the split: "+record);
+	}
+
+	private Path write(String name, byte[] data) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		if (name.endsWith(".gz")) {
+			try (GZIPOutputStream gzout = new GZIPOutputStream(out)) {
+				gzout.write(data);
+			}
+		} else if (name.endsWith(".bz2")) {
+			out.write('B');
+			out.write('Z');
+
+			try (CBZip2OutputStream bzout = new CBZip2OutputStream(out, 1)) {
+				bzout.write(data);
+			}
+		} else {
+			out.write(data);
+		}
+
+		try (OutputStream fileOut = fs.create(file, true)) {
+			fileOut.write(out.toByteArray());
+		}
+
+		return file;
+	}
+
+	private static byte[] fastq(int file, int records) {
+		Random random = new Random(file);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < records; i++) {
+			int length = 30 + random.nextInt(150);
+			sb.append("@reads").append(file).append("_").append(i).append('\n');
+
+			for (int j = 0; j < length; j++)
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+			sb.append("\n+\n");
+
+			for (int j = 0; j < length; j++)
+				sb.append((char) ('!' + random.nextInt(40)));
+
+			sb.append('\n');
+		}
+
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static byte[] fasta(int file, int records) {
+		Random random = new Random(file);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < records; i++) {
+			int length = 10 + random.nextInt(300);
+			sb.append(">reads").append(file).append("_").append(i).append('\n');
+
+			for (int j = 0; j < length; j++) {
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+				if ((j + 1) % 60 == 0 || j + 1 == length)
+					sb.append('\n');
+			}
+		}
+
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.BZip2BlockInputStream;
+
+/**
+ * Tests of {@link FastARecordReader} with splits whose boundaries lie
+ * around record starts and, for bzip2 files, around block starts, as
+ * the reader peeks at the next line to find the end of each record.
+ * Uncompressed files are also read through memory-mapped windows and
+ * byte-buffer reads, and records are also read with their sequence
+ * lines joined.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class FastARecordReaderTest {
+
+	private static final int RECORDS = 3000;
+	private static final int LINE_LENGTH = 60;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystem fs;
+	private List<Long> recordStarts;
+	private byte[] data;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new Configuration()).getRaw();
+		recordStarts = new ArrayList<Long>();
+		data = sequences(RECORDS, 1);
+	}
+
+	@Test
+	public void testSplits() throws Exception {
+		Path file = write("reads.fa", data);
+		List<String> expected = read(new Configuration(), file, new long[] {0, data.length});
+		assertEquals(RECORDS, expected.size());
+
+		// Boundaries right before, at and after some record starts
+		for (int i = 1; i < RECORDS; i += 97) {
+			long recordStart = recordStarts.get(i);
+
+			for (long boundary = recordStart - 1; boundary <= recordStart + 1; boundary++)
+				assertEquals("boundary "+boundary, expected, read(new Configuration(), file, new long[] {0, boundary, data.length}));
+		}
+
+		checkRandomSplits(new Configuration(), file, data.length, expected);
+	}
+
+	@Test
+	public void testMemoryMap() throws Exception {
+		Path file = write("reads.fa", data);
+		List<String> expected = read(new Configuration(), file, new long[] {0, data.length});
+
+		// Windows smaller than a record, than the input buffer and larger than the file
+		for (int windowSize : new int[] {1000, 4093, 65536, data.length + 1}) {
+			Configuration conf = new Configuration();
+			es.udc.gac.hadoop.sequence.parser.util.Configuration.setMemoryMap(conf, true);
+			es.udc.gac.hadoop.sequence.parser.util.Configuration.setMemoryMapWindowSize(conf, windowSize);
+			assertEquals("window "+windowSize, expected, read(conf, file, new long[] {0, data.length}));
+
+			for (int i = 1; i < RECORDS; i += 499) {
+				long recordStart = recordStarts.get(i);
+
+				for (long boundary = recordStart - 1; boundary <= recordStart + 1; boundary++)
+					assertEquals("window "+windowSize+", boundary "+boundary, expected,
+							read(conf, file, new long[] {0, boundary, data.length}));
+			}
+
+			checkRandomSplits(conf, file, data.length, expected);
+		}
+	}
+
+	@Test
+	public void testByteBufferRead() throws Exception {
+		Path file = write("reads.fa", data);
+		List<String> expected = read(new Configuration(), file, new long[] {0, data.length});
+
+		// Reads smaller than a record and than the input buffer, with and without checksums
+		for (int readSize : new int[] {1000, 4093, 1 << 20}) {
+			for (boolean skipChecksums : new boolean[] {false, true}) {
+				Configuration conf = new Configuration();
+				es.udc.gac.hadoop.sequence.parser.util.Configuration.setByteBufferRead(conf, true);
+				es.udc.gac.hadoop.sequence.parser.util.Configuration.setByteBufferReadSize(conf, readSize);
+				es.udc.gac.hadoop.sequence.parser.util.Configuration.setByteBufferSkipChecksums(conf, skipChecksums);
+				assertEquals("read size "+readSize, expected, read(conf, file, new long[] {0, data.length}));
+				checkRandomSplits(conf, file, data.length, expected);
+			}
+		}
+	}
+
+	@Test
+	public void testJoinLines() throws Exception {
+		Path file = write("reads.fa", data);
+		Path bzip2File = write("reads.fa.bz2", bzip2(data));
+		List<String> expected = new ArrayList<String>();
+
+		for (String record : read(new Configuration(), file, new long[] {0, data.length}))
+			expected.add(join(record));
+
+		// Plain, memory-mapped and bzip2 files, with split boundaries within the sequence lines
+		Configuration conf = new Configuration();
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setFastAJoinLines(conf, true);
+		assertEquals(expected, read(conf, file, new long[] {0, data.length}));
+		checkRandomSplits(conf, file, data.length, expected);
+
+		Configuration mmapConf = new Configuration(conf);
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setMemoryMap(mmapConf, true);
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setMemoryMapWindowSize(mmapConf, 4093);
+		checkRandomSplits(mmapConf, file, data.length, expected);
+
+		List<String> values = new ArrayList<String>();
+
+		for (String record : expected)
+			values.add(record.substring(record.indexOf(' ') + 1));
+
+		long length = fs.getFileStatus(bzip2File).getLen();
+		checkRandomSplits(conf, bzip2File, length, values);
+
+		// The sequence field spans the joined line
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setSequenceRecord(conf, true);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+		FileSplit split = new FileSplit(file, 0, data.length, new String[0]);
+		int i = 0;
+
+		try (RecordReader<LongWritable, Text> reader = new FastAInputFormat().createRecordReader(split, context)) {
+			reader.initialize(split, context);
+
+			while (reader.nextKeyValue()) {
+				SequenceRecord record = (SequenceRecord) reader.getCurrentValue();
+				String value = values.get(i++);
+				assertEquals(value, record.toString());
+				assertEquals(value.substring(1, value.indexOf('\n')), record.getName().toString());
+				assertEquals(value.substring(value.indexOf('\n') + 1, value.length() - 1), record.getSequence().toString());
+			}
+		}
+
+		assertEquals(RECORDS, i);
+	}
+
+	@Test
+	public void testBZip2Splits() throws Exception {
+		Path file = write("reads.fa.bz2", bzip2(data));
+		long length = fs.getFileStatus(file).getLen();
+		TreeSet<Long> blocks = getBlockOffsets(file);
+		assertTrue(blocks.size() > 3);
+
+		// Hadoop's bzip2 codec, and the concurrent decompressor
+		for (int numThreads : new int[] {0, 2}) {
+			Configuration conf = new Configuration();
+			es.udc.gac.hadoop.sequence.parser.util.Configuration.setBZip2Threads(conf, numThreads);
+			List<String> expected = read(conf, file, new long[] {0, length});
+			assertEquals(RECORDS, expected.size());
+
+			// Blocks whose magic number starts right before, at or after the split boundary
+			for (long block : blocks) {
+				for (long boundary = block - 1; boundary <= block + 1; boundary++)
+					assertEquals("boundary "+boundary, expected, read(conf, file, new long[] {0, boundary, length}));
+			}
+
+			checkRandomSplits(conf, file, length, expected);
+		}
+	}
+
+	@Test
+	public void testBZip2RecordsAtBlockStarts() throws Exception {
+		// Concatenated bzip2 streams, whose blocks start exactly on a record
+		ByteArrayOutputStream bzip2 = new ByteArrayOutputStream();
+
+		for (int i = 0; i + 1 < recordStarts.size(); i += 250) {
+			int from = recordStarts.get(i).intValue();
+			int to = (i + 250 < recordStarts.size())? recordStarts.get(i + 250).intValue() : data.length;
+			bzip2.write(bzip2(Arrays.copyOfRange(data, from, to)));
+		}
+
+		Path file = write("reads.fa.bz2", bzip2.toByteArray());
+		long length = fs.getFileStatus(file).getLen();
+		TreeSet<Long> blocks = getBlockOffsets(file);
+		assertTrue(blocks.size() > 3);
+
+		Configuration conf = new Configuration();
+		List<String> expected = read(conf, file, new long[] {0, length});
+		assertEquals(RECORDS, expected.size());
+
+		for (long block : blocks) {
+			for (long boundary = block - 1; boundary <= block + 1; boundary++)
+				assertEquals("boundary "+boundary, expected, read(conf, file, new long[] {0, boundary, length}));
+		}
+	}
+
+	private void checkRandomSplits(Configuration conf, Path file, long length, List<String> expected) throws Exception {
+		Random random = new Random(length);
+
+		for (int numSplits : new int[] {3, 8, 25}) {
+			long[] bounds = new long[numSplits + 1];
+			bounds[numSplits] = length;
+
+			for (int i = 1; i < numSplits; i++)
+				bounds[i] = random.nextInt((int) length);
+
+			Arrays.sort(bounds);
+			assertEquals(numSplits+" splits", expected, read(conf, file, bounds));
+		}
+	}
+
+	/**
+	 * Read the records of the splits with the given boundaries. Keys are
+	 * only compared for uncompressed files, as the keys of compressed splits
+	 * are relative to the block where they start.
+	 */
+	private static List<String> read(Configuration conf, Path file, long[] bounds) throws Exception {
+		boolean keys = !file.getName().endsWith(".bz2");
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setInputBufferSize(conf, 4096);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+		FastAInputFormat inputFormat = new FastAInputFormat();
+		List<String> records = new ArrayList<String>();
+
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			FileSplit split = new FileSplit(file, bounds[i], bounds[i + 1] - bounds[i], new String[0]);
+
+			try (RecordReader<LongWritable, Text> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue())
+					records.add(keys? reader.getCurrentKey().get()+" "+reader.getCurrentValue() : reader.getCurrentValue().toString());
+			}
+		}
+
+		return records;
+	}
+
+	/**
+	 * Join the sequence lines of a record read without joining them.
+	 */
+	private static String join(String record) {
+		int nameEnd = record.indexOf('\n') + 1;
+		String sequence = record.substring(nameEnd).replace("\n", "");
+		return record.substring(0, nameEnd) + (sequence.isEmpty()? "" : sequence+"\n");
+	}
+
+	private TreeSet<Long> getBlockOffsets(Path file) throws IOException {
+		TreeSet<Long> blocks = new TreeSet<Long>();
+
+		try (FSDataInputStream in = fs.open(file);
+				BZip2BlockInputStream bzin = new BZip2BlockInputStream(in, 0, fs.getFileStatus(file).getLen(), 1)) {
+			byte[] buffer = new byte[64*1024];
+
+			while (bzin.read(buffer, 0, buffer.length) != -1)
+				blocks.add(bzin.getPos());
+		}
+
+		return blocks;
+	}
+
+	/**
+	 * Generate FASTA records of random length, with sequence lines of
+	 * {@value #LINE_LENGTH} bases.
+	 */
+	private byte[] sequences(int records, long seed) {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < records; i++) {
+			recordStarts.add((long) sb.length());
+			sb.append(">seq").append(i).append(" length=").append(i % 7).append('\n');
+			int length = 10 + random.nextInt(500);
+
+			for (int j = 0; j < length; j++) {
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+				if ((j + 1) % LINE_LENGTH == 0 || j + 1 == length)
+					sb.append('\n');
+			}
+		}
+
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private Path write(String name, byte[] bytes) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+
+		try (OutputStream out = fs.create(file, true)) {
+			out.write(bytes);
+		}
+
+		return file;
+	}
+
+	/**
+	 * Compress data in a single bzip2 stream with 100 KB blocks.
+	 */
+	private static byte[] bzip2(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write('B');
+		out.write('Z');
+
+		try (CBZip2OutputStream bzout = new CBZip2OutputStream(out, 1)) {
+			bzout.write(data);
+		}
+
+		return out.toByteArray();
+	}
+}
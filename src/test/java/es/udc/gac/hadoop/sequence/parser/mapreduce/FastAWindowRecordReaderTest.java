@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.BufferPool;
+import es.udc.gac.hadoop.sequence.parser.util.FastAIndex;
+
+/**
+ * Tests of {@link FastAWindowRecordReader} with splits starting around
+ * headers, line ends and window starts, where the record of the first
+ * window is found with the FASTA index of the file or by scanning it
+ * backwards. The windows of all the splits must be those computed from
+ * the whole sequences, also when the buffers are leased from the buffer
+ * pool of the JVM.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class FastAWindowRecordReaderTest {
+
+	private static final int RECORDS = 60;
+	private static final int[][] WINDOWS = {{100, 20}, {64, 0}, {7, 6}};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystem fs;
+	private List<FastARecord> records;
+
+	/**
+	 * FASTA record and its location in the file
+	 */
+	private static class FastARecord {
+		String name;
+		String sequence;
+		int lineBases;
+		long headerStart;
+		long sequenceStart;
+		long sequenceEnd;
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new Configuration()).getRaw();
+		records = new ArrayList<FastARecord>();
+	}
+
+	@Test
+	public void testBoundaries() throws Exception {
+		byte[] data = generate(new Random(1), RECORDS, 500);
+		Path[] files = writeFiles(data);
+
+		// Boundaries around headers, sequence starts and line ends
+		TreeSet<Long> boundaries = new TreeSet<Long>();
+
+		for (int i = 1; i < RECORDS; i += 5) {
+			FastARecord record = records.get(i);
+
+			for (long offset : new long[] {record.headerStart, record.headerStart + 3, record.sequenceStart,
+					record.sequenceStart + record.lineBases, record.sequenceStart + record.lineBases * 2 + 7,
+					record.sequenceEnd}) {
+				for (long boundary = offset - 1; boundary <= offset + 1; boundary++)
+					boundaries.add(boundary);
+			}
+		}
+
+		for (int[] window : WINDOWS) {
+			List<String> expected = windows(window[0], window[1]);
+			Configuration conf = createConf(window[0], window[1]);
+
+			for (Path file : files) {
+				assertEquals(expected, read(conf, file, new long[] {0, data.length}));
+
+				for (long boundary : boundaries) {
+					assertEquals(file.getName()+", window "+window[0]+", boundary "+boundary, expected,
+							read(conf, file, new long[] {0, boundary, data.length}));
+				}
+
+				checkRandomSplits(conf, file, data.length, expected);
+			}
+		}
+	}
+
+	@Test
+	public void testLongRecord() throws Exception {
+		// A record longer than the buffer used to scan the file backwards
+		Random random = new Random(2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(generate(random, 3, 300));
+		int longRecord = records.size();
+		out.write(generate(random, 1, 200000, out.size()));
+		out.write(generate(random, 3, 300, out.size()));
+		byte[] data = out.toByteArray();
+		Path[] files = writeFiles(data);
+		FastARecord record = records.get(longRecord);
+		assertTrue(record.sequence.length() > 64*1024);
+
+		// The header of the record at the start or end of a scan chunk
+		TreeSet<Long> boundaries = new TreeSet<Long>();
+
+		for (long boundary = record.headerStart + 65533; boundary <= record.headerStart + 65538; boundary++)
+			boundaries.add(boundary);
+
+		for (long boundary = record.sequenceStart; boundary < record.sequenceEnd; boundary += 9973)
+			boundaries.add(boundary);
+
+		for (int[] window : new int[][] {{1000, 100}, {64, 0}}) {
+			List<String> expected = windows(window[0], window[1]);
+			Configuration conf = createConf(window[0], window[1]);
+
+			for (Path file : files) {
+				for (long boundary : boundaries) {
+					assertEquals(file.getName()+", window "+window[0]+", boundary "+boundary, expected,
+							read(conf, file, new long[] {0, boundary, data.length}));
+				}
+
+				checkRandomSplits(conf, file, data.length, expected);
+			}
+		}
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		byte[] data = generate(new Random(3), RECORDS, 500);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (GZIPOutputStream gzout = new GZIPOutputStream(out)) {
+			gzout.write(data);
+		}
+
+		Path file = write("reads.fa.gz", out.toByteArray());
+
+		for (int[] window : WINDOWS)
+			assertEquals(windows(window[0], window[1]), read(createConf(window[0], window[1]), file, new long[] {0, out.size()}));
+	}
+
+	@Test
+	public void testBufferPool() throws Exception {
+		byte[] data = generate(new Random(4), RECORDS, 500);
+		Path[] files = writeFiles(data);
+		List<String> expected = windows(100, 20);
+		Configuration conf = createConf(100, 20);
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setBufferPoolSize(conf, 64 << 20);
+		BufferPool pool = BufferPool.getInstance(conf);
+
+		for (Path file : files)
+			checkRandomSplits(conf, file, data.length, expected);
+
+		// All the buffers were returned, so they are leased again instead of allocating new ones
+		long pooledBytes = pool.getPooledBytes();
+		assertTrue(pooledBytes > 0);
+		checkRandomSplits(conf, files[0], data.length, expected);
+		assertEquals(pooledBytes, pool.getPooledBytes());
+	}
+
+	@Test
+	public void testDifferentLineLengths() throws Exception {
+		Path file = write("reads.fa", ">seq1\nACGTACGT\nACGTAC\nACGTACGT\nAC\n".getBytes(StandardCharsets.US_ASCII));
+
+		try {
+			read(createConf(4, 1), file, new long[] {0, fs.getFileStatus(file).getLen()});
+			fail("Different line lengths not detected");
+		} catch (IOException e) {
+			assertEquals("Sequence lines of record seq1 have different lengths, which is not supported by windowed parsing",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void testInvalidWindow() throws Exception {
+		Path file = write("reads.fa", ">seq1\nACGT\n".getBytes(StandardCharsets.US_ASCII));
+
+		try {
+			read(createConf(10, 10), file, new long[] {0, fs.getFileStatus(file).getLen()});
+			fail("Invalid overlap not detected");
+		} catch (IOException e) {
+			assertEquals("Invalid FASTA window size and overlap: 10, 10", e.getMessage());
+		}
+	}
+
+	private void checkRandomSplits(Configuration conf, Path file, long length, List<String> expected) throws Exception {
+		Random random = new Random(length);
+
+		for (int numSplits : new int[] {3, 8, 25}) {
+			long[] bounds = new long[numSplits + 1];
+			bounds[numSplits] = length;
+
+			for (int i = 1; i < numSplits; i++)
+				bounds[i] = random.nextInt((int) length);
+
+			Arrays.sort(bounds);
+			assertEquals(file.getName()+", "+numSplits+" splits", expected, read(conf, file, bounds));
+		}
+	}
+
+	private static Configuration createConf(int windowSize, int overlap) {
+		Configuration conf = new Configuration();
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setFastAWindowSize(conf, windowSize);
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setFastAWindowOverlap(conf, overlap);
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setInputBufferSize(conf, 4096);
+		return conf;
+	}
+
+	/**
+	 * Read the windows of the splits with the given boundaries as "name offset bases" strings.
+	 */
+	private static List<String> read(Configuration conf, Path file, long[] bounds) throws Exception {
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+		FastAWindowInputFormat inputFormat = new FastAWindowInputFormat();
+		List<String> windows = new ArrayList<String>();
+
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			FileSplit split = new FileSplit(file, bounds[i], bounds[i + 1] - bounds[i], new String[0]);
+
+			try (RecordReader<SequenceWindowKey, Text> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					SequenceWindowKey key = reader.getCurrentKey();
+					windows.add(key.getName()+" "+key.getOffset()+" "+reader.getCurrentValue());
+				}
+			}
+		}
+
+		return windows;
+	}
+
+	/**
+	 * Compute the windows of the generated records.
+	 */
+	private List<String> windows(int windowSize, int overlap) {
+		List<String> windows = new ArrayList<String>();
+
+		for (FastARecord record : records) {
+			int length = record.sequence.length();
+
+			for (int start = 0; start < length; start += windowSize - overlap) {
+				int end = Math.min(length, start + windowSize);
+
+				if (start > 0 && end - start <= overlap)
+					break;
+
+				windows.add(record.name+" "+start+" "+record.sequence.substring(start, end));
+			}
+		}
+
+		return windows;
+	}
+
+	/**
+	 * Write the data without index, with a valid index and with an invalid one.
+	 */
+	private Path[] writeFiles(byte[] data) throws IOException {
+		StringBuilder index = new StringBuilder();
+
+		for (FastARecord record : records) {
+			index.append(record.name).append('\t').append(record.sequence.length()).append('\t')
+				.append(record.sequenceStart).append('\t').append(record.lineBases).append('\t')
+				.append(record.lineBases + 1).append('\n');
+		}
+
+		Path indexed = write("indexed.fa", data);
+		write(FastAIndex.getIndexPath(indexed).getName(), index.toString().getBytes(StandardCharsets.US_ASCII));
+		Path invalid = write("invalid.fa", data);
+		write(FastAIndex.getIndexPath(invalid).getName(), "seq0\t10\n".getBytes(StandardCharsets.US_ASCII));
+		return new Path[] {write("reads.fa", data), indexed, invalid};
+	}
+
+	private byte[] generate(Random random, int numRecords, int maxLength) {
+		return generate(random, numRecords, maxLength, 0);
+	}
+
+	/**
+	 * Generate FASTA records of random length (including empty ones), whose
+	 * sequence lines have a random length within each record.
+	 */
+	private byte[] generate(Random random, int numRecords, int maxLength, long offset) {
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < numRecords; i++) {
+			FastARecord record = new FastARecord();
+			int length = (maxLength > 1000)? maxLength : random.nextInt(maxLength);
+			StringBuilder sequence = new StringBuilder();
+
+			for (int j = 0; j < length; j++)
+				sequence.append("ACGTN".charAt(random.nextInt(5)));
+
+			record.name = "seq"+records.size();
+			record.sequence = sequence.toString();
+			record.lineBases = 20 + random.nextInt(60);
+			record.headerStart = offset + sb.length();
+			sb.append('>').append(record.name).append(" length=").append(length).append('\n');
+			record.sequenceStart = offset + sb.length();
+
+			for (int j = 0; j < length; j += record.lineBases)
+				sb.append(record.sequence, j, Math.min(length, j + record.lineBases)).append('\n');
+
+			record.sequenceEnd = offset + sb.length();
+			records.add(record);
+		}
+
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private Path write(String name, byte[] bytes) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+
+		try (OutputStream out = fs.create(file, true)) {
+			out.write(bytes);
+		}
+
+		return file;
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.RecordIndex;
+
+/**
+ * Tests of {@link InterleavedFastQRecordReader} with splits starting at
+ * arbitrary offsets, which must start and end on pair boundaries, with
+ * splits of indexed files, which start at any record ordinal, and with
+ * splits of bzip2 files.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class InterleavedFastQRecordReaderTest {
+
+	private static final int PAIRS = 1000;
+	private static final int[] SPLIT_SIZES = {997, 4096, 10007, Integer.MAX_VALUE};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private long fileLength;
+	private long[] recordStarts = new long[8]; // offsets of the first records
+	private byte[] data;
+
+	@Test
+	public void testSraReadIds() throws Exception {
+		check("@SRR001666.%d.%d length=72");
+	}
+
+	@Test
+	public void testSraSpotIds() throws Exception {
+		// Both mates have the same name, so that "SRR001666.1" and "SRR001666.2" are not mates
+		check("@SRR001666.%d length=72");
+	}
+
+	@Test
+	public void testSlashSuffixes() throws Exception {
+		check("@read%d/%d");
+	}
+
+	@Test
+	public void testIlluminaComments() throws Exception {
+		check("@EAS139:136:FC706VJ:2:2104:15343:%d %d:N:18:ATCACG");
+	}
+
+	@Test
+	public void testUncheckedNames() throws Exception {
+		Configuration conf = new Configuration();
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setPairedCheckNames(conf, false);
+		Path file = write("@left%d %d", "@right%d %d");
+
+		// The first split never skips its first read
+		List<String> names = new ArrayList<String>();
+		read(conf, file, Integer.MAX_VALUE, names);
+		assertEquals(2 * PAIRS, names.size());
+
+		for (int i = 0; i < PAIRS; i++) {
+			assertEquals("@left"+i, names.get(2 * i));
+			assertEquals("@right"+i, names.get(2 * i + 1));
+		}
+
+		// Other splits cannot find their first pair
+		try {
+			read(conf, file, 4096, new ArrayList<String>());
+			fail("Splits without checking read names");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Cannot find the first pair"));
+		}
+	}
+
+	@Test
+	public void testIndexed() throws Exception {
+		// Without checking names, so that only the record ordinals are used
+		Configuration conf = new Configuration();
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setPairedCheckNames(conf, false);
+		Path file = write("@left%d %d", "@right%d %d");
+
+		// Entries at odd and even record ordinals
+		for (int interval : new int[] {37, 100}) {
+			RecordIndex index = new RecordIndex(fileLength);
+
+			for (int record = 0, pos = 0, lines = 0; pos < data.length; pos++) {
+				if (lines % 4 == 0 && (pos == 0 || data[pos - 1] == '\n')) {
+					if (record % interval == 0)
+						index.add(record, pos);
+
+					record++;
+				}
+
+				if (data[pos] == '\n')
+					lines++;
+			}
+
+			index.setNumRecords(2 * PAIRS);
+			index.write(FileSystem.getLocal(conf), file);
+
+			for (long splitSize : new long[] {4096, 10007}) {
+				Job job = Job.getInstance(conf);
+				job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, splitSize);
+				FileInputFormat.setInputPaths(job, file);
+				InterleavedFastQInputFormat inputFormat = new InterleavedFastQInputFormat();
+				TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+				List<InputSplit> splits = inputFormat.getSplits(job);
+				List<String> names = new ArrayList<String>();
+				boolean oddStart = false;
+
+				for (InputSplit split : splits) {
+					oddStart |= ((IndexedFileSplit) split).getFirstRecord() % 2 == 1;
+
+					try (RecordReader<LongWritable, PairText> reader = inputFormat.createRecordReader(split, context)) {
+						reader.initialize(split, context);
+
+						while (reader.nextKeyValue()) {
+							names.add(getHeader(PairedEndSequenceRecordReader.getLeftRead(reader.getCurrentValue())));
+							names.add(getHeader(PairedEndSequenceRecordReader.getRightRead(reader.getCurrentValue())));
+						}
+					}
+				}
+
+				assertTrue(splits.size() > 3);
+				assertEquals(interval == 37, oddStart);
+				assertEquals(2 * PAIRS, names.size());
+
+				for (int i = 0; i < PAIRS; i++) {
+					assertEquals("@left"+i, names.get(2 * i));
+					assertEquals("@right"+i, names.get(2 * i + 1));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBZip2() throws Exception {
+		String format = "@read%d/%d";
+		write(format, format);
+		Path file = new Path(folder.getRoot().getAbsolutePath(), "reads.fq.bz2");
+		ByteArrayOutputStream bzip2 = new ByteArrayOutputStream();
+		bzip2.write('B');
+		bzip2.write('Z');
+
+		// 100KB blocks
+		try (CBZip2OutputStream out = new CBZip2OutputStream(bzip2, 1)) {
+			out.write(data);
+		}
+
+		try (OutputStream out = FileSystem.getLocal(new Configuration()).getRaw().create(file, true)) {
+			out.write(bzip2.toByteArray());
+		}
+
+		fileLength = bzip2.size();
+
+		// Hadoop's bzip2 codec, and the concurrent decompressor
+		for (int numThreads : new int[] {0, 2}) {
+			Configuration conf = new Configuration();
+			es.udc.gac.hadoop.sequence.parser.util.Configuration.setBZip2Threads(conf, numThreads);
+
+			for (int splitSize : new int[] {4096, 10007, 50000}) {
+				List<String> names = new ArrayList<String>();
+				read(conf, file, splitSize, names);
+				assertEquals(2 * PAIRS, names.size());
+
+				for (int i = 0; i < PAIRS; i++) {
+					assertEquals(String.format(format, i, 1), names.get(2 * i));
+					assertEquals(String.format(format, i, 2), names.get(2 * i + 1));
+				}
+			}
+		}
+	}
+
+	private void check(String format) throws Exception {
+		Path file = write(format, format);
+
+		for (int splitSize : SPLIT_SIZES)
+			check(format, file, getBoundaries(splitSize));
+
+		// Two splits with a boundary around each of the first records
+		for (long offset : recordStarts) {
+			for (long boundary = Math.max(1, offset - 1); boundary <= offset + 1; boundary++)
+				check(format, file, new long[] {0, boundary, fileLength});
+		}
+	}
+
+	private void check(String format, Path file, long[] boundaries) throws Exception {
+		List<String> names = new ArrayList<String>();
+		read(new Configuration(), file, boundaries, names);
+		assertEquals(2 * PAIRS, names.size());
+
+		for (int i = 0; i < PAIRS; i++) {
+			assertEquals(String.format(format, i, 1).split(" ")[0], names.get(2 * i));
+			assertEquals(String.format(format, i, 2).split(" ")[0], names.get(2 * i + 1));
+		}
+	}
+
+	private long[] getBoundaries(int splitSize) {
+		int splits = (int) ((fileLength + splitSize - 1) / splitSize);
+		long[] boundaries = new long[splits + 1];
+
+		for (int i = 0; i < splits; i++)
+			boundaries[i] = (long) i * splitSize;
+
+		boundaries[splits] = fileLength;
+		return boundaries;
+	}
+
+	private void read(Configuration conf, Path file, int splitSize, List<String> names) throws Exception {
+		read(conf, file, getBoundaries(splitSize), names);
+	}
+
+	private void read(Configuration conf, Path file, long[] boundaries, List<String> names) throws Exception {
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+		InterleavedFastQInputFormat inputFormat = new InterleavedFastQInputFormat();
+
+		for (int i = 0; i + 1 < boundaries.length; i++) {
+			FileSplit split = new FileSplit(file, boundaries[i], boundaries[i + 1] - boundaries[i], new String[0]);
+
+			try (RecordReader<LongWritable, PairText> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					names.add(getHeader(PairedEndSequenceRecordReader.getLeftRead(reader.getCurrentValue())));
+					names.add(getHeader(PairedEndSequenceRecordReader.getRightRead(reader.getCurrentValue())));
+				}
+			}
+		}
+	}
+
+	private static String getHeader(String read) {
+		return read.substring(0, read.indexOf('\n'));
+	}
+
+	/**
+	 * Write an interleaved FASTQ file whose header lines are given by
+	 * formats with the pair number and the mate number as their arguments.
+	 */
+	private Path write(String leftFormat, String rightFormat) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), "reads.fq");
+		Random random = new Random(PAIRS);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < 2 * PAIRS; i++) {
+			int length = 50 + random.nextInt(100);
+
+			if (i < recordStarts.length)
+				recordStarts[i] = sb.length();
+
+			sb.append(String.format((i % 2 == 0)? leftFormat : rightFormat, i / 2, i % 2 + 1)).append('\n');
+
+			for (int j = 0; j < length; j++)
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+			sb.append("\n+\n");
+
+			for (int j = 0; j < length; j++)
+				sb.append((char) ('!' + random.nextInt(40)));
+
+			sb.append('\n');
+		}
+
+		try (OutputStream out = FileSystem.getLocal(new Configuration()).getRaw().create(file, true)) {
+			out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+
+		data = sb.toString().getBytes(StandardCharsets.US_ASCII);
+		fileLength = data.length;
+		return file;
+	}
+}
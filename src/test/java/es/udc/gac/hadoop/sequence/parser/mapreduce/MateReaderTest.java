@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+
+/**
+ * Tests of {@link MateReader}, which must return the same pairs as reading
+ * both mates on the same thread, whatever the queue size.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class MateReaderTest {
+
+	private static final int RECORDS = 5000;
+	private static final int[] QUEUE_SIZES = {1, 2, 3, 64};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testParity() throws Exception {
+		Path left = write("reads_1.fq", RECORDS, "/1", 1);
+		Path right = write("reads_2.fq", RECORDS, "/2 1:N:0:ATCACG", 2);
+
+		for (long splitSize : new long[] {16384, Long.MAX_VALUE}) {
+			for (boolean sequenceRecord : new boolean[] {false, true}) {
+				List<String> expected = read(createJob(left, right, splitSize, sequenceRecord, false, 0));
+				assertEquals(RECORDS, expected.size());
+
+				for (int queueSize : QUEUE_SIZES)
+					assertEquals("queue size "+queueSize, expected,
+							read(createJob(left, right, splitSize, sequenceRecord, true, queueSize)));
+			}
+		}
+	}
+
+	@Test
+	public void testHeldValue() throws Exception {
+		Path file = write("reads_2.fq", RECORDS, "/2", 3);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(new org.apache.hadoop.conf.Configuration(), new TaskAttemptID());
+		FastQInputFormat inputFormat = new FastQInputFormat();
+		FileSplit split = new FileSplit(file, 0, FileSystem.getLocal(context.getConfiguration()).getFileStatus(file).getLen(), new String[0]);
+
+		try (RecordReader<LongWritable, org.apache.hadoop.io.Text> expected = inputFormat.createRecordReader(split, context);
+				RecordReader<LongWritable, org.apache.hadoop.io.Text> reader = inputFormat.createRecordReader(split, context)) {
+			expected.initialize(split, context);
+			reader.initialize(split, context);
+			MateReader mates = new MateReader((SingleEndSequenceRecordReader) reader, 1);
+			mates.start();
+
+			try {
+				for (int i = 0; i < RECORDS; i++) {
+					assertTrue(expected.nextKeyValue());
+					assertTrue(mates.next());
+					String value = mates.getValue().toString();
+
+					// Let the producer fill the queue: the slot held by the consumer must not change
+					if (i % 1000 == 0)
+						Thread.sleep(20);
+
+					assertEquals(expected.getCurrentKey().get(), mates.getKey());
+					assertEquals(expected.getCurrentValue().toString(), value);
+					assertEquals(value, mates.getValue().toString());
+				}
+
+				assertFalse(expected.nextKeyValue());
+				assertFalse(mates.next());
+				assertFalse(mates.next());
+			} finally {
+				mates.close();
+			}
+		}
+	}
+
+	@Test
+	public void testEarlyClose() throws Exception {
+		Path left = write("reads_1.fq", RECORDS, "/1", 4);
+		Path right = write("reads_2.fq", RECORDS, "/2", 5);
+		Job job = createJob(left, right, Long.MAX_VALUE, false, true, 2);
+		PairedEndSequenceInputFormat inputFormat = new PairedEndSequenceInputFormat();
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+
+		// The background thread is waiting for a free slot, and it must stop when the reader is closed
+		for (InputSplit split : inputFormat.getSplits(job)) {
+			RecordReader<LongWritable, PairText> reader = inputFormat.createRecordReader(split, context);
+			reader.initialize(split, context);
+			assertTrue(reader.nextKeyValue());
+			Thread.sleep(20);
+			long start = System.nanoTime();
+			reader.close();
+			assertTrue(System.nanoTime() - start < 5000000000L);
+		}
+	}
+
+	@Test
+	public void testMissingMates() throws Exception {
+		Path left = write("reads_1.fq", RECORDS, "/1", 6);
+		Path shorter = write("reads_2.fq", RECORDS - 1, "/2", 7);
+
+		for (boolean concurrent : new boolean[] {false, true}) {
+			try {
+				read(createJob(left, shorter, Long.MAX_VALUE, false, concurrent, 4));
+				fail("Missing right mate not detected");
+			} catch (IOException e) {
+				assertEquals("Unexpected end of split for right record reader", e.getMessage());
+			}
+
+			try {
+				read(createJob(shorter, left, Long.MAX_VALUE, false, concurrent, 4));
+				fail("Missing left mate not detected");
+			} catch (IOException e) {
+				assertEquals("Unexpected end of split for left record reader", e.getMessage());
+			}
+		}
+	}
+
+	private static Job createJob(Path left, Path right, long splitSize, boolean sequenceRecord, boolean concurrent,
+			int queueSize) throws IOException {
+		Job job = Job.getInstance();
+		job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, splitSize);
+		Configuration.setSequenceRecord(job.getConfiguration(), sequenceRecord);
+		Configuration.setPairedConcurrent(job.getConfiguration(), concurrent);
+
+		if (queueSize > 0)
+			Configuration.setPairedQueueSize(job.getConfiguration(), queueSize);
+
+		PairedEndSequenceInputFormat.setLeftInputPath(job, left, FastQInputFormat.class);
+		PairedEndSequenceInputFormat.setRightInputPath(job, right, FastQInputFormat.class);
+		return job;
+	}
+
+	/**
+	 * Read the pairs as "key left right" strings, including the sequence
+	 * of SequenceRecord values.
+	 */
+	private static List<String> read(Job job) throws Exception {
+		PairedEndSequenceInputFormat inputFormat = new PairedEndSequenceInputFormat();
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		List<String> pairs = new ArrayList<String>();
+
+		for (InputSplit split : inputFormat.getSplits(job)) {
+			try (RecordReader<LongWritable, PairText> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					PairText pair = reader.getCurrentValue();
+					String pairString = reader.getCurrentKey().get()+" "+pair.getLeft()+" "+pair.getRight();
+
+					if (pair instanceof PairSequenceRecord)
+						pairString += " "+((PairSequenceRecord) pair).getRightRecord().getSequence();
+
+					pairs.add(pairString);
+				}
+			}
+		}
+
+		return pairs;
+	}
+
+	/**
+	 * Write a FASTQ file with the given suffix after the read names.
+	 */
+	private Path write(String name, int records, String suffix, long seed) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < records; i++) {
+			int length = 30 + random.nextInt(200);
+			sb.append("@read").append(i).append(suffix).append('\n');
+
+			for (int j = 0; j < length; j++)
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+			sb.append("\n+\n");
+
+			for (int j = 0; j < length; j++)
+				sb.append((char) ('!' + random.nextInt(40)));
+
+			sb.append('\n');
+		}
+
+		try (OutputStream out = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration()).getRaw().create(file, true)) {
+			out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+
+		return file;
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+import es.udc.gac.hadoop.sequence.parser.util.QualityBinning;
+
+/**
+ * Tests of {@link PackedSequenceRecord}: packing of bases with exceptions,
+ * raw and binned qualities, and serialization into reused records.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class PackedSequenceRecordTest {
+
+	private static final String EXCEPTIONS = "NacgtRYKMSWBDHV-";
+	private static final QualityBinning[] BINNINGS = {null, QualityBinning.parse(QualityBinning.ILLUMINA_8),
+			QualityBinning.parse("0:0,2:3,4:5,6:7,8:9,10:11,12:13,14:15,16:17,18:19,20:21,22:23,24:25,26:27,28:29,30:41")};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Random random = new Random(1);
+		// Records are read into the same object, so that nothing is left from larger ones
+		PackedSequenceRecord copy = new PackedSequenceRecord();
+
+		for (int i = 0; i < 3000; i++) {
+			String[] read = read(random, i);
+			QualityBinning binning = BINNINGS[i % BINNINGS.length];
+			PackedSequenceRecord record = new PackedSequenceRecord();
+			byte[] name = read[0].getBytes(StandardCharsets.US_ASCII);
+			byte[] bases = read[1].getBytes(StandardCharsets.US_ASCII);
+			byte[] qualities = read[2].getBytes(StandardCharsets.US_ASCII);
+			record.set(name, 0, name.length, bases, 0, bases.length, qualities, 0, qualities.length, binning);
+
+			check(read, binning, record);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			record.write(new DataOutputStream(bytes));
+			copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			check(read, binning, copy);
+			assertEquals(record.toString(), copy.toString());
+		}
+	}
+
+	@Test
+	public void testFastA() {
+		// Line breaks are not kept
+		SequenceRecord fasta = new SequenceRecord(">seq1\nACGTN\nacgtA\nCG\n".getBytes(StandardCharsets.US_ASCII));
+		PackedSequenceRecord record = new PackedSequenceRecord();
+		record.set(fasta, BINNINGS[1]);
+
+		assertEquals("seq1", record.getName().toString());
+		assertEquals(12, record.getLength());
+		assertEquals(5, record.getNumExceptions());
+		assertFalse(record.hasQuality());
+		assertEquals(">seq1\nACGTNacgtACG\n", record.toString());
+	}
+
+	@Test
+	public void testUnknownQualityEncoding() throws IOException {
+		PackedSequenceRecord record = new PackedSequenceRecord();
+		record.set(new SequenceRecord("@r\nACGT\n+\nIIII\n".getBytes(StandardCharsets.US_ASCII)), null);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		record.write(new DataOutputStream(bytes));
+		byte[] data = bytes.toByteArray();
+		// The encoding follows the name (2 bytes), the length, the packed bases and the number of exceptions
+		data[5] = 7;
+
+		try {
+			new PackedSequenceRecord().readFields(new DataInputStream(new ByteArrayInputStream(data)));
+			fail("Unknown quality encoding not detected");
+		} catch (IOException e) {
+			assertEquals("Unknown quality encoding: 7", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testQualityBinning() {
+		QualityBinning binning = BINNINGS[1];
+		assertEquals(8, binning.getNumBins());
+		// Phred 0-2 to 2, 3-9 to 6, 10-19 to 15, ..., 40 and above to 40
+		assertEquals('!' + 2, binning.getValue(binning.getBin((byte) '!')));
+		assertEquals('!' + 6, binning.getValue(binning.getBin((byte) ('!' + 9))));
+		assertEquals('!' + 15, binning.getValue(binning.getBin((byte) ('!' + 10))));
+		assertEquals('!' + 40, binning.getValue(binning.getBin((byte) '~')));
+
+		for (String spec : new String[] {"0:2,0:3", "5:2,3:3", "x:1", "0", "-1:2",
+				"0:0,1:1,2:2,3:3,4:4,5:5,6:6,7:7,8:8,9:9,10:10,11:11,12:12,13:13,14:14,15:15,16:16"}) {
+			try {
+				QualityBinning.parse(spec);
+				fail("Incorrect binning not detected: "+spec);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+
+		assertEquals(null, QualityBinning.parse(QualityBinning.NONE));
+	}
+
+	@Test
+	public void testInputFormat() throws Exception {
+		Random random = new Random(2);
+		List<String[]> reads = new ArrayList<String[]>();
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < 2000; i++) {
+			String[] read = read(random, i);
+
+			// FASTQ records have a quality for every base
+			if (read[2].length() != read[1].length() || read[1].isEmpty()) {
+				read[1] = read[1] + "A";
+				read[2] = read[1].replaceAll(".", "I");
+			}
+
+			reads.add(read);
+			sb.append('@').append(read[0]).append(" comment\n").append(read[1]).append("\n+\n").append(read[2]).append('\n');
+		}
+
+		Path file = new Path(folder.getRoot().getAbsolutePath(), "reads.fq");
+
+		try (OutputStream out = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration()).getRaw().create(file, true)) {
+			out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+
+		for (String spec : new String[] {QualityBinning.NONE, QualityBinning.ILLUMINA_8}) {
+			Job job = Job.getInstance();
+			job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, 32768);
+			Configuration.setQualityBinning(job.getConfiguration(), spec);
+			FileInputFormat.setInputPaths(job, file);
+			PackedFastQInputFormat inputFormat = new PackedFastQInputFormat();
+			TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+			int records = 0;
+
+			for (InputSplit split : inputFormat.getSplits(job)) {
+				try (RecordReader<LongWritable, PackedSequenceRecord> reader = inputFormat.createRecordReader(split, context)) {
+					reader.initialize(split, context);
+
+					while (reader.nextKeyValue())
+						check(reads.get(records++), QualityBinning.parse(spec), reader.getCurrentValue());
+				}
+			}
+
+			assertEquals(reads.size(), records);
+		}
+	}
+
+	private static void check(String[] read, QualityBinning binning, PackedSequenceRecord record) {
+		byte[] bases = read[1].getBytes(StandardCharsets.US_ASCII);
+		byte[] qualities = read[2].getBytes(StandardCharsets.US_ASCII);
+		int exceptions = 0;
+
+		for (byte base : bases) {
+			if (base != 'A' && base != 'C' && base != 'G' && base != 'T')
+				exceptions++;
+		}
+
+		if (binning != null) {
+			for (int i = 0; i < qualities.length; i++)
+				qualities[i] = binning.getValue(binning.getBin(qualities[i]));
+		}
+
+		assertEquals(read[0], record.getName().toString());
+		assertEquals(bases.length, record.getLength());
+		assertEquals(exceptions, record.getNumExceptions());
+
+		byte[] unpacked = new byte[bases.length + 2];
+		record.getBases(unpacked, 2);
+
+		for (int i = 0; i < bases.length; i++) {
+			assertEquals(bases[i], unpacked[i + 2]);
+			assertEquals(bases[i], record.getBase(i));
+		}
+
+		assertEquals(qualities.length > 0, record.hasQuality());
+		assertEquals(qualities.length, record.getQualityLength());
+		byte[] copied = new byte[qualities.length];
+		record.getQualities(copied, 0);
+		assertArrayEquals(qualities, copied);
+
+		for (int i = 0; i < qualities.length; i++)
+			assertEquals(qualities[i], record.getQuality(i));
+
+		try {
+			record.getBase(bases.length);
+			fail("Incorrect base not detected");
+		} catch (IndexOutOfBoundsException e) {
+		}
+
+		assertTrue(record.toString().startsWith((qualities.length > 0)? "@"+read[0]+"\n" : ">"+read[0]+"\n"));
+	}
+
+	/**
+	 * Generate a read of random length (including empty reads and lengths
+	 * around multiples of 4), with runs of bases other than A, C, G and T
+	 * (none, a few or most of them) and qualities over the whole range.
+	 */
+	private static String[] read(Random random, int i) {
+		int length = (i % 10 == 0)? i % 9 : random.nextInt(400);
+		int exceptionRate = new int[] {0, 50, 2}[i % 3];
+		StringBuilder bases = new StringBuilder(length);
+		StringBuilder qualities = new StringBuilder(length);
+
+		for (int j = 0; j < length; j++) {
+			if (exceptionRate > 0 && random.nextInt(exceptionRate) == 0)
+				bases.append(EXCEPTIONS.charAt(random.nextInt(EXCEPTIONS.length())));
+			else
+				bases.append("ACGT".charAt(random.nextInt(4)));
+
+			qualities.append((char) ('!' + random.nextInt(94)));
+		}
+
+		// FASTA records have no qualities
+		return new String[] {"read"+i, bases.toString(), (i % 7 == 0)? "" : qualities.toString()};
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.io.LongWritable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+
+/**
+ * Tests of {@link PairedEndSequenceRecordReader} with mate files whose read
+ * names follow the usual naming schemes, read in several splits.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class PairedEndSequenceRecordReaderTest {
+
+	private static final int RECORDS = 3000;
+	private static final long[] SPLIT_SIZES = {4096, 10000, 65536};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSraReadIds() throws Exception {
+		// fastq-dump --readids
+		check("@SRR001666.%d.1 071112_SLXA-EAS1_s_7:5:1:817:%d length=72",
+				"@SRR001666.%d.2 071112_SLXA-EAS1_s_7:5:1:817:%d length=72");
+	}
+
+	@Test
+	public void testSraSpotIds() throws Exception {
+		// The same name in both files, whose spot number must not be taken as a mate suffix
+		check("@SRR001666.%d 071112_SLXA-EAS1_s_7:5:1:817:%d length=72",
+				"@SRR001666.%d %d");
+	}
+
+	@Test
+	public void testIlluminaComments() throws Exception {
+		check("@EAS139:136:FC706VJ:2:2104:15343:%d 1:Y:18:ATCACG %d",
+				"@EAS139:136:FC706VJ:2:2104:15343:%d 2:N:18:ATCACGTTAGGC %d");
+	}
+
+	@Test
+	public void testSlashAndUnderscoreSuffixes() throws Exception {
+		check("@read%d/1 %d", "@read%d/2 %d");
+		check("@read%d_1 %d", "@read%d_2");
+	}
+
+	@Test
+	public void testDifferentNames() throws Exception {
+		Path left = write("reads_1.fq", "@read%d/1 %d", 0);
+		Path right = write("reads_2.fq", "@read%d/2 %d", 1);
+
+		try {
+			read(left, right, Long.MAX_VALUE);
+			fail("Different read names not detected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected different read names"));
+		}
+
+		// Unless the check is disabled
+		Job job = createJob(left, right, Long.MAX_VALUE);
+		Configuration.setPairedCheckNames(job.getConfiguration(), false);
+		assertEquals(RECORDS, read(job, new ArrayList<String>(), new ArrayList<String>()));
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		for (boolean recordAligned : new boolean[] {false, true}) {
+			PairedEndInputSplit split = new PairedEndInputSplit();
+			split.add(new FileSplit(new Path("/reads_1.fq"), 0, 100, new String[0]));
+			split.add(new FileSplit(new Path("/reads_2.fq"), 0, 120, new String[0]));
+			split.setRecordAligned(recordAligned);
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			split.write(new DataOutputStream(bytes));
+			PairedEndInputSplit copy = new PairedEndInputSplit();
+			copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+			assertEquals(recordAligned, copy.isRecordAligned());
+			assertEquals(split.get(1).getPath(), copy.get(1).getPath());
+			assertEquals(split.get(1).getLength(), copy.get(1).getLength());
+		}
+	}
+
+	private void check(String leftFormat, String rightFormat) throws Exception {
+		Path left = write("reads_1.fq", leftFormat, 0);
+		Path right = write("reads_2.fq", rightFormat, 0);
+
+		for (long splitSize : SPLIT_SIZES) {
+			List<String> leftNames = new ArrayList<String>();
+			List<String> rightNames = new ArrayList<String>();
+			assertEquals(RECORDS, read(createJob(left, right, splitSize), leftNames, rightNames));
+
+			for (int i = 0; i < RECORDS; i++) {
+				// Comments are removed from the headers
+				assertEquals(String.format(leftFormat, i, i).split(" ")[0], leftNames.get(i));
+				assertEquals(String.format(rightFormat, i, i).split(" ")[0], rightNames.get(i));
+			}
+		}
+	}
+
+	private int read(Path left, Path right, long splitSize) throws Exception {
+		return read(createJob(left, right, splitSize), new ArrayList<String>(), new ArrayList<String>());
+	}
+
+	private Job createJob(Path left, Path right, long splitSize) throws IOException {
+		Job job = Job.getInstance();
+		job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, splitSize);
+		PairedEndSequenceInputFormat.setLeftInputPath(job, left, FastQInputFormat.class);
+		PairedEndSequenceInputFormat.setRightInputPath(job, right, FastQInputFormat.class);
+		return job;
+	}
+
+	private static int read(Job job, List<String> leftNames, List<String> rightNames) throws Exception {
+		PairedEndSequenceInputFormat inputFormat = new PairedEndSequenceInputFormat();
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		int pairs = 0;
+
+		for (InputSplit split : inputFormat.getSplits(job)) {
+			try (RecordReader<LongWritable, PairText> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					leftNames.add(getHeader(PairedEndSequenceRecordReader.getLeftRead(reader.getCurrentValue())));
+					rightNames.add(getHeader(PairedEndSequenceRecordReader.getRightRead(reader.getCurrentValue())));
+					pairs++;
+				}
+			}
+		}
+
+		return pairs;
+	}
+
+	private static String getHeader(String read) {
+		return read.substring(0, read.indexOf('\n'));
+	}
+
+	/**
+	 * Write a FASTQ file whose header lines are given by a format with the
+	 * read number (plus <code>shift</code>) as its arguments.
+	 */
+	private Path write(String name, String format, int shift) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+		Random random = new Random(name.hashCode());
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < RECORDS; i++) {
+			int length = 50 + random.nextInt(100);
+			sb.append(String.format(format, i + shift, i + shift)).append('\n');
+
+			for (int j = 0; j < length; j++)
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+			sb.append("\n+\n");
+
+			for (int j = 0; j < length; j++)
+				sb.append((char) ('!' + random.nextInt(40)));
+
+			sb.append('\n');
+		}
+
+		try (OutputStream out = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration()).getRaw().create(file, true)) {
+			out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+
+		return file;
+	}
+}
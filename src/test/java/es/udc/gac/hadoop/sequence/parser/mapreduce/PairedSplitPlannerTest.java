@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.RecordIndex;
+
+/**
+ * Tests of {@link PairedSplitPlanner} with mate files of different sizes,
+ * planned from sampled boundaries and from record indexes.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class PairedSplitPlannerTest {
+
+	private static final int RECORDS = 3000;
+	private static final long SPLIT_SIZE = 32*1024;
+	private static final int INDEX_INTERVAL = 100;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSampled() throws Exception {
+		// The right reads have comments, so the mates are not at proportional offsets
+		Path left = write("reads_1.fq", "@read%d/1", false);
+		Path right = write("reads_2.fq", "@read%d/2 071112_SLXA-EAS1_s_7:5:1:817 length=72", false);
+		List<PairedEndInputSplit> splits = getSplits(left, right);
+
+		assertTrue(splits.size() > 3);
+
+		for (PairedEndInputSplit split : splits) {
+			assertTrue(split.isRecordAligned());
+			assertEquals(getFirstName(split.get(0)), getFirstName(split.get(1)));
+		}
+
+		checkPairs(left, right);
+	}
+
+	@Test
+	public void testMissingMate() throws Exception {
+		Path left = write("reads_1.fq", "@read%d/1", false);
+		Path right = write("reads_2.fq", "@other%d/2", false);
+		checkSingle(left, right);
+	}
+
+	@Test
+	public void testNotMonotonic() throws Exception {
+		// The mates are found, but in reverse order
+		Path left = write("reads_1.fq", "@read%d/1", false);
+		Path right = write("reads_2.fq", "@read%d/2", true);
+		checkSingle(left, right);
+	}
+
+	@Test
+	public void testIndexed() throws Exception {
+		Path left = write("reads_1.fq", "@read%d/1", false);
+		Path right = write("reads_2.fq", "@read%d/2 071112_SLXA-EAS1_s_7:5:1:817 length=72", false);
+		index(left);
+		index(right);
+		List<PairedEndInputSplit> splits = getSplits(left, right);
+		long firstRecord = 0;
+
+		assertTrue(splits.size() > 3);
+
+		for (PairedEndInputSplit split : splits) {
+			IndexedFileSplit leftSplit = (IndexedFileSplit) split.get(0);
+			IndexedFileSplit rightSplit = (IndexedFileSplit) split.get(1);
+
+			assertTrue(split.isRecordAligned());
+			assertEquals(firstRecord, leftSplit.getFirstRecord());
+			assertEquals(leftSplit.getFirstRecord(), rightSplit.getFirstRecord());
+			assertEquals(leftSplit.getNumRecords(), rightSplit.getNumRecords());
+			firstRecord += leftSplit.getNumRecords();
+		}
+
+		assertEquals(RECORDS, firstRecord);
+		checkPairs(left, right);
+	}
+
+	@Test
+	public void testIndexedRecordCount() throws Exception {
+		Path left = write("reads_1.fq", "@read%d/1", false);
+		Path right = write("reads_2.fq", "@read%d/2", false);
+		index(left);
+
+		RecordIndex index = new RecordIndex(getFileSystem().getFileStatus(right).getLen());
+		index.add(0, 0);
+		index.setNumRecords(RECORDS - 1);
+		index.write(getFileSystem(), right);
+
+		try {
+			getSplits(left, right);
+			fail("Different number of records not detected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Number of records does not match"));
+		}
+	}
+
+	private void checkSingle(Path left, Path right) throws Exception {
+		List<PairedEndInputSplit> splits = getSplits(left, right);
+		FileSystem fs = getFileSystem();
+
+		assertEquals(1, splits.size());
+		assertTrue(splits.get(0).isRecordAligned());
+		assertEquals(0, splits.get(0).get(0).getStart());
+		assertEquals(fs.getFileStatus(left).getLen(), splits.get(0).get(0).getLength());
+		assertEquals(0, splits.get(0).get(1).getStart());
+		assertEquals(fs.getFileStatus(right).getLen(), splits.get(0).get(1).getLength());
+	}
+
+	private void checkPairs(Path left, Path right) throws Exception {
+		Job job = createJob(left, right);
+		PairedEndSequenceInputFormat inputFormat = new PairedEndSequenceInputFormat();
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		int pairs = 0;
+
+		for (InputSplit split : inputFormat.getSplits(job)) {
+			try (RecordReader<LongWritable, PairText> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				// The names of the mates are checked by the reader
+				while (reader.nextKeyValue())
+					pairs++;
+			}
+		}
+
+		assertEquals(RECORDS, pairs);
+	}
+
+	private List<PairedEndInputSplit> getSplits(Path left, Path right) throws IOException {
+		List<PairedEndInputSplit> splits = new ArrayList<PairedEndInputSplit>();
+
+		for (InputSplit split : new PairedEndSequenceInputFormat().getSplits(createJob(left, right)))
+			splits.add((PairedEndInputSplit) split);
+
+		return splits;
+	}
+
+	private Job createJob(Path left, Path right) throws IOException {
+		Job job = Job.getInstance();
+		job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, SPLIT_SIZE);
+		PairedEndSequenceInputFormat.setLeftInputPath(job, left, FastQInputFormat.class);
+		PairedEndSequenceInputFormat.setRightInputPath(job, right, FastQInputFormat.class);
+		return job;
+	}
+
+	private static FileSystem getFileSystem() throws IOException {
+		return FileSystem.getLocal(new org.apache.hadoop.conf.Configuration());
+	}
+
+	/**
+	 * Returns the name of the first read starting in a split.
+	 */
+	private static String getFirstName(FileSplit split) throws IOException {
+		byte[] data = readAll(split.getPath());
+		int pos = (int) split.getStart();
+
+		// Only the header lines contain '@'
+		while (pos > 0 && !(data[pos] == '@' && data[pos - 1] == '\n'))
+			pos++;
+
+		int end = pos;
+
+		while (data[end] != ' ' && data[end] != '\n')
+			end++;
+
+		// Without the "/1" or "/2" suffix
+		return new String(data, pos + 1, end - pos - 3, StandardCharsets.US_ASCII);
+	}
+
+	private static byte[] readAll(Path file) throws IOException {
+		FileSystem fs = getFileSystem();
+		byte[] data = new byte[(int) fs.getFileStatus(file).getLen()];
+
+		try (InputStream in = fs.open(file)) {
+			IOUtils.readFully(in, data, 0, data.length);
+		}
+
+		return data;
+	}
+
+	/**
+	 * Build the record index of a FASTQ file written by {@link #write}.
+	 */
+	private static void index(Path file) throws IOException {
+		byte[] data = readAll(file);
+		RecordIndex index = new RecordIndex(data.length);
+		int lines = 0;
+
+		for (int pos = 0, record = 0; pos < data.length; pos++) {
+			if (lines % 4 == 0 && (pos == 0 || data[pos - 1] == '\n')) {
+				if (record % INDEX_INTERVAL == 0)
+					index.add(record, pos);
+
+				record++;
+			}
+
+			if (data[pos] == '\n')
+				lines++;
+		}
+
+		index.setNumRecords(lines / 4);
+		index.write(getFileSystem(), file);
+	}
+
+	/**
+	 * Write a FASTQ file whose header lines are given by a format with the
+	 * read number as its argument, in reverse order if <code>reverse</code>
+	 * is true. Quality lines do not contain '@' so that the first record of
+	 * a split can be found by {@link #getFirstName}.
+	 */
+	private Path write(String name, String format, boolean reverse) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+		Random random = new Random(1);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < RECORDS; i++) {
+			int length = 50 + random.nextInt(100);
+			sb.append(String.format(format, reverse? RECORDS - 1 - i : i)).append('\n');
+
+			for (int j = 0; j < length; j++)
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+			sb.append("\n+\n");
+
+			for (int j = 0; j < length; j++)
+				sb.append((char) ('A' + random.nextInt(40)));
+
+			sb.append('\n');
+		}
+
+		try (OutputStream out = getFileSystem().create(file, true)) {
+			out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+
+		return file;
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.Configuration;
+
+/**
+ * Tests of {@link SequenceBatch} values, which must contain the same
+ * records as those emitted one by one, before and after serialization.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class SequenceBatchTest {
+
+	private static final int RECORDS = 2000;
+	private static final int[] BATCH_SIZES = {1, 7, 1000};
+	private static final long SPLIT_SIZE = 32768;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testFastQ() throws Exception {
+		Path file = write("reads.fq", true, 1);
+		check(file, new FastQInputFormat(), new FastQBatchInputFormat());
+	}
+
+	@Test
+	public void testFastA() throws Exception {
+		Path file = write("reads.fa", false, 2);
+		check(file, new FastAInputFormat(), new FastABatchInputFormat());
+	}
+
+	@Test
+	public void testPaired() throws Exception {
+		Path left = write("reads_1.fq", true, 3);
+		Path right = write("reads_2.fq", true, 3);
+		List<String> expected = read(left, new FastQInputFormat());
+		// Batches are serialized into the same object, so that nothing is left from larger ones
+		PairSequenceBatch copy = new PairSequenceBatch();
+
+		for (int batchSize : BATCH_SIZES) {
+			Job job = createJob(batchSize);
+			PairedEndSequenceInputFormat.setLeftInputPath(job, left, FastQInputFormat.class);
+			PairedEndSequenceInputFormat.setRightInputPath(job, right, FastQInputFormat.class);
+			PairedEndSequenceBatchInputFormat inputFormat = new PairedEndSequenceBatchInputFormat();
+			TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+			List<String> leftRecords = new ArrayList<String>();
+			List<String> rightRecords = new ArrayList<String>();
+
+			for (InputSplit split : inputFormat.getSplits(job)) {
+				try (RecordReader<LongWritable, PairSequenceBatch> reader = inputFormat.createRecordReader(split, context)) {
+					reader.initialize(split, context);
+
+					while (reader.nextKeyValue()) {
+						PairSequenceBatch batch = reader.getCurrentValue();
+						assertTrue(batch.size() > 0 && batch.size() <= batchSize);
+						assertEquals(batch.getLeft().size(), batch.getRight().size());
+						roundTrip(batch, copy);
+						assertEquals(batch.size(), copy.size());
+						addRecords(copy.getLeft(), leftRecords);
+						addRecords(copy.getRight(), rightRecords);
+					}
+				}
+			}
+
+			assertEquals(expected, leftRecords);
+			assertEquals(expected, rightRecords);
+		}
+	}
+
+	private void check(Path file, InputFormat<LongWritable, Text> recordFormat,
+			InputFormat<LongWritable, SequenceBatch> batchFormat) throws Exception {
+		List<String> expected = read(file, recordFormat);
+		assertEquals(RECORDS, expected.size());
+		SequenceBatch copy = new SequenceBatch();
+
+		for (int batchSize : BATCH_SIZES) {
+			Job job = createJob(batchSize);
+			FileInputFormat.setInputPaths(job, file);
+			TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+			List<String> records = new ArrayList<String>();
+			List<String> copies = new ArrayList<String>();
+
+			for (InputSplit split : batchFormat.getSplits(job)) {
+				try (RecordReader<LongWritable, SequenceBatch> reader = batchFormat.createRecordReader(split, context)) {
+					reader.initialize(split, context);
+
+					while (reader.nextKeyValue()) {
+						SequenceBatch batch = reader.getCurrentValue();
+						assertTrue(batch.size() > 0 && batch.size() <= batchSize);
+						assertEquals(batch.getPosition(0), reader.getCurrentKey().get());
+						addRecords(batch, records);
+						roundTrip(batch, copy);
+						addRecords(copy, copies);
+					}
+				}
+			}
+
+			assertEquals("batch size "+batchSize, expected, records);
+			assertEquals("batch size "+batchSize, expected, copies);
+		}
+	}
+
+	private static Job createJob(int batchSize) throws IOException {
+		Job job = Job.getInstance();
+		job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, SPLIT_SIZE);
+		Configuration.setBatchSize(job.getConfiguration(), batchSize);
+		return job;
+	}
+
+	private static void roundTrip(Writable batch, Writable copy) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		batch.write(new DataOutputStream(bytes));
+		copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	/**
+	 * Add the records of a batch as "position name bases qualities" strings,
+	 * using both the CharSequence views and the columnar arrays.
+	 */
+	private static void addRecords(SequenceBatch batch, List<String> records) {
+		for (int i = 0; i < batch.size(); i++) {
+			String name = batch.getName(i).toString();
+			String bases = batch.getSequence(i).toString();
+			String qualities = batch.getQuality(i).toString();
+
+			assertEquals(name, field(batch.getNames(), batch.getNameOffsets(), i));
+			assertEquals(bases, field(batch.getBases(), batch.getBaseOffsets(), i));
+			assertEquals(qualities, field(batch.getQualities(), batch.getQualityOffsets(), i));
+			assertEquals(batch.getPosition(i), batch.getPositions()[i]);
+			records.add(batch.getPosition(i)+" "+name+" "+bases+" "+qualities);
+		}
+	}
+
+	private static String field(byte[] field, int[] offsets, int i) {
+		return new String(field, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Read the records one by one as SequenceRecord values.
+	 */
+	private static List<String> read(Path file, InputFormat<LongWritable, Text> inputFormat) throws Exception {
+		Job job = Job.getInstance();
+		job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, SPLIT_SIZE);
+		Configuration.setSequenceRecord(job.getConfiguration(), true);
+		FileInputFormat.setInputPaths(job, file);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		List<String> records = new ArrayList<String>();
+
+		for (InputSplit split : inputFormat.getSplits(job)) {
+			try (RecordReader<LongWritable, Text> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					SequenceRecord record = (SequenceRecord) reader.getCurrentValue();
+					records.add(reader.getCurrentKey().get()+" "+record.getName()+" "+record.getSequence()+" "+record.getQuality());
+				}
+			}
+		}
+
+		return records;
+	}
+
+	/**
+	 * Write reads of random length, with multi-line sequences in FASTA format.
+	 */
+	private Path write(String name, boolean fastq, long seed) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < RECORDS; i++) {
+			int length = 1 + random.nextInt(300);
+			sb.append(fastq? '@' : '>').append("read").append(i).append(" comment\n");
+
+			for (int j = 0; j < length; j++) {
+				sb.append("ACGTN".charAt(random.nextInt(5)));
+
+				if (!fastq && j % 70 == 69 && j + 1 < length)
+					sb.append('\n');
+			}
+
+			sb.append('\n');
+
+			if (fastq) {
+				sb.append("+\n");
+
+				for (int j = 0; j < length; j++)
+					sb.append((char) ('!' + random.nextInt(41)));
+
+				sb.append('\n');
+			}
+		}
+
+		try (OutputStream out = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration()).getRaw().create(file, true)) {
+			out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+
+		return file;
+	}
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the field offsets of the {@link SequenceRecord} values emitted
+ * by the record readers, which must be the same as those computed again
+ * from the content by {@link SequenceRecord#parseFields()}.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class SequenceRecordTest {
+
+	private static final int RECORDS = 2000;
+	private static final long[] SPLIT_SIZES = {4096, 65536, Long.MAX_VALUE};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testFastQ() throws Exception {
+		List<String[]> reads = reads(1);
+		Path file = write("reads.fq", reads, true, 0);
+
+		for (long splitSize : SPLIT_SIZES) {
+			List<SequenceRecord> records = read(new FastQInputFormat(), file, splitSize, false);
+			assertEquals(RECORDS, records.size());
+
+			for (int i = 0; i < RECORDS; i++)
+				check(reads.get(i), records.get(i), true);
+		}
+	}
+
+	@Test
+	public void testFastA() throws Exception {
+		List<String[]> reads = reads(2);
+
+		// Sequence lines of 60 bases (several lines per record), or a single line
+		for (int lineLength : new int[] {60, 0}) {
+			Path file = write("reads"+lineLength+".fa", reads, false, lineLength);
+
+			for (boolean joinLines : new boolean[] {false, true}) {
+				for (long splitSize : SPLIT_SIZES) {
+					List<SequenceRecord> records = read(new FastAInputFormat(), file, splitSize, joinLines);
+					assertEquals(RECORDS, records.size());
+
+					for (int i = 0; i < RECORDS; i++) {
+						String sequence = reads.get(i)[1];
+
+						if (!joinLines && lineLength > 0)
+							sequence = wrap(sequence, lineLength);
+
+						check(new String[] {reads.get(i)[0], sequence, ""}, records.get(i), false);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPaired() throws Exception {
+		List<String[]> reads = reads(3);
+		Path left = write("reads_1.fq", reads, true, 0);
+		Path right = write("reads_2.fq", reads, true, 0);
+		Job job = Job.getInstance();
+		job.getConfiguration().setLong(FileInputFormat.SPLIT_MAXSIZE, 65536);
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setSequenceRecord(job.getConfiguration(), true);
+		PairedEndSequenceInputFormat.setLeftInputPath(job, left, FastQInputFormat.class);
+		PairedEndSequenceInputFormat.setRightInputPath(job, right, FastQInputFormat.class);
+		PairedEndSequenceInputFormat inputFormat = new PairedEndSequenceInputFormat();
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+		int pairs = 0;
+
+		for (InputSplit split : inputFormat.getSplits(job)) {
+			try (RecordReader<LongWritable, PairText> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					PairSequenceRecord pair = (PairSequenceRecord) reader.getCurrentValue();
+					check(reads.get(pairs), pair.getLeftRecord(), true);
+					check(reads.get(pairs), pair.getRightRecord(), true);
+					pairs++;
+				}
+			}
+		}
+
+		assertEquals(RECORDS, pairs);
+	}
+
+	@Test
+	public void testParseFields() throws IOException {
+		check(new String[] {"read1", "ACGT", "IIII"}, new SequenceRecord("@read1\nACGT\n+\nIIII\n".getBytes()), true);
+		check(new String[] {"read1", "ACGT", ""}, new SequenceRecord(">read1\nACGT\n".getBytes()), false);
+		check(new String[] {"read1", "AC\nGT", ""}, new SequenceRecord(">read1\nAC\nGT".getBytes()), false);
+		check(new String[] {"read1", "", ""}, new SequenceRecord(">read1\n".getBytes()), false);
+
+		// Fields are updated after modifying the content
+		SequenceRecord record = new SequenceRecord("@read1\nACGT\n+\nIIII\n".getBytes());
+		record.set("@r2\nA\n+\nI\n");
+		record.parseFields();
+		check(new String[] {"r2", "A", "I"}, record, true);
+
+		record.set("");
+		record.parseFields();
+		assertEquals(0, record.getName().length());
+		assertEquals(0, record.getSequence().length());
+		assertFalse(record.hasQuality());
+	}
+
+	/**
+	 * Check the fields of a record, and of its serialized copy.
+	 */
+	private static void check(String[] read, SequenceRecord record, boolean fastq) throws IOException {
+		assertEquals(read[0], record.getName().toString());
+		assertEquals(read[1], record.getSequence().toString());
+		assertEquals(read[2], record.getQuality().toString());
+		assertEquals(fastq, record.hasQuality());
+
+		// Byte slices and CharSequence views
+		assertEquals(read[0], new String(record.getBytes(), record.getNameOffset(), record.getNameLength(), StandardCharsets.US_ASCII));
+		assertEquals(read[1], new String(record.getBytes(), record.getSequenceOffset(), record.getSequenceLength(), StandardCharsets.US_ASCII));
+		assertEquals(read[2], new String(record.getBytes(), record.getQualityOffset(), record.getQualityLength(), StandardCharsets.US_ASCII));
+
+		if (read[1].length() > 2) {
+			assertEquals(read[1].charAt(1), record.getSequence().charAt(1));
+			assertEquals(read[1].subSequence(1, 3), record.getSequence().subSequence(1, 3).toString());
+		}
+
+		// Offsets computed again from the content
+		SequenceRecord parsed = new SequenceRecord(Arrays.copyOf(record.getBytes(), record.getLength()));
+		assertEquals(record.getNameOffset(), parsed.getNameOffset());
+		assertEquals(record.getNameLength(), parsed.getNameLength());
+		assertEquals(record.getSequenceOffset(), parsed.getSequenceOffset());
+		assertEquals(record.getSequenceLength(), parsed.getSequenceLength());
+		assertEquals(record.getQualityOffset(), parsed.getQualityOffset());
+		assertEquals(record.getQualityLength(), parsed.getQualityLength());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		record.write(new DataOutputStream(bytes));
+		SequenceRecord copy = new SequenceRecord();
+		copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals((Text) record, (Text) copy);
+		assertEquals(record.getSequenceOffset(), copy.getSequenceOffset());
+		assertEquals(read[1], copy.getSequence().toString());
+		assertEquals(read[2], copy.getQuality().toString());
+	}
+
+	private static List<SequenceRecord> read(InputFormat<LongWritable, Text> inputFormat, Path file, long splitSize,
+			boolean joinLines) throws Exception {
+		Job job = Job.getInstance();
+		Configuration conf = job.getConfiguration();
+		conf.setLong(FileInputFormat.SPLIT_MAXSIZE, splitSize);
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setSequenceRecord(conf, true);
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setFastAJoinLines(conf, joinLines);
+		FileInputFormat.setInputPaths(job, file);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+		List<SequenceRecord> records = new ArrayList<SequenceRecord>();
+
+		for (InputSplit split : inputFormat.getSplits(job)) {
+			try (RecordReader<LongWritable, Text> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					// Values are reused, so the offsets are checked on copies
+					SequenceRecord record = (SequenceRecord) reader.getCurrentValue();
+					SequenceRecord copy = new SequenceRecord(Arrays.copyOf(record.getBytes(), record.getLength()));
+					copy.setFields(record.getNameOffset(), record.getNameLength(), record.getSequenceOffset(),
+							record.getSequenceLength(), record.getQualityOffset(), record.getQualityLength());
+					records.add(copy);
+				}
+			}
+		}
+
+		return records;
+	}
+
+	/**
+	 * Generate reads of random length as {name, bases, qualities}.
+	 */
+	private static List<String[]> reads(long seed) {
+		Random random = new Random(seed);
+		List<String[]> reads = new ArrayList<String[]>(RECORDS);
+
+		for (int i = 0; i < RECORDS; i++) {
+			int length = 1 + random.nextInt(300);
+			StringBuilder bases = new StringBuilder(length);
+			StringBuilder qualities = new StringBuilder(length);
+
+			for (int j = 0; j < length; j++) {
+				bases.append("ACGTN".charAt(random.nextInt(5)));
+				qualities.append((char) ('!' + random.nextInt(41)));
+			}
+
+			reads.add(new String[] {"read"+i, bases.toString(), qualities.toString()});
+		}
+
+		return reads;
+	}
+
+	private static String wrap(String sequence, int lineLength) {
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < sequence.length(); i += lineLength) {
+			if (i > 0)
+				sb.append('\n');
+
+			sb.append(sequence, i, Math.min(sequence.length(), i + lineLength));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Write the reads with comments in their headers (which are removed by
+	 * the readers), in FASTQ or FASTA format with sequence lines of at most
+	 * <code>lineLength</code> bases (0 for a single line).
+	 */
+	private Path write(String name, List<String[]> reads, boolean fastq, int lineLength) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+		StringBuilder sb = new StringBuilder();
+
+		for (String[] read : reads) {
+			sb.append(fastq? '@' : '>').append(read[0]).append(" length=").append(read[1].length()).append('\n');
+
+			if (fastq)
+				sb.append(read[1]).append("\n+").append(read[0]).append('\n').append(read[2]).append('\n');
+			else
+				sb.append((lineLength > 0)? wrap(read[1], lineLength) : read[1]).append('\n');
+		}
+
+		try (OutputStream out = FileSystem.getLocal(new Configuration()).getRaw().create(file, true)) {
+			out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+
+		return file;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.BufferPool;
+
+/**
+ * Tests of {@link SingleEndSequenceRecordReader} with the buffers leased
+ * from the buffer pool of the JVM, which must return the same records as
+ * with buffers of their own and give the buffers back when closed.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class SingleEndSequenceRecordReaderTest {
+
+	private static final int RECORDS = 2000;
+	private static final long POOL_SIZE = 64 << 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystem fs;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new Configuration()).getRaw();
+	}
+
+	@Test
+	public void testBufferPool() throws Exception {
+		byte[] fastq = fastq(1);
+		byte[] fasta = fasta(2);
+		Path[] files = {write("reads.fq", fastq), write("reads.fq.bz2", bzip2(fastq)), write("reads.fa", fasta)};
+		Path other = write("other.fq", fastq(3));
+
+		for (Path file : files) {
+			FileInputFormat<LongWritable, Text> inputFormat = file.getName().contains(".fa")?
+					new FastAInputFormat() : new FastQInputFormat();
+			long length = fs.getFileStatus(file).getLen();
+			long[] bounds = {0, length / 3, length / 2 + 17, length};
+
+			// Stream and byte-buffer reads, with Text and SequenceRecord values
+			for (int mode = 0; mode < 4; mode++) {
+				Configuration conf = new Configuration();
+				es.udc.gac.hadoop.sequence.parser.util.Configuration.setByteBufferRead(conf, mode % 2 == 1);
+				es.udc.gac.hadoop.sequence.parser.util.Configuration.setByteBufferReadSize(conf, 4093);
+				es.udc.gac.hadoop.sequence.parser.util.Configuration.setSequenceRecord(conf, mode >= 2);
+				List<String> expected = read(inputFormat, conf, file, bounds);
+				assertEquals(RECORDS, expected.size());
+
+				Configuration pooledConf = new Configuration(conf);
+				es.udc.gac.hadoop.sequence.parser.util.Configuration.setBufferPoolSize(pooledConf, POOL_SIZE);
+				BufferPool pool = BufferPool.getInstance(pooledConf);
+
+				// Leave data of another file in the pooled buffers
+				read(new FastQInputFormat(), pooledConf, other, new long[] {0, fs.getFileStatus(other).getLen()});
+				assertTrue(pool.getPooledBytes() > 0);
+
+				assertEquals(file.getName()+", mode "+mode, expected, read(inputFormat, pooledConf, file, bounds));
+				long pooledBytes = pool.getPooledBytes();
+
+				// All the buffers were returned, so they are leased again instead of allocating new ones
+				assertEquals(file.getName()+", mode "+mode, expected, read(inputFormat, pooledConf, file, bounds));
+				assertEquals(pooledBytes, pool.getPooledBytes());
+			}
+		}
+	}
+
+	/**
+	 * Read the records of the splits with the given boundaries. Keys are
+	 * only included for uncompressed files.
+	 */
+	private static List<String> read(FileInputFormat<LongWritable, Text> inputFormat, Configuration conf, Path file,
+			long[] bounds) throws Exception {
+		boolean keys = !file.getName().endsWith(".bz2");
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setInputBufferSize(conf, 4096);
+		TaskAttemptContextImpl context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+		List<String> records = new ArrayList<String>();
+
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			FileSplit split = new FileSplit(file, bounds[i], bounds[i + 1] - bounds[i], new String[0]);
+
+			try (RecordReader<LongWritable, Text> reader = inputFormat.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+
+				while (reader.nextKeyValue()) {
+					Text value = reader.getCurrentValue();
+					String record = (keys? reader.getCurrentKey().get()+" " : "")+value;
+
+					if (value instanceof SequenceRecord)
+						record += "|"+((SequenceRecord) value).getSequence();
+
+					records.add(record);
+				}
+			}
+		}
+
+		return records;
+	}
+
+	private Path write(String name, byte[] bytes) throws IOException {
+		Path file = new Path(folder.getRoot().getAbsolutePath(), name);
+
+		try (OutputStream out = fs.create(file, true)) {
+			out.write(bytes);
+		}
+
+		return file;
+	}
+
+	private static byte[] fastq(long seed) {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < RECORDS; i++) {
+			// Some records are longer than the input buffer
+			int length = (i % 100 == 0)? 5000 : 30 + random.nextInt(200);
+			sb.append("@read").append(seed).append('_').append(i).append('\n');
+
+			for (int j = 0; j < length; j++)
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+			sb.append("\n+\n");
+
+			for (int j = 0; j < length; j++)
+				sb.append((char) ('!' + random.nextInt(40)));
+
+			sb.append('\n');
+		}
+
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static byte[] fasta(long seed) {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < RECORDS; i++) {
+			int length = (i % 100 == 0)? 8000 : 10 + random.nextInt(500);
+			sb.append(">seq").append(seed).append('_').append(i).append('\n');
+
+			for (int j = 0; j < length; j++) {
+				sb.append("ACGT".charAt(random.nextInt(4)));
+
+				if ((j + 1) % 60 == 0 || j + 1 == length)
+					sb.append('\n');
+			}
+		}
+
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Compress data in a single bzip2 stream with 100 KB blocks.
+	 */
+	private static byte[] bzip2(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write('B');
+		out.write('Z');
+
+		try (CBZip2OutputStream bzout = new CBZip2OutputStream(out, 1)) {
+			bzout.write(data);
+		}
+
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import es.udc.gac.hadoop.sequence.parser.util.GzipIndex;
+import es.udc.gac.hadoop.sequence.parser.util.RecordIndex;
+
+/**
+ * Tests of the keys of {@link SplitCache}.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class SplitCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration conf;
+	private FileSystem fs;
+	private Path left;
+	private Path right;
+
+	@Before
+	public void setUp() throws IOException {
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf).getRaw();
+		left = new Path(folder.getRoot().getAbsolutePath(), "reads_1.fq.gz");
+		right = new Path(folder.getRoot().getAbsolutePath(), "reads_2.fq.gz");
+		write(left, 100);
+		write(right, 100);
+	}
+
+	@Test
+	public void testIndexes() throws IOException {
+		String settings = SplitCache.getSettings(conf, FastQInputFormat.class.getName());
+		String key = getKey(settings);
+		assertEquals(key, getKey(settings));
+
+		// Building an index of either file changes the key
+		write(RecordIndex.getIndexPath(right), 10);
+		String recordIndexKey = getKey(settings);
+		assertNotEquals(key, recordIndexKey);
+
+		write(GzipIndex.getIndexPath(left), 10);
+		String gzipIndexKey = getKey(settings);
+		assertNotEquals(recordIndexKey, gzipIndexKey);
+
+		// And so does rebuilding it
+		write(GzipIndex.getIndexPath(left), 20);
+		assertNotEquals(gzipIndexKey, getKey(settings));
+
+		// Or removing it
+		fs.delete(GzipIndex.getIndexPath(left), false);
+		assertEquals(recordIndexKey, getKey(settings));
+	}
+
+	@Test
+	public void testSettings() throws IOException {
+		String settings = SplitCache.getSettings(conf, FastQInputFormat.class.getName());
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setSplitThreads(conf, 3);
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setSplitCacheSize(conf, 10);
+		assertEquals(settings, SplitCache.getSettings(conf, FastQInputFormat.class.getName()));
+
+		es.udc.gac.hadoop.sequence.parser.util.Configuration.setRecordIndex(conf, false);
+		assertNotEquals(settings, SplitCache.getSettings(conf, FastQInputFormat.class.getName()));
+		assertNotEquals(settings, SplitCache.getSettings(new Configuration(), FastAInputFormat.class.getName()));
+	}
+
+	private String getKey(String settings) throws IOException {
+		FileStatus leftStatus = fs.getFileStatus(left);
+		FileStatus rightStatus = fs.getFileStatus(right);
+		return SplitCache.getKey(conf, settings, leftStatus, rightStatus);
+	}
+
+	private void write(Path file, int length) throws IOException {
+		try (OutputStream out = fs.create(file, true)) {
+			out.write(new byte[length]);
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link BZip2BlockInputStream} with single-stream and
+ * concatenated bzip2 files, read whole and in splits.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class BZip2BlockInputStreamTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystem fs;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration()).getRaw();
+	}
+
+	@Test
+	public void testSingleLevel() throws IOException {
+		byte[] data = GzipIndexBuilderTest.sequences(650000, 1);
+		Path file = write(bzip2(data, 1));
+
+		for (int numThreads : new int[] {1, 4})
+			assertArrayEquals(data, readSplit(file, 0, fs.getFileStatus(file).getLen(), numThreads));
+
+		checkSplits(file, data);
+	}
+
+	@Test
+	public void testMixedLevels() throws IOException {
+		// Large blocks after small ones and vice versa
+		int[] levels = {1, 9, 2, 1, 3};
+		int[] lengths = {250000, 1000000, 10, 120000, 310000};
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		ByteArrayOutputStream bzip2 = new ByteArrayOutputStream();
+
+		for (int i = 0; i < levels.length; i++) {
+			byte[] stream = GzipIndexBuilderTest.sequences(lengths[i], i + 2);
+			data.write(stream);
+			bzip2.write(bzip2(stream, levels[i]));
+		}
+
+		Path file = write(bzip2.toByteArray());
+		assertArrayEquals(data.toByteArray(), readSplit(file, 0, fs.getFileStatus(file).getLen(), 3));
+		checkSplits(file, data.toByteArray());
+	}
+
+	@Test
+	public void testBinaryData() throws IOException {
+		// All byte values and runs of every length around the run-length coding limits
+		Random random = new Random(3);
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+		while (data.size() < 900000) {
+			int length = (random.nextInt(4) == 0)? random.nextInt(2000) : random.nextInt(6);
+			int value = random.nextInt(256);
+
+			for (int i = 0; i < length; i++)
+				data.write(value);
+		}
+
+		for (int level : new int[] {1, 9}) {
+			Path file = write(bzip2(data.toByteArray(), level));
+			assertArrayEquals(data.toByteArray(), readSplit(file, 0, fs.getFileStatus(file).getLen(), 2));
+		}
+	}
+
+	@Test
+	public void testFirstBlock() throws IOException {
+		byte[] data = GzipIndexBuilderTest.sequences(250000, 4);
+		Path file = write(bzip2(data, 1));
+		long length = fs.getFileStatus(file).getLen();
+
+		// Splits starting before the first block start at the beginning of the data
+		for (long start = 1; start < 4; start++) {
+			try (FSDataInputStream in = fs.open(file);
+					BZip2BlockInputStream bzin = new BZip2BlockInputStream(in, start, length, 2)) {
+				assertEquals(0, bzin.getAdjustedStart());
+			}
+
+			assertArrayEquals(data, readSplit(file, start, length, 2));
+		}
+	}
+
+	@Test
+	public void testBlocksAfterEnd() throws IOException {
+		byte[] data = GzipIndexBuilderTest.sequences(1500000, 5);
+		Path file = write(bzip2(data, 1));
+		long length = fs.getFileStatus(file).getLen();
+		TreeSet<Long> blocks = getBlockOffsets(file);
+		assertTrue(blocks.size() > 10);
+
+		try (FSDataInputStream in = fs.open(file);
+				BZip2BlockInputStream bzin = new BZip2BlockInputStream(in, 0, length / 4, 4)) {
+			byte[] buffer = new byte[16*1024];
+
+			// The first block after the split end is decompressed ahead of the reader
+			while (bzin.read(buffer, 0, buffer.length) != -1 && bzin.getPos() <= length / 4)
+				assertTrue(bzin.getBlocksAfterEnd() <= 1);
+
+			assertEquals(1, bzin.getBlocksAfterEnd());
+
+			// But the next ones are only decompressed when they are read
+			for (int i = 2; i <= 4; i++) {
+				long pos = bzin.getPos();
+
+				while (bzin.getPos() == pos)
+					assertTrue(bzin.read(buffer, 0, buffer.length) > 0);
+
+				assertEquals(i, bzin.getBlocksAfterEnd());
+			}
+		}
+	}
+
+	@Test
+	public void testResetState() throws IOException {
+		byte[] data = GzipIndexBuilderTest.sequences(450000, 7);
+		Path file = write(bzip2(data, 1));
+		long length = fs.getFileStatus(file).getLen();
+		long start = length / 3;
+
+		try (FSDataInputStream in = fs.open(file);
+				BZip2BlockInputStream bzin = new BZip2BlockInputStream(in, start, length, 2)) {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+
+			while ((n = bzin.read(buffer, 0, buffer.length)) != -1)
+				expected.write(buffer, 0, n);
+
+			assertTrue(expected.size() > 0);
+			bzin.resetState();
+			assertEquals(bzin.getAdjustedStart(), bzin.getPos());
+			assertTrue(bzin.read(buffer, 0, 1000) > 0);
+			bzin.resetState();
+
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+
+			while ((n = bzin.read(buffer, 0, buffer.length)) != -1)
+				actual.write(buffer, 0, n);
+
+			assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+		}
+	}
+
+	/**
+	 * Check that the splits of a file return the whole data exactly once,
+	 * both for split boundaries around each block start and for random ones.
+	 */
+	private void checkSplits(Path file, byte[] data) throws IOException {
+		long length = fs.getFileStatus(file).getLen();
+		TreeSet<Long> blocks = getBlockOffsets(file);
+		assertTrue(blocks.size() > 3);
+
+		// Blocks whose magic number starts right before, at or after the split boundary
+		for (long block : blocks) {
+			for (long boundary = block - 1; boundary <= block + 1; boundary++)
+				assertArrayEquals("boundary "+boundary, data, readSplits(file, new long[] {0, boundary, length}, 2));
+		}
+
+		Random random = new Random(length);
+
+		for (int numSplits : new int[] {3, 8, 25}) {
+			long[] bounds = new long[numSplits + 1];
+			bounds[numSplits] = length;
+
+			for (int i = 1; i < numSplits; i++)
+				bounds[i] = random.nextInt((int) length);
+
+			Arrays.sort(bounds);
+			assertArrayEquals(numSplits+" splits", data, readSplits(file, bounds, 1 + numSplits % 3));
+		}
+	}
+
+	private TreeSet<Long> getBlockOffsets(Path file) throws IOException {
+		TreeSet<Long> blocks = new TreeSet<Long>();
+
+		try (FSDataInputStream in = fs.open(file);
+				BZip2BlockInputStream bzin = new BZip2BlockInputStream(in, 0, fs.getFileStatus(file).getLen(), 1)) {
+			byte[] buffer = new byte[64*1024];
+
+			while (bzin.read(buffer, 0, buffer.length) != -1)
+				blocks.add(bzin.getPos());
+		}
+
+		return blocks;
+	}
+
+	private byte[] readSplits(Path file, long[] bounds, int numThreads) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		for (int i = 0; i + 1 < bounds.length; i++)
+			out.write(readSplit(file, bounds[i], bounds[i + 1], numThreads));
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Read the blocks starting within a split.
+	 */
+	private byte[] readSplit(Path file, long start, long end, int numThreads) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (FSDataInputStream in = fs.open(file);
+				BZip2BlockInputStream bzin = new BZip2BlockInputStream(in, start, end, numThreads)) {
+			byte[] buffer = new byte[16*1024];
+			int n;
+
+			while ((n = bzin.read(buffer, 0, buffer.length)) != -1 && bzin.getPos() <= end)
+				out.write(buffer, 0, n);
+		}
+
+		return out.toByteArray();
+	}
+
+	private Path write(byte[] bytes) throws IOException {
+		Path file = new Path(folder.newFile().getAbsolutePath());
+
+		try (OutputStream out = fs.create(file, true)) {
+			out.write(bytes);
+		}
+
+		return file;
+	}
+
+	/**
+	 * Compress data in a single bzip2 stream with the given block size level.
+	 */
+	private static byte[] bzip2(byte[] data, int level) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write('B');
+		out.write('Z');
+
+		try (CBZip2OutputStream bzout = new CBZip2OutputStream(out, level)) {
+			bzout.write(data);
+		}
+
+		return out.toByteArray();
+	}
+}
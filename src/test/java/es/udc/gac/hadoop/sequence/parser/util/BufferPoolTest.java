@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link BufferPool}. The pool of the JVM is shared with the other
+ * tests, so the pooled buffers and the limit are tested on pools of their own.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class BufferPoolTest {
+
+	@Test
+	public void testReuse() {
+		BufferPool pool = new BufferPool(1 << 20);
+
+		byte[] array = pool.getArray(12345);
+		assertEquals(12345, array.length);
+		pool.putArray(array);
+		assertEquals(12345, pool.getPooledBytes());
+		assertSame(array, pool.getArray(12345));
+		assertEquals(0, pool.getPooledBytes());
+		assertNotSame(array, pool.getArray(12345));
+
+		// Buffers are pooled by size
+		pool.putArray(array);
+		assertNotSame(array, pool.getArray(12346));
+		assertSame(array, pool.getArray(12345));
+
+		// Heap and direct buffers are pooled separately, and cleared when leased
+		ByteBuffer heap = pool.getBuffer(false, 23456);
+		ByteBuffer direct = pool.getBuffer(true, 23456);
+		assertTrue(!heap.isDirect() && direct.isDirect());
+		heap.position(100).limit(200);
+		pool.putBuffer(heap);
+		pool.putBuffer(direct);
+		assertEquals(2 * 23456, pool.getPooledBytes());
+		assertSame(direct, pool.getBuffer(true, 23456));
+		ByteBuffer leased = pool.getBuffer(false, 23456);
+		assertSame(heap, leased);
+		assertEquals(0, leased.position());
+		assertEquals(23456, leased.limit());
+		assertEquals(0, pool.getPooledBytes());
+	}
+
+	@Test
+	public void testLimit() {
+		BufferPool pool = new BufferPool(25000);
+		byte[][] arrays = new byte[3][];
+
+		// Only idle buffers count: the three arrays are leased at the same time
+		for (int i = 0; i < arrays.length; i++)
+			arrays[i] = pool.getArray(10000);
+
+		pool.putArray(arrays[0]);
+		pool.putArray(arrays[1]);
+		assertEquals(20000, pool.getPooledBytes());
+
+		// The third one is left to the garbage collector
+		pool.putArray(arrays[2]);
+		assertEquals(20000, pool.getPooledBytes());
+		pool.putBuffer(ByteBuffer.allocate(10000));
+		assertEquals(20000, pool.getPooledBytes());
+
+		// But a smaller buffer still fits
+		pool.putBuffer(ByteBuffer.allocateDirect(5000));
+		assertEquals(25000, pool.getPooledBytes());
+
+		// Disabled pool
+		pool = new BufferPool(0);
+		pool.putArray(pool.getArray(1));
+		assertEquals(0, pool.getPooledBytes());
+	}
+
+	@Test
+	public void testGetInstance() {
+		BufferPool pool = getPool(1L << 30);
+		long max = pool.getMaxPooledBytes();
+		byte[] array = pool.getArray(34567);
+		pool.putArray(array);
+
+		// Smaller limits and disabled pools of other jobs do not discard buffers
+		assertSame(pool, getPool(1000));
+		assertEquals(max, pool.getMaxPooledBytes());
+		assertNull(getPool(0));
+		assertEquals(max, pool.getMaxPooledBytes());
+		assertSame(array, pool.getArray(34567));
+
+		// Larger limits are kept
+		assertSame(pool, getPool(max + 1));
+		assertEquals(max + 1, pool.getMaxPooledBytes());
+	}
+
+	private static BufferPool getPool(long size) {
+		org.apache.hadoop.conf.Configuration conf = new org.apache.hadoop.conf.Configuration();
+		Configuration.setBufferPoolSize(conf, size);
+		return BufferPool.getInstance(conf);
+	}
+}
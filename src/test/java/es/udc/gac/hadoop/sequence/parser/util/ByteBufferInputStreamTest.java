@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.ElasticByteBufferPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link ByteBufferInputStream} on the local file system, whose
+ * streams do not support zero-copy reads.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class ByteBufferInputStreamTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRead() throws IOException {
+		byte[] data = GzipIndexBuilderTest.sequences(300000, 1);
+		Path file = new Path(folder.newFile().getAbsolutePath());
+
+		for (FileSystem fs : getFileSystems()) {
+			try (OutputStream out = fs.create(file, true)) {
+				out.write(data);
+			}
+
+			for (boolean skipChecksums : new boolean[] {false, true}) {
+				for (int readSize : new int[] {1, 1000, 1 << 20}) {
+					try (ByteBufferInputStream in = new ByteBufferInputStream(fs.open(file), readSize,
+							new ElasticByteBufferPool(), skipChecksums)) {
+						ByteArrayOutputStream out = new ByteArrayOutputStream();
+						byte[] buffer = new byte[777];
+						int n;
+
+						assertEquals(data[0], in.read());
+						out.write(data[0]);
+
+						while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+							out.write(buffer, 0, n);
+							assertEquals(out.size(), in.getPos());
+						}
+
+						assertArrayEquals(data, out.toByteArray());
+
+						in.seek(123456);
+						assertEquals(123456, in.getPos());
+						n = in.read(buffer, 0, buffer.length);
+						assertArrayEquals(Arrays.copyOfRange(data, 123456, 123456 + n), Arrays.copyOf(buffer, n));
+						assertEquals(123456 + n, in.getPos());
+					}
+				}
+			}
+		}
+	}
+
+	private static FileSystem[] getFileSystems() throws IOException {
+		FileSystem fs = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration());
+		return new FileSystem[] {fs, ((org.apache.hadoop.fs.LocalFileSystem) fs).getRaw()};
+	}
+}
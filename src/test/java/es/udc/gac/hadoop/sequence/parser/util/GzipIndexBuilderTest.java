@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the DEFLATE decoder of {@link GzipIndexBuilder} and of the
+ * decompression from the checkpoints of the resulting {@link GzipIndex}.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class GzipIndexBuilderTest {
+
+	private static final int STORED = 0;
+	private static final int FIXED = 1;
+	private static final int DYNAMIC = 2;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystem fs;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration()).getRaw();
+	}
+
+	@Test
+	public void testStoredBlocks() throws IOException {
+		byte[] data = randomBytes(200000, 1);
+		byte[] gzip = gzip(data, Deflater.NO_COMPRESSION, 0);
+
+		assertEquals(STORED, getFirstBlockType(gzip));
+		checkIndex(data, gzip, 16*1024);
+	}
+
+	@Test
+	public void testFixedHuffmanBlocks() throws IOException {
+		byte[] data = "ACGTACGTTTGACCA\n".getBytes("US-ASCII");
+		byte[] gzip = gzip(data, Deflater.BEST_COMPRESSION, 0);
+
+		assertEquals(FIXED, getFirstBlockType(gzip));
+		checkIndex(data, gzip, 1);
+
+		// Many small fixed Huffman blocks
+		data = sequences(20000, 2);
+		gzip = gzip(data, Deflater.BEST_SPEED, 24);
+		checkIndex(data, gzip, 512);
+	}
+
+	@Test
+	public void testDynamicHuffmanBlocks() throws IOException {
+		byte[] data = sequences(400000, 3);
+		byte[] gzip = gzip(data, Deflater.DEFAULT_COMPRESSION, 0);
+
+		assertEquals(DYNAMIC, getFirstBlockType(gzip));
+		GzipIndex index = checkIndex(data, gzip, 32*1024);
+		boolean unaligned = false;
+
+		for (GzipIndex.Checkpoint checkpoint : index.getCheckpoints())
+			unaligned |= (checkpoint.getBitOffset() & 7) != 0;
+
+		assertTrue("no checkpoint within a byte", unaligned);
+	}
+
+	@Test
+	public void testMixedBlocks() throws IOException {
+		byte[] data = sequences(300000, 4);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		byte[] buffer = new byte[64*1024];
+		int[] levels = {Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION};
+		Random random = new Random(5);
+		int pos = 0;
+
+		writeHeader(out);
+
+		while (pos < data.length) {
+			int length = Math.min(data.length - pos, 1 + random.nextInt(30000));
+			deflater.setLevel(levels[random.nextInt(levels.length)]);
+			deflater.setInput(data, pos, length);
+			pos += length;
+			deflate(deflater, buffer, out, Deflater.SYNC_FLUSH);
+		}
+
+		finish(deflater, buffer, out);
+		writeTrailer(out, data, 0, data.length);
+
+		checkIndex(data, out.toByteArray(), 8*1024);
+	}
+
+	@Test
+	public void testMultipleMembers() throws IOException {
+		byte[] data = sequences(150000, 6);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int[] bounds = {0, 1, 40000, 40001, 100000, data.length};
+
+		for (int i = 0; i + 1 < bounds.length; i++)
+			out.write(gzip(Arrays.copyOfRange(data, bounds[i], bounds[i + 1]), Deflater.DEFAULT_COMPRESSION, 0));
+
+		GzipIndex index = checkIndex(data, out.toByteArray(), 4*1024);
+		assertEquals(bounds.length - 1, index.getMembers().size());
+	}
+
+	@Test
+	public void testResetState() throws IOException {
+		byte[] data = sequences(100000, 7);
+		Path file = write(gzip(data, Deflater.DEFAULT_COMPRESSION, 0));
+		GzipIndex index = GzipIndex.build(fs, file, 8*1024);
+		int checkpoint = index.getCheckpoints().size() / 2;
+		int offset = (int) index.getCheckpoints().get(checkpoint).getUncompressedOffset();
+
+		try (FSDataInputStream in = fs.open(file);
+				GzipCheckpointInputStream gzin = new GzipCheckpointInputStream(in, index, checkpoint)) {
+			byte[] expected = Arrays.copyOfRange(data, offset, data.length);
+			assertTrue(gzin.read(new byte[1000], 0, 1000) > 0);
+			gzin.resetState();
+			assertArrayEquals(expected, readFully(gzin));
+		}
+	}
+
+	/**
+	 * Build the index of a gzip file with the given span, and check that:
+	 * <ul>
+	 * <li>decompressing from every checkpoint returns the rest of the data</li>
+	 * <li>splits starting in the middle of deflate blocks, which are read
+	 * until the first checkpoint after their end, return the whole data
+	 * exactly once</li>
+	 * </ul>
+	 */
+	private GzipIndex checkIndex(byte[] data, byte[] gzip, long span) throws IOException {
+		Path file = write(gzip);
+		GzipIndex index = GzipIndex.build(fs, file, span);
+
+		assertEquals(gzip.length, index.getFileLength());
+		assertTrue(!index.getCheckpoints().isEmpty());
+
+		for (int i = 0; i < index.getCheckpoints().size(); i++) {
+			GzipIndex.Checkpoint checkpoint = index.getCheckpoints().get(i);
+			int offset = (int) checkpoint.getUncompressedOffset();
+
+			try (FSDataInputStream in = fs.open(file);
+					GzipCheckpointInputStream gzin = new GzipCheckpointInputStream(in, index, i)) {
+				assertArrayEquals("checkpoint "+i, Arrays.copyOfRange(data, offset, data.length), readFully(gzin));
+			}
+		}
+
+		// Splits at arbitrary compressed offsets
+		Random random = new Random(gzip.length);
+
+		for (int numSplits : new int[] {1, 2, 3, 7, 16}) {
+			long[] bounds = new long[numSplits + 1];
+			bounds[numSplits] = gzip.length;
+
+			for (int i = 1; i < numSplits; i++)
+				bounds[i] = random.nextInt(gzip.length);
+
+			Arrays.sort(bounds);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			for (int i = 0; i < numSplits; i++) {
+				try (FSDataInputStream in = fs.open(file);
+						GzipCheckpointInputStream gzin = new GzipCheckpointInputStream(in, bounds[i], bounds[i + 1], index)) {
+					byte[] buffer = new byte[4096];
+					int n;
+
+					while ((n = gzin.read(buffer, 0, buffer.length)) != -1 && gzin.getPos() <= bounds[i + 1])
+						out.write(buffer, 0, n);
+				}
+			}
+
+			assertArrayEquals(numSplits+" splits", data, out.toByteArray());
+		}
+
+		return index;
+	}
+
+	private Path write(byte[] bytes) throws IOException {
+		Path file = new Path(folder.newFile().getAbsolutePath());
+
+		try (OutputStream out = fs.create(file, true)) {
+			out.write(bytes);
+		}
+
+		return file;
+	}
+
+	private static byte[] readFully(GzipCheckpointInputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+
+		while ((n = in.read(buffer, 0, buffer.length)) != -1)
+			out.write(buffer, 0, n);
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Compress data in a single gzip member.
+	 *
+	 * @param flushInterval the number of bytes between sync flushes, which
+	 * end the current block, or 0 to never flush
+	 */
+	static byte[] gzip(byte[] data, int level, int flushInterval) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(level, true);
+		byte[] buffer = new byte[64*1024];
+		int interval = (flushInterval > 0)? flushInterval : data.length;
+
+		writeHeader(out);
+
+		for (int pos = 0; pos < data.length; pos += interval) {
+			deflater.setInput(data, pos, Math.min(interval, data.length - pos));
+			deflate(deflater, buffer, out, (flushInterval > 0)? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+		}
+
+		finish(deflater, buffer, out);
+		writeTrailer(out, data, 0, data.length);
+		return out.toByteArray();
+	}
+
+	private static void deflate(Deflater deflater, byte[] buffer, ByteArrayOutputStream out, int flush) {
+		int n;
+
+		// A pending level change may return before consuming any input
+		do {
+			n = deflater.deflate(buffer, 0, buffer.length, flush);
+			out.write(buffer, 0, n);
+		} while (n == buffer.length || !deflater.needsInput());
+	}
+
+	private static void finish(Deflater deflater, byte[] buffer, ByteArrayOutputStream out) {
+		deflater.finish();
+
+		while (!deflater.finished())
+			out.write(buffer, 0, deflater.deflate(buffer));
+
+		deflater.end();
+	}
+
+	private static void writeHeader(ByteArrayOutputStream out) {
+		out.write(new byte[] {0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, (byte) 0xFF}, 0, GzipFormat.HEADER_SIZE);
+	}
+
+	private static void writeTrailer(ByteArrayOutputStream out, byte[] data, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		writeInt(out, (int) crc.getValue());
+		writeInt(out, length);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		for (int i = 0; i < 4; i++)
+			out.write(value >>> (8 * i));
+	}
+
+	/**
+	 * Get the type of the first deflate block of a gzip file without optional header fields.
+	 */
+	private static int getFirstBlockType(byte[] gzip) {
+		return (gzip[GzipFormat.HEADER_SIZE] >>> 1) & 3;
+	}
+
+	private static byte[] randomBytes(int length, long seed) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Generate FASTQ-like text, which is compressed with dynamic Huffman blocks.
+	 */
+	static byte[] sequences(int length, long seed) {
+		Random random = new Random(seed);
+		byte[] bytes = new byte[length];
+		byte[] bases = {'A', 'C', 'G', 'T'};
+
+		for (int i = 0; i < length; i++)
+			bytes[i] = (i % 61 == 60)? (byte) '\n' : bases[random.nextInt(bases.length)];
+
+		return bytes;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the detection of out of date {@link RecordIndex} and
+ * {@link GzipIndex} files.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class IndexFingerprintTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileSystem fs;
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		fs = FileSystem.getLocal(new org.apache.hadoop.conf.Configuration()).getRaw();
+		file = new Path(folder.newFile("reads.fq").getAbsolutePath());
+	}
+
+	@Test
+	public void testRecordIndex() throws IOException {
+		byte[] data = GzipIndexBuilderTest.sequences(300000, 1);
+		write(data);
+		RecordIndex index = new RecordIndex(data.length);
+		index.add(0, 0);
+		index.add(1024, 62464);
+		index.setNumRecords(4919);
+		index.write(fs, file);
+
+		RecordIndex read = RecordIndex.read(fs, file);
+		assertNotNull(read);
+		assertEquals(data.length, read.getFileLength());
+		assertEquals(4919, read.getNumRecords());
+		assertEquals(2, read.getNumEntries());
+		assertEquals(62464, read.getOffset(1));
+
+		// Same length and modification time, different head
+		data[10] = 'N';
+		rewrite(data);
+		assertNull(RecordIndex.read(fs, file));
+
+		// Same length and modification time, different tail
+		data[10] = 'A';
+		data[data.length - 10] = 'N';
+		rewrite(data);
+		assertNull(RecordIndex.read(fs, file));
+
+		// Same contents, different modification time
+		data[data.length - 10] = 'A';
+		rewrite(data);
+		assertNotNull(RecordIndex.read(fs, file));
+		fs.setTimes(file, fs.getFileStatus(file).getModificationTime() + 10000, -1);
+		assertNull(RecordIndex.read(fs, file));
+	}
+
+	@Test
+	public void testGzipIndex() throws IOException {
+		byte[] data = GzipIndexBuilderTest.gzip(GzipIndexBuilderTest.sequences(200000, 2), Deflater.DEFAULT_COMPRESSION, 0);
+		write(data);
+		GzipIndex.build(fs, file, 16*1024).write(fs, file);
+		assertTrue(GzipIndex.exists(fs, file));
+		assertNotNull(GzipIndex.read(fs, file));
+
+		// Replace the file with another one of the same length
+		byte[] other = GzipIndexBuilderTest.gzip(GzipIndexBuilderTest.sequences(200000, 3), Deflater.DEFAULT_COMPRESSION, 0);
+		byte[] replaced = new byte[data.length];
+		System.arraycopy(other, 0, replaced, 0, Math.min(other.length, replaced.length));
+		rewrite(replaced);
+		assertFalse(GzipIndex.exists(fs, file));
+		assertNull(GzipIndex.read(fs, file));
+	}
+
+	private void write(byte[] data) throws IOException {
+		try (OutputStream out = fs.create(file, true)) {
+			out.write(data);
+		}
+	}
+
+	/**
+	 * Overwrite the file keeping its modification time.
+	 */
+	private void rewrite(byte[] data) throws IOException {
+		FileStatus status = fs.getFileStatus(file);
+		write(data);
+		fs.setTimes(file, status.getModificationTime(), -1);
+		assertEquals(status.getLen(), fs.getFileStatus(file).getLen());
+	}
+}
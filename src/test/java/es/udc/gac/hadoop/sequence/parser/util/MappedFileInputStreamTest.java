@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link MappedFileInputStream} with windows much smaller than
+ * the file, reads and seeks across window boundaries, and offsets beyond
+ * 2GB of a sparse file.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class MappedFileInputStreamTest {
+
+	private static final int[] WINDOW_SIZES = {1000, 4096, 100000};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private byte[] data;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		data = GzipIndexBuilderTest.sequences(50000, 1);
+		file = folder.newFile("reads.fq");
+
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(data);
+		}
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		Random random = new Random(1);
+
+		for (int windowSize : WINDOW_SIZES) {
+			for (int offset : new int[] {0, 1, 999, 1000, 1001, data.length - 1, data.length}) {
+				// Single bytes
+				try (MappedFileInputStream in = new MappedFileInputStream(file, offset, windowSize)) {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+					for (int b = in.read(); b != -1; b = in.read())
+						out.write(b);
+
+					assertArrayEquals(Arrays.copyOfRange(data, offset, data.length), out.toByteArray());
+					assertEquals(data.length, in.getPos());
+					assertEquals(-1, in.read());
+				}
+
+				// Bulk reads of random lengths, which stop at window ends
+				try (MappedFileInputStream in = new MappedFileInputStream(file, offset, windowSize)) {
+					byte[] read = new byte[data.length - offset];
+					int pos = 0;
+
+					assertEquals(data.length - offset, in.available());
+
+					while (pos < read.length) {
+						int n = in.read(read, pos, Math.min(read.length - pos, 1 + random.nextInt(3 * windowSize)));
+						assertTrue(n > 0 && n <= windowSize);
+						pos += n;
+						assertEquals(offset + pos, in.getPos());
+					}
+
+					assertArrayEquals(Arrays.copyOfRange(data, offset, data.length), read);
+					assertEquals(0, in.read(read, 0, 0));
+					assertEquals(-1, in.read(read, 0, 1));
+					assertEquals(0, in.available());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSeek() throws IOException {
+		Random random = new Random(2);
+
+		for (int windowSize : WINDOW_SIZES) {
+			try (MappedFileInputStream in = new MappedFileInputStream(file, 0, windowSize)) {
+				for (int i = 0; i < 2000; i++) {
+					long pos;
+
+					// Window boundaries, positions inside the current window and random ones
+					switch (i % 3) {
+					case 0: pos = Math.min(data.length, (long) random.nextInt(data.length / windowSize + 1) * windowSize); break;
+					case 1: pos = Math.min(data.length, in.getPos() + random.nextInt(windowSize + 1)); break;
+					default: pos = random.nextInt(data.length + 1);
+					}
+
+					in.seek(pos);
+					assertEquals(pos, in.getPos());
+					assertEquals((pos < data.length)? data[(int) pos] & 0xFF : -1, in.read());
+				}
+
+				// Skip to the next window, and to EOF
+				int skip = Math.min(windowSize + 1, data.length / 2);
+				in.seek(0);
+				assertEquals(skip, in.skip(skip));
+				assertEquals(skip, in.getPos());
+				assertEquals(data[skip] & 0xFF, in.read());
+				assertEquals(data.length - skip - 1, in.skip(Long.MAX_VALUE));
+				assertEquals(-1, in.read());
+
+				try {
+					in.seek(data.length + 1);
+					fail("Seek beyond EOF not detected");
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testLargeFile() throws IOException {
+		// Sparse file, whose contents are only written around the offsets tested
+		long twoGB = 1L << 31;
+		long length = twoGB + (twoGB >>> 1);
+		long[] offsets = {twoGB - 5000, twoGB - 1, twoGB, Integer.MAX_VALUE + 5000L, length - 5000};
+		File large = folder.newFile("large.fq");
+
+		try (RandomAccessFile out = new RandomAccessFile(large, "rw")) {
+			out.setLength(length);
+
+			for (long offset : offsets) {
+				byte[] chunk = new byte[(int) (Math.min(length, offset + 5000) - (offset - 5000))];
+
+				for (int i = 0; i < chunk.length; i++)
+					chunk[i] = valueAt(offset - 5000 + i);
+
+				out.seek(offset - 5000);
+				out.write(chunk);
+			}
+		}
+
+		// Windows that end before 2GB, at 2GB and span it
+		for (int windowSize : new int[] {1000, 4096, 64*1024*1024}) {
+			for (long offset : offsets) {
+				try (MappedFileInputStream in = new MappedFileInputStream(large, offset, windowSize)) {
+					int n = (int) Math.min(5000, length - offset);
+					byte[] read = new byte[n];
+					int pos = 0;
+
+					while (pos < n)
+						pos += in.read(read, pos, n - pos);
+
+					for (int i = 0; i < n; i++)
+						assertEquals("window "+windowSize+", offset "+(offset + i), valueAt(offset + i), read[i]);
+
+					assertEquals(offset + n, in.getPos());
+
+					// Back into a previous window
+					in.seek(offset - 5000);
+					assertEquals(valueAt(offset - 5000) & 0xFF, in.read());
+				}
+			}
+		}
+
+		try (MappedFileInputStream in = new MappedFileInputStream(large, length - 1, 1000)) {
+			assertEquals(valueAt(length - 1) & 0xFF, in.read());
+			assertEquals(-1, in.read());
+			assertEquals(length, in.getPos());
+		}
+	}
+
+	/**
+	 * Contents of the large file, which differ between nearby offsets and
+	 * between offsets 2GB apart.
+	 */
+	private static byte valueAt(long offset) {
+		return (byte) ((offset % 251) ^ (offset >>> 31));
+	}
+}
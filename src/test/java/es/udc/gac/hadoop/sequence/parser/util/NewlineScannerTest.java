@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link NewlineScanner} implementations against a plain
+ * byte-by-byte search.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class NewlineScannerTest {
+
+	private static final int MAX_LENGTH = 200;
+
+	@Test
+	public void testScalar() {
+		check(NewlineScanner.create(ScalarNewlineScanner.NAME), ScalarNewlineScanner.NAME);
+	}
+
+	@Test
+	public void testSwar() {
+		check(NewlineScanner.create(SwarNewlineScanner.NAME), SwarNewlineScanner.NAME);
+	}
+
+	@Test
+	public void testVector() {
+		NewlineScanner scanner = NewlineScanner.create("vector");
+		// Only available on JDK 17+ with the incubator module (see the java17 profile)
+		Assume.assumeTrue(scanner.getName().equals("vector"));
+		check(scanner, "vector");
+	}
+
+	private static void check(NewlineScanner scanner, String name) {
+		assertEquals(name, scanner.getName());
+		checkEveryOffset(scanner);
+		checkEmptyLines(scanner);
+		checkRandom(scanner);
+	}
+
+	/**
+	 * A single LF at every offset of buffers of every length up to
+	 * <code>MAX_LENGTH</code>, searched from every start and with the
+	 * word tails before and after it.
+	 */
+	private static void checkEveryOffset(NewlineScanner scanner) {
+		for (int length = 0; length <= MAX_LENGTH; length++) {
+			byte[] buffer = new byte[length];
+			Arrays.fill(buffer, (byte) 'A');
+
+			for (int lf = 0; lf < length; lf++) {
+				buffer[lf] = '\n';
+
+				for (int from = 0; from <= length; from += (from < 20)? 1 : 7) {
+					assertEquals(expected(buffer, from, length), scanner.indexOf(buffer, from, length));
+					assertEquals(expected(buffer, from, lf), scanner.indexOf(buffer, from, Math.max(from, lf)));
+				}
+
+				buffer[lf] = 'A';
+			}
+
+			assertEquals(-1, scanner.indexOf(buffer, 0, length));
+		}
+	}
+
+	/**
+	 * Runs of LF (i.e. empty lines), whose bytes must be found one by one.
+	 */
+	private static void checkEmptyLines(NewlineScanner scanner) {
+		byte[] buffer = "@read\n\n\nACGT\n+\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\nIIII\n".getBytes();
+
+		for (int from = 0; from <= buffer.length; from++)
+			assertEquals(expected(buffer, from, buffer.length), scanner.indexOf(buffer, from, buffer.length));
+
+		int found = 0;
+
+		for (int pos = scanner.indexOf(buffer, 0, buffer.length); pos != -1; pos = scanner.indexOf(buffer, pos + 1, buffer.length))
+			found++;
+
+		int lfs = 0;
+
+		for (byte b : buffer) {
+			if (b == '\n')
+				lfs++;
+		}
+
+		assertEquals(lfs, found);
+	}
+
+	/**
+	 * Random bytes (including those that differ from LF in a single bit or
+	 * have the high bit set) and random ranges.
+	 */
+	private static void checkRandom(NewlineScanner scanner) {
+		Random random = new Random(1);
+		byte[] similar = {'\n' ^ 0x20, '\n' ^ 0x01, '\n' ^ 0x02, '\n' ^ 0x08, '\n' ^ 0x10, '\r', 0, (byte) 0xFF, (byte) 0x8A};
+
+		for (int iteration = 0; iteration < 10000; iteration++) {
+			byte[] buffer = new byte[random.nextInt(4096)];
+			int density = 1 + random.nextInt(512);
+
+			for (int i = 0; i < buffer.length; i++) {
+				int r = random.nextInt(density);
+				buffer[i] = (r == 0)? (byte) '\n' : (r < 4)? similar[random.nextInt(similar.length)] : (byte) random.nextInt(256);
+
+				if (buffer[i] == '\n' && r != 0)
+					buffer[i] = 'N';
+			}
+
+			int from = (buffer.length == 0)? 0 : random.nextInt(buffer.length + 1);
+			int to = from + random.nextInt(buffer.length - from + 1);
+			assertEquals(expected(buffer, from, to), scanner.indexOf(buffer, from, to));
+		}
+	}
+
+	private static int expected(byte[] buffer, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer[i] == '\n')
+				return i;
+		}
+
+		return -1;
+	}
+}
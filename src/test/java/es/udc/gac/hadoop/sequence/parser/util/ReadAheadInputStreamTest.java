@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Universidade da Coruña
+ * 
+ * This file is part of HSP.
+ * 
+ * HSP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * HSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with HSP. If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.udc.gac.hadoop.sequence.parser.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link ReadAheadInputStream}.
+ * 
+ * @author Roberto Rey Exposito		<rreye@udc.es>
+ * @author Luis Lorenzo Mosquera	<luis.lorenzom@udc.es>
+ * @author Jorge González-Domínguez	<jgonzalezd@udc.es>
+ */
+public class ReadAheadInputStreamTest {
+
+	/**
+	 * Stream that fails with the given error after returning some data.
+	 */
+	private static final class FailingInputStream extends InputStream {
+
+		private final Throwable error;
+		private int remaining = 1000;
+
+		private FailingInputStream(Throwable error) {
+			this.error = error;
+		}
+
+		@Override
+		public int read() throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining == 0) {
+				if (error instanceof IOException)
+					throw (IOException) error;
+				if (error instanceof RuntimeException)
+					throw (RuntimeException) error;
+				throw (Error) error;
+			}
+
+			int n = Math.min(len, remaining);
+			remaining -= n;
+			return n;
+		}
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		byte[] data = GzipIndexBuilderTest.sequences(100000, 1);
+
+		try (ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), null, 3, 4096)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[10000];
+			int n;
+
+			while ((n = in.read(buffer, 0, buffer.length)) != -1)
+				out.write(buffer, 0, n);
+
+			assertArrayEquals(data, out.toByteArray());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testIOException() throws IOException {
+		IOException error = new IOException("disk error");
+		assertSame(error, readUntilFailure(error));
+	}
+
+	@Test(timeout = 10000)
+	public void testRuntimeException() throws IOException {
+		RuntimeException error = new IllegalStateException("codec bug");
+		assertSame(error, readUntilFailure(error).getCause());
+	}
+
+	@Test(timeout = 10000)
+	public void testError() throws IOException {
+		Error error = new OutOfMemoryError("test");
+		assertSame(error, readUntilFailure(error).getCause());
+	}
+
+	/**
+	 * Read until the failure of the underlying stream, which must be
+	 * thrown again by further reads.
+	 */
+	private static IOException readUntilFailure(Throwable error) throws IOException {
+		try (ReadAheadInputStream in = new ReadAheadInputStream(new FailingInputStream(error), null, 2, 100)) {
+			byte[] buffer = new byte[64];
+			long total = 0;
+
+			try {
+				int n;
+
+				while ((n = in.read(buffer, 0, buffer.length)) != -1)
+					total += n;
+
+				fail("no exception thrown");
+				return null;
+			} catch (IOException e) {
+				assertEquals(1000, total);
+
+				try {
+					in.read(buffer, 0, buffer.length);
+					fail("no exception thrown by the next read");
+				} catch (IOException e2) {
+					assertSame(e, e2);
+				}
+
+				return e;
+			}
+		}
+	}
+}